@@ -14,9 +14,31 @@ public class AllTests {
     public static junit.framework.Test suite() {
 		TestSuite suite = new TestSuite("com.archimatetool.xmlexchange");
 
+        suite.addTest(BendpointTransformTests.suite());
+        suite.addTest(DiagramTopologyIndexTests.suite());
+        suite.addTest(ExportSubsetTests.suite());
+        suite.addTest(ImportContentFilterTests.suite());
+        suite.addTest(ModelSnapshotTests.suite());
+        suite.addTest(XMLExchangeIndexTests.suite());
+        suite.addTest(LazyViewsTests.suite());
+        suite.addTest(XMLExchangeQueryTests.suite());
+        suite.addTest(XMLExchangeDiffTests.suite());
+        suite.addTest(XMLFederatedImporterTests.suite());
+        suite.addTest(XMLExchangeTransformerTests.suite());
+        suite.addTest(XMLExchangeJSONCodecTests.suite());
+        suite.addTest(XMLExchangePreScanTests.suite());
+        suite.addTest(LanguageSelectorTests.suite());
+        suite.addTest(XMLExchangeAsyncTests.suite());
+        suite.addTest(XMLExchangeBinaryCodecTests.suite());
+        suite.addTest(XMLExchangeEngineTests.suite());
+        suite.addTest(XMLExchangeServerTests.suite());
+        suite.addTest(XMLExchangeWatchFolderTests.suite());
+        suite.addTest(LargeModelGeneratorTests.suite());
+        suite.addTest(XMLIntegrityCheckerTests.suite());
         suite.addTest(XMLExchangeUtilsTests.suite());
 		suite.addTest(XMLModelExporterTests.suite());
         suite.addTest(XMLModelImporterTests.suite());
+        suite.addTest(XMLModelMergerTests.suite());
         suite.addTest(XMLValidatorTests.suite());
 		
         return suite;
@@ -0,0 +1,193 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.draw2d.geometry.Point;
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateDiagramModel;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IDiagramModelBendpoint;
+import com.archimatetool.model.IDiagramModelConnection;
+import com.archimatetool.model.IDiagramModelGroup;
+import com.archimatetool.model.IDiagramModelNote;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Bendpoint Transform Tests
+ */
+public class BendpointTransformTests {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BendpointTransformTests.class);
+    }
+
+    /**
+     * The calculation as it was done for each bendpoint before the kernel
+     */
+    private static int[] legacyToAbsolute(int index, int count, int startX, int startY, int endX, int endY,
+            int sourceX, int sourceY, int targetX, int targetY) {
+        double weight = (index + 1.0) / (count + 1.0);
+
+        double sx = sourceX + startX;
+        sx *= (1.0 - weight);
+        double sy = sourceY + startY;
+        sy *= (1.0 - weight);
+
+        double ex = targetX + endX;
+        ex *= weight;
+        double ey = targetY + endY;
+        ey *= weight;
+
+        return new int[] { (int)(sx + ex), (int)(sy + ey) };
+    }
+
+    @Test
+    public void testToAbsoluteIsTheSameAsBefore() {
+        Random random = new Random(7);
+
+        for(int run = 0; run < 1000; run++) {
+            int count = 1 + random.nextInt(50);
+            int sourceX = random.nextInt(2000) - 500, sourceY = random.nextInt(2000) - 500;
+            int targetX = random.nextInt(2000) - 500, targetY = random.nextInt(2000) - 500;
+
+            int[] relative = new int[count * 4];
+            for(int i = 0; i < relative.length; i++) {
+                relative[i] = random.nextInt(1000) - 500;
+            }
+
+            int[] absolute = new int[count * 2];
+            BendpointTransform.toAbsolute(relative, count, sourceX, sourceY, targetX, targetY, absolute);
+
+            for(int i = 0; i < count; i++) {
+                int[] expected = legacyToAbsolute(i, count, relative[i * 4], relative[i * 4 + 1], relative[i * 4 + 2], relative[i * 4 + 3],
+                        sourceX, sourceY, targetX, targetY);
+                assertEquals(expected[0], absolute[i * 2]);
+                assertEquals(expected[1], absolute[i * 2 + 1]);
+            }
+        }
+    }
+
+    @Test
+    public void testToRelative() {
+        int[] relative = new int[8];
+        BendpointTransform.toRelative(new int[] { 100, 200, 300, 400 }, 2, 10, 20, 30, 40, relative);
+
+        assertEquals(90, relative[0]);
+        assertEquals(180, relative[1]);
+        assertEquals(70, relative[2]);
+        assertEquals(160, relative[3]);
+        assertEquals(290, relative[4]);
+        assertEquals(380, relative[5]);
+        assertEquals(270, relative[6]);
+        assertEquals(360, relative[7]);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(11);
+
+        for(int run = 0; run < 1000; run++) {
+            int count = 1 + random.nextInt(50);
+            int sourceX = random.nextInt(2000), sourceY = random.nextInt(2000);
+            int targetX = random.nextInt(2000), targetY = random.nextInt(2000);
+
+            int[] absolute = new int[count * 2];
+            for(int i = 0; i < absolute.length; i++) {
+                absolute[i] = random.nextInt(3000);
+            }
+
+            int[] relative = new int[count * 4];
+            BendpointTransform.toRelative(absolute, count, sourceX, sourceY, targetX, targetY, relative);
+
+            int[] result = new int[count * 2];
+            BendpointTransform.toAbsolute(relative, count, sourceX, sourceY, targetX, targetY, result);
+
+            // Truncation of the weighted sum can lose one unit
+            for(int i = 0; i < absolute.length; i++) {
+                assertTrue(Math.abs(absolute[i] - result[i]) <= 1);
+            }
+        }
+    }
+
+    @Test
+    public void testComputeAbsoluteWithNestedNodes() {
+        IArchimateDiagramModel dm = IArchimateFactory.eINSTANCE.createArchimateDiagramModel();
+
+        IDiagramModelGroup group = IArchimateFactory.eINSTANCE.createDiagramModelGroup();
+        group.setBounds(100, 50, 500, 500);
+        dm.getChildren().add(group);
+
+        IDiagramModelNote source = IArchimateFactory.eINSTANCE.createDiagramModelNote();
+        source.setBounds(10, 10, 100, 50);
+        group.getChildren().add(source);
+
+        IDiagramModelNote target = IArchimateFactory.eINSTANCE.createDiagramModelNote();
+        target.setBounds(400, 300, 120, 60);
+        dm.getChildren().add(target);
+
+        IDiagramModelConnection connection = IArchimateFactory.eINSTANCE.createDiagramModelConnection();
+        connection.connect(source, target);
+
+        for(int i = 0; i < 100; i++) {
+            IDiagramModelBendpoint bendpoint = IArchimateFactory.eINSTANCE.createDiagramModelBendpoint();
+            bendpoint.setStartX(i);
+            bendpoint.setStartY(-i);
+            bendpoint.setEndX(i * 2);
+            bendpoint.setEndY(i * 3);
+            connection.getBendpoints().add(bendpoint);
+        }
+
+        BendpointTransform transform = new BendpointTransform();
+        assertEquals(100, transform.computeAbsolute(connection));
+
+        // The List API gives the same positions
+        List<Point> points = XMLExchangeUtils.getActualBendpointPositions(connection);
+        assertEquals(100, points.size());
+
+        for(int i = 0; i < 100; i++) {
+            int[] expected = legacyToAbsolute(i, 100, i, -i, i * 2, i * 3, 160, 85, 460, 330);
+            assertEquals(expected[0], transform.getX(i));
+            assertEquals(expected[1], transform.getY(i));
+            assertEquals(expected[0], points.get(i).x);
+            assertEquals(expected[1], points.get(i).y);
+        }
+    }
+
+    @Test
+    public void testImportPositionsToBendpoints() {
+        BendpointTransform transform = new BendpointTransform();
+        transform.beginAbsolute(IArchimateFactory.eINSTANCE.createBounds(0, 0, 100, 50), IArchimateFactory.eINSTANCE.createBounds(300, 200, 120, 60));
+
+        // More than the initial capacity
+        for(int i = 0; i < 100; i++) {
+            transform.addAbsolute(i, i * 2);
+        }
+        assertEquals(100, transform.getCount());
+
+        transform.computeRelative();
+
+        IDiagramModelBendpoint bendpoint = IArchimateFactory.eINSTANCE.createDiagramModelBendpoint();
+        transform.setBendpoint(99, bendpoint);
+        assertEquals(99 - 50, bendpoint.getStartX());
+        assertEquals(198 - 25, bendpoint.getStartY());
+        assertEquals(99 - 360, bendpoint.getEndX());
+        assertEquals(198 - 230, bendpoint.getEndY());
+
+        // Reused for the next connection
+        transform.beginAbsolute(IArchimateFactory.eINSTANCE.createBounds(0, 0, 10, 10), IArchimateFactory.eINSTANCE.createBounds(0, 0, 10, 10));
+        assertEquals(0, transform.getCount());
+    }
+
+}
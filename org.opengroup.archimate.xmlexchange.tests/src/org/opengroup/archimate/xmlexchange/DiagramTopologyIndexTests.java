@@ -0,0 +1,179 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.draw2d.geometry.Point;
+import org.eclipse.emf.ecore.EObject;
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateDiagramModel;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IBounds;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelBendpoint;
+import com.archimatetool.model.IDiagramModelConnection;
+import com.archimatetool.model.IDiagramModelGroup;
+import com.archimatetool.model.IDiagramModelNote;
+import com.archimatetool.model.IDiagramModelObject;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Diagram Topology Index Tests
+ */
+public class DiagramTopologyIndexTests {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DiagramTopologyIndexTests.class);
+    }
+
+    @Test
+    public void testParentsAndAbsolutePositions() {
+        IArchimateDiagramModel dm = IArchimateFactory.eINSTANCE.createArchimateDiagramModel();
+
+        IDiagramModelGroup group1 = IArchimateFactory.eINSTANCE.createDiagramModelGroup();
+        group1.setBounds(10, 15, 500, 500);
+        dm.getChildren().add(group1);
+
+        IDiagramModelGroup group2 = IArchimateFactory.eINSTANCE.createDiagramModelGroup();
+        group2.setBounds(10, 15, 400, 400);
+        group1.getChildren().add(group2);
+
+        IDiagramModelNote note = IArchimateFactory.eINSTANCE.createDiagramModelNote();
+        note.setBounds(10, 15, 100, 100);
+        group2.getChildren().add(note);
+
+        DiagramTopologyIndex index = new DiagramTopologyIndex(dm);
+
+        assertNull(index.getParent(group1));
+        assertSame(group1, index.getParent(group2));
+        assertSame(group2, index.getParent(note));
+
+        assertTrue(index.isNested(group1, group2));
+        assertTrue(index.isNested(group2, note));
+        assertFalse(index.isNested(group1, note));
+        assertFalse(index.isNested(note, group2));
+
+        assertEquals(30, index.getAbsoluteX(note));
+        assertEquals(45, index.getAbsoluteY(note));
+
+        IBounds bounds = XMLExchangeUtils.getAbsoluteBounds(note);
+        assertEquals(bounds.getX(), index.getAbsoluteX(note));
+        assertEquals(bounds.getY(), index.getAbsoluteY(note));
+    }
+
+    @Test
+    public void testConnectionsAreInDocumentOrder() {
+        IArchimateDiagramModel dm = IArchimateFactory.eINSTANCE.createArchimateDiagramModel();
+
+        IDiagramModelGroup group = IArchimateFactory.eINSTANCE.createDiagramModelGroup();
+        dm.getChildren().add(group);
+
+        IDiagramModelNote note1 = IArchimateFactory.eINSTANCE.createDiagramModelNote();
+        group.getChildren().add(note1);
+
+        IDiagramModelNote note2 = IArchimateFactory.eINSTANCE.createDiagramModelNote();
+        dm.getChildren().add(note2);
+
+        IDiagramModelConnection connection1 = IArchimateFactory.eINSTANCE.createDiagramModelConnection();
+        connection1.connect(note2, note1);
+
+        IDiagramModelConnection connection2 = IArchimateFactory.eINSTANCE.createDiagramModelConnection();
+        connection2.connect(note1, group);
+
+        IDiagramModelConnection connection3 = IArchimateFactory.eINSTANCE.createDiagramModelConnection();
+        connection3.connect(group, note2);
+
+        List<IDiagramModelConnection> expected = new ArrayList<IDiagramModelConnection>();
+        for(Iterator<EObject> iter = dm.eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+            if(eObject instanceof IDiagramModelConnection) {
+                expected.add((IDiagramModelConnection)eObject);
+            }
+        }
+
+        assertEquals(3, expected.size());
+        assertEquals(expected, new DiagramTopologyIndex(dm).getConnections());
+    }
+
+    @Test
+    public void testNegativeOffset() {
+        IArchimateDiagramModel dm = IArchimateFactory.eINSTANCE.createArchimateDiagramModel();
+
+        IDiagramModelObject dmo1 = IArchimateFactory.eINSTANCE.createDiagramModelGroup();
+        dmo1.setBounds(-10, -300, 100, 100);
+        dm.getChildren().add(dmo1);
+
+        IDiagramModelObject dmo2 = IArchimateFactory.eINSTANCE.createDiagramModelNote();
+        dmo2.setBounds(-100, -200, 100, 100);
+        dm.getChildren().add(dmo2);
+
+        // A nested node doesn't count
+        IDiagramModelObject dmo3 = IArchimateFactory.eINSTANCE.createDiagramModelNote();
+        dmo3.setBounds(-500, -500, 10, 10);
+        ((IDiagramModelGroup)dmo1).getChildren().add(dmo3);
+
+        Point pt = new DiagramTopologyIndex(dm).getNegativeOffset();
+        assertEquals(-100, pt.x);
+        assertEquals(-300, pt.y);
+
+        // A bendpoint does
+        IDiagramModelConnection connection = IArchimateFactory.eINSTANCE.createDiagramModelConnection();
+        connection.connect(dmo1, dmo2);
+        IDiagramModelBendpoint bendpoint = IArchimateFactory.eINSTANCE.createDiagramModelBendpoint();
+        bendpoint.setStartX(-1000);
+        bendpoint.setEndX(-1000);
+        bendpoint.setStartY(-1000);
+        bendpoint.setEndY(-1000);
+        connection.getBendpoints().add(bendpoint);
+
+        pt = new DiagramTopologyIndex(dm).getNegativeOffset();
+        assertEquals(XMLExchangeUtils.getActualBendpointPositions(connection).get(0).x, pt.x);
+        assertEquals(XMLExchangeUtils.getActualBendpointPositions(connection).get(0).y, pt.y);
+    }
+
+    @Test
+    public void testSameResultsAsWalkingTheModel() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+
+        for(IDiagramModel dm : model.getDiagramModels()) {
+            DiagramTopologyIndex index = new DiagramTopologyIndex(dm);
+
+            Point expected = new Point();
+            for(IDiagramModelObject dmo : dm.getChildren()) {
+                expected.x = Math.min(expected.x, dmo.getBounds().getX());
+                expected.y = Math.min(expected.y, dmo.getBounds().getY());
+            }
+            for(IDiagramModelConnection connection : index.getConnections()) {
+                for(Point bp : XMLExchangeUtils.getActualBendpointPositions(connection)) {
+                    expected.x = Math.min(expected.x, bp.x);
+                    expected.y = Math.min(expected.y, bp.y);
+                }
+
+                if(connection.getSource() instanceof IDiagramModelObject && connection.getTarget() instanceof IDiagramModelObject) {
+                    IDiagramModelObject src = (IDiagramModelObject)connection.getSource();
+                    IDiagramModelObject tgt = (IDiagramModelObject)connection.getTarget();
+                    assertEquals(tgt.eContainer() == src, index.isNested(src, tgt));
+                }
+            }
+
+            assertEquals(expected, index.getNegativeOffset());
+        }
+    }
+
+}
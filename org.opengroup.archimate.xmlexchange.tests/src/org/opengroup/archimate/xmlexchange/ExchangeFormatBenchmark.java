@@ -0,0 +1,136 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+
+/**
+ * Compares the sizes and the write and read times of the XML, binary and JSON encodings of the exchange format
+ * on a model from {@link LargeModelGenerator}. This is run by hand and is not part of the test suite.
+ * <pre>
+ * ExchangeFormatBenchmark [elementsPerType [runs]]
+ * </pre>
+ * Each encoding is written and read once to warm up, and then timed over the runs.
+ * The times are the mean for one run.
+ */
+@SuppressWarnings("nls")
+public class ExchangeFormatBenchmark {
+
+    private final Document fDocument;
+    private final int fRuns;
+
+    // Encoded documents
+    private byte[] fXML, fBinary, fJSON;
+
+    public static void main(String[] args) throws Exception {
+        int elementsPerType = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        LargeModelGenerator generator = new LargeModelGenerator();
+        generator.setElementsPerType(elementsPerType);
+        generator.setViewCount(Math.max(1, elementsPerType / 10));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.write(out);
+        Document doc = new SAXBuilder().build(new ByteArrayInputStream(out.toByteArray()));
+
+        System.out.println("Exchange format benchmark: " + generator.getElementCount() + " elements, "
+                + generator.getRelationshipCount() + " relationships, " + runs + " runs");
+
+        new ExchangeFormatBenchmark(doc, runs).run();
+    }
+
+    public ExchangeFormatBenchmark(Document doc, int runs) {
+        fDocument = doc;
+        fRuns = Math.max(1, runs);
+    }
+
+    public void run() throws IOException, JDOMException {
+        long xmlWrite = time(new Task() {
+            @Override
+            public void run() throws IOException {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                new XMLOutputter(Format.getPrettyFormat()).output(fDocument, out);
+                fXML = out.toByteArray();
+            }
+        });
+
+        long binaryWrite = time(new Task() {
+            @Override
+            public void run() throws IOException {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                new XMLExchangeBinaryCodec().write(fDocument, out);
+                fBinary = out.toByteArray();
+            }
+        });
+
+        long jsonWrite = time(new Task() {
+            @Override
+            public void run() throws IOException {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                new XMLExchangeJSONCodec().write(fDocument, out);
+                fJSON = out.toByteArray();
+            }
+        });
+
+        long xmlRead = time(new Task() {
+            @Override
+            public void run() throws IOException, JDOMException {
+                new SAXBuilder().build(new ByteArrayInputStream(fXML));
+            }
+        });
+
+        long binaryRead = time(new Task() {
+            @Override
+            public void run() throws IOException {
+                new XMLExchangeBinaryCodec().read(new ByteArrayInputStream(fBinary));
+            }
+        });
+
+        long jsonRead = time(new Task() {
+            @Override
+            public void run() throws IOException {
+                new XMLExchangeJSONCodec().read(new ByteArrayInputStream(fJSON));
+            }
+        });
+
+        System.out.println(String.format("  %-8s %12s %10s %10s", "", "Size", "Write", "Read"));
+        report("XML", fXML.length, xmlWrite, xmlRead);
+        report("Binary", fBinary.length, binaryWrite, binaryRead);
+        report("JSON", fJSON.length, jsonWrite, jsonRead);
+    }
+
+    private interface Task {
+        void run() throws IOException, JDOMException;
+    }
+
+    /**
+     * @return The mean time of a run in nanoseconds, after one run to warm up
+     */
+    private long time(Task task) throws IOException, JDOMException {
+        task.run();
+
+        long start = System.nanoTime();
+        for(int i = 0; i < fRuns; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / fRuns;
+    }
+
+    private void report(String name, int size, long write, long read) {
+        System.out.println(String.format("  %-8s %,12d %7.1f ms %7.1f ms", name, size, write / 1e6, read / 1e6));
+    }
+
+}
@@ -0,0 +1,281 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.filter.ElementFilter;
+import org.junit.Test;
+
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateDiagramModel;
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.model.IDiagramModelReference;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IProperties;
+import com.archimatetool.model.IProperty;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Export Subset Tests
+ */
+@SuppressWarnings("nls")
+public class ExportSubsetTests {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ExportSubsetTests.class);
+    }
+
+    private IArchimateModel model;
+    private IArchimateElement actor, role, process, unused;
+    private IArchimateRelationship assignment, association;
+    private IArchimateDiagramModel view1, view2, view3;
+
+    /**
+     * actor -assignment-> role, process -association-> assignment
+     * view1 shows process and references view2, view2 shows role, view3 is empty
+     */
+    private void createModel() {
+        model = IArchimateFactory.eINSTANCE.createArchimateModel();
+        model.setDefaults();
+
+        actor = createElement(IArchimateFactory.eINSTANCE.createBusinessActor(), "Actor");
+        role = createElement(IArchimateFactory.eINSTANCE.createBusinessRole(), "Role");
+        process = createElement(IArchimateFactory.eINSTANCE.createBusinessProcess(), "Process");
+        unused = createElement(IArchimateFactory.eINSTANCE.createBusinessObject(), "Unused");
+
+        assignment = IArchimateFactory.eINSTANCE.createAssignmentRelationship();
+        assignment.connect(actor, role);
+        model.getFolder(FolderType.RELATIONS).getElements().add(assignment);
+
+        association = IArchimateFactory.eINSTANCE.createAssociationRelationship();
+        association.connect(process, assignment);
+        model.getFolder(FolderType.RELATIONS).getElements().add(association);
+
+        view1 = createView("View 1");
+        view2 = createView("View 2");
+        view3 = createView("View 3");
+
+        IDiagramModelArchimateObject dmo = IArchimateFactory.eINSTANCE.createDiagramModelArchimateObject();
+        dmo.setArchimateElement(process);
+        view1.getChildren().add(dmo);
+
+        IDiagramModelReference ref = IArchimateFactory.eINSTANCE.createDiagramModelReference();
+        ref.setReferencedModel(view2);
+        view1.getChildren().add(ref);
+
+        dmo = IArchimateFactory.eINSTANCE.createDiagramModelArchimateObject();
+        dmo.setArchimateElement(role);
+        view2.getChildren().add(dmo);
+
+        addProperty(process, "Used");
+        addProperty(unused, "Not used");
+        addProperty(view3, "Not used either");
+    }
+
+    private IArchimateElement createElement(IArchimateElement element, String name) {
+        element.setName(name);
+        model.getDefaultFolderForObject(element).getElements().add(element);
+        return element;
+    }
+
+    private IArchimateDiagramModel createView(String name) {
+        IArchimateDiagramModel dm = IArchimateFactory.eINSTANCE.createArchimateDiagramModel();
+        dm.setName(name);
+        model.getFolder(FolderType.DIAGRAMS).getElements().add(dm);
+        return dm;
+    }
+
+    private void addProperty(IProperties properties, String key) {
+        IProperty property = IArchimateFactory.eINSTANCE.createProperty();
+        property.setKey(key);
+        property.setValue("value");
+        properties.getProperties().add(property);
+    }
+
+    @Test
+    public void testClosureOfView() {
+        createModel();
+
+        ExportSubset subset = new ExportSubset(model, Collections.singletonList(view1));
+
+        // The referenced view comes too
+        assertEquals(2, subset.getViews().size());
+        assertTrue(subset.getViews().contains(view2));
+        assertFalse(subset.getViews().contains(view3));
+
+        // Only the elements shown in the two views
+        assertEquals(0, subset.getRelationships().size());
+        assertEquals(2, subset.getElements().size());
+        assertTrue(subset.getElements().contains(process));
+        assertTrue(subset.getElements().contains(role));
+
+        assertEquals(Collections.singleton("Used"), subset.getPropertyKeys());
+    }
+
+    @Test
+    public void testClosureOfRelationshipOnRelationship() {
+        createModel();
+
+        ExportSubset subset = new ExportSubset(model, Collections.singletonList(association));
+
+        assertEquals(2, subset.getRelationships().size());
+        assertTrue(subset.getRelationships().contains(assignment));
+
+        assertEquals(3, subset.getElements().size());
+        assertTrue(subset.getElements().contains(actor));
+        assertTrue(subset.getElements().contains(role));
+        assertTrue(subset.getElements().contains(process));
+
+        assertTrue(subset.getViews().isEmpty());
+    }
+
+    @Test
+    public void testClosureOfFolder() {
+        createModel();
+
+        ExportSubset subset = new ExportSubset(model, Collections.singletonList(model.getFolder(FolderType.RELATIONS)));
+
+        assertEquals(2, subset.getRelationships().size());
+        assertEquals(3, subset.getElements().size());
+
+        assertTrue(subset.containsFolder(model.getFolder(FolderType.RELATIONS)));
+        assertTrue(subset.containsFolder(model.getFolder(FolderType.BUSINESS)));
+        assertFalse(subset.containsFolder(model.getFolder(FolderType.DIAGRAMS)));
+        assertEquals(3, subset.getFolderContents(model.getFolder(FolderType.BUSINESS)).size());
+    }
+
+    @Test
+    public void testClosureOfNestedFolder() {
+        createModel();
+
+        IFolder folder = IArchimateFactory.eINSTANCE.createFolder();
+        model.getFolder(FolderType.DIAGRAMS).getFolders().add(folder);
+        folder.getElements().add(view3);
+
+        ExportSubset subset = new ExportSubset(model, Collections.singletonList(folder));
+        assertEquals(Collections.singleton(view3), subset.getViews());
+
+        // The parent folder is kept for organizations
+        assertTrue(subset.containsFolder(model.getFolder(FolderType.DIAGRAMS)));
+        assertTrue(subset.getFolderContents(model.getFolder(FolderType.DIAGRAMS)).isEmpty());
+        assertEquals(1, subset.getFolderContents(folder).size());
+    }
+
+    @Test
+    public void testSelectedFolderIsKeptWhenNothingInItIsExported() {
+        createModel();
+
+        IFolder folder = IArchimateFactory.eINSTANCE.createFolder();
+        folder.setName("Sketches");
+        model.getFolder(FolderType.DIAGRAMS).getFolders().add(folder);
+        folder.getElements().add(IArchimateFactory.eINSTANCE.createSketchModel());
+
+        IFolder subFolder = IArchimateFactory.eINSTANCE.createFolder();
+        subFolder.setName("Empty");
+        folder.getFolders().add(subFolder);
+
+        ExportSubset subset = new ExportSubset(model, Collections.singletonList(folder));
+        assertTrue(subset.getViews().isEmpty());
+        assertTrue(subset.containsFolder(folder));
+        assertTrue(subset.containsFolder(subFolder));
+        assertTrue(subset.containsFolder(model.getFolder(FolderType.DIAGRAMS)));
+        assertTrue(subset.getFolderContents(folder).isEmpty());
+
+        // Written to organizations without the sketch
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setSaveOrganisation(true);
+        exporter.setSubset(Collections.singletonList(folder));
+        Document doc = exporter.createExchangeDocument(model);
+
+        Element organizations = doc.getRootElement().getChild(IXMLExchangeGlobals.ELEMENT_ORGANIZATIONS, IXMLExchangeGlobals.ARCHIMATE3_NAMESPACE);
+        Element item = findItem(organizations, "Sketches");
+        assertTrue(item != null);
+        assertEquals(1, item.getChildren(IXMLExchangeGlobals.ELEMENT_ITEM, IXMLExchangeGlobals.ARCHIMATE3_NAMESPACE).size());
+        assertTrue(findItem(item, "Empty") != null);
+    }
+
+    @Test
+    public void testSelectionNotInModelThrows() {
+        createModel();
+
+        try {
+            new ExportSubset(model, Collections.singletonList(IArchimateFactory.eINSTANCE.createArchimateDiagramModel()));
+            fail("Should have thrown");
+        }
+        catch(IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void testExportSubsetIsComplete() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+        IDiagramModel dm = model.getDiagramModels().get(0);
+
+        File file = new File(TestSupport.getTempFolder(), "subset.xml");
+
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setSaveOrganisation(true);
+        exporter.setSubset(Collections.singletonList(dm));
+        exporter.exportModel(model, file);
+
+        // Every reference resolves and the file is valid
+        assertTrue(new XMLIntegrityChecker().check(file).isEmpty());
+        new XMLValidator().validateXML(file);
+
+        // Only one view and fewer elements than the whole model
+        XMLModelExporter fullExporter = new XMLModelExporter();
+        Document full = fullExporter.createExchangeDocument(model);
+        exporter.setSubset(Collections.singletonList(dm));
+        Document subset = exporter.createExchangeDocument(model);
+
+        assertEquals(1, count(subset, IXMLExchangeGlobals.ELEMENT_VIEW));
+        assertTrue(count(subset, IXMLExchangeGlobals.ELEMENT_ELEMENT) < count(full, IXMLExchangeGlobals.ELEMENT_ELEMENT));
+        assertTrue(count(subset, IXMLExchangeGlobals.ELEMENT_RELATIONSHIP) < count(full, IXMLExchangeGlobals.ELEMENT_RELATIONSHIP));
+
+        // It imports
+        IArchimateModel imported = new XMLModelImporter().createArchiMateModel(file);
+        assertEquals(1, imported.getDiagramModels().size());
+        assertEquals(dm.getName(), imported.getDiagramModels().get(0).getName());
+    }
+
+    private Element findItem(Element parent, String label) {
+        for(Iterator<Element> iter = parent.getDescendants(new ElementFilter(IXMLExchangeGlobals.ELEMENT_ITEM)); iter.hasNext();) {
+            Element item = iter.next();
+            Element labelElement = item.getChild(IXMLExchangeGlobals.ELEMENT_LABEL, IXMLExchangeGlobals.ARCHIMATE3_NAMESPACE);
+            if(labelElement != null && label.equals(labelElement.getText())) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    private int count(Document doc, String name) {
+        int count = 0;
+        for(Iterator<Element> iter = doc.getRootElement().getDescendants(new ElementFilter(name)); iter.hasNext();) {
+            iter.next();
+            count++;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,198 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.Iterator;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.filter.ContentFilter;
+import org.jdom2.filter.ElementFilter;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.XMLOutputter;
+import org.junit.Test;
+
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.model.IDiagramModelObject;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Import Content Filter Tests
+ */
+@SuppressWarnings("nls")
+public class ImportContentFilterTests implements IXMLExchangeGlobals {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ImportContentFilterTests.class);
+    }
+
+    private static final String DOCUMENTATION_XML =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<model xmlns=\"http://www.opengroup.org/xsd/archimate/3.0/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" identifier=\"id-model\">\n" +
+            "  <elements>\n" +
+            "    <element identifier=\"id-1\" xsi:type=\"BusinessActor\"><documentation>Element</documentation></element>\n" +
+            "  </elements>\n" +
+            "  <views>\n" +
+            "    <diagrams>\n" +
+            "      <view identifier=\"id-v1\" xsi:type=\"Diagram\">\n" +
+            "        <documentation>View</documentation>\n" +
+            "        <node identifier=\"id-n1\" xsi:type=\"Container\" x=\"0\" y=\"0\" w=\"10\" h=\"10\"><documentation>Group</documentation></node>\n" +
+            "      </view>\n" +
+            "    </diagrams>\n" +
+            "  </views>\n" +
+            "</model>\n";
+
+    /**
+     * @return A generated file with views, styles and bendpoints
+     */
+    private File createFile() throws Exception {
+        LargeModelGenerator generator = new LargeModelGenerator();
+        generator.setElementsPerType(3);
+        generator.setViewCount(3);
+
+        File file = new File(TestSupport.getTempFolder(), "filter.xml");
+        generator.write(file);
+        return file;
+    }
+
+    private Document read(File file, boolean includeViews, boolean includeStyles) throws Exception {
+        SAXBuilder builder = new SAXBuilder();
+        builder.setXMLFilter(new ImportContentFilter(includeViews, includeStyles));
+        return builder.build(file);
+    }
+
+    private int count(Document doc, String name) {
+        int count = 0;
+        for(Iterator<Element> iter = doc.getRootElement().getDescendants(new ElementFilter(name, ARCHIMATE3_NAMESPACE)); iter.hasNext();) {
+            iter.next();
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testWithoutViews() throws Exception {
+        File file = createFile();
+        Document full = new SAXBuilder().build(file);
+        Document doc = read(file, false, true);
+
+        assertTrue(count(full, ELEMENT_VIEW) > 0);
+        assertNull(doc.getRootElement().getChild(ELEMENT_VIEWS, ARCHIMATE3_NAMESPACE));
+        assertEquals(0, count(doc, ELEMENT_NODE));
+
+        // Concepts are all there
+        assertEquals(count(full, ELEMENT_ELEMENT), count(doc, ELEMENT_ELEMENT));
+        assertEquals(count(full, ELEMENT_RELATIONSHIP), count(doc, ELEMENT_RELATIONSHIP));
+        assertEquals(count(full, ELEMENT_PROPERTY), count(doc, ELEMENT_PROPERTY));
+    }
+
+    @Test
+    public void testWithoutStyles() throws Exception {
+        File file = createFile();
+        Document full = new SAXBuilder().build(file);
+        Document doc = read(file, true, false);
+
+        assertTrue(count(full, ELEMENT_STYLE) > 0);
+        assertEquals(0, count(doc, ELEMENT_STYLE));
+        assertEquals(0, count(doc, ELEMENT_FONT));
+        assertEquals(0, count(doc, ELEMENT_FILLCOLOR));
+
+        // Views, nodes, connections and bendpoints are kept
+        assertEquals(count(full, ELEMENT_VIEW), count(doc, ELEMENT_VIEW));
+        assertEquals(count(full, ELEMENT_NODE), count(doc, ELEMENT_NODE));
+        assertEquals(count(full, ELEMENT_CONNECTION), count(doc, ELEMENT_CONNECTION));
+        assertEquals(count(full, ELEMENT_BENDPOINT), count(doc, ELEMENT_BENDPOINT));
+    }
+
+    @Test
+    public void testWithoutStylesDropsDocumentationOfViewsAndNodes() throws Exception {
+        SAXBuilder builder = new SAXBuilder();
+        builder.setXMLFilter(new ImportContentFilter(true, false));
+        Document doc = builder.build(new StringReader(DOCUMENTATION_XML));
+
+        // Only the element's documentation is left
+        assertEquals(1, count(doc, ELEMENT_DOCUMENTATION));
+        assertEquals(ELEMENT_ELEMENT, doc.getRootElement().getDescendants(new ElementFilter(ELEMENT_DOCUMENTATION, ARCHIMATE3_NAMESPACE)).next().getParentElement().getName());
+        assertEquals(1, count(doc, ELEMENT_NODE));
+    }
+
+    @Test
+    public void testBinaryIsFilteredTheSame() throws Exception {
+        File xmlFile = createFile();
+        File file = new File(TestSupport.getTempFolder(), "filter.axb");
+        new XMLExchangeBinaryCodec().write(new SAXBuilder().build(xmlFile), file);
+
+        XMLOutputter outputter = new XMLOutputter();
+
+        for(int i = 0; i < 3; i++) {
+            boolean includeViews = i != 1;
+            boolean includeStyles = i != 2;
+
+            // Compare with whitespace-only text removed, as the binary format doesn't keep it
+            // (a node whose style was dropped is left with only whitespace)
+            Document expected = read(xmlFile, includeViews, includeStyles);
+            removeWhitespace(expected.getRootElement());
+
+            Document actual = new XMLExchangeBinaryCodec().read(file, new ImportContentFilter(includeViews, includeStyles));
+
+            assertEquals(outputter.outputString(expected), outputter.outputString(actual));
+        }
+
+        file.delete();
+        xmlFile.delete();
+    }
+
+    private void removeWhitespace(Element element) {
+        if(!element.getChildren().isEmpty() || element.getTextTrim().isEmpty()) {
+            element.removeContent(new ContentFilter(ContentFilter.TEXT));
+        }
+        for(Element child : element.getChildren()) {
+            removeWhitespace(child);
+        }
+    }
+
+    @Test
+    public void testImportWithoutViews() throws Exception {
+        XMLModelImporter importer = new XMLModelImporter();
+        importer.setIncludeViews(false);
+        File file = createFile();
+        IArchimateModel model = importer.createArchiMateModel(file);
+
+        assertTrue(model.getDiagramModels().isEmpty());
+
+        IArchimateModel fullModel = new XMLModelImporter().createArchiMateModel(file);
+        assertEquals(fullModel.getFolder(FolderType.RELATIONS).getElements().size(),
+                model.getFolder(FolderType.RELATIONS).getElements().size());
+    }
+
+    @Test
+    public void testImportWithoutStyles() throws Exception {
+        XMLModelImporter importer = new XMLModelImporter();
+        importer.setIncludeStyles(false);
+        IArchimateModel model = importer.createArchiMateModel(createFile());
+
+        assertFalse(model.getDiagramModels().isEmpty());
+
+        for(IDiagramModelObject dmo : model.getDiagramModels().get(0).getChildren()) {
+            if(dmo instanceof IDiagramModelArchimateObject) {
+                assertNull(dmo.getFillColor());
+                assertNull(dmo.getFont());
+            }
+        }
+    }
+
+}
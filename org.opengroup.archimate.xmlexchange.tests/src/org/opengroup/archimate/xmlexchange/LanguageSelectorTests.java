@@ -0,0 +1,98 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Language Selector Tests
+ */
+@SuppressWarnings("nls")
+public class LanguageSelectorTests implements IXMLExchangeGlobals {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LanguageSelectorTests.class);
+    }
+
+    private static List<Element> createNames(String... langs) {
+        List<Element> elements = new ArrayList<Element>();
+        for(String lang : langs) {
+            Element element = new Element(ELEMENT_NAME, ARCHIMATE3_NAMESPACE);
+            if(lang != null) {
+                element.setAttribute(ATTRIBUTE_LANG, lang, Namespace.XML_NAMESPACE);
+            }
+            element.setText("Name " + lang);
+            elements.add(element);
+        }
+        return elements;
+    }
+
+    @Test
+    public void testForLocale() {
+        assertEquals(Arrays.asList("de-ch", "de", "en", ""), LanguageSelector.forLocale(new Locale("de", "CH")).getLanguages());
+        assertEquals(Arrays.asList("en-gb", "en", ""), LanguageSelector.forLocale(Locale.UK).getLanguages());
+        assertEquals(Arrays.asList("en", ""), LanguageSelector.forLocale(Locale.ENGLISH).getLanguages());
+        assertEquals(Arrays.asList("en", ""), LanguageSelector.forLocale(Locale.ROOT).getLanguages());
+    }
+
+    @Test
+    public void testRank() {
+        LanguageSelector selector = LanguageSelector.forLocale(new Locale("de", "CH"));
+
+        assertEquals(0, selector.rank("de-CH"));
+        assertEquals(0, selector.rank("DE-ch"));
+        assertEquals(1, selector.rank("de"));
+        assertEquals(1, selector.rank("de-AT"));
+        assertEquals(2, selector.rank("en-US"));
+        assertEquals(3, selector.rank(null));
+        assertEquals(3, selector.rank(""));
+        assertEquals(4, selector.rank("fr"));
+
+        // A language is not a prefix of another language
+        assertEquals(4, selector.rank("den"));
+    }
+
+    @Test
+    public void testSelect() {
+        LanguageSelector selector = LanguageSelector.forLocale(new Locale("de", "CH"));
+
+        assertEquals("Name de-CH", selector.select(createNames("fr", "en", "de", "de-CH", null)).getText());
+        assertEquals("Name de", selector.select(createNames("fr", "en", null, "de", "de-AT")).getText());
+
+        // Equally good so the first
+        assertEquals("Name de-AT", selector.select(createNames("fr", "de-AT", "de")).getText());
+        assertEquals("Name en", selector.select(createNames("fr", null, "en", "nl")).getText());
+        assertEquals("Name null", selector.select(createNames("fr", null, "nl")).getText());
+
+        // None match so the first
+        assertEquals("Name fr", selector.select(createNames("fr", "nl", "it")).getText());
+
+        assertNull(selector.select(Collections.<Element>emptyList()));
+    }
+
+    @Test
+    public void testConfiguredChain() {
+        LanguageSelector selector = new LanguageSelector("nl", "", "fr");
+
+        assertEquals("Name null", selector.select(createNames("fr", null, "en")).getText());
+        assertEquals("Name nl-BE", selector.select(createNames("fr", null, "nl-BE")).getText());
+    }
+
+}
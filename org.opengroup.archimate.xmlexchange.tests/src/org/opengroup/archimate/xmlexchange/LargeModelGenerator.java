@@ -0,0 +1,569 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.jdom2.JDOMException;
+
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.util.ArchimateResourceFactory;
+
+
+/**
+ * Generates large synthetic models for benchmarks and scale tests
+ *
+ * Output is fully determined by the seed and the settings, so the same settings always give the same file.
+ * Every value is derived from the seed and the index of the thing being written rather than from a running
+ * random sequence, so nothing is kept in memory while writing and files of any size can be streamed.
+ *
+ * For each element type in {@link XMLTypeMapper} a number of elements are written. Relationships of random
+ * types join random elements. Each view shows a run of relationships with their source and target nodes
+ * laid out in a grid inside nested containers.
+ */
+@SuppressWarnings("nls")
+public class LargeModelGenerator implements IXMLExchangeGlobals {
+
+    private static final String NS = ARCHIMATE3_NAMESPACE.getURI();
+    private static final String XSI = XSI_NAMESPACE.getURI();
+
+    // Random streams
+    private static final int SOURCE = 1;
+    private static final int TARGET = 2;
+    private static final int TYPE = 3;
+    private static final int PROPERTY_KEY = 4;
+    private static final int PROPERTY_VALUE = 5;
+    private static final int COLOR = 6;
+    private static final int VIEWPOINT = 7;
+    private static final int BENDPOINT = 8;
+
+    // Layout
+    private static final int NODE_WIDTH = 120;
+    private static final int NODE_HEIGHT = 55;
+    private static final int CELL_WIDTH = 160;
+    private static final int CELL_HEIGHT = 100;
+
+    private long fSeed = 1;
+    private int fElementsPerType = 10;
+    private int fRelationshipsPerElement = 2;
+    private int fPropertyKeyCount = 10;
+    private int fPropertiesPerConcept = 2;
+    private String[] fLanguages = { "en" };
+    private int fViewCount = 10;
+    private int fConnectionsPerView = 20;
+    private int fNestingDepth = 2;
+    private int fBendpointsPerConnection = 2;
+    private boolean fWriteStyles = true;
+
+    private List<String> fElementTypes;
+    private List<String> fRelationshipTypes;
+    private List<String> fViewpoints;
+
+    private XMLStreamWriter fWriter;
+
+    public LargeModelGenerator() {
+        fElementTypes = XMLTypeMapper.getElementTypeNames();
+        fRelationshipTypes = XMLTypeMapper.getRelationshipTypeNames();
+        fViewpoints = XMLTypeMapper.getViewpointNames();
+    }
+
+    public void setSeed(long seed) {
+        fSeed = seed;
+    }
+
+    /**
+     * Set the number of elements of each type
+     */
+    public void setElementsPerType(int count) {
+        fElementsPerType = Math.max(1, count);
+    }
+
+    /**
+     * Set the number of relationships as a multiple of the number of elements
+     */
+    public void setRelationshipsPerElement(int count) {
+        fRelationshipsPerElement = Math.max(0, count);
+    }
+
+    /**
+     * Set the number of distinct property keys and the number of properties on each concept and view
+     */
+    public void setProperties(int keyCount, int propertiesPerConcept) {
+        fPropertyKeyCount = Math.max(0, keyCount);
+        fPropertiesPerConcept = Math.max(0, propertiesPerConcept);
+    }
+
+    /**
+     * Set the language codes of the names. Each name is written once for each language.
+     */
+    public void setLanguages(String... languages) {
+        fLanguages = languages.length == 0 ? new String[] { null } : languages.clone();
+    }
+
+    public void setViewCount(int count) {
+        fViewCount = Math.max(0, count);
+    }
+
+    /**
+     * Set the number of connections on each view. A view has up to twice this number of element nodes.
+     */
+    public void setConnectionsPerView(int count) {
+        fConnectionsPerView = Math.max(0, count);
+    }
+
+    /**
+     * Set how many containers the element nodes of a view are nested in
+     */
+    public void setNestingDepth(int depth) {
+        fNestingDepth = Math.max(0, depth);
+    }
+
+    public void setBendpointsPerConnection(int count) {
+        fBendpointsPerConnection = Math.max(0, count);
+    }
+
+    /**
+     * Set whether to write colours, fonts and line widths
+     */
+    public void setWriteStyles(boolean set) {
+        fWriteStyles = set;
+    }
+
+    public int getElementCount() {
+        return fElementTypes.size() * fElementsPerType;
+    }
+
+    public int getRelationshipCount() {
+        return getElementCount() * fRelationshipsPerElement;
+    }
+
+    // ========================================= Output ======================================
+
+    /**
+     * Write an exchange file
+     */
+    public void write(File file) throws IOException {
+        try(OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024)) {
+            write(out);
+        }
+    }
+
+    /**
+     * Write exchange XML to a stream. The stream is not closed.
+     */
+    public void write(OutputStream out) throws IOException {
+        try {
+            fWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            writeModel();
+            fWriter.flush();
+            fWriter.close();
+        }
+        catch(XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+        finally {
+            fWriter = null;
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Generate the model by writing a temporary exchange file and importing it.
+     * The whole model is held in memory so this is for sizes that fit.
+     */
+    public IArchimateModel createModel() throws IOException, JDOMException, XMLModelParserException {
+        File file = File.createTempFile("generated", FILE_EXTENSION);
+
+        try {
+            write(file);
+            return new XMLModelImporter().createArchiMateModel(file);
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Generate the model and save it as an Archi model file
+     */
+    public void writeModel(File file) throws IOException, JDOMException, XMLModelParserException {
+        Resource resource = ArchimateResourceFactory.createNewResource(file);
+        resource.getContents().add(createModel());
+        resource.save(null);
+    }
+
+    // ========================================= Model ======================================
+
+    private void writeModel() throws XMLStreamException {
+        fWriter.writeStartDocument("UTF-8", "1.0");
+        fWriter.setDefaultNamespace(NS);
+        fWriter.setPrefix(XSI_NAMESPACE.getPrefix(), XSI);
+
+        fWriter.writeStartElement(NS, ELEMENT_MODEL);
+        fWriter.writeDefaultNamespace(NS);
+        fWriter.writeNamespace(XSI_NAMESPACE.getPrefix(), XSI);
+        fWriter.writeAttribute(XSI, "schemaLocation", NS + " " + ARCHIMATE3_SCHEMA_LOCATION);
+        fWriter.writeAttribute(ATTRIBUTE_IDENTIFIER, "id-model-" + fSeed);
+
+        writeNames(ELEMENT_NAME, "Generated Model " + fSeed);
+        writeText(ELEMENT_DOCUMENTATION, "Generated with seed " + fSeed);
+
+        writeElements();
+        writeRelationships();
+        writePropertyDefinitions();
+        writeViews();
+
+        fWriter.writeEndElement();
+        fWriter.writeEndDocument();
+    }
+
+    private void writeElements() throws XMLStreamException {
+        fWriter.writeStartElement(NS, ELEMENT_ELEMENTS);
+
+        for(int i = 0; i < getElementCount(); i++) {
+            String type = getElementType(i);
+
+            fWriter.writeStartElement(NS, ELEMENT_ELEMENT);
+            fWriter.writeAttribute(ATTRIBUTE_IDENTIFIER, getElementID(i));
+            fWriter.writeAttribute(XSI, ATTRIBUTE_TYPE, type);
+            writeNames(ELEMENT_NAME, type + " " + i);
+            writeProperties(i);
+            fWriter.writeEndElement();
+        }
+
+        fWriter.writeEndElement();
+    }
+
+    private void writeRelationships() throws XMLStreamException {
+        int count = getRelationshipCount();
+        if(count == 0) {
+            return;
+        }
+
+        fWriter.writeStartElement(NS, ELEMENT_RELATIONSHIPS);
+
+        for(int i = 0; i < count; i++) {
+            String type = fRelationshipTypes.get(random(TYPE, i, fRelationshipTypes.size()));
+
+            fWriter.writeStartElement(NS, ELEMENT_RELATIONSHIP);
+            fWriter.writeAttribute(ATTRIBUTE_IDENTIFIER, "id-r" + i);
+            fWriter.writeAttribute(ATTRIBUTE_SOURCE, getElementID(getRelationshipSource(i)));
+            fWriter.writeAttribute(ATTRIBUTE_TARGET, getElementID(getRelationshipTarget(i)));
+            fWriter.writeAttribute(XSI, ATTRIBUTE_TYPE, type);
+
+            if("Access".equals(type)) {
+                fWriter.writeAttribute(ATTRIBUTE_ACCESS_TYPE, ACCESS_TYPE_READ_WRITE);
+            }
+            else if("Influence".equals(type)) {
+                fWriter.writeAttribute(ATTRIBUTE_INFLUENCE_MODIFIER, "+");
+            }
+
+            // Most relationships have no name
+            if(i % 4 == 0) {
+                writeNames(ELEMENT_NAME, type + " " + i);
+            }
+
+            writeProperties(getElementCount() + i);
+            fWriter.writeEndElement();
+        }
+
+        fWriter.writeEndElement();
+    }
+
+    private void writePropertyDefinitions() throws XMLStreamException {
+        if(!hasProperties()) {
+            return;
+        }
+
+        fWriter.writeStartElement(NS, ELEMENT_PROPERTYDEFINITIONS);
+
+        for(int i = 0; i < fPropertyKeyCount; i++) {
+            fWriter.writeStartElement(NS, ELEMENT_PROPERTYDEFINITION);
+            fWriter.writeAttribute(ATTRIBUTE_IDENTIFIER, "propid-" + (i + 1));
+            fWriter.writeAttribute(ATTRIBUTE_TYPE, "string");
+            writeText(ELEMENT_NAME, "Key " + (i + 1));
+            fWriter.writeEndElement();
+        }
+
+        fWriter.writeEndElement();
+    }
+
+    /**
+     * @param ordinal Elements, then relationships, then views are numbered in one sequence
+     */
+    private void writeProperties(long ordinal) throws XMLStreamException {
+        if(!hasProperties()) {
+            return;
+        }
+
+        fWriter.writeStartElement(NS, ELEMENT_PROPERTIES);
+
+        for(int i = 0; i < fPropertiesPerConcept; i++) {
+            long index = ordinal * fPropertiesPerConcept + i;
+
+            fWriter.writeStartElement(NS, ELEMENT_PROPERTY);
+            fWriter.writeAttribute(ATTRIBUTE_PROPERTY_IDENTIFIERREF, "propid-" + (random(PROPERTY_KEY, index, fPropertyKeyCount) + 1));
+            writeText(ELEMENT_VALUE, "Value " + random(PROPERTY_VALUE, index, 1000));
+            fWriter.writeEndElement();
+        }
+
+        fWriter.writeEndElement();
+    }
+
+    private boolean hasProperties() {
+        return fPropertyKeyCount > 0 && fPropertiesPerConcept > 0;
+    }
+
+    // ========================================= Views ======================================
+
+    private void writeViews() throws XMLStreamException {
+        if(fViewCount == 0) {
+            return;
+        }
+
+        fWriter.writeStartElement(NS, ELEMENT_VIEWS);
+        fWriter.writeStartElement(NS, ELEMENT_DIAGRAMS);
+
+        for(int i = 0; i < fViewCount; i++) {
+            writeView(i);
+        }
+
+        fWriter.writeEndElement();
+        fWriter.writeEndElement();
+    }
+
+    private void writeView(int view) throws XMLStreamException {
+        String prefix = "id-v" + view + "-";
+
+        fWriter.writeStartElement(NS, ELEMENT_VIEW);
+        fWriter.writeAttribute(ATTRIBUTE_IDENTIFIER, "id-v" + view);
+        fWriter.writeAttribute(XSI, ATTRIBUTE_TYPE, ATTRIBUTE_DIAGRAM_TYPE);
+
+        // Every other view has a viewpoint
+        if(view % 2 == 1 && !fViewpoints.isEmpty()) {
+            fWriter.writeAttribute(ATTRIBUTE_VIEWPOINT, fViewpoints.get(random(VIEWPOINT, view, fViewpoints.size())));
+        }
+
+        writeNames(ELEMENT_NAME, "View " + view);
+        writeProperties((long)getElementCount() + getRelationshipCount() + view);
+
+        // A run of relationships and the nodes of their source and target elements
+        int relationshipCount = getRelationshipCount();
+        int connectionCount = Math.min(fConnectionsPerView, relationshipCount);
+        int firstRelationship = relationshipCount == 0 ? 0 : (int)(((long)view * fConnectionsPerView) % relationshipCount);
+
+        Map<Integer, Integer> nodes = new LinkedHashMap<Integer, Integer>();
+        for(int i = 0; i < connectionCount; i++) {
+            int relationship = (firstRelationship + i) % relationshipCount;
+            addNode(nodes, getRelationshipSource(relationship));
+            addNode(nodes, getRelationshipTarget(relationship));
+        }
+
+        int columns = Math.max(1, (int)Math.ceil(Math.sqrt(nodes.size())));
+        int rows = Math.max(1, (nodes.size() + columns - 1) / columns);
+        int gridWidth = columns * CELL_WIDTH;
+        int gridHeight = rows * CELL_HEIGHT;
+
+        // Containers
+        for(int level = 0; level < fNestingDepth; level++) {
+            fWriter.writeStartElement(NS, ELEMENT_NODE);
+            fWriter.writeAttribute(ATTRIBUTE_IDENTIFIER, prefix + "g" + level);
+            fWriter.writeAttribute(ATTRIBUTE_X, Integer.toString(20 + level * 20));
+            fWriter.writeAttribute(ATTRIBUTE_Y, Integer.toString(20 + level * 30));
+            fWriter.writeAttribute(ATTRIBUTE_WIDTH, Integer.toString(gridWidth + (fNestingDepth - level) * 40));
+            fWriter.writeAttribute(ATTRIBUTE_HEIGHT, Integer.toString(gridHeight + (fNestingDepth - level) * 50));
+            fWriter.writeAttribute(XSI, ATTRIBUTE_TYPE, ATTRIBUTE_CONTAINER_TYPE);
+            writeNames(ELEMENT_LABEL, "Group " + level);
+            writeNodeStyle(((long)view << 8) + level);
+        }
+
+        // Element nodes
+        for(Map.Entry<Integer, Integer> entry : nodes.entrySet()) {
+            int element = entry.getKey();
+            int node = entry.getValue();
+
+            fWriter.writeStartElement(NS, ELEMENT_NODE);
+            fWriter.writeAttribute(ATTRIBUTE_IDENTIFIER, prefix + "n" + node);
+            fWriter.writeAttribute(ATTRIBUTE_ELEMENTREF, getElementID(element));
+            fWriter.writeAttribute(XSI, ATTRIBUTE_TYPE, ATTRIBUTE_ELEMENT_TYPE);
+            fWriter.writeAttribute(ATTRIBUTE_X, Integer.toString(getNodeX(node, columns)));
+            fWriter.writeAttribute(ATTRIBUTE_Y, Integer.toString(getNodeY(node, columns)));
+            fWriter.writeAttribute(ATTRIBUTE_WIDTH, Integer.toString(NODE_WIDTH));
+            fWriter.writeAttribute(ATTRIBUTE_HEIGHT, Integer.toString(NODE_HEIGHT));
+            writeNodeStyle(element);
+            fWriter.writeEndElement();
+        }
+
+        for(int level = 0; level < fNestingDepth; level++) {
+            fWriter.writeEndElement();
+        }
+
+        // Connections
+        for(int i = 0; i < connectionCount; i++) {
+            int relationship = (firstRelationship + i) % relationshipCount;
+            int source = nodes.get(getRelationshipSource(relationship));
+            int target = nodes.get(getRelationshipTarget(relationship));
+
+            fWriter.writeStartElement(NS, ELEMENT_CONNECTION);
+            fWriter.writeAttribute(ATTRIBUTE_IDENTIFIER, prefix + "c" + i);
+            fWriter.writeAttribute(ATTRIBUTE_RELATIONSHIPREF, "id-r" + relationship);
+            fWriter.writeAttribute(XSI, ATTRIBUTE_TYPE, ATTRIBUTE_RELATIONSHIP_TYPE);
+            fWriter.writeAttribute(ATTRIBUTE_SOURCE, prefix + "n" + source);
+            fWriter.writeAttribute(ATTRIBUTE_TARGET, prefix + "n" + target);
+
+            if(fWriteStyles) {
+                fWriter.writeStartElement(NS, ELEMENT_STYLE);
+                fWriter.writeAttribute(ATTRIBUTE_LINEWIDTH, Integer.toString(1 + random(COLOR, relationship, 3)));
+                writeColor(ELEMENT_LINECOLOR, relationship);
+                fWriter.writeEndElement();
+            }
+
+            writeBendpoints(((long)view << 32) + i, source, target, columns);
+
+            fWriter.writeEndElement();
+        }
+
+        fWriter.writeEndElement();
+    }
+
+    private void addNode(Map<Integer, Integer> nodes, int element) {
+        if(!nodes.containsKey(element)) {
+            nodes.put(element, nodes.size());
+        }
+    }
+
+    private int getNodeX(int node, int columns) {
+        return 20 + fNestingDepth * 20 + (node % columns) * CELL_WIDTH;
+    }
+
+    private int getNodeY(int node, int columns) {
+        return 20 + fNestingDepth * 30 + (node / columns) * CELL_HEIGHT;
+    }
+
+    /**
+     * Bendpoints are spread along the line between the node centres and pushed a little to the side
+     */
+    private void writeBendpoints(long index, int source, int target, int columns) throws XMLStreamException {
+        int x1 = getNodeX(source, columns) + NODE_WIDTH / 2;
+        int y1 = getNodeY(source, columns) + NODE_HEIGHT / 2;
+        int x2 = getNodeX(target, columns) + NODE_WIDTH / 2;
+        int y2 = getNodeY(target, columns) + NODE_HEIGHT / 2;
+
+        for(int i = 1; i <= fBendpointsPerConnection; i++) {
+            int x = x1 + (x2 - x1) * i / (fBendpointsPerConnection + 1) + random(BENDPOINT, index * 64 + i, 41) - 20;
+            int y = y1 + (y2 - y1) * i / (fBendpointsPerConnection + 1) + random(BENDPOINT, index * 64 + i + 32, 41) - 20;
+
+            fWriter.writeStartElement(NS, ELEMENT_BENDPOINT);
+            fWriter.writeAttribute(ATTRIBUTE_X, Integer.toString(Math.max(0, x)));
+            fWriter.writeAttribute(ATTRIBUTE_Y, Integer.toString(Math.max(0, y)));
+            fWriter.writeEndElement();
+        }
+    }
+
+    private void writeNodeStyle(long index) throws XMLStreamException {
+        if(!fWriteStyles) {
+            return;
+        }
+
+        fWriter.writeStartElement(NS, ELEMENT_STYLE);
+        writeColor(ELEMENT_FILLCOLOR, index);
+        writeColor(ELEMENT_LINECOLOR, index + 1);
+
+        fWriter.writeStartElement(NS, ELEMENT_FONT);
+        fWriter.writeAttribute(ATTRIBUTE_FONTNAME, "Sans");
+        fWriter.writeAttribute(ATTRIBUTE_FONTSIZE, Integer.toString(8 + random(COLOR, index, 5)));
+        writeColor(ELEMENT_FONTCOLOR, index + 2);
+        fWriter.writeEndElement();
+
+        fWriter.writeEndElement();
+    }
+
+    private void writeColor(String name, long index) throws XMLStreamException {
+        long rgb = random(COLOR, index * 3);
+
+        fWriter.writeEmptyElement(NS, name);
+        fWriter.writeAttribute(ATTRIBUTE_R, Long.toString(rgb & 0xFF));
+        fWriter.writeAttribute(ATTRIBUTE_G, Long.toString((rgb >> 8) & 0xFF));
+        fWriter.writeAttribute(ATTRIBUTE_B, Long.toString((rgb >> 16) & 0xFF));
+    }
+
+    // ========================================= Helpers ======================================
+
+    private String getElementType(int element) {
+        return fElementTypes.get(element % fElementTypes.size());
+    }
+
+    private String getElementID(int element) {
+        return "id-e" + element;
+    }
+
+    private int getRelationshipSource(int relationship) {
+        return random(SOURCE, relationship, getElementCount());
+    }
+
+    /**
+     * Never the same as the source
+     */
+    private int getRelationshipTarget(int relationship) {
+        int count = getElementCount();
+        int target = random(TARGET, relationship, count);
+        return target == getRelationshipSource(relationship) ? (target + 1) % count : target;
+    }
+
+    /**
+     * Write one element for each language
+     */
+    private void writeNames(String name, String text) throws XMLStreamException {
+        for(String language : fLanguages) {
+            fWriter.writeStartElement(NS, name);
+            if(language != null) {
+                fWriter.writeAttribute(XMLConstants.XML_NS_PREFIX, XMLConstants.XML_NS_URI, ATTRIBUTE_LANG, language);
+                fWriter.writeCharacters(text + " (" + language + ")");
+            }
+            else {
+                fWriter.writeCharacters(text);
+            }
+            fWriter.writeEndElement();
+        }
+    }
+
+    private void writeText(String name, String text) throws XMLStreamException {
+        fWriter.writeStartElement(NS, name);
+        fWriter.writeCharacters(text);
+        fWriter.writeEndElement();
+    }
+
+    /**
+     * @return A non-negative random number for an index in a stream
+     */
+    private long random(int stream, long index) {
+        return mix(fSeed + mix(((long)stream << 56) ^ index)) >>> 1;
+    }
+
+    private int random(int stream, long index, int bound) {
+        return (int)(random(stream, index) % bound);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.eclipse.emf.ecore.EObject;
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.model.IDiagramModelConnection;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Large Model Generator Tests
+ */
+@SuppressWarnings("nls")
+public class LargeModelGeneratorTests {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LargeModelGeneratorTests.class);
+    }
+
+    private static byte[] generate(long seed) throws Exception {
+        LargeModelGenerator generator = new LargeModelGenerator();
+        generator.setSeed(seed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.write(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testSameSeedGivesSameOutput() throws Exception {
+        assertArrayEquals(generate(42), generate(42));
+        assertFalse(Arrays.equals(generate(42), generate(43)));
+    }
+
+    @Test
+    public void testGeneratedFileIsValidAndImports() throws Exception {
+        LargeModelGenerator generator = new LargeModelGenerator();
+        generator.setElementsPerType(3);
+        generator.setLanguages("en", "fr", "de");
+        generator.setViewCount(4);
+        generator.setNestingDepth(3);
+
+        File file = new File(TestSupport.getTempFolder(), "generated.xml");
+        generator.write(file);
+
+        new XMLValidator().validateXML(file);
+
+        IArchimateModel model = new XMLModelImporter().createArchiMateModel(file);
+
+        int elements = 0, relationships = 0, nodes = 0, connections = 0;
+        Set<String> types = new HashSet<String>();
+
+        for(Iterator<EObject> iter = model.eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+            if(eObject instanceof IArchimateElement) {
+                elements++;
+                types.add(XMLTypeMapper.getArchimateConceptName((IArchimateElement)eObject));
+            }
+            else if(eObject instanceof IArchimateRelationship) {
+                relationships++;
+                types.add(XMLTypeMapper.getArchimateConceptName((IArchimateRelationship)eObject));
+            }
+            else if(eObject instanceof IDiagramModelArchimateObject) {
+                nodes++;
+            }
+            else if(eObject instanceof IDiagramModelConnection) {
+                connections++;
+            }
+        }
+
+        assertEquals(generator.getElementCount(), elements);
+        assertEquals(generator.getRelationshipCount(), relationships);
+        assertEquals(4, model.getDiagramModels().size());
+        assertEquals(4 * 20, connections);
+        assertTrue(nodes > 0);
+
+        // Every element type is used
+        assertTrue(types.containsAll(XMLTypeMapper.getElementTypeNames()));
+    }
+
+    @Test
+    public void testLargeFileIsStreamed() throws Exception {
+        LargeModelGenerator generator = new LargeModelGenerator();
+        generator.setElementsPerType(2000);
+        generator.setViewCount(1000);
+        generator.setLanguages("en", "fr");
+
+        File file = new File(TestSupport.getTempFolder(), "generated-large.xml");
+        generator.write(file);
+
+        assertTrue(file.length() > 50L * 1024 * 1024);
+        file.delete();
+    }
+
+}
@@ -0,0 +1,193 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.emf.ecore.EObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelReference;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Lazy Views Tests
+ */
+@SuppressWarnings("nls")
+public class LazyViewsTests {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LazyViewsTests.class);
+    }
+
+    private static File xmlFile;
+
+    @BeforeClass
+    public static void runOnceBeforeAllTests() throws Exception {
+        xmlFile = new File(TestSupport.getTempFolder(), "lazy.xml");
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setSaveOrganisation(true);
+        exporter.exportModel(TestSupport.loadModel(TestSupport.archiFile1), xmlFile);
+    }
+
+    @AfterClass
+    public static void runOnceAfterAllTests() {
+        xmlFile.delete();
+    }
+
+    private IArchimateModel importLazily() throws Exception {
+        XMLModelImporter importer = new XMLModelImporter();
+        importer.setLazyViews(true);
+        return importer.createArchiMateModel(xmlFile);
+    }
+
+    @Test
+    public void testViewsAreNotLoaded() throws Exception {
+        IArchimateModel model = importLazily();
+        IArchimateModel fullModel = new XMLModelImporter().createArchiMateModel(xmlFile);
+
+        List<IDiagramModel> views = model.getDiagramModels();
+        List<IDiagramModel> fullViews = fullModel.getDiagramModels();
+        assertEquals(fullViews.size(), views.size());
+
+        for(int i = 0; i < views.size(); i++) {
+            IDiagramModel dm = views.get(i);
+            IDiagramModel fullDM = fullViews.get(i);
+
+            assertFalse(LazyViews.isLoaded(dm));
+            assertTrue(dm.getChildren().isEmpty());
+
+            assertEquals(fullDM.getId(), dm.getId());
+            assertEquals(fullDM.getName(), dm.getName());
+            assertEquals(fullDM.getProperties().size(), dm.getProperties().size());
+        }
+    }
+
+    @Test
+    public void testLoadCreatesContent() throws Exception {
+        IArchimateModel model = importLazily();
+        IArchimateModel fullModel = new XMLModelImporter().createArchiMateModel(xmlFile);
+
+        IDiagramModel dm = model.getDiagramModels().get(0);
+        LazyViews.load(dm);
+
+        assertTrue(LazyViews.isLoaded(dm));
+        assertEquals(count(fullModel.getDiagramModels().get(0)), count(dm));
+        assertTrue(count(dm) > 0);
+
+        // Only the one view
+        assertFalse(LazyViews.isLoaded(model.getDiagramModels().get(1)));
+
+        // Loading again does nothing
+        LazyViews.load(dm);
+        assertEquals(count(fullModel.getDiagramModels().get(0)), count(dm));
+    }
+
+    @Test
+    public void testViewReferencesAreResolved() throws Exception {
+        IArchimateModel model = importLazily();
+        LazyViews.loadAll(model);
+
+        for(IDiagramModel dm : model.getDiagramModels()) {
+            for(Iterator<EObject> iter = dm.eAllContents(); iter.hasNext();) {
+                EObject eObject = iter.next();
+                if(eObject instanceof IDiagramModelReference) {
+                    assertNotNull(((IDiagramModelReference)eObject).getReferencedModel());
+                    assertTrue(model.getDiagramModels().contains(((IDiagramModelReference)eObject).getReferencedModel()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testExportIsTheSameAsFullImport() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new XMLModelExporter().exportModel(new XMLModelImporter().createArchiMateModel(xmlFile), expected);
+
+        // Export loads the views
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        new XMLModelExporter().exportModel(importLazily(), actual);
+
+        assertEquals(expected.toString("UTF-8"), actual.toString("UTF-8"));
+    }
+
+    @Test
+    public void testSubsetExportLoadsOnlyTheSubsetViews() throws Exception {
+        IArchimateModel fullModel = new XMLModelImporter().createArchiMateModel(xmlFile);
+        IDiagramModel fullDM = fullModel.getDiagramModels().get(0);
+
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setSubset(Collections.singletonList(fullDM));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        exporter.exportModel(fullModel, expected);
+
+        Set<String> subsetIDs = new HashSet<String>();
+        for(IDiagramModel dm : new ExportSubset(fullModel, Collections.singletonList(fullDM)).getViews()) {
+            subsetIDs.add(dm.getId());
+        }
+        assertTrue(subsetIDs.size() < fullModel.getDiagramModels().size());
+
+        IArchimateModel model = importLazily();
+        exporter.setSubset(Collections.singletonList(model.getDiagramModels().get(0)));
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        exporter.exportModel(model, actual);
+
+        assertEquals(expected.toString("UTF-8"), actual.toString("UTF-8"));
+
+        for(IDiagramModel dm : model.getDiagramModels()) {
+            assertEquals(subsetIDs.contains(dm.getId()), LazyViews.isLoaded(dm));
+        }
+    }
+
+    @Test
+    public void testHasUnloadedViews() throws Exception {
+        IArchimateModel model = importLazily();
+        assertTrue(LazyViews.hasUnloadedViews(model));
+
+        LazyViews.loadAll(model);
+        assertFalse(LazyViews.hasUnloadedViews(model));
+        LazyViews.checkLoaded(model);
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testMergeFailsIfViewsNotLoaded() throws Exception {
+        IArchimateModel target = new XMLModelImporter().createArchiMateModel(xmlFile);
+        new XMLModelMerger(target).createMergeCommand(importLazily());
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testMergeIntoModelFailsIfViewsNotLoaded() throws Exception {
+        IArchimateModel target = importLazily();
+        new XMLModelMerger(target).createMergeCommand(new XMLModelImporter().createArchiMateModel(xmlFile));
+    }
+
+    private int count(IDiagramModel dm) {
+        int count = 0;
+        for(Iterator<EObject> iter = dm.eAllContents(); iter.hasNext();) {
+            iter.next();
+            count++;
+        }
+        return count;
+    }
+
+}
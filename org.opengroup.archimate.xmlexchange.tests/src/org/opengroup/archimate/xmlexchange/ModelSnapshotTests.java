@@ -0,0 +1,115 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.jdom2.output.XMLOutputter;
+import org.junit.Test;
+
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IDiagramModel;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * Model Snapshot Tests
+ */
+@SuppressWarnings("nls")
+public class ModelSnapshotTests {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ModelSnapshotTests.class);
+    }
+
+    @Test
+    public void testSnapshotExportsTheSameAsTheModel() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+        ModelSnapshot snapshot = ModelSnapshot.capture(model);
+
+        XMLOutputter outputter = new XMLOutputter();
+        String expected = outputter.outputString(new XMLModelExporter().createExchangeDocument(model));
+        String actual = outputter.outputString(new XMLModelExporter().createExchangeDocument(snapshot.getModel()));
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testEditsAfterCaptureAreNotInSnapshot() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+        XMLOutputter outputter = new XMLOutputter();
+        String expected = outputter.outputString(new XMLModelExporter().createExchangeDocument(model));
+
+        ModelSnapshot snapshot = ModelSnapshot.capture(model);
+
+        ((IArchimateElement)model.getFolder(FolderType.BUSINESS).getElements().get(0)).setName("Changed after capture");
+
+        IArchimateElement added = IArchimateFactory.eINSTANCE.createBusinessActor();
+        model.getFolder(FolderType.BUSINESS).getElements().add(added);
+        model.getDiagramModels().get(0).getChildren().clear();
+
+        assertNull(snapshot.getCopy(added));
+        assertEquals(expected, outputter.outputString(new XMLModelExporter().createExchangeDocument(snapshot.getModel())));
+    }
+
+    @Test
+    public void testGetCopy() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+        ModelSnapshot snapshot = ModelSnapshot.capture(model);
+
+        IDiagramModel dm = model.getDiagramModels().get(0);
+        IDiagramModel copy = snapshot.getCopy(dm);
+
+        assertNotSame(dm, copy);
+        assertEquals(dm.getId(), copy.getId());
+        assertSame(snapshot.getModel(), copy.getArchimateModel());
+    }
+
+    @Test
+    public void testGetCopiesNotInSnapshotThrows() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+        ModelSnapshot snapshot = ModelSnapshot.capture(model);
+
+        try {
+            snapshot.getCopies(Collections.singletonList(IArchimateFactory.eINSTANCE.createArchimateDiagramModel()));
+            fail("Should have thrown");
+        }
+        catch(IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void testExportSnapshotWithSubsetOfOriginalModel() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+        IDiagramModel dm = model.getDiagramModels().get(0);
+
+        ModelSnapshot snapshot = ModelSnapshot.capture(model);
+
+        File file = new File(TestSupport.getTempFolder(), "snapshot.xml");
+
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setSubset(Collections.singletonList(dm));
+        exporter.exportModel(snapshot, file);
+
+        IArchimateModel imported = new XMLModelImporter().createArchiMateModel(file);
+        assertEquals(1, imported.getDiagramModels().size());
+        assertEquals(dm.getName(), imported.getDiagramModels().get(0).getName());
+
+        file.delete();
+    }
+
+}
@@ -5,12 +5,21 @@
  */
 package org.opengroup.archimate.xmlexchange;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.jdom2.Document;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.util.ArchimateResourceFactory;
 
 
 /**
@@ -29,6 +38,69 @@ public class TestSupport {
     public static File archiFile1 = new File(testFolder, "archisurance.archimate");
     
     
+    /**
+     * @return A loaded Archi model
+     */
+    public static IArchimateModel loadModel(File file) throws IOException {
+        Resource resource = ArchimateResourceFactory.createNewResource(file);
+        resource.load(null);
+        return (IArchimateModel)resource.getContents().get(0);
+    }
+    
+    /**
+     * @return The exchange document of a model, with organizations and a language code
+     */
+    public static Document createExchangeDocument(IArchimateModel model) {
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setLanguageCode("en");
+        exporter.setSaveOrganisation(true);
+        return exporter.createExchangeDocument(model);
+    }
+    
+    /**
+     * @return The document as compact XML, for comparing
+     */
+    public static String toString(Document doc) {
+        return new XMLOutputter(Format.getCompactFormat()).outputString(doc);
+    }
+    
+    /**
+     * Assert that two models have the same exchange document
+     */
+    public static void assertSameModel(IArchimateModel expected, IArchimateModel actual) {
+        assertEquals(toString(createExchangeDocument(expected)), toString(createExchangeDocument(actual)));
+    }
+    
+    /**
+     * Assert that importing a file exported from a model in another encoding gives the same model as importing it from XML
+     * @param model The model that was exported
+     * @param file The exported file
+     */
+    public static void assertImportGivesSameModelAsXML(IArchimateModel model, File file) throws Exception {
+        File xmlFile = new File(getTempFolder(), "same-model.xml");
+        
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setSaveOrganisation(true);
+        exporter.exportModel(model, xmlFile);
+        
+        try {
+            assertSameModel(new XMLModelImporter().createArchiMateModel(xmlFile), new XMLModelImporter().createArchiMateModel(file));
+        }
+        finally {
+            xmlFile.delete();
+        }
+    }
+    
+    /**
+     * @return A temporary folder for test output
+     */
+    public static File getTempFolder() {
+        File folder = new File(System.getProperty("java.io.tmpdir"), "org.opengroup.archimate.xmlexchange.tests");
+        folder.mkdirs();
+        return folder;
+    }
+    
+    
     /**
      * @param bundleName
      * @param path
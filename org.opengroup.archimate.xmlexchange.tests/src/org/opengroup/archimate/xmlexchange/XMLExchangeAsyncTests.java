@@ -0,0 +1,164 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateModel;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * XML Exchange Async Tests
+ */
+@SuppressWarnings("nls")
+public class XMLExchangeAsyncTests {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XMLExchangeAsyncTests.class);
+    }
+
+    @Test
+    public void testDefaultExecutor() {
+        assertNotNull(XMLExchangeAsync.getDefaultExecutor());
+        assertTrue(XMLExchangeAsync.getDefaultExecutor() == XMLExchangeAsync.getDefaultExecutor());
+    }
+
+    @Test
+    public void testExportValidateImportPipeline() throws Exception {
+        final XMLExchangeEngine engine = XMLExchangeEngine.builder().setSaveOrganisation(true).build();
+        final IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+
+        // Run several pipelines at once
+        List<CompletableFuture<IArchimateModel>> results = new ArrayList<CompletableFuture<IArchimateModel>>();
+
+        for(int i = 0; i < 8; i++) {
+            final File file = new File(TestSupport.getTempFolder(), "async-" + i + ".xml");
+
+            CompletableFuture<IArchimateModel> result = engine.exportModelAsync(model, file)
+                    .thenCompose(new Function<Void, CompletableFuture<Void>>() {
+                        @Override
+                        public CompletableFuture<Void> apply(Void t) {
+                            return engine.validateAsync(file);
+                        }
+                    })
+                    .thenCompose(new Function<Void, CompletableFuture<IArchimateModel>>() {
+                        @Override
+                        public CompletableFuture<IArchimateModel> apply(Void t) {
+                            return engine.importModelAsync(file);
+                        }
+                    });
+
+            results.add(result);
+        }
+
+        for(CompletableFuture<IArchimateModel> result : results) {
+            IArchimateModel imported = result.get(2, TimeUnit.MINUTES);
+            assertEquals(model.getName(), imported.getName());
+            assertEquals(model.getDiagramModels().size(), imported.getDiagramModels().size());
+        }
+    }
+
+    @Test
+    public void testCancelInterruptsRunningTask() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        CompletableFuture<String> future = XMLExchangeAsync.supplyAsync(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                try {
+                    Thread.sleep(60000);
+                }
+                catch(InterruptedException ex) {
+                    interrupted.countDown();
+                    throw ex;
+                }
+                return "done";
+            }
+        }, XMLExchangeAsync.getDefaultExecutor());
+
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancelBeforeStartDoesNotRunTask() throws Exception {
+        final List<Runnable> queue = new ArrayList<Runnable>();
+        final AtomicBoolean ran = new AtomicBoolean();
+
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queue.add(command);
+            }
+        };
+
+        CompletableFuture<String> future = XMLExchangeAsync.supplyAsync(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                ran.set(true);
+                return "done";
+            }
+        }, executor);
+
+        assertTrue(future.cancel(true));
+        queue.get(0).run();
+
+        assertFalse(ran.get());
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testFailedExportKeepsExistingFile() throws Exception {
+        XMLExchangeEngine engine = XMLExchangeEngine.builder().build();
+
+        File folder = new File(TestSupport.getTempFolder(), "async-failed");
+        folder.mkdirs();
+        File file = new File(folder, "existing.xml");
+        byte[] contents = "existing".getBytes(StandardCharsets.UTF_8);
+        Files.write(file.toPath(), contents);
+
+        try {
+            engine.exportModelAsync(null, file).get(1, TimeUnit.MINUTES);
+            fail("Should have thrown");
+        }
+        catch(ExecutionException ex) {
+            // Expected
+        }
+
+        assertArrayEquals(contents, Files.readAllBytes(file.toPath()));
+
+        // No temporary file left behind
+        assertEquals(1, folder.list().length);
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateModel;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * XML Exchange Binary Codec Tests
+ */
+@SuppressWarnings("nls")
+public class XMLExchangeBinaryCodecTests {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XMLExchangeBinaryCodecTests.class);
+    }
+
+    @Test
+    public void testDocumentRoundTrip() throws Exception {
+        Document doc = TestSupport.createExchangeDocument(TestSupport.loadModel(TestSupport.archiFile1));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLExchangeBinaryCodec codec = new XMLExchangeBinaryCodec();
+        codec.write(doc, out);
+
+        Document result = codec.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(TestSupport.toString(doc), TestSupport.toString(result));
+    }
+
+    @Test
+    public void testBinaryImportGivesSameModelAsXML() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+
+        File binaryFile = new File(TestSupport.getTempFolder(), "binary-test" + IXMLExchangeGlobals.BINARY_FILE_EXTENSION);
+
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setSaveOrganisation(true);
+        exporter.exportModelBinary(model, binaryFile);
+
+        assertFalse(XMLExchangeBinaryCodec.isBinaryFile(TestSupport.xmlFile1));
+        assertTrue(XMLExchangeBinaryCodec.isBinaryFile(binaryFile));
+
+        TestSupport.assertImportGivesSameModelAsXML(model, binaryFile);
+    }
+
+    @Test
+    public void testReadSection() throws Exception {
+        Document doc = TestSupport.createExchangeDocument(TestSupport.loadModel(TestSupport.archiFile1));
+
+        File binaryFile = new File(TestSupport.getTempFolder(), "section-test" + IXMLExchangeGlobals.BINARY_FILE_EXTENSION);
+        XMLExchangeBinaryCodec codec = new XMLExchangeBinaryCodec();
+        codec.write(doc, binaryFile);
+
+        Element views = codec.readSection(binaryFile, IXMLExchangeGlobals.ELEMENT_VIEWS);
+        assertNotNull(views);
+
+        Element expected = doc.getRootElement().getChild(IXMLExchangeGlobals.ELEMENT_VIEWS, IXMLExchangeGlobals.ARCHIMATE3_NAMESPACE);
+        XMLOutputter outputter = new XMLOutputter(Format.getCompactFormat());
+        assertEquals(outputter.outputString(expected), outputter.outputString(views));
+
+        assertNull(codec.readSection(binaryFile, "nothing"));
+    }
+
+    @Test
+    public void testEncodeDecodeElement() throws Exception {
+        Element element = new Element(IXMLExchangeGlobals.ELEMENT_NODE, IXMLExchangeGlobals.ARCHIMATE3_NAMESPACE);
+        element.setAttribute(IXMLExchangeGlobals.ATTRIBUTE_IDENTIFIER, "id-123");
+        element.setAttribute(IXMLExchangeGlobals.ATTRIBUTE_X, "-40");
+        element.setAttribute(IXMLExchangeGlobals.ATTRIBUTE_Y, "007");
+        Element label = new Element(IXMLExchangeGlobals.ELEMENT_LABEL, IXMLExchangeGlobals.ARCHIMATE3_NAMESPACE);
+        label.setText("Grüße");
+        element.addContent(label);
+
+        XMLExchangeBinaryCodec codec = new XMLExchangeBinaryCodec();
+        Element result = codec.decodeElement(codec.encodeElement(element));
+
+        XMLOutputter outputter = new XMLOutputter(Format.getCompactFormat());
+        assertEquals(outputter.outputString(element), outputter.outputString(result));
+    }
+
+    @Test
+    public void testAsInteger() {
+        assertEquals(Integer.valueOf(0), XMLExchangeBinaryCodec.asInteger("0"));
+        assertEquals(Integer.valueOf(-12), XMLExchangeBinaryCodec.asInteger("-12"));
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), XMLExchangeBinaryCodec.asInteger(Integer.toString(Integer.MIN_VALUE)));
+
+        // Must round-trip exactly
+        assertNull(XMLExchangeBinaryCodec.asInteger("007"));
+        assertNull(XMLExchangeBinaryCodec.asInteger("-0"));
+        assertNull(XMLExchangeBinaryCodec.asInteger("+1"));
+        assertNull(XMLExchangeBinaryCodec.asInteger("2147483648"));
+        assertNull(XMLExchangeBinaryCodec.asInteger("12.0"));
+        assertNull(XMLExchangeBinaryCodec.asInteger("-"));
+    }
+
+    @Test
+    public void testZigZag() {
+        int[] values = { 0, 1, -1, 63, -64, 1000, -1000, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        for(int value : values) {
+            assertEquals(value, XMLExchangeBinaryCodec.unzigzag(XMLExchangeBinaryCodec.zigzag(value)));
+        }
+    }
+
+    @Test
+    public void testBinaryIsLessThanHalfTheSizeOfXML() throws Exception {
+        Document doc = TestSupport.createExchangeDocument(TestSupport.loadModel(TestSupport.archiFile1));
+
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        new XMLOutputter(Format.getPrettyFormat()).output(doc, xml);
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        new XMLExchangeBinaryCodec().write(doc, binary);
+
+        assertTrue(binary.size() * 2 < xml.size());
+    }
+
+}
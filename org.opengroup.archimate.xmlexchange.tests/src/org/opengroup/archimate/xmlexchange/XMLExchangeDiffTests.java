@@ -0,0 +1,231 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opengroup.archimate.xmlexchange.XMLExchangeDiff.Change;
+import org.opengroup.archimate.xmlexchange.XMLExchangeDiff.ChangeType;
+import org.opengroup.archimate.xmlexchange.XMLExchangeDiff.Difference;
+
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IBounds;
+import com.archimatetool.model.IDiagramModelObject;
+import com.archimatetool.model.IIdentifier;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * XML Exchange Diff Tests
+ */
+@SuppressWarnings("nls")
+public class XMLExchangeDiffTests {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XMLExchangeDiffTests.class);
+    }
+
+    private static File file1, file2;
+
+    private static String renamedID, addedID, movedID;
+    private static String oldName;
+    private static int oldX;
+
+    @BeforeClass
+    public static void runOnceBeforeAllTests() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+
+        file1 = new File(TestSupport.getTempFolder(), "diff1.xml");
+        new XMLModelExporter().exportModel(model, file1);
+
+        // Rename an element
+        IArchimateElement element = (IArchimateElement)model.getFolder(FolderType.BUSINESS).getElements().get(0);
+        oldName = element.getName();
+        element.setName("Renamed");
+        renamedID = xmlID(element);
+
+        // Add an element
+        IArchimateElement newElement = IArchimateFactory.eINSTANCE.createBusinessActor();
+        newElement.setName("New");
+        model.getDefaultFolderForObject(newElement).getElements().add(newElement);
+        addedID = xmlID(newElement);
+
+        // Move a node
+        IDiagramModelObject dmo = model.getDiagramModels().get(0).getChildren().get(0);
+        IBounds bounds = dmo.getBounds();
+        oldX = bounds.getX();
+        dmo.setBounds(bounds.getX() + 5, bounds.getY(), bounds.getWidth(), bounds.getHeight());
+        movedID = xmlID(dmo);
+
+        file2 = new File(TestSupport.getTempFolder(), "diff2.xml");
+        new XMLModelExporter().exportModel(model, file2);
+    }
+
+    @AfterClass
+    public static void runOnceAfterAllTests() {
+        file1.delete();
+        file2.delete();
+    }
+
+    // As XMLModelExporter writes it
+    private static String xmlID(IIdentifier identifier) {
+        return identifier.getId().startsWith("id-") ? identifier.getId() : "id-" + identifier.getId();
+    }
+
+    private Map<String, Change> byIdentifier(List<Change> changes) {
+        Map<String, Change> map = new HashMap<String, Change>();
+        for(Change change : changes) {
+            map.put(change.getIdentifier(), change);
+        }
+        return map;
+    }
+
+    private Difference getDifference(Change change, String path) {
+        for(Difference difference : change.getDifferences()) {
+            if(path.equals(difference.getPath())) {
+                return difference;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testSameFile() throws Exception {
+        assertTrue(new XMLExchangeDiff().diff(file1, file1).isEmpty());
+    }
+
+    @Test
+    public void testChanges() throws Exception {
+        Map<String, Change> changes = byIdentifier(new XMLExchangeDiff().diff(file1, file2));
+        assertEquals(3, changes.size());
+
+        Change renamed = changes.get(renamedID);
+        assertEquals(ChangeType.CHANGED, renamed.getType());
+        assertEquals("element", renamed.getName());
+        assertEquals(1, renamed.getDifferences().size());
+        Difference difference = getDifference(renamed, "name");
+        assertNotNull(difference);
+        assertEquals(oldName, difference.getOldValue());
+        assertEquals("Renamed", difference.getNewValue());
+
+        Change added = changes.get(addedID);
+        assertEquals(ChangeType.ADDED, added.getType());
+        assertTrue(added.getDifferences().isEmpty());
+
+        Change moved = changes.get(movedID);
+        assertEquals(ChangeType.CHANGED, moved.getType());
+        assertEquals("node", moved.getName());
+        difference = getDifference(moved, "@x");
+        assertEquals(String.valueOf(oldX), difference.getOldValue());
+        assertEquals(String.valueOf(oldX + 5), difference.getNewValue());
+    }
+
+    @Test
+    public void testRemoved() throws Exception {
+        Change removed = byIdentifier(new XMLExchangeDiff().diff(file2, file1)).get(addedID);
+        assertEquals(ChangeType.REMOVED, removed.getType());
+        assertNull(getDifference(removed, "name"));
+    }
+
+    private static File writeExchangeFile(String name, String elements, String propertyDefinitions) throws Exception {
+        File file = new File(TestSupport.getTempFolder(), name);
+        Files.write(file.toPath(), ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<model xmlns=\"" + IXMLExchangeGlobals.ARCHIMATE3_NAMESPACE.getURI() + "\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" identifier=\"id-m\">"
+                + "<name xml:lang=\"en\">Model</name>"
+                + "<elements>" + elements + "</elements>"
+                + "<propertyDefinitions>" + propertyDefinitions + "</propertyDefinitions>"
+                + "</model>").getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String element(String id, String properties) {
+        return "<element identifier=\"" + id + "\" xsi:type=\"BusinessActor\"><name xml:lang=\"en\">" + id + "</name>"
+                + "<properties>" + properties + "</properties></element>";
+    }
+
+    private static String property(String ref, String value) {
+        return "<property propertyDefinitionRef=\"" + ref + "\"><value xml:lang=\"en\">" + value + "</value></property>";
+    }
+
+    private static String propertyDefinition(String id, String name) {
+        return "<propertyDefinition identifier=\"" + id + "\" type=\"string\"><name xml:lang=\"en\">" + name + "</name></propertyDefinition>";
+    }
+
+    @Test
+    public void testNewPropertyKeyIsOneAddition() throws Exception {
+        File before = writeExchangeFile("diff-keys1.xml",
+                element("id-1", property("propid-1", "b")) + element("id-2", property("propid-2", "g")),
+                propertyDefinition("propid-1", "Beta") + propertyDefinition("propid-2", "Gamma"));
+
+        // A new key on the first element renumbers the property definitions
+        File after = writeExchangeFile("diff-keys2.xml",
+                element("id-1", property("propid-1", "a") + property("propid-2", "b")) + element("id-2", property("propid-3", "g")),
+                propertyDefinition("propid-1", "Alpha") + propertyDefinition("propid-2", "Beta") + propertyDefinition("propid-3", "Gamma"));
+
+        try {
+            List<Change> changes = new XMLExchangeDiff().diff(before, after);
+            assertEquals(changes.toString(), 2, changes.size());
+
+            int added = 0;
+            for(Change change : changes) {
+                if(change.getType() == ChangeType.ADDED) {
+                    added++;
+                }
+            }
+            assertEquals(1, added);
+
+            Map<String, Change> byIdentifier = byIdentifier(changes);
+
+            Change definition = byIdentifier.get("Alpha");
+            assertEquals(ChangeType.ADDED, definition.getType());
+            assertEquals("propertyDefinition", definition.getName());
+
+            Change element = byIdentifier.get("id-1");
+            assertEquals(ChangeType.CHANGED, element.getType());
+            assertEquals(1, element.getDifferences().size());
+            Difference difference = getDifference(element, "properties/property[Alpha]/value[en]");
+            assertNotNull(difference);
+            assertNull(difference.getOldValue());
+            assertEquals("a", difference.getNewValue());
+        }
+        finally {
+            before.delete();
+            after.delete();
+        }
+    }
+
+    @Test
+    public void testSpillFilesGiveTheSameChanges() throws Exception {
+        Map<String, Change> expected = byIdentifier(new XMLExchangeDiff().diff(file1, file2));
+
+        XMLExchangeDiff diff = new XMLExchangeDiff();
+        diff.setMemoryLimit(1024);
+        Map<String, Change> actual = byIdentifier(diff.diff(file1, file2));
+
+        assertEquals(expected.keySet(), actual.keySet());
+        for(String identifier : expected.keySet()) {
+            assertEquals(expected.get(identifier).toString(), actual.get(identifier).toString());
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateModel;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * XML Exchange Engine Tests
+ */
+@SuppressWarnings("nls")
+public class XMLExchangeEngineTests {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XMLExchangeEngineTests.class);
+    }
+
+    private static String asString(XMLExchangeEngine engine, IArchimateModel model) {
+        return new XMLOutputter(Format.getCompactFormat()).outputString(engine.createExchangeDocument(model));
+    }
+
+    private XMLExchangeEngine createEngine() {
+        return XMLExchangeEngine.builder()
+                .setLanguageCode("en")
+                .setSaveOrganisation(true)
+                .build();
+    }
+
+    @Test
+    public void testEngineCanBeReused() throws Exception {
+        XMLExchangeEngine engine = createEngine();
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+
+        File file = new File(TestSupport.getTempFolder(), "engine-test.xml");
+        engine.exportModel(model, file);
+
+        IArchimateModel model1 = engine.importModel(file);
+        IArchimateModel model2 = engine.importModel(file);
+
+        assertEquals(asString(engine, model1), asString(engine, model2));
+        assertEquals(asString(engine, model), asString(engine, model));
+    }
+
+    @Test
+    public void testConcurrentConversions() throws Exception {
+        final XMLExchangeEngine engine = createEngine();
+        final IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+
+        // Reference output converted on one thread
+        final File sourceFile = new File(TestSupport.getTempFolder(), "engine-source.xml");
+        engine.exportModel(model, sourceFile);
+        final String expected = asString(engine, engine.importModel(sourceFile));
+
+        int threads = 8;
+        int tasks = 64;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch startGate = new CountDownLatch(1);
+
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+
+            for(int i = 0; i < tasks; i++) {
+                final int task = i;
+
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        startGate.await();
+
+                        // Alternate between import + export of a file and export + validate + import of the shared model
+                        if(task % 2 == 0) {
+                            return asString(engine, engine.importModel(sourceFile));
+                        }
+
+                        File file = new File(TestSupport.getTempFolder(), "engine-task-" + task + ".xml");
+                        engine.exportModel(model, file);
+                        engine.validate(file);
+                        String result = asString(engine, engine.importModel(file));
+                        file.delete();
+                        return result;
+                    }
+                }));
+            }
+
+            startGate.countDown();
+
+            for(Future<String> result : results) {
+                assertEquals(expected, result.get(2, TimeUnit.MINUTES));
+            }
+        }
+        finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.filter.ElementFilter;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.XMLOutputter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * XML Exchange Index Tests
+ */
+@SuppressWarnings("nls")
+public class XMLExchangeIndexTests implements IXMLExchangeGlobals {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XMLExchangeIndexTests.class);
+    }
+
+    private File file;
+
+    @Before
+    public void runOnceBeforeEachTest() throws IOException {
+        file = new File(TestSupport.getTempFolder(), "index.xml");
+        Files.copy(TestSupport.xmlFile2.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @After
+    public void runOnceAfterEachTest() {
+        file.delete();
+        XMLExchangeIndex.getIndexFile(file).delete();
+    }
+
+    @Test
+    public void testEveryFragmentIsTheSameAsInTheDocument() throws Exception {
+        XMLExchangeIndex index = XMLExchangeIndex.build(file);
+        assertTrue(XMLExchangeIndex.getIndexFile(file).exists());
+
+        Document doc = new SAXBuilder().build(file);
+        XMLOutputter outputter = new XMLOutputter();
+        int count = 0;
+
+        for(Iterator<Element> iter = doc.getRootElement().getDescendants(new ElementFilter()); iter.hasNext();) {
+            Element element = iter.next();
+            String identifier = element.getAttributeValue(ATTRIBUTE_IDENTIFIER);
+
+            if(identifier != null && Arrays.asList(ELEMENT_ELEMENT, ELEMENT_RELATIONSHIP, ELEMENT_VIEW, ELEMENT_PROPERTYDEFINITION).contains(element.getName())) {
+                assertEquals(element.getName(), index.getEntry(identifier).getName());
+                assertEquals(outputter.outputString(element.clone()), outputter.outputString(index.readFragment(identifier)));
+                count++;
+            }
+        }
+
+        assertTrue(count > 0);
+        assertEquals(count, index.getIdentifiers().size());
+    }
+
+    @Test
+    public void testOpenReadsSavedIndex() throws Exception {
+        XMLExchangeIndex index = XMLExchangeIndex.build(file);
+        XMLExchangeIndex saved = XMLExchangeIndex.open(file);
+
+        assertEquals(index.getIdentifiers().size(), saved.getIdentifiers().size());
+
+        for(String identifier : index.getIdentifiers()) {
+            assertEquals(index.getEntry(identifier).getOffset(), saved.getEntry(identifier).getOffset());
+            assertEquals(index.getEntry(identifier).getLength(), saved.getEntry(identifier).getLength());
+        }
+    }
+
+    @Test
+    public void testOpenRebuildsWhenFileChanged() throws Exception {
+        XMLExchangeIndex index = XMLExchangeIndex.build(file);
+        String identifier = index.getIdentifiers().iterator().next();
+
+        writeFile("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<model xmlns=\"http://www.opengroup.org/xsd/archimate/3.0/\" identifier=\"id-model\">\n"
+                + "  <elements><element identifier=\"id-new\"><name>\u00dcn\u00efc\u00f6d\u00e9 &amp; more</name></element></elements>\n"
+                + "</model>\n");
+
+        assertFalse(index.isCurrent());
+
+        try {
+            index.readFragment(identifier);
+            fail("Should have thrown");
+        }
+        catch(IOException ex) {
+        }
+
+        XMLExchangeIndex rebuilt = XMLExchangeIndex.open(file);
+        assertEquals(1, rebuilt.getIdentifiers().size());
+        assertNull(rebuilt.getEntry(identifier));
+        assertEquals("\u00dcn\u00efc\u00f6d\u00e9 & more", rebuilt.readFragment("id-new").getChildText(ELEMENT_NAME, ARCHIMATE3_NAMESPACE));
+    }
+
+    @Test
+    public void testReadFragmentsInOrderGiven() throws Exception {
+        XMLExchangeIndex index = XMLExchangeIndex.build(file);
+
+        Iterator<String> iter = index.getIdentifiers().iterator();
+        String first = iter.next();
+        String second = iter.next();
+
+        List<Element> elements = index.readFragments(Arrays.asList(second, "not-there", first));
+        assertEquals(2, elements.size());
+        assertEquals(second, elements.get(0).getAttributeValue(ATTRIBUTE_IDENTIFIER));
+        assertEquals(first, elements.get(1).getAttributeValue(ATTRIBUTE_IDENTIFIER));
+    }
+
+    @Test
+    public void testTerminatorsAfterPartialMatches() throws Exception {
+        writeFile("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<model xmlns=\"http://www.opengroup.org/xsd/archimate/3.0/\" identifier=\"id-model\">\n"
+                + "  <!-- <element identifier=\"id-comment\"/> -->\n"
+                + "  <elements>\n"
+                + "    <element identifier=\"id-1\"><documentation><![CDATA[x]]]></documentation></element>\n"
+                + "    <element identifier=\"id-2\"><documentation><![CDATA[<element identifier=\"id-cdata\"/>]]></documentation></element>\n"
+                + "  </elements>\n"
+                + "</model>\n");
+
+        XMLExchangeIndex index = XMLExchangeIndex.build(file);
+
+        assertEquals(2, index.getIdentifiers().size());
+        assertEquals("x]", index.readFragment("id-1").getChildText(ELEMENT_DOCUMENTATION, ARCHIMATE3_NAMESPACE));
+        assertNotNull(index.getEntry("id-2"));
+        assertNull(index.getEntry("id-cdata"));
+        assertNull(index.getEntry("id-comment"));
+    }
+
+    @Test(expected=IOException.class)
+    public void testNotUTF8Throws() throws Exception {
+        writeFile("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<model/>\n");
+        XMLExchangeIndex.build(file);
+    }
+
+    private void writeFile(String content) throws IOException {
+        try(OutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+}
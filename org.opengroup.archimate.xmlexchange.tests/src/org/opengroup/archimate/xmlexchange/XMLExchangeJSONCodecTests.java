@@ -0,0 +1,211 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateModel;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * XML Exchange JSON Codec Tests
+ */
+@SuppressWarnings("nls")
+public class XMLExchangeJSONCodecTests implements IXMLExchangeGlobals {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XMLExchangeJSONCodecTests.class);
+    }
+
+    private static Document roundTrip(Document doc) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLExchangeJSONCodec codec = new XMLExchangeJSONCodec();
+        codec.write(doc, out);
+        return codec.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testDocumentRoundTrip() throws Exception {
+        Document doc = TestSupport.createExchangeDocument(TestSupport.loadModel(TestSupport.archiFile1));
+        assertEquals(TestSupport.toString(doc), TestSupport.toString(roundTrip(doc)));
+    }
+
+    @Test
+    public void testJSONImportGivesSameModelAsXML() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+
+        File jsonFile = new File(TestSupport.getTempFolder(), "json-test" + JSON_FILE_EXTENSION);
+
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setSaveOrganisation(true);
+        exporter.exportModelJSON(model, jsonFile);
+
+        assertFalse(XMLExchangeJSONCodec.isJSONFile(TestSupport.xmlFile1));
+        assertTrue(XMLExchangeJSONCodec.isJSONFile(jsonFile));
+
+        TestSupport.assertImportGivesSameModelAsXML(model, jsonFile);
+
+        jsonFile.delete();
+    }
+
+    @Test
+    public void testStreamedExportIsSameAsDocument() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+
+        for(boolean canonical : new boolean[] { false, true }) {
+            XMLModelExporter exporter = new XMLModelExporter();
+            exporter.setLanguageCode("en");
+            exporter.setSaveOrganisation(true);
+            exporter.setCanonical(canonical);
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            new XMLExchangeJSONCodec().write(exporter.createExchangeDocument(model), expected);
+
+            ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+            exporter.exportModelJSON(model, streamed);
+
+            assertEquals(new String(expected.toByteArray(), StandardCharsets.UTF_8), new String(streamed.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testJSONImportFromStream() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setSaveOrganisation(true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.exportModelJSON(model, out);
+
+        File jsonFile = new File(TestSupport.getTempFolder(), "json-stream" + JSON_FILE_EXTENSION);
+        exporter.exportModelJSON(model, jsonFile);
+
+        IArchimateModel model1 = new XMLModelImporter().createArchiMateModel(jsonFile);
+        IArchimateModel model2 = new XMLModelImporter().createArchiMateModel(new ByteArrayInputStream(out.toByteArray()));
+
+        TestSupport.assertSameModel(model1, model2);
+
+        jsonFile.delete();
+    }
+
+    @Test
+    public void testJSONImportWithoutViews() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+
+        File jsonFile = new File(TestSupport.getTempFolder(), "json-no-views" + JSON_FILE_EXTENSION);
+        new XMLModelExporter().exportModelJSON(model, jsonFile);
+
+        XMLModelImporter importer = new XMLModelImporter();
+        importer.setIncludeViews(false);
+        IArchimateModel result = importer.createArchiMateModel(jsonFile);
+
+        assertTrue(result.getDiagramModels().isEmpty());
+
+        // All the concepts are there
+        Element expected = TestSupport.createExchangeDocument(model).getRootElement();
+        Element actual = TestSupport.createExchangeDocument(result).getRootElement();
+        for(String section : new String[] { ELEMENT_ELEMENTS, ELEMENT_RELATIONSHIPS }) {
+            assertEquals(expected.getChild(section, ARCHIMATE3_NAMESPACE).getChildren().size(),
+                    actual.getChild(section, ARCHIMATE3_NAMESPACE).getChildren().size());
+        }
+
+        jsonFile.delete();
+    }
+
+    @Test
+    public void testExportedJSONPassesImportChecks() throws Exception {
+        File jsonFile = new File(TestSupport.getTempFolder(), "json-checks" + JSON_FILE_EXTENSION);
+
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setSaveOrganisation(true);
+        exporter.exportModelJSON(TestSupport.loadModel(TestSupport.archiFile1), jsonFile);
+
+        // The checks made by the import provider before it imports
+        new XMLIntegrityChecker().validate(jsonFile);
+        new XMLValidator().validateXML(jsonFile);
+
+        // The checks made by the server on a request body
+        try(InputStream in = new FileInputStream(jsonFile)) {
+            assertTrue(new XMLIntegrityChecker().check(in).isEmpty());
+        }
+        try(InputStream in = new FileInputStream(jsonFile)) {
+            new XMLValidator().validateXML(in);
+        }
+
+        jsonFile.delete();
+    }
+
+    @Test
+    public void testEscapedText() throws Exception {
+        Element root = new Element(ELEMENT_MODEL, ARCHIMATE3_NAMESPACE);
+        root.addNamespaceDeclaration(XSI_NAMESPACE);
+        root.setAttribute(ATTRIBUTE_IDENTIFIER, "id-\"1\"");
+
+        Element node = new Element(ELEMENT_NODE, ARCHIMATE3_NAMESPACE);
+        node.setAttribute(ATTRIBUTE_X, "-40");
+        node.setAttribute(ATTRIBUTE_Y, "007");
+        node.setAttribute(ATTRIBUTE_TYPE, "Label", XSI_NAMESPACE);
+        Element label = new Element(ELEMENT_LABEL, ARCHIMATE3_NAMESPACE);
+        label.setText("Gr\u00fc\u00dfe \\ \"quoted\"\nline\ttab");
+        node.addContent(label);
+        root.addContent(node);
+
+        Document doc = new Document(root);
+        assertEquals(TestSupport.toString(doc), TestSupport.toString(roundTrip(doc)));
+    }
+
+    @Test
+    public void testNumbers() throws Exception {
+        Element root = new Element(ELEMENT_MODEL, ARCHIMATE3_NAMESPACE);
+        root.setAttribute(ATTRIBUTE_X, "-40");
+        root.setAttribute(ATTRIBUTE_Y, "007");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new XMLExchangeJSONCodec().write(new Document(root), out);
+        String json = new String(out.toByteArray(), StandardCharsets.UTF_8);
+
+        // Plain integers are numbers, anything else stays a string
+        assertTrue(json.contains("\"@x\":-40"));
+        assertTrue(json.contains("\"@y\":\"007\""));
+    }
+
+    @Test
+    public void testFilterSkipsViews() throws Exception {
+        Document doc = TestSupport.createExchangeDocument(TestSupport.loadModel(TestSupport.archiFile1));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLExchangeJSONCodec codec = new XMLExchangeJSONCodec();
+        codec.write(doc, out);
+
+        Document result = codec.read(new ByteArrayInputStream(out.toByteArray()), new ImportContentFilter(false, true));
+        assertNull(result.getRootElement().getChild(ELEMENT_VIEWS, ARCHIMATE3_NAMESPACE));
+        assertEquals(doc.getRootElement().getChild(ELEMENT_ELEMENTS, ARCHIMATE3_NAMESPACE).getChildren().size(),
+                result.getRootElement().getChild(ELEMENT_ELEMENTS, ARCHIMATE3_NAMESPACE).getChildren().size());
+    }
+
+    @Test(expected=IOException.class)
+    public void testMalformed() throws Exception {
+        new XMLExchangeJSONCodec().read(new ByteArrayInputStream("{\"model\":{\"@identifier\":\"id-1\"".getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
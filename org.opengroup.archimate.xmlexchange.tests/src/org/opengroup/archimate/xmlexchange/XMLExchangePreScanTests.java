@@ -0,0 +1,153 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.jdom2.Document;
+import org.jdom2.filter.ElementFilter;
+import org.jdom2.input.SAXBuilder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateModel;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * XML Exchange Pre-Scan Tests
+ */
+@SuppressWarnings("nls")
+public class XMLExchangePreScanTests implements IXMLExchangeGlobals {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XMLExchangePreScanTests.class);
+    }
+
+    private static IArchimateModel model;
+    private static File file;
+    private static File truncatedFile;
+
+    @BeforeClass
+    public static void runOnceBeforeAllTests() throws Exception {
+        model = TestSupport.loadModel(TestSupport.archiFile1);
+
+        Map<String, String> metadata = new HashMap<String, String>();
+        metadata.put("creator", "Pre-Scan Tests");
+
+        file = new File(TestSupport.getTempFolder(), "prescan.xml");
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setSaveOrganisation(true);
+        exporter.setMetadata(metadata);
+        exporter.exportModel(model, file);
+
+        // A file that ends part way through the elements
+        truncatedFile = new File(TestSupport.getTempFolder(), "prescan-truncated.xml");
+        Files.write(truncatedFile.toPath(), ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<model xmlns=\"" + ARCHIMATE3_NAMESPACE.getURI() + "\" xmlns:dc=\"" + DC_NAMESPACE.getURI() + "\" identifier=\"id-1\">"
+                + "<name xml:lang=\"xx\">Other Name</name>"
+                + "<name xml:lang=\"en\">  Big   Model </name>"
+                + "<properties><property propertyDefinitionRef=\"pd-1\"><value>v</value></property></properties>"
+                + "<metadata><schema>Dublin Core</schema><schemaversion>1.1</schemaversion><dc:title>Title</dc:title></metadata>"
+                + "<elements><element identifier=\"id-2\"").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterClass
+    public static void runOnceAfterAllTests() {
+        file.delete();
+        truncatedFile.delete();
+    }
+
+    private int count(Document doc, String name) {
+        int count = 0;
+        for(Iterator<?> iter = doc.getRootElement().getDescendants(new ElementFilter(name, ARCHIMATE3_NAMESPACE)); iter.hasNext();) {
+            iter.next();
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        Document doc = new SAXBuilder().build(file);
+        XMLExchangePreScan.Counts counts = XMLExchangePreScan.count(file);
+
+        assertEquals(count(doc, ELEMENT_ELEMENT), counts.getElements());
+        assertEquals(count(doc, ELEMENT_RELATIONSHIP), counts.getRelationships());
+        assertEquals(count(doc, ELEMENT_PROPERTYDEFINITION), counts.getPropertyDefinitions());
+        assertEquals(count(doc, ELEMENT_VIEW), counts.getViews());
+        assertEquals(count(doc, ELEMENT_NODE), counts.getNodes());
+        assertEquals(count(doc, ELEMENT_CONNECTION), counts.getConnections());
+
+        assertTrue(counts.getElements() > 0);
+        assertTrue(counts.getNodes() > 0);
+    }
+
+    @Test
+    public void testPeekHeader() throws Exception {
+        XMLExchangePreScan.Header header = XMLExchangePreScan.peekHeader(file);
+
+        assertEquals(model.getName(), header.getName());
+        assertEquals(model.getPurpose(), header.getDocumentation());
+        assertEquals("Pre-Scan Tests", header.getMetadata().get("creator"));
+    }
+
+    @Test
+    public void testPeekHeaderStopsBeforeConcepts() throws Exception {
+        XMLExchangePreScan.Header header = XMLExchangePreScan.peekHeader(truncatedFile, new LanguageSelector("fr", "en"));
+
+        assertEquals("id-1", header.getIdentifier());
+        assertEquals("Big Model", header.getName());
+        assertNull(header.getDocumentation());
+        assertEquals(1, header.getMetadata().size());
+        assertEquals("Title", header.getMetadata().get("title"));
+
+        assertEquals("Other Name", XMLExchangePreScan.peekHeader(truncatedFile, new LanguageSelector("xx")).getName());
+    }
+
+    @Test(expected=IOException.class)
+    public void testCountReadsWholeFile() throws Exception {
+        XMLExchangePreScan.count(truncatedFile);
+    }
+
+    @Test
+    public void testProgressTotalIsWorkDone() throws Exception {
+        final int[] total = new int[1];
+        final int[] worked = new int[1];
+
+        XMLModelImporter importer = new XMLModelImporter();
+        importer.setProgressMonitor(new NullProgressMonitor() {
+            @Override
+            public void beginTask(String name, int totalWork) {
+                total[0] = totalWork;
+            }
+
+            @Override
+            public void worked(int work) {
+                worked[0] += work;
+            }
+        });
+
+        importer.createArchiMateModel(file);
+
+        assertEquals(XMLExchangePreScan.count(file).getTotal(), total[0]);
+        assertEquals(total[0], worked[0]);
+    }
+
+}
@@ -0,0 +1,169 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.filter.ElementFilter;
+import org.jdom2.input.SAXBuilder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IProperties;
+import com.archimatetool.model.IProperty;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * XML Exchange Query Tests
+ */
+@SuppressWarnings("nls")
+public class XMLExchangeQueryTests implements IXMLExchangeGlobals {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XMLExchangeQueryTests.class);
+    }
+
+    private static File file;
+    private static Document doc;
+    private static String elementID;
+    private static String propertyKey;
+
+    @BeforeClass
+    public static void runOnceBeforeAllTests() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+
+        // Give two concepts a property so there is one to find
+        propertyKey = "Query Key";
+        addProperty((IProperties)model.getFolder(FolderType.BUSINESS).getElements().get(0), propertyKey);
+        addProperty((IProperties)model.getFolder(FolderType.RELATIONS).getElements().get(0), propertyKey);
+
+        file = new File(TestSupport.getTempFolder(), "query.xml");
+        new XMLModelExporter().exportModel(model, file);
+        doc = new SAXBuilder().build(file);
+
+        // An element shown in a view
+        elementID = doc.getRootElement().getDescendants(new ElementFilter(ELEMENT_NODE, ARCHIMATE3_NAMESPACE)).next().getAttributeValue(ATTRIBUTE_ELEMENTREF);
+    }
+
+    private static void addProperty(IProperties properties, String key) {
+        IProperty property = IArchimateFactory.eINSTANCE.createProperty();
+        property.setKey(key);
+        property.setValue("value");
+        properties.getProperties().add(property);
+    }
+
+    @AfterClass
+    public static void runOnceAfterAllTests() {
+        file.delete();
+        XMLExchangeIndex.getIndexFile(file).delete();
+    }
+
+    private Set<String> expectedRelationships(String conceptID) {
+        Set<String> expected = new LinkedHashSet<String>();
+        for(Iterator<Element> iter = doc.getRootElement().getDescendants(new ElementFilter(ELEMENT_RELATIONSHIP, ARCHIMATE3_NAMESPACE)); iter.hasNext();) {
+            Element element = iter.next();
+            if(conceptID.equals(element.getAttributeValue(ATTRIBUTE_SOURCE)) || conceptID.equals(element.getAttributeValue(ATTRIBUTE_TARGET))) {
+                expected.add(element.getAttributeValue(ATTRIBUTE_IDENTIFIER));
+            }
+        }
+        return expected;
+    }
+
+    private Set<String> expectedViews(String conceptID) {
+        Set<String> expected = new LinkedHashSet<String>();
+        for(Iterator<Element> iter = doc.getRootElement().getDescendants(new ElementFilter(ELEMENT_NODE, ARCHIMATE3_NAMESPACE)); iter.hasNext();) {
+            Element element = iter.next();
+            if(conceptID.equals(element.getAttributeValue(ATTRIBUTE_ELEMENTREF))) {
+                Element parent = element.getParentElement();
+                while(!ELEMENT_VIEW.equals(parent.getName())) {
+                    parent = parent.getParentElement();
+                }
+                expected.add(parent.getAttributeValue(ATTRIBUTE_IDENTIFIER));
+            }
+        }
+        return expected;
+    }
+
+    @Test
+    public void testFindRelationships() throws Exception {
+        Set<String> expected = expectedRelationships(elementID);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, new XMLExchangeQuery(file).findRelationships(elementID));
+    }
+
+    @Test
+    public void testFindViews() throws Exception {
+        Set<String> expected = expectedViews(elementID);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, new XMLExchangeQuery(file).findViews(elementID));
+    }
+
+    @Test
+    public void testFindConceptsWithProperty() throws Exception {
+        Set<String> definitions = new LinkedHashSet<String>();
+        for(Iterator<Element> iter = doc.getRootElement().getDescendants(new ElementFilter(ELEMENT_PROPERTYDEFINITION, ARCHIMATE3_NAMESPACE)); iter.hasNext();) {
+            Element element = iter.next();
+            if(propertyKey.equals(element.getChildText(ELEMENT_NAME, ARCHIMATE3_NAMESPACE))) {
+                definitions.add(element.getAttributeValue(ATTRIBUTE_IDENTIFIER));
+            }
+        }
+
+        // Concepts only, not the model or views
+        Set<String> expected = new LinkedHashSet<String>();
+        for(Iterator<Element> iter = doc.getRootElement().getDescendants(new ElementFilter(ELEMENT_PROPERTY, ARCHIMATE3_NAMESPACE)); iter.hasNext();) {
+            Element element = iter.next();
+            Element concept = element.getParentElement().getParentElement();
+            if(definitions.contains(element.getAttributeValue(ATTRIBUTE_PROPERTY_IDENTIFIERREF))
+                    && (ELEMENT_ELEMENT.equals(concept.getName()) || ELEMENT_RELATIONSHIP.equals(concept.getName()))) {
+                expected.add(concept.getAttributeValue(ATTRIBUTE_IDENTIFIER));
+            }
+        }
+
+        assertEquals(2, expected.size());
+        assertEquals(expected, new XMLExchangeQuery(file).findConceptsWithProperty(propertyKey));
+    }
+
+    @Test
+    public void testFindNothing() throws Exception {
+        XMLExchangeQuery query = new XMLExchangeQuery(file);
+        assertTrue(query.findRelationships("not-there").isEmpty());
+        assertTrue(query.findViews("not-there").isEmpty());
+        assertTrue(query.findConceptsWithProperty("not-there").isEmpty());
+    }
+
+    @Test
+    public void testSameResultsWithIndex() throws Exception {
+        XMLExchangeQuery query = new XMLExchangeQuery(file);
+
+        Set<String> relationships = query.findRelationships(elementID);
+        Set<String> views = query.findViews(elementID);
+        Set<String> concepts = query.findConceptsWithProperty(propertyKey);
+
+        XMLExchangeIndex.build(file);
+
+        assertEquals(relationships, query.findRelationships(elementID));
+        assertEquals(views, query.findViews(elementID));
+        assertEquals(concepts, query.findConceptsWithProperty(propertyKey));
+
+        XMLExchangeIndex.getIndexFile(file).delete();
+    }
+
+}
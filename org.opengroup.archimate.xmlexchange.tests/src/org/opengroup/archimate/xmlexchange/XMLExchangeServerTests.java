@@ -0,0 +1,263 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateModel;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * XML Exchange Server Tests
+ */
+@SuppressWarnings("nls")
+public class XMLExchangeServerTests {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XMLExchangeServerTests.class);
+    }
+
+    private static class Response {
+        int status;
+        byte[] body;
+    }
+
+    private XMLExchangeEngine engine;
+    private XMLExchangeServer server;
+    private IArchimateModel model;
+    private byte[] xmlBytes;
+
+    @Before
+    public void runOnceBeforeEachTest() throws Exception {
+        engine = XMLExchangeEngine.builder().setSaveOrganisation(true).build();
+
+        model = TestSupport.loadModel(TestSupport.archiFile1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        engine.exportModel(model, out);
+        xmlBytes = out.toByteArray();
+
+        server = new XMLExchangeServer(engine);
+        server.setMaxConcurrentRequests(4);
+        server.setMaxQueuedRequests(8);
+    }
+
+    @After
+    public void runOnceAfterEachTest() {
+        server.stop(0);
+    }
+
+    private void start() throws IOException {
+        server.start(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    private Response request(String method, String path, byte[] body) throws IOException {
+        URL url = new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        connection.setRequestMethod(method);
+
+        if(body != null) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            OutputStream out = connection.getOutputStream();
+            out.write(body);
+            out.close();
+        }
+
+        Response response = new Response();
+        response.status = connection.getResponseCode();
+
+        InputStream in = response.status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if(in != null) {
+            byte[] buf = new byte[8192];
+            int n;
+            while((n = in.read(buf)) != -1) {
+                bytes.write(buf, 0, n);
+            }
+            in.close();
+        }
+        response.body = bytes.toByteArray();
+
+        connection.disconnect();
+        return response;
+    }
+
+    @Test
+    public void testImportEndpoint() throws Exception {
+        start();
+
+        Response response = request("POST", XMLExchangeServer.IMPORT_PATH, xmlBytes);
+        assertEquals(200, response.status);
+
+        IArchimateModel result = XMLExchangeServer.loadModel(new ByteArrayInputStream(response.body));
+        assertEquals(model.getName(), result.getName());
+        assertEquals(model.getDiagramModels().size(), result.getDiagramModels().size());
+    }
+
+    @Test
+    public void testExportAndValidateEndpoints() throws Exception {
+        start();
+
+        byte[] archiBytes = Files.readAllBytes(TestSupport.archiFile1.toPath());
+        Response response = request("POST", XMLExchangeServer.EXPORT_PATH, archiBytes);
+        assertEquals(200, response.status);
+
+        response = request("POST", XMLExchangeServer.VALIDATE_PATH, response.body);
+        assertEquals(200, response.status);
+    }
+
+    @Test
+    public void testBadRequests() throws Exception {
+        start();
+
+        // Not valid against the schema
+        Response response = request("POST", XMLExchangeServer.VALIDATE_PATH, "<model/>".getBytes(StandardCharsets.UTF_8));
+        assertEquals(422, response.status);
+
+        // Not XML
+        response = request("POST", XMLExchangeServer.IMPORT_PATH, "not xml".getBytes(StandardCharsets.UTF_8));
+        assertEquals(400, response.status);
+
+        // Not an Archi model
+        response = request("POST", XMLExchangeServer.EXPORT_PATH, "not xml".getBytes(StandardCharsets.UTF_8));
+        assertEquals(400, response.status);
+
+        // Wrong method
+        response = request("GET", XMLExchangeServer.IMPORT_PATH, null);
+        assertEquals(405, response.status);
+
+        assertEquals(2, server.getMetrics(XMLExchangeServer.IMPORT_PATH).getErrors());
+    }
+
+    @Test
+    public void testExportRefusesDoctype() throws Exception {
+        start();
+
+        // A model that loads without the DOCTYPE
+        String archi = new String(Files.readAllBytes(TestSupport.archiFile1.toPath()), StandardCharsets.UTF_8);
+        int end = archi.indexOf("?>") + 2;
+        String body = archi.substring(0, end) + "\n<!DOCTYPE model [<!ENTITY name \"value\">]>" + archi.substring(end);
+
+        Response response = request("POST", XMLExchangeServer.EXPORT_PATH, body.getBytes(StandardCharsets.UTF_8));
+        assertEquals(400, response.status);
+    }
+
+    @Test
+    public void testRequestTooLarge() throws Exception {
+        server.setMaxRequestSize(1024);
+        start();
+
+        Response response = request("POST", XMLExchangeServer.IMPORT_PATH, xmlBytes);
+        assertEquals(413, response.status);
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        server.setQueueTimeout(100);
+        start();
+
+        int clients = 16;
+        int requests = 96;
+
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+        try {
+            for(int i = 0; i < requests; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return request("POST", XMLExchangeServer.IMPORT_PATH, xmlBytes).status;
+                    }
+                }));
+            }
+
+            int ok = 0;
+            for(Future<Integer> result : results) {
+                int status = result.get(2, TimeUnit.MINUTES);
+                // Either converted or turned away by back-pressure
+                assertTrue("Unexpected status " + status, status == 200 || status == 503);
+                if(status == 200) {
+                    ok++;
+                }
+            }
+
+            assertTrue(ok > 0);
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        XMLExchangeServer.EndpointMetrics metrics = server.getMetrics(XMLExchangeServer.IMPORT_PATH);
+        assertEquals(requests, metrics.getRequests());
+        assertEquals(0, metrics.getErrors());
+
+        Response response = request("GET", XMLExchangeServer.METRICS_PATH, null);
+        assertEquals(200, response.status);
+        assertTrue(new String(response.body, StandardCharsets.UTF_8).contains("requests=" + requests));
+    }
+
+    @Test
+    public void testRequestsBeyondQueueAreRejected() throws Exception {
+        server.setMaxConcurrentRequests(1);
+        server.setMaxQueuedRequests(1);
+        server.setQueueTimeout(60000);
+        start();
+
+        // Two requests that declare a body but don't send it, so one holds the conversion slot and one the queue
+        List<Socket> stalled = new ArrayList<Socket>();
+
+        try {
+            for(int i = 0; i < 2; i++) {
+                Socket socket = new Socket("127.0.0.1", server.getAddress().getPort());
+                stalled.add(socket);
+                OutputStream out = socket.getOutputStream();
+                out.write(("POST " + XMLExchangeServer.IMPORT_PATH + " HTTP/1.1\r\nHost: 127.0.0.1\r\nContent-Length: 100\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            }
+
+            // Let the dispatcher take the stalled requests
+            Thread.sleep(500);
+
+            for(int i = 0; i < 3; i++) {
+                Response response = request("POST", XMLExchangeServer.IMPORT_PATH, xmlBytes);
+                assertEquals(503, response.status);
+            }
+        }
+        finally {
+            for(Socket socket : stalled) {
+                socket.close();
+            }
+        }
+    }
+
+}
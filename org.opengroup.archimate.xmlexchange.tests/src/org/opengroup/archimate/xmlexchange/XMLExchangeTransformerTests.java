@@ -0,0 +1,219 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.events.XMLEvent;
+
+import org.jdom2.Attribute;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.filter.ElementFilter;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.XMLOutputter;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opengroup.archimate.xmlexchange.XMLExchangeTransformer.DropSubtree;
+import org.opengroup.archimate.xmlexchange.XMLExchangeTransformer.DropViews;
+import org.opengroup.archimate.xmlexchange.XMLExchangeTransformer.FilterStage;
+import org.opengroup.archimate.xmlexchange.XMLExchangeTransformer.RemapIdentifiers;
+import org.opengroup.archimate.xmlexchange.XMLExchangeTransformer.RenamePropertyKey;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * XML Exchange Transformer Tests
+ */
+@SuppressWarnings("nls")
+public class XMLExchangeTransformerTests implements IXMLExchangeGlobals {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XMLExchangeTransformerTests.class);
+    }
+
+    private static File inputFile;
+    private static File outputFile;
+
+    @BeforeClass
+    public static void runOnceBeforeAllTests() throws Exception {
+        inputFile = new File(TestSupport.getTempFolder(), "transform.xml");
+        outputFile = new File(TestSupport.getTempFolder(), "transformed.xml");
+
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setSaveOrganisation(true);
+        exporter.exportModel(TestSupport.loadModel(TestSupport.archiFile1), inputFile);
+    }
+
+    @After
+    public void runAfterEachTest() {
+        outputFile.delete();
+    }
+
+    @AfterClass
+    public static void runOnceAfterAllTests() {
+        inputFile.delete();
+    }
+
+    private Document transform(XMLExchangeTransformer.Stage... stages) throws Exception {
+        XMLExchangeTransformer transformer = new XMLExchangeTransformer();
+        for(XMLExchangeTransformer.Stage stage : stages) {
+            transformer.addStage(stage);
+        }
+        transformer.transform(inputFile, outputFile);
+
+        // References are intact
+        assertTrue(new XMLIntegrityChecker().check(outputFile).isEmpty());
+
+        return new SAXBuilder().build(outputFile);
+    }
+
+    private int count(Document doc, String name) {
+        int count = 0;
+        for(Iterator<Element> iter = doc.getRootElement().getDescendants(new ElementFilter(name, ARCHIMATE3_NAMESPACE)); iter.hasNext();) {
+            iter.next();
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testNoStagesIsTheSame() throws Exception {
+        Document doc = transform(new FilterStage() {
+            @Override
+            protected boolean accept(XMLEvent event) {
+                return true;
+            }
+        });
+
+        XMLOutputter outputter = new XMLOutputter();
+        assertEquals(outputter.outputString(new SAXBuilder().build(inputFile).getRootElement()), outputter.outputString(doc.getRootElement()));
+    }
+
+    @Test
+    public void testDropSubtree() throws Exception {
+        assertTrue(count(new SAXBuilder().build(inputFile), ELEMENT_DOCUMENTATION) > 0);
+
+        Document doc = transform(new DropSubtree(ELEMENT_DOCUMENTATION));
+        assertEquals(0, count(doc, ELEMENT_DOCUMENTATION));
+    }
+
+    @Test
+    public void testDropSubtreeDropsEmptyContainers() throws Exception {
+        Document input = new SAXBuilder().build(inputFile);
+        assertTrue(count(input, ELEMENT_PROPERTIES) > 0);
+        assertTrue(count(input, ELEMENT_ORGANIZATIONS) > 0);
+
+        Document doc = transform(new DropSubtree(ELEMENT_PROPERTY, ELEMENT_ITEM));
+        assertEquals(0, count(doc, ELEMENT_PROPERTY));
+        assertEquals(0, count(doc, ELEMENT_PROPERTIES));
+        assertEquals(0, count(doc, ELEMENT_ORGANIZATIONS));
+
+        // Still valid against the schema
+        new XMLValidator().validateXML(outputFile);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testDropSubtreeRefusesReferencedElements() {
+        new DropSubtree(ELEMENT_DOCUMENTATION, ELEMENT_ELEMENT);
+    }
+
+    @Test
+    public void testDropViews() throws Exception {
+        Document input = new SAXBuilder().build(inputFile);
+        Element view = input.getRootElement().getDescendants(new ElementFilter(ELEMENT_VIEW, ARCHIMATE3_NAMESPACE)).next();
+        String viewID = view.getAttributeValue(ATTRIBUTE_IDENTIFIER);
+        String viewName = view.getChildText(ELEMENT_NAME, ARCHIMATE3_NAMESPACE);
+
+        Document doc = transform(new DropViews(Pattern.compile(Pattern.quote(viewName))));
+        assertEquals(count(input, ELEMENT_VIEW) - 1, count(doc, ELEMENT_VIEW));
+
+        // Nothing refers to the view
+        for(Iterator<Element> iter = doc.getRootElement().getDescendants(new ElementFilter()); iter.hasNext();) {
+            for(Attribute attribute : iter.next().getAttributes()) {
+                assertFalse(viewID.equals(attribute.getValue()));
+            }
+        }
+    }
+
+    @Test
+    public void testDropViewsForgetsTheLastTransform() throws Exception {
+        Document input = new SAXBuilder().build(inputFile);
+        Element view = input.getRootElement().getDescendants(new ElementFilter(ELEMENT_VIEW, ARCHIMATE3_NAMESPACE)).next();
+        String viewName = view.getChildText(ELEMENT_NAME, ARCHIMATE3_NAMESPACE);
+
+        XMLExchangeTransformer transformer = new XMLExchangeTransformer();
+        transformer.addStage(new DropViews(Pattern.compile(Pattern.quote(viewName))));
+        transformer.transform(inputFile, outputFile);
+        assertEquals(count(input, ELEMENT_VIEW) - 1, count(new SAXBuilder().build(outputFile), ELEMENT_VIEW));
+
+        // The same view with a name that doesn't match is kept the next time
+        view.getChild(ELEMENT_NAME, ARCHIMATE3_NAMESPACE).setText("Kept");
+        File renamedFile = new File(TestSupport.getTempFolder(), "transform-renamed.xml");
+        try(OutputStream out = new FileOutputStream(renamedFile)) {
+            new XMLOutputter().output(input, out);
+        }
+
+        transformer.transform(renamedFile, outputFile);
+        assertEquals(count(input, ELEMENT_VIEW), count(new SAXBuilder().build(outputFile), ELEMENT_VIEW));
+
+        renamedFile.delete();
+    }
+
+    @Test
+    public void testRenamePropertyKey() throws Exception {
+        Element definition = new SAXBuilder().build(inputFile).getRootElement()
+                .getDescendants(new ElementFilter(ELEMENT_PROPERTYDEFINITION, ARCHIMATE3_NAMESPACE)).next();
+        String identifier = definition.getAttributeValue(ATTRIBUTE_IDENTIFIER);
+        String key = definition.getChildText(ELEMENT_NAME, ARCHIMATE3_NAMESPACE);
+
+        Document doc = transform(new RenamePropertyKey(key, "Renamed Key"));
+
+        Element renamed = null;
+        for(Iterator<Element> iter = doc.getRootElement().getDescendants(new ElementFilter(ELEMENT_PROPERTYDEFINITION, ARCHIMATE3_NAMESPACE)); iter.hasNext();) {
+            Element element = iter.next();
+            if(identifier.equals(element.getAttributeValue(ATTRIBUTE_IDENTIFIER))) {
+                renamed = element;
+            }
+        }
+
+        assertNotNull(renamed);
+        assertEquals("Renamed Key", renamed.getChildText(ELEMENT_NAME, ARCHIMATE3_NAMESPACE));
+    }
+
+    @Test
+    public void testRemapIdentifiers() throws Exception {
+        Document doc = transform(new RemapIdentifiers(new RemapIdentifiers.IdentifierMap() {
+            @Override
+            public String map(String identifier) {
+                return "partner-" + identifier;
+            }
+        }));
+
+        for(Iterator<Element> iter = doc.getRootElement().getDescendants(new ElementFilter()); iter.hasNext();) {
+            String identifier = iter.next().getAttributeValue(ATTRIBUTE_IDENTIFIER);
+            assertTrue(identifier == null || identifier.startsWith("partner-"));
+        }
+
+        // Can still be imported
+        assertEquals(count(new SAXBuilder().build(inputFile), ELEMENT_NODE),
+                count(doc, ELEMENT_NODE));
+        new XMLModelImporter().createArchiMateModel(outputFile);
+    }
+
+}
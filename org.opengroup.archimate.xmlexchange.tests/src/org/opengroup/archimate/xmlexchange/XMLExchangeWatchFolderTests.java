@@ -0,0 +1,131 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.archimatetool.model.IArchimateModel;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * XML Exchange Watch Folder Tests
+ */
+@SuppressWarnings("nls")
+public class XMLExchangeWatchFolderTests {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XMLExchangeWatchFolderTests.class);
+    }
+
+    private class RecordingHandler implements XMLExchangeWatchFolder.Handler {
+        List<IArchimateModel> imported = new CopyOnWriteArrayList<IArchimateModel>();
+        List<File> failed = new CopyOnWriteArrayList<File>();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        @Override
+        public void fileImported(File file, IArchimateModel model) {
+            imported.add(model);
+            latch.countDown();
+        }
+
+        @Override
+        public void fileFailed(File file, Exception ex) {
+            failed.add(file);
+            latch.countDown();
+        }
+    }
+
+    private File folder;
+    private RecordingHandler handler;
+    private XMLExchangeWatchFolder watchFolder;
+
+    @Before
+    public void runOnceBeforeEachTest() throws Exception {
+        folder = new File(TestSupport.getTempFolder(), "watch-" + System.nanoTime());
+        folder.mkdirs();
+
+        handler = new RecordingHandler();
+        watchFolder = new XMLExchangeWatchFolder(folder, handler);
+        watchFolder.setDebounceTime(300);
+        watchFolder.start();
+    }
+
+    @After
+    public void runOnceAfterEachTest() {
+        watchFolder.stop();
+
+        for(File file : folder.listFiles()) {
+            file.delete();
+        }
+        folder.delete();
+    }
+
+    @Test
+    public void testBurstOfWritesIsImportedOnce() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new XMLModelExporter().exportModel(model, bytes);
+        byte[] contents = bytes.toByteArray();
+
+        // Write the file in several chunks to make a burst of events
+        File file = new File(folder, "model.xml");
+        try(OutputStream out = new FileOutputStream(file)) {
+            int chunk = contents.length / 4 + 1;
+            for(int offset = 0; offset < contents.length; offset += chunk) {
+                out.write(contents, offset, Math.min(chunk, contents.length - offset));
+                out.flush();
+                Thread.sleep(20);
+            }
+        }
+
+        // Ignored
+        Files.write(new File(folder, "notes.txt").toPath(), "hello".getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(handler.latch.await(30, TimeUnit.SECONDS));
+
+        // Allow time for any extra import to show up
+        Thread.sleep(1000);
+
+        assertEquals(1, handler.imported.size());
+        assertEquals(model.getName(), handler.imported.get(0).getName());
+        assertEquals(1, watchFolder.getProcessedCount());
+        assertTrue(watchFolder.getEventCount() >= 1);
+        assertEquals(watchFolder.getEventCount() - 1, watchFolder.getCoalescedCount());
+        assertEquals(0, watchFolder.getQueueSize());
+        assertEquals(0, watchFolder.getCurrentLag());
+        assertTrue(watchFolder.getLastLag() >= 300);
+    }
+
+    @Test
+    public void testInvalidFileFails() throws Exception {
+        Files.write(new File(folder, "bad.xml").toPath(), "<model/>".getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(handler.latch.await(30, TimeUnit.SECONDS));
+
+        assertEquals(1, handler.failed.size());
+        assertEquals(1, watchFolder.getFailedCount());
+        assertEquals(0, watchFolder.getProcessedCount());
+    }
+
+}
@@ -0,0 +1,178 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.emf.ecore.EObject;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.XMLOutputter;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opengroup.archimate.xmlexchange.XMLFederatedImporter.CollisionPolicy;
+
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * XML Federated Importer Tests
+ */
+@SuppressWarnings("nls")
+public class XMLFederatedImporterTests implements IXMLExchangeGlobals {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XMLFederatedImporterTests.class);
+    }
+
+    private static File fullFile, file1, file2;
+
+    @BeforeClass
+    public static void runOnceBeforeAllTests() throws Exception {
+        fullFile = new File(TestSupport.getTempFolder(), "federated.xml");
+        new XMLModelExporter().exportModel(TestSupport.loadModel(TestSupport.archiFile1), fullFile);
+
+        // The first file has half of the elements, the second has the rest and the relationships and views that refer to both
+        Document doc1 = new SAXBuilder().build(fullFile);
+        Document doc2 = new SAXBuilder().build(fullFile);
+
+        List<Element> elements1 = doc1.getRootElement().getChild(ELEMENT_ELEMENTS, ARCHIMATE3_NAMESPACE).getChildren();
+        List<Element> elements2 = doc2.getRootElement().getChild(ELEMENT_ELEMENTS, ARCHIMATE3_NAMESPACE).getChildren();
+        int half = elements1.size() / 2;
+        elements1.subList(half, elements1.size()).clear();
+        elements2.subList(0, half).clear();
+
+        doc1.getRootElement().removeChild(ELEMENT_RELATIONSHIPS, ARCHIMATE3_NAMESPACE);
+        doc1.getRootElement().removeChild(ELEMENT_VIEWS, ARCHIMATE3_NAMESPACE);
+
+        file1 = new File(TestSupport.getTempFolder(), "federated1.xml");
+        file2 = new File(TestSupport.getTempFolder(), "federated2.xml");
+        write(doc1, file1);
+        write(doc2, file2);
+    }
+
+    private static void write(Document doc, File file) throws Exception {
+        try(OutputStream out = new FileOutputStream(file)) {
+            new XMLOutputter().output(doc, out);
+        }
+    }
+
+    @AfterClass
+    public static void runOnceAfterAllTests() {
+        fullFile.delete();
+        file1.delete();
+        file2.delete();
+    }
+
+    // Objects in the folders, not the folders themselves
+    private int count(IArchimateModel model) {
+        int count = 0;
+        for(Iterator<EObject> iter = model.eAllContents(); iter.hasNext();) {
+            if(!(iter.next() instanceof IFolder)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int countConcepts(IArchimateModel model) {
+        int count = 0;
+        for(Iterator<EObject> iter = model.eAllContents(); iter.hasNext();) {
+            if(iter.next() instanceof IArchimateConcept) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testCrossFileReferencesAreResolved() throws Exception {
+        IArchimateModel expected = new XMLModelImporter().createArchiMateModel(fullFile);
+        IArchimateModel model = new XMLFederatedImporter().createArchiMateModel(Arrays.asList(file1, file2));
+
+        assertEquals(expected.getId(), model.getId());
+        assertEquals(expected.getName(), model.getName());
+        assertEquals(count(expected), count(model));
+        assertEquals(expected.getDiagramModels().size(), model.getDiagramModels().size());
+
+        for(Iterator<EObject> iter = model.eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+            if(eObject instanceof IArchimateRelationship) {
+                IArchimateRelationship relationship = (IArchimateRelationship)eObject;
+                assertNotNull(relationship.getSource());
+                assertNotNull(relationship.getTarget());
+                assertTrue(relationship.getSource().getArchimateModel() == model);
+                assertTrue(relationship.getTarget().getArchimateModel() == model);
+            }
+        }
+    }
+
+    @Test
+    public void testCollisionFails() throws Exception {
+        try {
+            new XMLFederatedImporter().createArchiMateModel(Arrays.asList(fullFile, file2));
+            fail("Should have thrown");
+        }
+        catch(XMLModelParserException ex) {
+            assertTrue(ex.getMessage().contains(file2.getName()));
+        }
+    }
+
+    @Test
+    public void testCollisionFirstWins() throws Exception {
+        IArchimateModel expected = new XMLModelImporter().createArchiMateModel(fullFile);
+
+        XMLFederatedImporter importer = new XMLFederatedImporter();
+        importer.setCollisionPolicy(CollisionPolicy.FIRST_WINS);
+        IArchimateModel model = importer.createArchiMateModel(Arrays.asList(fullFile, file2));
+
+        assertEquals(countConcepts(expected), countConcepts(model));
+
+        // The views of the second file are the same views
+        assertEquals(expected.getDiagramModels().size(), model.getDiagramModels().size());
+    }
+
+    @Test
+    public void testCollisionRename() throws Exception {
+        XMLFederatedImporter importer = new XMLFederatedImporter();
+        importer.setCollisionPolicy(CollisionPolicy.RENAME);
+        IArchimateModel model = importer.createArchiMateModel(Arrays.asList(fullFile, fullFile));
+
+        IArchimateModel expected = new XMLModelImporter().createArchiMateModel(fullFile);
+        assertEquals(countConcepts(expected) * 2, countConcepts(model));
+        assertEquals(expected.getDiagramModels().size() * 2, model.getDiagramModels().size());
+
+        // Concepts and views all have different identifiers
+        Set<String> ids = new HashSet<String>();
+        for(Iterator<EObject> iter = model.eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+            if(eObject instanceof IIdentifier && eObject.eContainer() instanceof IFolder) {
+                assertTrue(ids.add(((IIdentifier)eObject).getId()));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.jdom2.Document;
+import org.jdom2.input.SAXBuilder;
+import org.junit.Test;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * XML Integrity Checker Tests
+ */
+@SuppressWarnings("nls")
+public class XMLIntegrityCheckerTests {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XMLIntegrityCheckerTests.class);
+    }
+
+    private static final String BROKEN_XML =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<model xmlns=\"http://www.opengroup.org/xsd/archimate/3.0/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" identifier=\"id-model\">\n" +
+            "  <elements>\n" +
+            "    <element identifier=\"id-1\" xsi:type=\"BusinessActor\"/>\n" +
+            "    <element identifier=\"id-2\" xsi:type=\"BusinessRole\"/>\n" +
+            "    <element identifier=\"id-2\" xsi:type=\"BusinessRole\"/>\n" +
+            "  </elements>\n" +
+            "  <relationships>\n" +
+            "    <relationship identifier=\"id-r1\" source=\"id-1\" target=\"id-2\" xsi:type=\"Assignment\"/>\n" +
+            "    <relationship identifier=\"id-r2\" source=\"id-missing\" target=\"id-2\" xsi:type=\"Assignment\"/>\n" +
+            "  </relationships>\n" +
+            "  <views>\n" +
+            "    <diagrams>\n" +
+            "      <view identifier=\"id-v1\" xsi:type=\"Diagram\">\n" +
+            "        <node identifier=\"id-n1\" elementRef=\"id-1\" xsi:type=\"Element\" x=\"0\" y=\"0\" w=\"10\" h=\"10\"/>\n" +
+            "        <node identifier=\"id-n2\" elementRef=\"id-r1\" xsi:type=\"Element\" x=\"0\" y=\"0\" w=\"10\" h=\"10\"/>\n" +
+            "        <connection identifier=\"id-c1\" relationshipRef=\"id-r9\" xsi:type=\"Relationship\" source=\"id-n1\" target=\"id-n2\"/>\n" +
+            "      </view>\n" +
+            "    </diagrams>\n" +
+            "  </views>\n" +
+            "</model>\n";
+
+    private static List<XMLIntegrityChecker.Problem> check(String xml) throws Exception {
+        return new XMLIntegrityChecker().check(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testValidFilesHaveNoProblems() throws Exception {
+        assertTrue(new XMLIntegrityChecker().check(TestSupport.xmlFile1).isEmpty());
+        assertTrue(new XMLIntegrityChecker().check(TestSupport.xmlFile2).isEmpty());
+    }
+
+    @Test
+    public void testBinaryFileHasNoProblems() throws Exception {
+        File file = new File(TestSupport.getTempFolder(), "integrity.axb");
+        new XMLModelExporter().exportModelBinary(TestSupport.loadModel(TestSupport.archiFile1), file);
+        assertTrue(new XMLIntegrityChecker().check(file).isEmpty());
+    }
+
+    @Test
+    public void testAllProblemsAreReportedInOnePass() throws Exception {
+        List<XMLIntegrityChecker.Problem> problems = check(BROKEN_XML);
+
+        assertEquals(4, problems.size());
+
+        // Duplicate identifier
+        assertEquals(6, problems.get(0).getLine());
+        assertTrue(problems.get(0).getMessage().contains("id-2"));
+
+        // Dangling relationship source
+        assertEquals(10, problems.get(1).getLine());
+        assertTrue(problems.get(1).getMessage().contains("id-missing"));
+
+        // Node elementRef is a relationship
+        assertEquals(16, problems.get(2).getLine());
+        assertTrue(problems.get(2).getMessage().contains("id-r1"));
+
+        // Missing connection relationshipRef
+        assertEquals(17, problems.get(3).getLine());
+        assertTrue(problems.get(3).getMessage().contains("id-r9"));
+    }
+
+    @Test
+    public void testBinaryHasTheSameProblems() throws Exception {
+        Document doc = new SAXBuilder().build(new ByteArrayInputStream(BROKEN_XML.getBytes(StandardCharsets.UTF_8)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new XMLExchangeBinaryCodec().write(doc, out);
+
+        List<XMLIntegrityChecker.Problem> xmlProblems = check(BROKEN_XML);
+        List<XMLIntegrityChecker.Problem> binaryProblems = new XMLIntegrityChecker().check(new ByteArrayInputStream(out.toByteArray()));
+
+        // Same problems in the same order, but without line numbers
+        assertEquals(xmlProblems.size(), binaryProblems.size());
+        for(int i = 0; i < xmlProblems.size(); i++) {
+            assertEquals(0, binaryProblems.get(i).getLine());
+            assertEquals(xmlProblems.get(i).getMessage(), binaryProblems.get(i).getMessage());
+        }
+    }
+
+    @Test
+    public void testMaxProblems() throws Exception {
+        XMLIntegrityChecker checker = new XMLIntegrityChecker();
+        checker.setMaxProblems(2);
+
+        List<XMLIntegrityChecker.Problem> problems = checker.check(new ByteArrayInputStream(BROKEN_XML.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(2, problems.size());
+        assertEquals(4, checker.getProblemCount());
+    }
+
+    @Test
+    public void testValidateThrowsWithProblems() throws Exception {
+        File file = new File(TestSupport.getTempFolder(), "integrity-broken.xml");
+        Files.write(file.toPath(), BROKEN_XML.getBytes(StandardCharsets.UTF_8));
+
+        try {
+            new XMLIntegrityChecker().validate(file);
+            fail("Should have thrown");
+        }
+        catch(XMLModelParserException ex) {
+            assertTrue(ex.getMessage().contains("id-missing"));
+        }
+    }
+
+    @Test
+    public void testLargeFileHasNoProblems() throws Exception {
+        LargeModelGenerator generator = new LargeModelGenerator();
+        generator.setElementsPerType(500);
+        generator.setViewCount(200);
+
+        File file = new File(TestSupport.getTempFolder(), "integrity-large.xml");
+        generator.write(file);
+
+        List<XMLIntegrityChecker.Problem> problems = new XMLIntegrityChecker().check(file);
+        assertTrue(problems.isEmpty());
+
+        // Agrees with the schema
+        new XMLValidator().validateXML(file);
+
+        file.delete();
+    }
+
+}
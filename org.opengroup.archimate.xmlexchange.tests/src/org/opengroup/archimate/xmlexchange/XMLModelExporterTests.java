@@ -5,17 +5,31 @@
  */
 package org.opengroup.archimate.xmlexchange;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import junit.framework.JUnit4TestAdapter;
 
+import org.eclipse.emf.common.util.ECollections;
+import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.junit.Test;
 
 import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IFolder;
 import com.archimatetool.model.util.ArchimateResourceFactory;
 
 
@@ -60,4 +74,106 @@ public class XMLModelExporterTests {
         exporter.exportModel(model, outputFile);
     }
 
+    private static String exportCanonical(IArchimateModel model) throws IOException {
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setCanonical(true);
+        exporter.setSaveOrganisation(false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.exportModel(model, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    @Test
+    public void testCanonicalExportDoesNotDependOnOrder() throws IOException {
+        IArchimateModel model1 = TestSupport.loadModel(TestSupport.archiFile1);
+        IArchimateModel model2 = TestSupport.loadModel(TestSupport.archiFile1);
+        
+        // Reverse the order of everything in folders so that concepts and property keys are found in a different order
+        for(Iterator<EObject> iter = model2.eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+            if(eObject instanceof IFolder) {
+                ECollections.reverse(((IFolder)eObject).getElements());
+            }
+        }
+        
+        String canonical = exportCanonical(model1);
+        assertEquals(canonical, exportCanonical(model2));
+        
+        // One line ending
+        assertFalse(canonical.contains("\r"));
+    }
+    
+    @Test
+    public void testCanonicalExportSkipsUnchangedFile() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+        File file = new File(TestSupport.getTempFolder(), "canonical.xml");
+        file.delete();
+        
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setCanonical(true);
+        
+        exporter.exportModel(model, file);
+        assertTrue(exporter.isFileWritten());
+        String digest = exporter.getDigest();
+        
+        // Same model again is not written
+        assertTrue(file.setLastModified(10000));
+        exporter.exportModel(model, file);
+        assertFalse(exporter.isFileWritten());
+        assertEquals(10000, file.lastModified());
+        assertEquals(digest, exporter.getDigest());
+        
+        // A change is written
+        model.setName("Changed");
+        exporter.exportModel(model, file);
+        assertTrue(exporter.isFileWritten());
+        assertNotEquals(digest, exporter.getDigest());
+        
+        // The stream digest is the same as the file digest
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.exportModel(model, out);
+        assertArrayEquals(Files.readAllBytes(file.toPath()), out.toByteArray());
+    }
+    
+    @Test
+    public void testComparingFileOutputStream() throws IOException {
+        File file = new File(TestSupport.getTempFolder(), "comparing.txt");
+        file.delete();
+        
+        // New file
+        assertTrue(write(file, "abcdef"));
+        
+        // Same
+        assertFalse(write(file, "abcdef"));
+        
+        // Shorter, longer and different
+        assertTrue(write(file, "abc"));
+        assertEquals("abc", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertTrue(write(file, "abcdefgh"));
+        assertTrue(write(file, "abXdefgh"));
+        assertEquals("abXdefgh", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        
+        // No temporary files left
+        assertEquals(0, file.getParentFile().list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("~comparing");
+            }
+        }).length);
+    }
+    
+    private boolean write(File file, String content) throws IOException {
+        ComparingFileOutputStream out = new ComparingFileOutputStream(file);
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        
+        // Write in two parts
+        out.write(bytes, 0, 2);
+        for(int i = 2; i < bytes.length; i++) {
+            out.write(bytes[i]);
+        }
+        out.close();
+        
+        return out.isChanged();
+    }
+
 }
@@ -8,7 +8,17 @@ package org.opengroup.archimate.xmlexchange;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+
+import org.eclipse.emf.ecore.EObject;
+
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -18,6 +28,8 @@ import com.archimatetool.model.IArchimateModel;
 import com.archimatetool.model.IArchimatePackage;
 import com.archimatetool.model.IArchimateRelationship;
 import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+import com.archimatetool.model.util.ArchimateModelUtils;
 
 import junit.framework.JUnit4TestAdapter;
 
@@ -74,4 +86,112 @@ public class XMLModelImporterTests {
         assertEquals(element1, relation.getSource());
         assertEquals(element2, relation.getTarget());
     }
+    
+    @Test
+    public void testBulkConstructionGivesSameModel() throws Exception {
+        File xmlFile = new File(TestSupport.getTempFolder(), "bulk-test.xml"); //$NON-NLS-1$
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setSaveOrganisation(true);
+        exporter.exportModel(TestSupport.loadModel(TestSupport.archiFile1), xmlFile);
+        
+        importer.setBulkConstruction(false);
+        IArchimateModel model1 = importer.createArchiMateModel(xmlFile);
+        
+        importer = new XMLModelImporter();
+        importer.setBulkConstruction(true);
+        IArchimateModel model2 = importer.createArchiMateModel(xmlFile);
+        
+        XMLOutputter outputter = new XMLOutputter(Format.getCompactFormat());
+        assertEquals(outputter.outputString(new XMLModelExporter().createExchangeDocument(model1)),
+                outputter.outputString(new XMLModelExporter().createExchangeDocument(model2)));
+        
+        // Bulk constructed objects are contained and notify as normal afterwards
+        assertEquals(model2, model2.getDiagramModels().get(0).getArchimateModel());
+        assertEquals(true, model2.getDiagramModels().get(0).eDeliver());
+    }
+    
+    @Test
+    public void testOrganizationsImportedIntoFolders() throws Exception {
+        IArchimateModel model = TestSupport.loadModel(TestSupport.archiFile1);
+        
+        File xmlFile = new File(TestSupport.getTempFolder(), "organizations-test.xml"); //$NON-NLS-1$
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setSaveOrganisation(true);
+        exporter.exportModel(model, xmlFile);
+        
+        IArchimateModel imported = importer.createArchiMateModel(xmlFile);
+        
+        int count = 0;
+        
+        for(Iterator<EObject> iter = imported.eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+            if(eObject.eContainer() instanceof IFolder && !(eObject instanceof IFolder)) {
+                String id = ((IIdentifier)eObject).getId().substring(3); // Without "id-"
+                EObject original = ArchimateModelUtils.getObjectByID(model, id);
+                assertEquals(getFolderPath(original), getFolderPath(eObject));
+                count++;
+            }
+        }
+        
+        // Some concepts are in sub-folders
+        assertTrue(count > 0);
+        assertFalse(imported.getFolder(FolderType.BUSINESS).getFolders().isEmpty());
+        
+        xmlFile.delete();
+    }
+    
+    @Test
+    public void testOrganizationItemForSeveralTopLevelFolders() throws Exception {
+        File xmlFile = new File(TestSupport.getTempFolder(), "organizations-test.xml"); //$NON-NLS-1$
+        
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" //$NON-NLS-1$
+                + "<model xmlns=\"http://www.opengroup.org/xsd/archimate/3.0/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" identifier=\"id-model\">" //$NON-NLS-1$
+                + "<name>Model</name>" //$NON-NLS-1$
+                + "<elements>" //$NON-NLS-1$
+                + "<element identifier=\"id-1\" xsi:type=\"BusinessRole\"><name>Role</name></element>" //$NON-NLS-1$
+                + "<element identifier=\"id-2\" xsi:type=\"BusinessProcess\"><name>Process</name></element>" //$NON-NLS-1$
+                + "</elements>" //$NON-NLS-1$
+                + "<relationships>" //$NON-NLS-1$
+                + "<relationship identifier=\"id-3\" source=\"id-1\" target=\"id-2\" xsi:type=\"Assignment\"/>" //$NON-NLS-1$
+                + "</relationships>" //$NON-NLS-1$
+                + "<organizations>" //$NON-NLS-1$
+                + "<item><label>Project</label><documentation>Notes</documentation>" //$NON-NLS-1$
+                + "<item><label>Roles</label><item identifierRef=\"id-1\"/></item>" //$NON-NLS-1$
+                + "<item identifierRef=\"id-3\"/>" //$NON-NLS-1$
+                + "</item>" //$NON-NLS-1$
+                + "</organizations>" //$NON-NLS-1$
+                + "</model>"; //$NON-NLS-1$
+        Files.write(xmlFile.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        
+        IArchimateModel model = importer.createArchiMateModel(xmlFile);
+        
+        // The folder is created under each top level folder that has content for it
+        IFolder businessFolder = model.getFolder(FolderType.BUSINESS);
+        assertEquals(1, businessFolder.getFolders().size());
+        IFolder projectFolder = businessFolder.getFolders().get(0);
+        assertEquals("Project", projectFolder.getName()); //$NON-NLS-1$
+        assertEquals("Notes", projectFolder.getDocumentation()); //$NON-NLS-1$
+        assertEquals("Roles", projectFolder.getFolders().get(0).getName()); //$NON-NLS-1$
+        assertEquals("id-1", ((IIdentifier)projectFolder.getFolders().get(0).getElements().get(0)).getId()); //$NON-NLS-1$
+        
+        IFolder relationsFolder = model.getFolder(FolderType.RELATIONS);
+        assertEquals("Project", relationsFolder.getFolders().get(0).getName()); //$NON-NLS-1$
+        assertEquals("id-3", ((IIdentifier)relationsFolder.getFolders().get(0).getElements().get(0)).getId()); //$NON-NLS-1$
+        
+        // Not in an item so in its default folder
+        assertEquals("id-2", ((IIdentifier)businessFolder.getElements().get(0)).getId()); //$NON-NLS-1$
+        
+        xmlFile.delete();
+    }
+    
+    /**
+     * @return The names of the folders that an object is in, from the top level folder down
+     */
+    private String getFolderPath(EObject eObject) {
+        String path = ""; //$NON-NLS-1$
+        for(EObject container = eObject.eContainer(); container instanceof IFolder; container = container.eContainer()) {
+            path = ((IFolder)container).getName() + "/" + path; //$NON-NLS-1$
+        }
+        return path;
+    }
 }
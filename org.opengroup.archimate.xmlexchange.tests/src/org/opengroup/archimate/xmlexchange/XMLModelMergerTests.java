@@ -0,0 +1,256 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.gef.commands.Command;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.archimatetool.model.FolderType;
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateFactory;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelArchimateComponent;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.model.IDiagramModelConnection;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.util.ArchimateModelUtils;
+
+import junit.framework.JUnit4TestAdapter;
+
+
+/**
+ * XML Model Merger Tests
+ */
+@SuppressWarnings("nls")
+public class XMLModelMergerTests {
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(XMLModelMergerTests.class);
+    }
+
+    private File xmlFile;
+
+    @Before
+    public void runOnceBeforeEachTest() throws Exception {
+        xmlFile = new File(TestSupport.getTempFolder(), "merge-test.xml");
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.exportModel(TestSupport.loadModel(TestSupport.archiFile1), xmlFile);
+    }
+
+    private IArchimateModel importModel() throws Exception {
+        return new XMLModelImporter().createArchiMateModel(xmlFile);
+    }
+
+    private static String asString(IArchimateModel model) {
+        return new XMLOutputter(Format.getCompactFormat()).outputString(new XMLModelExporter().createExchangeDocument(model));
+    }
+
+    /**
+     * @return The diagram components in the model that reference a concept
+     */
+    private static List<IDiagramModelArchimateComponent> getDiagramComponents(IArchimateModel model, IArchimateConcept concept) {
+        List<IDiagramModelArchimateComponent> components = new ArrayList<IDiagramModelArchimateComponent>();
+
+        for(IDiagramModel dm : model.getDiagramModels()) {
+            for(Iterator<EObject> iter = dm.eAllContents(); iter.hasNext();) {
+                EObject eObject = iter.next();
+                if(eObject instanceof IDiagramModelArchimateComponent && ((IDiagramModelArchimateComponent)eObject).getArchimateConcept() == concept) {
+                    components.add((IDiagramModelArchimateComponent)eObject);
+                }
+            }
+        }
+
+        return components;
+    }
+
+    private static void assertNoDiagramComponentsOfRemovedConcepts(IArchimateModel model) {
+        for(IDiagramModel dm : model.getDiagramModels()) {
+            for(Iterator<EObject> iter = dm.eAllContents(); iter.hasNext();) {
+                EObject eObject = iter.next();
+                if(eObject instanceof IDiagramModelArchimateComponent) {
+                    IArchimateConcept concept = ((IDiagramModelArchimateComponent)eObject).getArchimateConcept();
+                    assertTrue(concept != null && concept.getArchimateModel() == model);
+                    assertEquals(concept, ArchimateModelUtils.getObjectByID(model, concept.getId()));
+                }
+                if(eObject instanceof IDiagramModelConnection) {
+                    IDiagramModelConnection connection = (IDiagramModelConnection)eObject;
+                    assertEquals(dm, connection.getSource().getDiagramModel());
+                    assertEquals(dm, connection.getTarget().getDiagramModel());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMergeSameModelHasNoChanges() throws Exception {
+        IArchimateModel target = importModel();
+
+        XMLModelMerger merger = new XMLModelMerger(target);
+        Command command = merger.createMergeCommand(importModel());
+
+        assertFalse(command.canExecute());
+        assertEquals(0, merger.getAddedCount());
+        assertEquals(0, merger.getUpdatedCount());
+        assertEquals(0, merger.getRemovedCount());
+    }
+
+    @Test
+    public void testMergeAddUpdateRemoveAndUndo() throws Exception {
+        IArchimateModel target = importModel();
+        String original = asString(target);
+
+        IArchimateModel incoming = importModel();
+
+        // Update an element
+        IFolder businessFolder = incoming.getFolder(FolderType.BUSINESS);
+        IArchimateElement changed = (IArchimateElement)businessFolder.getElements().get(0);
+        changed.setName("Changed name");
+
+        // Remove a relationship
+        IArchimateRelationship removed = (IArchimateRelationship)incoming.getFolder(FolderType.RELATIONS).getElements().get(0);
+        String removedID = removed.getId();
+        EcoreUtil.remove(removed);
+        for(IDiagramModelArchimateComponent connection : getDiagramComponents(incoming, removed)) {
+            ((IDiagramModelConnection)connection).disconnect();
+        }
+
+        // Add an element
+        IArchimateElement added = IArchimateFactory.eINSTANCE.createBusinessActor();
+        added.setName("New actor");
+        businessFolder.getElements().add(added);
+
+        String expected = asString(incoming);
+
+        XMLModelMerger merger = new XMLModelMerger(target);
+        Command command = merger.createMergeCommand(incoming);
+
+        assertEquals(1, merger.getAddedCount());
+        assertEquals(1, merger.getRemovedCount());
+        assertTrue(merger.getUpdatedCount() >= 1);
+
+        // Nothing changes until executed
+        assertEquals(original, asString(target));
+
+        command.execute();
+
+        EObject updated = ArchimateModelUtils.getObjectByID(target, changed.getId());
+        assertEquals("Changed name", ((IArchimateElement)updated).getName());
+        assertNull(ArchimateModelUtils.getObjectByID(target, removedID));
+        assertTrue(ArchimateModelUtils.getObjectByID(target, added.getId()) != null);
+        assertNoDiagramComponentsOfRemovedConcepts(target);
+
+        // Existing objects are kept, not replaced
+        assertTrue(updated.eContainer() != null);
+        assertEquals(target, ((IArchimateElement)updated).getArchimateModel());
+
+        assertEquals(expected, asString(target));
+
+        command.undo();
+        assertEquals(original, asString(target));
+
+        command.redo();
+        assertEquals(expected, asString(target));
+        assertNoDiagramComponentsOfRemovedConcepts(target);
+    }
+
+    @Test
+    public void testMergeRemovesDiagramComponentsOfRemovedConcepts() throws Exception {
+        IArchimateModel target = importModel();
+        String original = asString(target);
+
+        IArchimateModel incoming = importModel();
+
+        // Remove an element that is in a view and its relationships from the folders but leave the views as they are
+        IArchimateElement removed = null;
+        for(IDiagramModel dm : incoming.getDiagramModels()) {
+            for(Iterator<EObject> iter = dm.eAllContents(); iter.hasNext() && removed == null;) {
+                EObject eObject = iter.next();
+                if(eObject instanceof IDiagramModelArchimateObject && !((IDiagramModelArchimateObject)eObject).getSourceConnections().isEmpty()) {
+                    removed = ((IDiagramModelArchimateObject)eObject).getArchimateElement();
+                }
+            }
+        }
+        assertTrue(removed != null);
+
+        EObject existing = ArchimateModelUtils.getObjectByID(target, removed.getId());
+        assertFalse(getDiagramComponents(target, (IArchimateConcept)existing).isEmpty());
+
+        int relationships = 0;
+        for(IArchimateRelationship relationship : ArchimateModelUtils.getAllRelationshipsForConcept(removed)) {
+            EcoreUtil.remove(relationship);
+            relationships++;
+        }
+        EcoreUtil.remove(removed);
+
+        XMLModelMerger merger = new XMLModelMerger(target);
+        Command command = merger.createMergeCommand(incoming);
+        assertEquals(relationships + 1, merger.getRemovedCount());
+
+        command.execute();
+
+        assertNull(ArchimateModelUtils.getObjectByID(target, removed.getId()));
+        assertTrue(getDiagramComponents(target, (IArchimateConcept)existing).isEmpty());
+        assertNoDiagramComponentsOfRemovedConcepts(target);
+
+        command.undo();
+        assertEquals(original, asString(target));
+
+        command.redo();
+        assertNoDiagramComponentsOfRemovedConcepts(target);
+    }
+
+    @Test
+    public void testMergeSmallChangeToLargeModel() throws Exception {
+        int size = 20000;
+
+        IArchimateModel target = IArchimateFactory.eINSTANCE.createArchimateModel();
+        target.setDefaults();
+
+        IFolder folder = target.getFolder(FolderType.BUSINESS);
+        for(int i = 0; i < size; i++) {
+            IArchimateElement element = IArchimateFactory.eINSTANCE.createBusinessObject();
+            element.setName("Object " + i);
+            folder.getElements().add(element);
+        }
+
+        IArchimateModel incoming = EcoreUtil.copy(target);
+
+        // Change 1%
+        IFolder incomingFolder = incoming.getFolder(FolderType.BUSINESS);
+        for(int i = 0; i < size; i += 100) {
+            ((IArchimateElement)incomingFolder.getElements().get(i)).setName("Changed " + i);
+        }
+
+        XMLModelMerger merger = new XMLModelMerger(target);
+        Command command = merger.createMergeCommand(incoming);
+        command.execute();
+
+        assertEquals(size / 100, merger.getUpdatedCount());
+        assertEquals(0, merger.getAddedCount());
+        assertEquals(0, merger.getRemovedCount());
+        assertEquals("Changed 100", ((IArchimateElement)folder.getElements().get(100)).getName());
+        assertEquals(size, folder.getElements().size());
+    }
+
+}
@@ -0,0 +1,243 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.emf.ecore.EObject;
+
+import com.archimatetool.model.IBounds;
+import com.archimatetool.model.IDiagramModelBendpoint;
+import com.archimatetool.model.IDiagramModelConnection;
+import com.archimatetool.model.IDiagramModelObject;
+
+
+/**
+ * Converts between Archi's relative bendpoints and the absolute bendpoints of the exchange format
+ *
+ * Archi stores each bendpoint as offsets from the centres of the source and target nodes, and places it at a weighted
+ * mix of the two. The exchange format stores absolute x,y positions.
+ *
+ * The kernels work on int arrays so a connection with any number of bendpoints is converted without creating objects.
+ * An instance keeps its arrays and reuses them for each connection, so use one instance per export or import.
+ */
+final class BendpointTransform {
+
+    // startX, startY, endX, endY for each bendpoint
+    private int[] fRelative = new int[64];
+
+    // x, y for each bendpoint
+    private int[] fAbsolute = new int[32];
+
+    private int fCount;
+
+    // Absolute centres of the source and target
+    private int fSourceX, fSourceY, fTargetX, fTargetY;
+
+    // ========================================= Kernels ======================================
+
+    /**
+     * Convert relative bendpoints to absolute positions
+     * @param relative startX, startY, endX, endY for each bendpoint
+     * @param count The number of bendpoints
+     * @param absolute Receives x, y for each bendpoint
+     */
+    static void toAbsolute(int[] relative, int count, int sourceX, int sourceY, int targetX, int targetY, int[] absolute) {
+        double total = count + 1;
+
+        for(int i = 0; i < count; i++) {
+            // The weight is between 0.0 and 1.0. A weight of 0.0 follows the start point and 1.0 follows the end point.
+            double weight = (i + 1) / total;
+            int r = i * 4;
+
+            double startX = (sourceX + relative[r]) * (1.0 - weight);
+            double startY = (sourceY + relative[r + 1]) * (1.0 - weight);
+            double endX = (targetX + relative[r + 2]) * weight;
+            double endY = (targetY + relative[r + 3]) * weight;
+
+            absolute[i * 2] = (int)(startX + endX);
+            absolute[i * 2 + 1] = (int)(startY + endY);
+        }
+    }
+
+    /**
+     * Convert absolute positions to relative bendpoints
+     * @param absolute x, y for each bendpoint
+     * @param count The number of bendpoints
+     * @param relative Receives startX, startY, endX, endY for each bendpoint
+     */
+    static void toRelative(int[] absolute, int count, int sourceX, int sourceY, int targetX, int targetY, int[] relative) {
+        for(int i = 0; i < count; i++) {
+            int x = absolute[i * 2];
+            int y = absolute[i * 2 + 1];
+            int r = i * 4;
+
+            relative[r] = x - sourceX;
+            relative[r + 1] = y - sourceY;
+            relative[r + 2] = x - targetX;
+            relative[r + 3] = y - targetY;
+        }
+    }
+
+    // ========================================= Export ======================================
+
+    /**
+     * @return true if the bendpoints of a connection can be converted, that is its source and target are both nodes
+     */
+    static boolean canConvert(IDiagramModelConnection connection) {
+        // TODO: Doesn't work for connection->connection
+        return connection.getSource() instanceof IDiagramModelObject && connection.getTarget() instanceof IDiagramModelObject;
+    }
+
+    /**
+     * Calculate the absolute positions of the bendpoints of a connection
+     * @return The number of bendpoints, 0 if the source or target is a connection
+     */
+    int computeAbsolute(IDiagramModelConnection connection) {
+        fCount = 0;
+
+        if(!canConvert(connection)) {
+            return 0;
+        }
+
+        // Centres are calculated once for the connection
+        IDiagramModelObject source = (IDiagramModelObject)connection.getSource();
+        IDiagramModelObject target = (IDiagramModelObject)connection.getTarget();
+
+        return computeAbsolute(connection, getAbsoluteCentreX(source), getAbsoluteCentreY(source),
+                getAbsoluteCentreX(target), getAbsoluteCentreY(target));
+    }
+
+    /**
+     * Calculate the absolute positions of the bendpoints of a connection when the absolute centres of its source and target are known
+     * @return The number of bendpoints
+     */
+    int computeAbsolute(IDiagramModelConnection connection, int sourceX, int sourceY, int targetX, int targetY) {
+        fCount = 0;
+
+        List<IDiagramModelBendpoint> bendpoints = connection.getBendpoints();
+        int count = bendpoints.size();
+        if(count == 0) {
+            return 0;
+        }
+
+        ensureCapacity(count);
+
+        for(int i = 0; i < count; i++) {
+            IDiagramModelBendpoint bendpoint = bendpoints.get(i);
+            int r = i * 4;
+            fRelative[r] = bendpoint.getStartX();
+            fRelative[r + 1] = bendpoint.getStartY();
+            fRelative[r + 2] = bendpoint.getEndX();
+            fRelative[r + 3] = bendpoint.getEndY();
+        }
+
+        fSourceX = sourceX;
+        fSourceY = sourceY;
+        fTargetX = targetX;
+        fTargetY = targetY;
+
+        toAbsolute(fRelative, count, fSourceX, fSourceY, fTargetX, fTargetY, fAbsolute);
+
+        fCount = count;
+        return count;
+    }
+
+    /**
+     * @return The absolute x of a bendpoint after {@link #computeAbsolute(IDiagramModelConnection)}
+     */
+    int getX(int index) {
+        return fAbsolute[index * 2];
+    }
+
+    /**
+     * @return The absolute y of a bendpoint after {@link #computeAbsolute(IDiagramModelConnection)}
+     */
+    int getY(int index) {
+        return fAbsolute[index * 2 + 1];
+    }
+
+    int getCount() {
+        return fCount;
+    }
+
+    // ========================================= Import ======================================
+
+    /**
+     * Start collecting absolute positions for a connection between two nodes with the given absolute bounds
+     */
+    void beginAbsolute(IBounds sourceBounds, IBounds targetBounds) {
+        fCount = 0;
+        fSourceX = sourceBounds.getX() + sourceBounds.getWidth() / 2;
+        fSourceY = sourceBounds.getY() + sourceBounds.getHeight() / 2;
+        fTargetX = targetBounds.getX() + targetBounds.getWidth() / 2;
+        fTargetY = targetBounds.getY() + targetBounds.getHeight() / 2;
+    }
+
+    /**
+     * Add an absolute position
+     */
+    void addAbsolute(int x, int y) {
+        ensureCapacity(fCount + 1);
+        fAbsolute[fCount * 2] = x;
+        fAbsolute[fCount * 2 + 1] = y;
+        fCount++;
+    }
+
+    /**
+     * Convert the collected absolute positions to relative bendpoints
+     */
+    void computeRelative() {
+        toRelative(fAbsolute, fCount, fSourceX, fSourceY, fTargetX, fTargetY, fRelative);
+    }
+
+    /**
+     * Set a bendpoint from the relative values after {@link #computeRelative()}
+     */
+    void setBendpoint(int index, IDiagramModelBendpoint bendpoint) {
+        int r = index * 4;
+        bendpoint.setStartX(fRelative[r]);
+        bendpoint.setStartY(fRelative[r + 1]);
+        bendpoint.setEndX(fRelative[r + 2]);
+        bendpoint.setEndY(fRelative[r + 3]);
+    }
+
+    // ========================================= Helpers ======================================
+
+    private void ensureCapacity(int count) {
+        if(fAbsolute.length < count * 2) {
+            int size = Math.max(count, fAbsolute.length);
+            fAbsolute = Arrays.copyOf(fAbsolute, size * 2);
+            fRelative = Arrays.copyOf(fRelative, size * 4);
+        }
+    }
+
+    /**
+     * The same as the centre of {@link XMLExchangeUtils#getAbsoluteBounds(IDiagramModelObject)} without copying bounds
+     */
+    private static int getAbsoluteCentreX(IDiagramModelObject dmo) {
+        IBounds bounds = dmo.getBounds();
+        int x = bounds.getX() + bounds.getWidth() / 2;
+
+        for(EObject container = dmo.eContainer(); container instanceof IDiagramModelObject; container = container.eContainer()) {
+            x += ((IDiagramModelObject)container).getBounds().getX();
+        }
+
+        return x;
+    }
+
+    private static int getAbsoluteCentreY(IDiagramModelObject dmo) {
+        IBounds bounds = dmo.getBounds();
+        int y = bounds.getY() + bounds.getHeight() / 2;
+
+        for(EObject container = dmo.eContainer(); container instanceof IDiagramModelObject; container = container.eContainer()) {
+            y += ((IDiagramModelObject)container).getBounds().getY();
+        }
+
+        return y;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.InternalEList;
+
+
+/**
+ * Collects new objects for each containment list and attaches them in one batch.
+ *
+ * Adding objects one at a time to a containment list sends a notification and performs a uniqueness check
+ * for every add, which is O(n^2) for large folders. Here the objects are queued and then added with
+ * notification delivery turned off on the owner, using the list's unique-add path.
+ * The objects are newly created so they can't already be in the list.
+ *
+ * If bulk mode is off objects are added to their list straight away.
+ */
+final class BulkModelBuilder {
+
+    private static class Pending {
+        EObject owner;
+        EList<?> list;
+        List<EObject> objects = new ArrayList<EObject>();
+    }
+
+    private final boolean fBulk;
+
+    // Keyed by list identity as EList.equals() compares the contents
+    private Map<EList<?>, Pending> fPending = new IdentityHashMap<EList<?>, Pending>();
+
+    BulkModelBuilder(boolean bulk) {
+        fBulk = bulk;
+    }
+
+    boolean isBulk() {
+        return fBulk;
+    }
+
+    /**
+     * Add an object to the containment list of its owner, or queue it if in bulk mode
+     * @param owner The owner of the list
+     * @param list The containment list
+     * @param object The new object
+     */
+    @SuppressWarnings("unchecked")
+    void add(EObject owner, EList<? extends EObject> list, EObject object) {
+        if(!fBulk) {
+            ((EList<EObject>)list).add(object);
+            return;
+        }
+
+        Pending pending = fPending.get(list);
+        if(pending == null) {
+            pending = new Pending();
+            pending.owner = owner;
+            pending.list = list;
+            fPending.put(list, pending);
+        }
+
+        pending.objects.add(object);
+    }
+
+    /**
+     * Attach all queued objects to their lists.
+     * Notification delivery on each owner is suspended while adding and restored afterwards.
+     */
+    @SuppressWarnings("unchecked")
+    void flush() {
+        for(Pending pending : fPending.values()) {
+            boolean deliver = pending.owner.eDeliver();
+            pending.owner.eSetDeliver(false);
+
+            try {
+                if(pending.list instanceof InternalEList) {
+                    ((InternalEList<EObject>)pending.list).addAllUnique(pending.objects);
+                }
+                else {
+                    ((EList<EObject>)pending.list).addAll(pending.objects);
+                }
+            }
+            finally {
+                pending.owner.eSetDeliver(deliver);
+            }
+        }
+
+        fPending.clear();
+    }
+}
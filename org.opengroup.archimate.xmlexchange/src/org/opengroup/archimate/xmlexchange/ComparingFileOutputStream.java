@@ -0,0 +1,230 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+
+/**
+ * An OutputStream to a file that only writes to disk if the content is different from the existing file
+ *
+ * Written bytes are compared with the existing file as they arrive and added to a SHA-256 digest.
+ * Nothing is written while they match. At the first difference the matching part is copied to a temporary file
+ * and writing carries on there, and on close the temporary file replaces the target.
+ * If the content is the same the file is not touched.
+ */
+class ComparingFileOutputStream extends OutputStream {
+
+    private final File fFile;
+    private final MessageDigest fDigest;
+
+    // The existing file while the content still matches it, or null
+    private InputStream fExisting;
+
+    // Number of bytes matched so far
+    private long fMatched;
+    private final byte[] fCompareBuffer = new byte[8 * 1024];
+
+    // The temporary file and stream once the content has changed, or null
+    private File fTmpFile;
+    private OutputStream fOut;
+
+    private boolean fClosed;
+    private boolean fChanged;
+    private byte[] fDigestBytes;
+
+    ComparingFileOutputStream(File file) throws IOException {
+        fFile = file;
+
+        try {
+            fDigest = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+        }
+        catch(NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+
+        if(file.isFile()) {
+            fExisting = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+        }
+        else {
+            startWriting();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        fDigest.update((byte)b);
+
+        if(fExisting != null) {
+            if(fExisting.read() == (b & 0xFF)) {
+                fMatched++;
+                return;
+            }
+            startWriting();
+        }
+
+        fOut.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        fDigest.update(b, off, len);
+
+        int i = 0;
+
+        // Compare while matching
+        while(fExisting != null && i < len) {
+            int read = fExisting.read(fCompareBuffer, 0, Math.min(fCompareBuffer.length, len - i));
+            if(read == -1) {
+                startWriting();
+                break;
+            }
+
+            int j = 0;
+            while(j < read && fCompareBuffer[j] == b[off + i + j]) {
+                j++;
+            }
+
+            fMatched += j;
+            i += j;
+
+            if(j < read) {
+                startWriting();
+            }
+        }
+
+        if(i < len) {
+            fOut.write(b, off + i, len - i);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if(fOut != null) {
+            fOut.flush();
+        }
+    }
+
+    /**
+     * Close and replace the target file if the content has changed
+     */
+    @Override
+    public void close() throws IOException {
+        if(fClosed) {
+            return;
+        }
+        fClosed = true;
+
+        try {
+            // The existing file is longer
+            if(fExisting != null && fExisting.read() != -1) {
+                startWriting();
+            }
+
+            fDigestBytes = fDigest.digest();
+
+            if(fOut != null) {
+                fOut.close();
+                fOut = null;
+
+                try {
+                    Files.move(fTmpFile.toPath(), fFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                catch(AtomicMoveNotSupportedException ex) {
+                    Files.move(fTmpFile.toPath(), fFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        finally {
+            closeExisting();
+
+            if(fOut != null) {
+                fOut.close();
+            }
+
+            if(fTmpFile != null) {
+                fTmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Close without changing the target file
+     */
+    void abort() throws IOException {
+        fClosed = true;
+        closeExisting();
+
+        if(fOut != null) {
+            fOut.close();
+            fOut = null;
+        }
+
+        if(fTmpFile != null) {
+            fTmpFile.delete();
+        }
+    }
+
+    /**
+     * @return true if the content was different, or the file didn't exist, and the file was written. Valid after close.
+     */
+    boolean isChanged() {
+        return fChanged;
+    }
+
+    /**
+     * @return The SHA-256 digest of the content. Valid after close.
+     */
+    byte[] getDigest() {
+        return fDigestBytes == null ? null : fDigestBytes.clone();
+    }
+
+    /**
+     * Start writing to a temporary file, copying the part that matched the existing file
+     */
+    private void startWriting() throws IOException {
+        closeExisting();
+
+        File folder = fFile.getAbsoluteFile().getParentFile();
+        fTmpFile = File.createTempFile("~" + fFile.getName(), ".tmp", folder); //$NON-NLS-1$ //$NON-NLS-2$
+        fOut = new BufferedOutputStream(new FileOutputStream(fTmpFile), 64 * 1024);
+        fChanged = true;
+
+        if(fMatched > 0) {
+            try(InputStream in = new FileInputStream(fFile)) {
+                byte[] buffer = new byte[64 * 1024];
+                long remaining = fMatched;
+                while(remaining > 0) {
+                    int read = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                    if(read == -1) {
+                        throw new IOException("File changed while writing: " + fFile); //$NON-NLS-1$
+                    }
+                    fOut.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        }
+    }
+
+    private void closeExisting() throws IOException {
+        if(fExisting != null) {
+            fExisting.close();
+            fExisting = null;
+        }
+    }
+}
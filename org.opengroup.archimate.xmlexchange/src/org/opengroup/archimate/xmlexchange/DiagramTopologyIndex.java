@@ -0,0 +1,182 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.draw2d.geometry.Point;
+import org.eclipse.emf.ecore.EObject;
+
+import com.archimatetool.model.IBounds;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelConnection;
+import com.archimatetool.model.IDiagramModelObject;
+
+
+/**
+ * The topology of one diagram model, built in a single traversal, for export
+ *
+ * Holds the parent and absolute position of every node, the connections in document order,
+ * and the negative offset of the diagram. Nesting tests and absolute bounds are then lookups
+ * instead of list searches and walks up the containers.
+ *
+ * The index is a snapshot and is not updated if the diagram model changes.
+ */
+final class DiagramTopologyIndex {
+
+    /**
+     * A node's parent and absolute position
+     */
+    private static final class NodeInfo {
+        private final IDiagramModelObject parent;
+        private final int x, y, width, height;
+
+        private NodeInfo(IDiagramModelObject parent, int x, int y, int width, int height) {
+            this.parent = parent;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final IDiagramModel fDiagramModel;
+    private final Map<IDiagramModelObject, NodeInfo> fNodes = new HashMap<IDiagramModelObject, NodeInfo>();
+    private final List<IDiagramModelConnection> fConnections = new ArrayList<IDiagramModelConnection>();
+    private final Point fNegativeOffset = new Point();
+
+    /**
+     * Build the index for a diagram model
+     */
+    DiagramTopologyIndex(IDiagramModel dm) {
+        this(dm, new BendpointTransform());
+    }
+
+    /**
+     * Build the index for a diagram model reusing the given BendpointTransform
+     */
+    DiagramTopologyIndex(IDiagramModel dm, BendpointTransform transform) {
+        fDiagramModel = dm;
+
+        // Containers come before their children so a parent's absolute position is always known
+        for(Iterator<EObject> iter = dm.eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+
+            if(eObject instanceof IDiagramModelObject) {
+                addNode((IDiagramModelObject)eObject);
+            }
+            else if(eObject instanceof IDiagramModelConnection) {
+                fConnections.add((IDiagramModelConnection)eObject);
+            }
+        }
+
+        // Bendpoints, once all nodes are known
+        for(IDiagramModelConnection connection : fConnections) {
+            if(!BendpointTransform.canConvert(connection)) {
+                continue;
+            }
+
+            NodeInfo source = getInfo((IDiagramModelObject)connection.getSource());
+            NodeInfo target = getInfo((IDiagramModelObject)connection.getTarget());
+
+            int count = transform.computeAbsolute(connection, source.x + source.width / 2, source.y + source.height / 2,
+                    target.x + target.width / 2, target.y + target.height / 2);
+
+            for(int i = 0; i < count; i++) {
+                fNegativeOffset.x = Math.min(fNegativeOffset.x, transform.getX(i));
+                fNegativeOffset.y = Math.min(fNegativeOffset.y, transform.getY(i));
+            }
+        }
+    }
+
+    private void addNode(IDiagramModelObject dmo) {
+        IBounds bounds = dmo.getBounds();
+        int x = bounds.getX();
+        int y = bounds.getY();
+
+        IDiagramModelObject parent = null;
+
+        if(dmo.eContainer() instanceof IDiagramModelObject) {
+            parent = (IDiagramModelObject)dmo.eContainer();
+            NodeInfo parentInfo = fNodes.get(parent);
+            x += parentInfo.x;
+            y += parentInfo.y;
+        }
+        // Only top level nodes count towards the negative offset
+        else {
+            fNegativeOffset.x = Math.min(fNegativeOffset.x, x);
+            fNegativeOffset.y = Math.min(fNegativeOffset.y, y);
+        }
+
+        fNodes.put(dmo, new NodeInfo(parent, x, y, bounds.getWidth(), bounds.getHeight()));
+    }
+
+    /**
+     * @return The diagram model that was indexed
+     */
+    IDiagramModel getDiagramModel() {
+        return fDiagramModel;
+    }
+
+    /**
+     * @return The parent node of a node, or null if it is a top level node or not in the diagram
+     */
+    IDiagramModelObject getParent(IDiagramModelObject dmo) {
+        NodeInfo info = fNodes.get(dmo);
+        return info == null ? null : info.parent;
+    }
+
+    /**
+     * @return true if child is a direct child of parent
+     */
+    boolean isNested(IDiagramModelObject parent, IDiagramModelObject child) {
+        return parent != null && getParent(child) == parent;
+    }
+
+    /**
+     * @return All connections in the diagram in document order
+     */
+    List<IDiagramModelConnection> getConnections() {
+        return Collections.unmodifiableList(fConnections);
+    }
+
+    /**
+     * @return The absolute x position of a node
+     * @throws IllegalArgumentException if the node is not in the diagram
+     */
+    int getAbsoluteX(IDiagramModelObject dmo) {
+        return getInfo(dmo).x;
+    }
+
+    /**
+     * @return The absolute y position of a node
+     * @throws IllegalArgumentException if the node is not in the diagram
+     */
+    int getAbsoluteY(IDiagramModelObject dmo) {
+        return getInfo(dmo).y;
+    }
+
+    /**
+     * The overall negative offset of the diagram, the same as {@link XMLExchangeUtils#getNegativeOffsetForDiagram(IDiagramModel)}
+     * @return A copy of the offset
+     */
+    Point getNegativeOffset() {
+        return new Point(fNegativeOffset.x, fNegativeOffset.y);
+    }
+
+    private NodeInfo getInfo(IDiagramModelObject dmo) {
+        NodeInfo info = fNodes.get(dmo);
+        if(info == null) {
+            throw new IllegalArgumentException("Node is not in the diagram"); //$NON-NLS-1$
+        }
+        return info;
+    }
+}
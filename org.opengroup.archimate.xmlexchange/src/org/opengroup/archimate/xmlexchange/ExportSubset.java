@@ -0,0 +1,248 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.ecore.EObject;
+
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IArchimateDiagramModel;
+import com.archimatetool.model.IArchimateElement;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimateModelObject;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelArchimateConnection;
+import com.archimatetool.model.IDiagramModelArchimateObject;
+import com.archimatetool.model.IDiagramModelReference;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IProperties;
+import com.archimatetool.model.IProperty;
+
+
+/**
+ * The part of a model to export when only some views or folders are selected
+ *
+ * The subset is the smallest closed set containing the selection:
+ * - the views in the selection and in selected folders, and any views they reference
+ * - the elements and relationships in selected folders and shown in those views
+ * - the source and target of every relationship, and theirs in turn
+ * - the property keys used by any of these, their diagram components, and the model
+ * - the selected folders and their sub-folders, even when nothing in them is exported
+ *
+ * A view imported lazily that has not been loaded is in the subset but what it shows is not,
+ * so load the views in {@link #getViews()} and work out the subset again until they are all loaded.
+ *
+ * Only the selection and what it reaches are visited, so the time taken depends on the size of the subset, not the model.
+ */
+final class ExportSubset {
+
+    private final Set<IArchimateElement> fElements = new LinkedHashSet<IArchimateElement>();
+    private final Set<IArchimateRelationship> fRelationships = new LinkedHashSet<IArchimateRelationship>();
+    private final Set<IArchimateDiagramModel> fViews = new LinkedHashSet<IArchimateDiagramModel>();
+    private final Set<String> fPropertyKeys = new LinkedHashSet<String>();
+
+    // Folders holding something in the subset mapped to the objects in the subset they hold
+    private final Map<IFolder, List<EObject>> fFolders = new LinkedHashMap<IFolder, List<EObject>>();
+
+    // Concepts and views still to be visited
+    private final Deque<EObject> fPending = new ArrayDeque<EObject>();
+
+    /**
+     * @param model The model
+     * @param selection Views, folders, elements or relationships in the model
+     * @throws IllegalArgumentException if something in the selection is not in the model
+     */
+    ExportSubset(IArchimateModel model, Collection<? extends EObject> selection) {
+        addPropertyKeys(model);
+
+        for(EObject eObject : selection) {
+            if(!(eObject instanceof IArchimateModelObject) || ((IArchimateModelObject)eObject).getArchimateModel() != model) {
+                throw new IllegalArgumentException("Not in the model: " + eObject); //$NON-NLS-1$
+            }
+
+            if(eObject instanceof IFolder) {
+                addFolder((IFolder)eObject);
+            }
+            else {
+                fPending.add(eObject);
+            }
+        }
+
+        while(!fPending.isEmpty()) {
+            EObject eObject = fPending.poll();
+
+            if(eObject instanceof IArchimateDiagramModel) {
+                visitView((IArchimateDiagramModel)eObject);
+            }
+            else if(eObject instanceof IArchimateRelationship) {
+                visitRelationship((IArchimateRelationship)eObject);
+            }
+            else if(eObject instanceof IArchimateElement) {
+                visitElement((IArchimateElement)eObject);
+            }
+        }
+    }
+
+    private void addFolder(IFolder folder) {
+        getFolderContents(folder, true);
+        fPending.addAll(folder.getElements());
+
+        for(IFolder subFolder : folder.getFolders()) {
+            addFolder(subFolder);
+        }
+    }
+
+    private void visitElement(IArchimateElement element) {
+        if(fElements.add(element)) {
+            addToFolder(element);
+            addPropertyKeys(element);
+        }
+    }
+
+    private void visitRelationship(IArchimateRelationship relationship) {
+        if(fRelationships.add(relationship)) {
+            addToFolder(relationship);
+            addPropertyKeys(relationship);
+            addConcept(relationship.getSource());
+            addConcept(relationship.getTarget());
+        }
+    }
+
+    private void visitView(IArchimateDiagramModel dm) {
+        if(!fViews.add(dm)) {
+            return;
+        }
+
+        addToFolder(dm);
+
+        // What it shows is not known yet
+        if(!LazyViews.isLoaded(dm)) {
+            return;
+        }
+
+        for(Iterator<EObject> iter = dm.eAllContents(); iter.hasNext();) {
+            EObject eObject = iter.next();
+
+            if(eObject instanceof IDiagramModelArchimateObject) {
+                addConcept(((IDiagramModelArchimateObject)eObject).getArchimateElement());
+            }
+            else if(eObject instanceof IDiagramModelArchimateConnection) {
+                addConcept(((IDiagramModelArchimateConnection)eObject).getArchimateRelationship());
+            }
+            else if(eObject instanceof IDiagramModelReference) {
+                IDiagramModel ref = ((IDiagramModelReference)eObject).getReferencedModel();
+                if(ref instanceof IArchimateDiagramModel && !fViews.contains(ref)) {
+                    fPending.add(ref);
+                }
+            }
+            else if(eObject instanceof IProperty) {
+                addPropertyKey((IProperty)eObject);
+            }
+        }
+    }
+
+    private void addConcept(IArchimateConcept concept) {
+        if(concept != null && !fElements.contains(concept) && !fRelationships.contains(concept)) {
+            fPending.add(concept);
+        }
+    }
+
+    /**
+     * Record an object against its folder and make sure the folder's parents are recorded
+     */
+    private void addToFolder(EObject eObject) {
+        EObject container = eObject.eContainer();
+        if(container instanceof IFolder) {
+            getFolderContents((IFolder)container, true).add(eObject);
+        }
+    }
+
+    /**
+     * @param create If true record the folder and its parents if they are not recorded yet
+     * @return The objects in the subset held directly in the folder, or null if the folder is not recorded
+     */
+    private List<EObject> getFolderContents(IFolder folder, boolean create) {
+        List<EObject> contents = fFolders.get(folder);
+
+        if(contents == null && create) {
+            for(EObject parent = folder; parent instanceof IFolder && !fFolders.containsKey(parent); parent = parent.eContainer()) {
+                fFolders.put((IFolder)parent, new ArrayList<EObject>());
+            }
+            contents = fFolders.get(folder);
+        }
+
+        return contents;
+    }
+
+    private void addPropertyKeys(IProperties properties) {
+        for(IProperty property : properties.getProperties()) {
+            addPropertyKey(property);
+        }
+    }
+
+    private void addPropertyKey(IProperty property) {
+        if(property.getKey() != null) {
+            fPropertyKeys.add(property.getKey());
+        }
+    }
+
+    // ========================================= Results ======================================
+
+    /**
+     * @return The elements in the order they were reached
+     */
+    Set<IArchimateElement> getElements() {
+        return Collections.unmodifiableSet(fElements);
+    }
+
+    /**
+     * @return The relationships in the order they were reached
+     */
+    Set<IArchimateRelationship> getRelationships() {
+        return Collections.unmodifiableSet(fRelationships);
+    }
+
+    /**
+     * @return The views in the order they were reached
+     */
+    Set<IArchimateDiagramModel> getViews() {
+        return Collections.unmodifiableSet(fViews);
+    }
+
+    /**
+     * @return All property keys used in the subset and by the model
+     */
+    Set<String> getPropertyKeys() {
+        return Collections.unmodifiableSet(fPropertyKeys);
+    }
+
+    /**
+     * @return true if the folder was selected, is in a selected folder, or holds something in the subset directly or in a sub-folder
+     */
+    boolean containsFolder(IFolder folder) {
+        return fFolders.containsKey(folder);
+    }
+
+    /**
+     * @return The objects in the subset held directly in the folder
+     */
+    List<EObject> getFolderContents(IFolder folder) {
+        List<EObject> contents = getFolderContents(folder, false);
+        return contents == null ? Collections.<EObject>emptyList() : Collections.unmodifiableList(contents);
+    }
+}
@@ -19,6 +19,12 @@ public interface IXMLExchangeGlobals {
     String FILE_EXTENSION = ".xml";
     String FILE_EXTENSION_WILDCARD = "*.xml";
     
+    String BINARY_FILE_EXTENSION = ".axb";
+    String BINARY_FILE_EXTENSION_WILDCARD = "*.axb";
+    
+    String JSON_FILE_EXTENSION = ".json";
+    String JSON_FILE_EXTENSION_WILDCARD = "*.json";
+    
     String ARCHIMATE_NAMESPACE_PREFIX = "archimate";
     
     Namespace ARCHIMATE3_NAMESPACE = Namespace.getNamespace("http://www.opengroup.org/xsd/archimate/3.0/");
@@ -0,0 +1,139 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+
+/**
+ * Drops the parts of an exchange document that an import doesn't want before they are built
+ *
+ * Without views the views element and everything in it is dropped.
+ * Without styles the style elements of nodes and connections, and the documentation of views and nodes, are dropped.
+ *
+ * As a SAX filter it sits between the parser and the JDOM builder so no JDOM content is created for dropped elements.
+ * {@link XMLExchangeBinaryCodec} uses {@link #skips(String, String)} to step over dropped records without decoding them.
+ */
+class ImportContentFilter extends XMLFilterImpl implements IXMLExchangeGlobals {
+
+    private final boolean fIncludeViews;
+    private final boolean fIncludeStyles;
+
+    // Local names of the open elements that are not dropped
+    private final Deque<String> fOpenElements = new ArrayDeque<String>();
+
+    // Depth inside a dropped element, 0 if not in one
+    private int fSkipDepth;
+
+    ImportContentFilter(boolean includeViews, boolean includeStyles) {
+        fIncludeViews = includeViews;
+        fIncludeStyles = includeStyles;
+    }
+
+    /**
+     * @return true if this filter drops anything
+     */
+    boolean isFiltering() {
+        return !fIncludeViews || !fIncludeStyles;
+    }
+
+    /**
+     * @param parentName The local name of the parent element, or null for the root element
+     * @param name The local name of an element in the ArchiMate namespace
+     * @return true if the element and its content are dropped
+     */
+    boolean skips(String parentName, String name) {
+        if(!fIncludeViews && ELEMENT_VIEWS.equals(name) && ELEMENT_MODEL.equals(parentName)) {
+            return true;
+        }
+
+        if(!fIncludeStyles) {
+            if(ELEMENT_STYLE.equals(name)) {
+                return true;
+            }
+
+            if(ELEMENT_DOCUMENTATION.equals(name) && (ELEMENT_VIEW.equals(parentName) || ELEMENT_NODE.equals(parentName))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        fOpenElements.clear();
+        fSkipDepth = 0;
+        super.startDocument();
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        if(fSkipDepth > 0) {
+            fSkipDepth++;
+            return;
+        }
+
+        if(ARCHIMATE3_NAMESPACE.getURI().equals(uri) && skips(fOpenElements.peek(), localName)) {
+            fSkipDepth = 1;
+            return;
+        }
+
+        fOpenElements.push(localName);
+        super.startElement(uri, localName, qName, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if(fSkipDepth > 0) {
+            fSkipDepth--;
+            return;
+        }
+
+        fOpenElements.pop();
+        super.endElement(uri, localName, qName);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if(fSkipDepth == 0) {
+            super.characters(ch, start, length);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        if(fSkipDepth == 0) {
+            super.ignorableWhitespace(ch, start, length);
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        if(fSkipDepth == 0) {
+            super.processingInstruction(target, data);
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        if(fSkipDepth == 0) {
+            super.startPrefixMapping(prefix, uri);
+        }
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        if(fSkipDepth == 0) {
+            super.endPrefixMapping(prefix);
+        }
+    }
+}
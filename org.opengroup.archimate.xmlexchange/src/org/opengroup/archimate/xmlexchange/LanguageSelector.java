@@ -0,0 +1,138 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+
+
+/**
+ * Chooses between the translations of a name, documentation or property value by their xml:lang attribute
+ *
+ * The preferred languages are a chain worked out once, for example "de-CH", "de", "en" and then no language.
+ * A translation matches a language in the chain if its language tag is the same, or starts with it followed by "-",
+ * ignoring case. So "de" matches "de-AT". The empty string in the chain matches a translation without xml:lang.
+ * The best translation is the one matching the earliest language in the chain. If none match, the first is used.
+ *
+ * {@link #select(List)} chooses from JDOM elements in one scan.
+ * Streaming readers see the translations one at a time and keep the one with the lowest {@link #rank(String)}.
+ */
+public final class LanguageSelector {
+
+    /**
+     * The language used after the locale's languages
+     */
+    public static final String FALLBACK_LANGUAGE = "en"; //$NON-NLS-1$
+
+    private final String[] fLanguages;
+
+    /**
+     * @param languages The preferred language tags, best first. Use "" for text without a language.
+     */
+    public LanguageSelector(String... languages) {
+        fLanguages = new String[languages.length];
+        for(int i = 0; i < languages.length; i++) {
+            fLanguages[i] = languages[i].toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * @return A selector for the default locale
+     */
+    public static LanguageSelector getDefault() {
+        return forLocale(Locale.getDefault());
+    }
+
+    /**
+     * @return A selector preferring the locale's language and country, then its language, then English,
+     * then text without a language
+     */
+    public static LanguageSelector forLocale(Locale locale) {
+        List<String> languages = new ArrayList<String>();
+
+        for(String candidate : new String[] { locale.toLanguageTag(), locale.getLanguage(), FALLBACK_LANGUAGE }) {
+            // Locale.ROOT has the tag "und" and no language
+            if(!candidate.isEmpty() && !"und".equals(candidate) && !languages.contains(candidate)) { //$NON-NLS-1$
+                languages.add(candidate);
+            }
+        }
+
+        // Text without a language
+        languages.add(""); //$NON-NLS-1$
+
+        return new LanguageSelector(languages.toArray(new String[languages.size()]));
+    }
+
+    /**
+     * @return The preferred language tags, best first, in lower case
+     */
+    public List<String> getLanguages() {
+        return Collections.unmodifiableList(Arrays.asList(fLanguages));
+    }
+
+    /**
+     * @param lang The xml:lang of a translation, or null
+     * @return The position in the chain of the first language the translation matches, or the length of the chain
+     * if it matches none. Lower is better.
+     */
+    public int rank(String lang) {
+        if(lang == null) {
+            lang = ""; //$NON-NLS-1$
+        }
+
+        for(int i = 0; i < fLanguages.length; i++) {
+            if(matches(fLanguages[i], lang)) {
+                return i;
+            }
+        }
+
+        return fLanguages.length;
+    }
+
+    /**
+     * @return true if a language tag is the language of the chain or one of its sub-tags
+     */
+    private static boolean matches(String language, String lang) {
+        if(language.isEmpty()) {
+            return lang.isEmpty();
+        }
+
+        int length = language.length();
+
+        return lang.regionMatches(true, 0, language, 0, length)
+                && (lang.length() == length || lang.charAt(length) == '-');
+    }
+
+    /**
+     * Choose the best of the translations in one scan, stopping early at a translation in the first language
+     * @param elements The translations, for example the name elements of a concept
+     * @return The best translation, or null if there are none
+     */
+    public Element select(List<Element> elements) {
+        Element best = null;
+        int bestRank = Integer.MAX_VALUE;
+
+        for(Element element : elements) {
+            int rank = rank(element.getAttributeValue(IXMLExchangeGlobals.ATTRIBUTE_LANG, Namespace.XML_NAMESPACE));
+            if(rank < bestRank) {
+                best = element;
+                bestRank = rank;
+
+                if(rank == 0) {
+                    break;
+                }
+            }
+        }
+
+        return best;
+    }
+}
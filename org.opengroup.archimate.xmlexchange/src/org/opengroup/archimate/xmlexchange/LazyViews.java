@@ -0,0 +1,152 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.jdom2.Element;
+
+import com.archimatetool.model.IArchimateDiagramModel;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IDiagramModel;
+
+
+/**
+ * Loads the content of views imported with {@link XMLModelImporter#setLazyViews(boolean)}
+ *
+ * A lazily imported view has its identifier, name, viewpoint, documentation and properties but no nodes or connections.
+ * Its XML element is kept as an adapter of the view until the view is loaded, then the nodes and connections
+ * are created as they would have been by a full import and the element is released.
+ *
+ * An unloaded view looks empty to anything that does not go through this class, and EMF gives no way to load it
+ * when its children are first read. So anything that reads the content of a view from a lazily imported model
+ * must load it first, and a lazily imported model must not be opened, saved or edited in Archi until
+ * {@link #loadAll(IArchimateModel)} has been called.
+ * {@link XMLModelExporter} and {@link ModelSnapshot} load the views they need. {@link XMLModelMerger} fails with
+ * IllegalStateException rather than merge views that look empty.
+ *
+ * Loading a view adds its nodes and connections to the model, so it is a change to the model like any other
+ * and should be made on the thread that owns the model.
+ */
+public final class LazyViews {
+
+    private LazyViews() {
+    }
+
+    /**
+     * The content of a view that has not been loaded
+     */
+    static final class Content {
+        private final XMLModelImporter fImporter;
+        private final Element fViewElement;
+
+        Content(XMLModelImporter importer, Element viewElement) {
+            fImporter = importer;
+            fViewElement = viewElement;
+        }
+    }
+
+    /**
+     * Keep the content of a view to be loaded later
+     */
+    static void setContent(IArchimateDiagramModel dm, XMLModelImporter importer, Element viewElement) {
+        dm.setAdapter(Content.class, new Content(importer, viewElement));
+    }
+
+    /**
+     * @return true if the view's nodes and connections have been created
+     */
+    public static boolean isLoaded(IDiagramModel dm) {
+        return !(dm.getAdapter(Content.class) instanceof Content);
+    }
+
+    /**
+     * @return true if the model has views whose nodes and connections have not been created
+     */
+    public static boolean hasUnloadedViews(IArchimateModel model) {
+        return hasUnloadedViews(model.getDiagramModels());
+    }
+
+    /**
+     * @return true if any of the views have nodes and connections that have not been created
+     */
+    public static boolean hasUnloadedViews(Collection<? extends IDiagramModel> views) {
+        for(IDiagramModel dm : views) {
+            if(!isLoaded(dm)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fail if the model has views that have not been loaded
+     * @throws IllegalStateException if a view has not been loaded
+     */
+    public static void checkLoaded(IArchimateModel model) {
+        checkLoaded(model.getDiagramModels());
+    }
+
+    /**
+     * Fail if any of the views have not been loaded
+     * @throws IllegalStateException if a view has not been loaded
+     */
+    public static void checkLoaded(Collection<? extends IDiagramModel> views) {
+        if(hasUnloadedViews(views)) {
+            throw new IllegalStateException("Model has views that have not been loaded. Call LazyViews.loadAll() first."); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Create the nodes and connections of a view if they have not been created yet
+     * @param dm The view
+     * @throws XMLModelParserException if the view's content is not valid
+     */
+    public static void load(IDiagramModel dm) throws XMLModelParserException {
+        Object object = dm.getAdapter(Content.class);
+
+        if(object instanceof Content) {
+            Content content = (Content)object;
+
+            // Views of one import share the importer's state
+            synchronized(content.fImporter) {
+                // Loaded on another thread while waiting
+                if(dm.getAdapter(Content.class) != content) {
+                    return;
+                }
+
+                content.fImporter.loadView((IArchimateDiagramModel)dm, content.fViewElement);
+                dm.setAdapter(Content.class, null);
+            }
+        }
+    }
+
+    /**
+     * Create the nodes and connections of all views in a model that have not been created yet
+     * @param model The model
+     * @throws IOException if a view's content is not valid
+     */
+    public static void loadAll(IArchimateModel model) throws IOException {
+        loadAll(model.getDiagramModels());
+    }
+
+    /**
+     * Create the nodes and connections of the views that have not been created yet
+     * @param views The views
+     * @throws IOException if a view's content is not valid
+     */
+    public static void loadAll(Collection<? extends IDiagramModel> views) throws IOException {
+        for(IDiagramModel dm : views) {
+            try {
+                load(dm);
+            }
+            catch(XMLModelParserException ex) {
+                throw new IOException(ex.getMessage(), ex);
+            }
+        }
+    }
+}
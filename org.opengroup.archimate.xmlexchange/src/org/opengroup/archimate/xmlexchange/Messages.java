@@ -6,8 +6,38 @@ public class Messages extends NLS {
 
     private static final String BUNDLE_NAME = "org.opengroup.archimate.xmlexchange.messages"; //$NON-NLS-1$
 
+    public static String XMLExchangeBinaryCodec_0;
+
+    public static String XMLExchangeBinaryCodec_1;
+
+    public static String XMLExchangeIndex_0;
+
+    public static String XMLExchangeIndex_1;
+
+    public static String XMLExchangeIndex_2;
+
+    public static String XMLExchangeJSONCodec_0;
+
+    public static String XMLExchangeQuery_0;
+
     public static String XMLExchangeExportProvider_0;
 
+    public static String XMLExchangeImportProvider_0;
+
+    public static String XMLExchangeImportProvider_1;
+
+    public static String XMLFederatedImporter_0;
+
+    public static String XMLIntegrityChecker_0;
+
+    public static String XMLIntegrityChecker_1;
+
+    public static String XMLIntegrityChecker_2;
+
+    public static String XMLIntegrityChecker_3;
+
+    public static String XMLIntegrityChecker_4;
+
     public static String XMLModelImporter_0;
 
     public static String XMLModelImporter_1;
@@ -22,6 +52,8 @@ public class Messages extends NLS {
 
     public static String XMLModelImporter_14;
 
+    public static String XMLModelImporter_15;
+
     public static String XMLModelImporter_2;
 
     public static String XMLModelImporter_3;
@@ -38,6 +70,8 @@ public class Messages extends NLS {
 
     public static String XMLModelImporter_9;
 
+    public static String XMLModelMerger_0;
+
     public static String XMLModelParserException_0;
     static {
         // initialize resource bundle
@@ -0,0 +1,85 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+import com.archimatetool.model.IArchimateModel;
+
+
+/**
+ * A read-only copy of a model as it was at one moment, for exporting while the model is still being edited
+ *
+ * The snapshot is captured once, on the thread that edits the model (normally the UI thread),
+ * and can then be read by {@link XMLModelExporter} on any thread. Identifiers are copied so the
+ * exported file is the same as exporting the model itself at the time of capture.
+ *
+ * The copy is not in a Resource or command stack and must not be edited.
+ */
+public final class ModelSnapshot {
+
+    private final IArchimateModel fModel;
+    private final EcoreUtil.Copier fCopier;
+
+    /**
+     * Capture a snapshot of a model. Call this on the thread that edits the model.
+     * Views imported lazily are loaded first.
+     * @param model The model
+     * @return The snapshot
+     * @throws IOException if a lazily imported view can't be loaded
+     */
+    public static ModelSnapshot capture(IArchimateModel model) throws IOException {
+        LazyViews.loadAll(model);
+        return new ModelSnapshot(model);
+    }
+
+    private ModelSnapshot(IArchimateModel model) {
+        fCopier = new EcoreUtil.Copier();
+        fModel = (IArchimateModel)fCopier.copy(model);
+        fCopier.copyReferences();
+    }
+
+    /**
+     * @return The copy of the model
+     */
+    public IArchimateModel getModel() {
+        return fModel;
+    }
+
+    /**
+     * @param original An object in the original model
+     * @return Its copy in the snapshot, or null if it was not in the model when the snapshot was captured
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends EObject> T getCopy(T original) {
+        return (T)fCopier.get(original);
+    }
+
+    /**
+     * @param originals Objects in the original model, such as views and folders to export
+     * @return Their copies in the snapshot
+     * @throws IllegalArgumentException if an object was not in the model when the snapshot was captured
+     */
+    public List<EObject> getCopies(Collection<? extends EObject> originals) {
+        List<EObject> copies = new ArrayList<EObject>(originals.size());
+
+        for(EObject original : originals) {
+            EObject copy = fCopier.get(original);
+            if(copy == null) {
+                throw new IllegalArgumentException("Not in the snapshot: " + original); //$NON-NLS-1$
+            }
+            copies.add(copy);
+        }
+
+        return copies;
+    }
+}
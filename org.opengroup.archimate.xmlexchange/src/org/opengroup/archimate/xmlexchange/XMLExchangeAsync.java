@@ -0,0 +1,193 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Support for running conversions asynchronously
+ *
+ * Futures returned from here interrupt the worker thread when they are cancelled with {@code cancel(true)}.
+ * A task that is cancelled before it starts is not run at all.
+ */
+public final class XMLExchangeAsync {
+
+    private XMLExchangeAsync() {
+    }
+
+    /**
+     * Holder for the lazily created default Executor
+     */
+    private static class DefaultExecutor {
+        static final ExecutorService INSTANCE = createDefaultExecutor();
+    }
+
+    /**
+     * @return The default Executor. This uses virtual threads if the Java runtime has them,
+     *         otherwise a pool bounded to the number of processors.
+     */
+    public static Executor getDefaultExecutor() {
+        return DefaultExecutor.INSTANCE;
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        // Java 21 and later. Use reflection as we compile against Java 8.
+        try {
+            Object executor = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null); //$NON-NLS-1$
+            return (ExecutorService)executor;
+        }
+        catch(ReflectiveOperationException | RuntimeException ex) {
+            // Not available
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "XMLExchangeAsync-" + count.incrementAndGet()); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * Run a task asynchronously
+     * @param task The task
+     * @param executor The Executor to run the task on
+     * @return A future that completes with the task's result or exception, and interrupts the task if cancelled
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Callable<T> task, Executor executor) {
+        final InterruptibleFuture<T> future = new InterruptibleFuture<T>(task);
+
+        try {
+            executor.execute(future);
+        }
+        catch(RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+
+        return future;
+    }
+
+    /**
+     * Throw an InterruptedIOException if the current thread has been interrupted, for example because its future was cancelled.
+     * The interrupted status is left set.
+     */
+    static void checkInterrupted() throws InterruptedIOException {
+        if(Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Write a file by writing to a temporary file in the same folder and then moving it into place,
+     * so that a failed or cancelled write never leaves a partial target file.
+     */
+    static void writeFileAtomically(File file, FileContentWriter writer) throws IOException {
+        File folder = file.getAbsoluteFile().getParentFile();
+        File tmpFile = File.createTempFile("~" + file.getName(), ".tmp", folder); //$NON-NLS-1$ //$NON-NLS-2$
+
+        try {
+            writer.write(tmpFile);
+            checkInterrupted();
+
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(AtomicMoveNotSupportedException ex) {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Writes content to a file
+     */
+    interface FileContentWriter {
+        void write(File file) throws IOException;
+    }
+
+    /**
+     * A CompletableFuture that runs its own task and interrupts the running thread on cancel
+     */
+    private static class InterruptibleFuture<T> extends CompletableFuture<T> implements Runnable {
+        private final Callable<T> fTask;
+
+        // The thread running the task. Guarded by this.
+        private Thread fRunner;
+
+        InterruptibleFuture(Callable<T> task) {
+            fTask = task;
+        }
+
+        @Override
+        public void run() {
+            synchronized(this) {
+                // Cancelled before it started
+                if(isDone()) {
+                    return;
+                }
+                fRunner = Thread.currentThread();
+            }
+
+            try {
+                complete(fTask.call());
+            }
+            catch(Throwable ex) {
+                completeExceptionally(ex);
+            }
+            finally {
+                synchronized(this) {
+                    fRunner = null;
+                }
+
+                // Don't leave a pooled thread interrupted
+                Thread.interrupted();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+            if(cancelled && mayInterruptIfRunning) {
+                synchronized(this) {
+                    if(fRunner != null) {
+                        fRunner.interrupt();
+                    }
+                }
+            }
+
+            return cancelled;
+        }
+    }
+}
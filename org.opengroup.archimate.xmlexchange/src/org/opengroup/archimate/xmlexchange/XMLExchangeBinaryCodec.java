@@ -0,0 +1,802 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Attribute;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+
+
+/**
+ * Compact binary encoding of an Open Exchange document.
+ *
+ * The encoding carries exactly the same information as the XML that {@link XMLModelExporter} writes and
+ * {@link XMLModelImporter} reads, so either engine can produce or consume it in place of XML.
+ *
+ * Layout:
+ * <pre>
+ * magic[4] "AXB" + version
+ * long    offset of the string table
+ * varint  number of sections
+ *         for each section: varint name index, long absolute offset of its record
+ * record  the root "model" element (sections are referenced, not inlined)
+ * records one record per section (elements, relationships, organizations, propertyDefinitions, views)
+ * strings varint count, then for each string varint byte length + UTF-8 bytes
+ * </pre>
+ *
+ * Every element is a length-prefixed record so that a reader can skip it without decoding it.
+ * Element names, attribute names and values, property keys, types and text are all stored once in the shared string table
+ * and referenced by index. Attribute values that are plain integers (node bounds, bendpoints, colours, line widths)
+ * are stored as zig-zag varints.
+ */
+@SuppressWarnings("nls")
+public final class XMLExchangeBinaryCodec implements IXMLExchangeGlobals {
+
+    static final byte[] MAGIC = { 'A', 'X', 'B', 1 };
+
+    /**
+     * Top level children of the root element that are stored as separately addressable sections
+     */
+    static final List<String> SECTIONS = Arrays.asList(ELEMENT_ELEMENTS, ELEMENT_RELATIONSHIPS, ELEMENT_ORGANIZATIONS,
+            ELEMENT_PROPERTYDEFINITIONS, ELEMENT_VIEWS);
+
+    // Namespace codes
+    private static final int NS_NONE = 0;
+    private static final int NS_ARCHIMATE = 1;
+    private static final int NS_XSI = 2;
+    private static final int NS_XML = 3;
+    private static final int NS_DC = 4;
+    private static final int NS_OTHER = 5;
+
+    // Attribute value kinds
+    private static final int VALUE_STRING = 0;
+    private static final int VALUE_INT = 1;
+
+    // Root child entry kinds
+    private static final int CHILD_INLINE = 0;
+    private static final int CHILD_SECTION = 1;
+
+    /**
+     * @param file The file to test
+     * @return true if the file starts with the binary exchange format signature
+     */
+    public static boolean isBinaryFile(File file) throws IOException {
+        if(file == null || !file.isFile() || file.length() < MAGIC.length) {
+            return false;
+        }
+
+        try(InputStream in = new FileInputStream(file)) {
+            byte[] header = new byte[MAGIC.length];
+            int read = 0;
+            while(read < header.length) {
+                int n = in.read(header, read, header.length - read);
+                if(n == -1) {
+                    return false;
+                }
+                read += n;
+            }
+            return Arrays.equals(header, MAGIC);
+        }
+    }
+
+    /**
+     * Test whether a stream starts with the binary exchange format signature without consuming it
+     * @param in The stream, which must support mark and reset
+     * @return true if the stream starts with the binary exchange format signature
+     */
+    public static boolean isBinaryStream(InputStream in) throws IOException {
+        if(!in.markSupported()) {
+            throw new IllegalArgumentException("Stream does not support mark"); //$NON-NLS-1$
+        }
+
+        in.mark(MAGIC.length);
+
+        try {
+            byte[] header = new byte[MAGIC.length];
+            int read = 0;
+            while(read < header.length) {
+                int n = in.read(header, read, header.length - read);
+                if(n == -1) {
+                    return false;
+                }
+                read += n;
+            }
+            return Arrays.equals(header, MAGIC);
+        }
+        finally {
+            in.reset();
+        }
+    }
+
+    // ========================================= Write ======================================
+
+    /**
+     * Write an exchange document to file in binary format
+     */
+    public void write(Document doc, File file) throws IOException {
+        try(OutputStream out = new FileOutputStream(file)) {
+            write(doc, out);
+        }
+    }
+
+    /**
+     * Write an exchange document to a stream in binary format
+     */
+    public void write(Document doc, OutputStream out) throws IOException {
+        Writer writer = new Writer();
+        writer.write(doc.getRootElement(), out);
+    }
+
+    /**
+     * Encode a single element (and its children) as a self-contained binary fragment with its own string table
+     */
+    public byte[] encodeElement(Element element) {
+        Writer writer = new Writer();
+
+        Buffer body = new Buffer();
+        writer.writeRecord(element, body);
+
+        Buffer out = new Buffer();
+        writer.writeStringTable(out);
+        out.write(body.array(), 0, body.size());
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode a fragment created with {@link #encodeElement(Element)}
+     */
+    public Element decodeElement(byte[] bytes) throws IOException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            Reader reader = new Reader(buffer);
+            reader.readStringTable();
+            return reader.readRecord();
+        }
+        catch(BufferUnderflowException | IndexOutOfBoundsException ex) {
+            throw new IOException(Messages.XMLExchangeBinaryCodec_1, ex);
+        }
+    }
+
+    /**
+     * Encoder state. The string table is collected while the records are written.
+     */
+    private static class Writer {
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> stringList = new ArrayList<>();
+
+        void write(Element rootElement, OutputStream out) throws IOException {
+            Buffer body = new Buffer();
+
+            // Root record with section references
+            List<Element> sections = new ArrayList<>();
+            writeRootRecord(rootElement, body, sections);
+
+            // Section records
+            long[] sectionOffsets = new long[sections.size()];
+            for(int i = 0; i < sections.size(); i++) {
+                sectionOffsets[i] = body.size();
+                writeRecord(sections.get(i), body);
+            }
+
+            // Section name indexes must be in the string table before we know its size
+            int[] sectionNames = new int[sections.size()];
+            for(int i = 0; i < sections.size(); i++) {
+                sectionNames[i] = index(sections.get(i).getName());
+            }
+
+            // Header
+            Buffer header = new Buffer();
+            header.write(MAGIC, 0, MAGIC.length);
+            header.writeLong(0); // placeholder for string table offset
+            header.writeVarInt(sections.size());
+            for(int i = 0; i < sections.size(); i++) {
+                header.writeVarInt(sectionNames[i]);
+                header.writeLong(0); // placeholder for offset
+            }
+
+            // Now we know the header size we can fix up the absolute offsets
+            int headerSize = header.size();
+            header.reset();
+            header.write(MAGIC, 0, MAGIC.length);
+            header.writeLong(headerSize + body.size());
+            header.writeVarInt(sections.size());
+            for(int i = 0; i < sections.size(); i++) {
+                header.writeVarInt(sectionNames[i]);
+                header.writeLong(headerSize + sectionOffsets[i]);
+            }
+
+            Buffer stringTable = new Buffer();
+            writeStringTable(stringTable);
+
+            out.write(header.array(), 0, header.size());
+            out.write(body.array(), 0, body.size());
+            out.write(stringTable.array(), 0, stringTable.size());
+            out.flush();
+        }
+
+        void writeRootRecord(Element element, Buffer out, List<Element> sections) {
+            Buffer payload = new Buffer();
+            writeElementHeader(element, payload);
+
+            List<Element> children = element.getChildren();
+            payload.writeVarInt(children.size());
+            for(Element child : children) {
+                if(SECTIONS.contains(child.getName()) && isArchimateNamespace(child.getNamespace())) {
+                    payload.write(CHILD_SECTION);
+                    payload.writeVarInt(sections.size());
+                    sections.add(child);
+                }
+                else {
+                    payload.write(CHILD_INLINE);
+                    writeRecord(child, payload);
+                }
+            }
+
+            out.writeVarInt(payload.size());
+            out.write(payload.array(), 0, payload.size());
+        }
+
+        void writeRecord(Element element, Buffer out) {
+            Buffer payload = new Buffer();
+            writeElementHeader(element, payload);
+
+            List<Element> children = element.getChildren();
+            payload.writeVarInt(children.size());
+            for(Element child : children) {
+                writeRecord(child, payload);
+            }
+
+            out.writeVarInt(payload.size());
+            out.write(payload.array(), 0, payload.size());
+        }
+
+        void writeElementHeader(Element element, Buffer out) {
+            out.writeVarInt(index(element.getName()));
+            writeNamespace(element.getNamespace(), out, false);
+
+            // Namespace declarations
+            List<Namespace> declarations = element.getAdditionalNamespaces();
+            out.writeVarInt(declarations.size());
+            for(Namespace ns : declarations) {
+                out.writeVarInt(index(ns.getPrefix()));
+                out.writeVarInt(index(ns.getURI()));
+            }
+
+            // Attributes
+            List<Attribute> attributes = element.getAttributes();
+            out.writeVarInt(attributes.size());
+            for(Attribute attribute : attributes) {
+                out.writeVarInt(index(attribute.getName()));
+                writeNamespace(attribute.getNamespace(), out, true);
+
+                String value = attribute.getValue();
+                Integer intValue = asInteger(value);
+                if(intValue != null) {
+                    out.write(VALUE_INT);
+                    out.writeVarInt(zigzag(intValue));
+                }
+                else {
+                    out.write(VALUE_STRING);
+                    out.writeVarInt(index(value));
+                }
+            }
+
+            // Text of leaf elements only. Whitespace between child elements is not significant in the exchange format.
+            String text = element.getChildren().isEmpty() ? element.getText() : null;
+            out.writeVarInt(text == null || text.isEmpty() ? 0 : index(text) + 1);
+        }
+
+        void writeNamespace(Namespace ns, Buffer out, boolean isAttribute) {
+            String uri = ns == null ? "" : ns.getURI();
+            String prefix = ns == null ? "" : ns.getPrefix();
+
+            if(uri.isEmpty()) {
+                out.write(NS_NONE);
+            }
+            else if(!isAttribute && isArchimateNamespace(ns)) {
+                out.write(NS_ARCHIMATE);
+            }
+            else if(XSI_NAMESPACE.getURI().equals(uri) && XSI_NAMESPACE.getPrefix().equals(prefix)) {
+                out.write(NS_XSI);
+            }
+            else if(Namespace.XML_NAMESPACE.getURI().equals(uri)) {
+                out.write(NS_XML);
+            }
+            else if(DC_NAMESPACE.getURI().equals(uri) && DC_NAMESPACE.getPrefix().equals(prefix)) {
+                out.write(NS_DC);
+            }
+            else {
+                out.write(NS_OTHER);
+                out.writeVarInt(index(prefix));
+                out.writeVarInt(index(uri));
+            }
+        }
+
+        void writeStringTable(Buffer out) {
+            out.writeVarInt(stringList.size());
+            for(String s : stringList) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeVarInt(bytes.length);
+                out.write(bytes, 0, bytes.length);
+            }
+        }
+
+        int index(String s) {
+            Integer index = strings.get(s);
+            if(index == null) {
+                index = stringList.size();
+                strings.put(s, index);
+                stringList.add(s);
+            }
+            return index;
+        }
+    }
+
+    // ========================================= Read ======================================
+
+    /**
+     * Read a binary exchange file into an exchange document
+     */
+    public Document read(File file) throws IOException {
+        return read(file, null);
+    }
+
+    /**
+     * Read a binary exchange document from a stream
+     */
+    public Document read(InputStream in) throws IOException {
+        return read(in, null);
+    }
+
+    /**
+     * Read a binary exchange file leaving out the records dropped by the filter. Dropped records are stepped over without being decoded.
+     * @param filter The filter, or null to read everything
+     */
+    Document read(File file, ImportContentFilter filter) throws IOException {
+        try(FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer, filter);
+        }
+    }
+
+    /**
+     * Read a binary exchange document from a stream leaving out the records dropped by the filter
+     */
+    Document read(InputStream in, ImportContentFilter filter) throws IOException {
+        return read(readFully(in), filter);
+    }
+
+    /**
+     * Called for each record in document order when walking a binary exchange document
+     */
+    interface RecordVisitor {
+        /**
+         * @param name The element name
+         * @param attributeNames The attribute names. Only the first attributeCount are valid and the array is reused for the next record.
+         * @param attributeValues The attribute values, as for attributeNames
+         * @param attributeCount The number of attributes
+         */
+        void startRecord(String name, String[] attributeNames, String[] attributeValues, int attributeCount);
+    }
+
+    /**
+     * Step through the records of a binary exchange document without creating elements.
+     * Namespace declarations and text are stepped over.
+     */
+    void walk(InputStream in, RecordVisitor visitor) throws IOException {
+        try {
+            Reader reader = new Reader(readFully(in));
+            reader.readHeader();
+            reader.walkRootRecord(visitor);
+        }
+        catch(BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new IOException(Messages.XMLExchangeBinaryCodec_1, ex);
+        }
+    }
+
+    private ByteBuffer readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while((n = in.read(buf)) != -1) {
+            bytes.write(buf, 0, n);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    /**
+     * Read only one top level section of a binary exchange file using its offset in the section table
+     * @param file The binary exchange file
+     * @param sectionName The section name, for example {@link IXMLExchangeGlobals#ELEMENT_VIEWS}
+     * @return The section element or null if the file has no such section
+     */
+    public Element readSection(File file, String sectionName) throws IOException {
+        try(FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Reader reader = new Reader(buffer);
+            reader.readHeader();
+
+            for(int i = 0; i < reader.sectionNames.length; i++) {
+                if(sectionName.equals(reader.sectionNames[i])) {
+                    buffer.position((int)reader.sectionOffsets[i]);
+                    return reader.readRecord();
+                }
+            }
+
+            return null;
+        }
+        catch(BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new IOException(Messages.XMLExchangeBinaryCodec_1, ex);
+        }
+    }
+
+    private Document read(ByteBuffer buffer, ImportContentFilter filter) throws IOException {
+        try {
+            Reader reader = new Reader(buffer);
+            reader.filter = filter;
+            reader.readHeader();
+            Element rootElement = reader.readRootRecord();
+            return new Document(rootElement);
+        }
+        catch(BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new IOException(Messages.XMLExchangeBinaryCodec_1, ex);
+        }
+    }
+
+    /**
+     * Decoder state
+     */
+    private static class Reader {
+        ByteBuffer buffer;
+        String[] strings;
+        String[] sectionNames;
+        long[] sectionOffsets;
+
+        // Drops records if set
+        ImportContentFilter filter;
+
+        // Reused for each record when walking
+        String[] attributeNames = new String[8];
+        String[] attributeValues = new String[8];
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void readHeader() throws IOException {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if(!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(Messages.XMLExchangeBinaryCodec_0);
+            }
+
+            long stringTableOffset = buffer.getLong();
+
+            int sectionCount = readVarInt();
+            int[] nameIndexes = new int[sectionCount];
+            sectionOffsets = new long[sectionCount];
+            for(int i = 0; i < sectionCount; i++) {
+                nameIndexes[i] = readVarInt();
+                sectionOffsets[i] = buffer.getLong();
+            }
+
+            int recordsStart = buffer.position();
+            buffer.position((int)stringTableOffset);
+            readStringTable();
+            buffer.position(recordsStart);
+
+            sectionNames = new String[sectionCount];
+            for(int i = 0; i < sectionCount; i++) {
+                sectionNames[i] = strings[nameIndexes[i]];
+            }
+        }
+
+        void readStringTable() {
+            int count = readVarInt();
+            strings = new String[count];
+            for(int i = 0; i < count; i++) {
+                byte[] bytes = new byte[readVarInt()];
+                buffer.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        Element readRootRecord() throws IOException {
+            readVarInt(); // length
+            Element element = readElementHeader();
+
+            int childCount = readVarInt();
+            for(int i = 0; i < childCount; i++) {
+                int kind = buffer.get();
+                Element child;
+                if(kind == CHILD_SECTION) {
+                    int section = readVarInt();
+                    int mark = buffer.position();
+                    buffer.position((int)sectionOffsets[section]);
+                    child = readRecord(element.getName());
+                    buffer.position(mark);
+                }
+                else {
+                    child = readRecord(element.getName());
+                }
+
+                if(child != null) {
+                    element.addContent(child);
+                }
+            }
+
+            return element;
+        }
+
+        Element readRecord() {
+            return readRecord(null);
+        }
+
+        /**
+         * @param parentName The name of the parent element, used by the filter
+         * @return The element, or null if the filter drops it
+         */
+        Element readRecord(String parentName) {
+            int length = readVarInt();
+
+            // Peek at the name and namespace and step over the whole record if it's dropped
+            if(filter != null) {
+                int start = buffer.position();
+                String name = strings[readVarInt()];
+                boolean archimate = buffer.get() == NS_ARCHIMATE;
+                if(archimate && filter.skips(parentName, name)) {
+                    buffer.position(start + length);
+                    return null;
+                }
+                buffer.position(start);
+            }
+
+            Element element = readElementHeader();
+
+            int childCount = readVarInt();
+            for(int i = 0; i < childCount; i++) {
+                Element child = readRecord(element.getName());
+                if(child != null) {
+                    element.addContent(child);
+                }
+            }
+
+            return element;
+        }
+
+        Element readElementHeader() {
+            String name = strings[readVarInt()];
+            Element element = new Element(name, readNamespace());
+
+            int declarationCount = readVarInt();
+            for(int i = 0; i < declarationCount; i++) {
+                String prefix = strings[readVarInt()];
+                String uri = strings[readVarInt()];
+                element.addNamespaceDeclaration(Namespace.getNamespace(prefix, uri));
+            }
+
+            int attributeCount = readVarInt();
+            for(int i = 0; i < attributeCount; i++) {
+                String attributeName = strings[readVarInt()];
+                Namespace ns = readNamespace();
+
+                String value;
+                int kind = buffer.get();
+                if(kind == VALUE_INT) {
+                    value = Integer.toString(unzigzag(readVarInt()));
+                }
+                else {
+                    value = strings[readVarInt()];
+                }
+
+                element.setAttribute(attributeName, value, ns);
+            }
+
+            int text = readVarInt();
+            if(text > 0) {
+                element.setText(strings[text - 1]);
+            }
+
+            return element;
+        }
+
+        void walkRootRecord(RecordVisitor visitor) {
+            readVarInt(); // length
+            walkElementHeader(visitor);
+
+            int childCount = readVarInt();
+            for(int i = 0; i < childCount; i++) {
+                int kind = buffer.get();
+                if(kind == CHILD_SECTION) {
+                    int section = readVarInt();
+                    int mark = buffer.position();
+                    buffer.position((int)sectionOffsets[section]);
+                    walkRecord(visitor);
+                    buffer.position(mark);
+                }
+                else {
+                    walkRecord(visitor);
+                }
+            }
+        }
+
+        void walkRecord(RecordVisitor visitor) {
+            readVarInt(); // length
+            walkElementHeader(visitor);
+
+            int childCount = readVarInt();
+            for(int i = 0; i < childCount; i++) {
+                walkRecord(visitor);
+            }
+        }
+
+        /**
+         * As readElementHeader() but passes the name and attributes to the visitor instead of creating an element
+         */
+        void walkElementHeader(RecordVisitor visitor) {
+            String name = strings[readVarInt()];
+            skipNamespace();
+
+            int declarationCount = readVarInt();
+            for(int i = 0; i < declarationCount; i++) {
+                readVarInt(); // prefix
+                readVarInt(); // uri
+            }
+
+            int attributeCount = readVarInt();
+            if(attributeCount > attributeNames.length) {
+                attributeNames = new String[attributeCount];
+                attributeValues = new String[attributeCount];
+            }
+
+            for(int i = 0; i < attributeCount; i++) {
+                attributeNames[i] = strings[readVarInt()];
+                skipNamespace();
+
+                int kind = buffer.get();
+                if(kind == VALUE_INT) {
+                    attributeValues[i] = Integer.toString(unzigzag(readVarInt()));
+                }
+                else {
+                    attributeValues[i] = strings[readVarInt()];
+                }
+            }
+
+            readVarInt(); // text
+
+            visitor.startRecord(name, attributeNames, attributeValues, attributeCount);
+        }
+
+        void skipNamespace() {
+            if(buffer.get() == NS_OTHER) {
+                readVarInt(); // prefix
+                readVarInt(); // uri
+            }
+        }
+
+        Namespace readNamespace() {
+            int code = buffer.get();
+            switch(code) {
+                case NS_ARCHIMATE:
+                    return ARCHIMATE3_NAMESPACE;
+                case NS_XSI:
+                    return XSI_NAMESPACE;
+                case NS_XML:
+                    return Namespace.XML_NAMESPACE;
+                case NS_DC:
+                    return DC_NAMESPACE;
+                case NS_OTHER:
+                    String prefix = strings[readVarInt()];
+                    String uri = strings[readVarInt()];
+                    return Namespace.getNamespace(prefix, uri);
+                default:
+                    return Namespace.NO_NAMESPACE;
+            }
+        }
+
+        int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            }
+            while((b & 0x80) != 0);
+            return value;
+        }
+    }
+
+    // ========================================= Helpers ======================================
+
+    static boolean isArchimateNamespace(Namespace ns) {
+        return ns != null && ARCHIMATE3_NAMESPACE.getURI().equals(ns.getURI()) && "".equals(ns.getPrefix());
+    }
+
+    /**
+     * @return the value as an Integer only if it round-trips exactly through Integer.toString(), otherwise null
+     */
+    static Integer asInteger(String value) {
+        int length = value.length();
+        if(length == 0 || length > 11) {
+            return null;
+        }
+
+        int start = value.charAt(0) == '-' ? 1 : 0;
+        if(start == length) {
+            return null;
+        }
+
+        for(int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if(c < '0' || c > '9') {
+                return null;
+            }
+        }
+
+        try {
+            int i = Integer.parseInt(value);
+            return Integer.toString(i).equals(value) ? i : null;
+        }
+        catch(NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    static int zigzag(int i) {
+        return (i << 1) ^ (i >> 31);
+    }
+
+    static int unzigzag(int i) {
+        return (i >>> 1) ^ -(i & 1);
+    }
+
+    /**
+     * Growable byte buffer with varint support
+     */
+    static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(256);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        void writeVarInt(int value) {
+            while((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeLong(long value) {
+            for(int shift = 56; shift >= 0; shift -= 8) {
+                write((int)(value >>> shift) & 0xFF);
+            }
+        }
+    }
+}
@@ -0,0 +1,737 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+
+/**
+ * Compares two exchange files by identifier without creating models
+ *
+ * Elements, relationships, views, nodes and connections are matched by identifier. Property definitions are matched
+ * by name and properties are identified by the name of their definition, because exporters number property
+ * definition identifiers in the order the keys are found, so adding one key would renumber all the others.
+ * Each object's own content (its attributes and everything in it except nested identified objects) is flattened to
+ * a list of path and value pairs and hashed, so unchanged objects are found by comparing hashes. The pairs of
+ * changed objects are compared to give the differences. A node or connection that has moved to another parent is changed.
+ *
+ * The two files are streamed in parallel. Objects are partitioned by the hash of their identifier, and the partitions
+ * are kept in memory if the files are small enough, otherwise written to spill files in a temporary folder. Partitions
+ * are then compared one at a time, so memory use is bounded by the size of one partition of one file.
+ *
+ * Changes are reported partition by partition, not in file order.
+ */
+@SuppressWarnings("nls")
+public class XMLExchangeDiff implements IXMLExchangeGlobals {
+
+    /**
+     * The kind of change
+     */
+    public enum ChangeType {
+        ADDED, REMOVED, CHANGED
+    }
+
+    /**
+     * A difference in one value of a changed object
+     */
+    public static class Difference {
+        private final String fPath;
+        private final String fOldValue;
+        private final String fNewValue;
+
+        Difference(String path, String oldValue, String newValue) {
+            fPath = path;
+            fOldValue = oldValue;
+            fNewValue = newValue;
+        }
+
+        /**
+         * @return The path of the value in the object, such as "@x", "name[en]" or "style/fillColor/@r"
+         */
+        public String getPath() {
+            return fPath;
+        }
+
+        /**
+         * @return The value in the first file, or null if it was added
+         */
+        public String getOldValue() {
+            return fOldValue;
+        }
+
+        /**
+         * @return The value in the second file, or null if it was removed
+         */
+        public String getNewValue() {
+            return fNewValue;
+        }
+
+        @Override
+        public String toString() {
+            return fPath + ": " + fOldValue + " -> " + fNewValue;
+        }
+    }
+
+    /**
+     * An added, removed or changed object
+     */
+    public static class Change {
+        private final ChangeType fType;
+        private final String fName;
+        private final String fIdentifier;
+        private final List<Difference> fDifferences;
+
+        Change(ChangeType type, String name, String identifier, List<Difference> differences) {
+            fType = type;
+            fName = name;
+            fIdentifier = identifier;
+            fDifferences = differences;
+        }
+
+        public ChangeType getType() {
+            return fType;
+        }
+
+        /**
+         * @return The local name of the XML element, such as element, relationship, view, node or connection
+         */
+        public String getName() {
+            return fName;
+        }
+
+        /**
+         * @return The identifier of the object, or the name of a property definition
+         */
+        public String getIdentifier() {
+            return fIdentifier;
+        }
+
+        /**
+         * @return The differences of a changed object, empty for an added or removed object
+         */
+        public List<Difference> getDifferences() {
+            return fDifferences;
+        }
+
+        @Override
+        public String toString() {
+            return fType + " " + fName + " " + fIdentifier + (fDifferences.isEmpty() ? "" : " " + fDifferences);
+        }
+    }
+
+    /**
+     * Receives changes as they are found
+     */
+    public interface Listener {
+        void change(Change change);
+    }
+
+    // Objects matched by identifier
+    private static final List<String> OBJECT_NAMES = Arrays.asList(ELEMENT_ELEMENT, ELEMENT_RELATIONSHIP, ELEMENT_PROPERTYDEFINITION,
+            ELEMENT_VIEW, ELEMENT_NODE, ELEMENT_CONNECTION);
+
+    // Field of a node or connection holding the identifier of the view or node it is in
+    static final String PARENT_FIELD = "@parent";
+
+    // Start of a path qualifier that is a property definition reference, replaced by the definition's name when compared
+    private static final String PROPERTY_REF_QUALIFIER = "[#";
+
+    private long fMemoryLimit = Runtime.getRuntime().maxMemory() / 4;
+
+    /**
+     * Set roughly how much memory the object records of one file may take before they are written to spill files.
+     * The default is a quarter of the maximum heap.
+     */
+    public void setMemoryLimit(long bytes) {
+        fMemoryLimit = Math.max(1, bytes);
+    }
+
+    /**
+     * Compare two exchange files
+     * @return The changes from the first file to the second
+     */
+    public List<Change> diff(File file1, File file2) throws IOException {
+        final List<Change> changes = new ArrayList<Change>();
+
+        diff(file1, file2, new Listener() {
+            @Override
+            public void change(Change change) {
+                changes.add(change);
+            }
+        });
+
+        return changes;
+    }
+
+    /**
+     * Compare two exchange files, reporting each change as it is found so that the changes are not all kept in memory
+     * @param listener Receives the changes from the first file to the second
+     */
+    public void diff(File file1, File file2, Listener listener) throws IOException {
+        // Records take about twice the size of the XML in memory
+        long size = Math.max(file1.length(), file2.length()) * 2;
+        int partitionCount = (int)Math.min(1024, Math.max(1, (size + fMemoryLimit - 1) / fMemoryLimit));
+
+        File spillFolder = partitionCount > 1 ? Files.createTempDirectory("xmlexchange-diff").toFile() : null;
+
+        try {
+            final Partitions partitions1 = new Partitions(partitionCount, spillFolder, "1");
+            final Partitions partitions2 = new Partitions(partitionCount, spillFolder, "2");
+
+            // Read the first file on another thread while this one reads the second
+            CompletableFuture<Void> future = XMLExchangeAsync.supplyAsync(createPartitionTask(file1, partitions1), XMLExchangeAsync.getDefaultExecutor());
+
+            try {
+                createPartitionTask(file2, partitions2).call();
+                future.join();
+            }
+            catch(CompletionException ex) {
+                throw ex.getCause() instanceof IOException ? (IOException)ex.getCause() : new IOException(ex.getCause());
+            }
+            catch(IOException ex) {
+                future.cancel(true);
+                throw ex;
+            }
+            catch(Exception ex) {
+                future.cancel(true);
+                throw new IOException(ex);
+            }
+
+            MessageDigest digest = createDigest();
+
+            for(int i = 0; i < partitionCount; i++) {
+                XMLExchangeAsync.checkInterrupted();
+                comparePartition(partitions1, partitions2, i, digest, listener);
+            }
+        }
+        finally {
+            if(spillFolder != null) {
+                for(File file : spillFolder.listFiles()) {
+                    file.delete();
+                }
+                spillFolder.delete();
+            }
+        }
+    }
+
+    private Callable<Void> createPartitionTask(final File file, final Partitions partitions) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                try(InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                    new RecordReader(partitions).read(in);
+                }
+                finally {
+                    partitions.close();
+                }
+                return null;
+            }
+        };
+    }
+
+    // ========================================= Comparing ======================================
+
+    private void comparePartition(Partitions partitions1, Partitions partitions2, int partition, MessageDigest digest, Listener listener) throws IOException {
+        // The first file's records of this partition, by identifier
+        Map<String, Record> records1 = new LinkedHashMap<String, Record>();
+
+        try(DataInputStream in = partitions1.openInput(partition)) {
+            Record record;
+            while((record = Record.read(in)) != null) {
+                record.resolvePropertyNames(partitions1.fPropertyNames, digest);
+                if(!records1.containsKey(record.fIdentifier)) {
+                    records1.put(record.fIdentifier, record);
+                }
+            }
+        }
+
+        // Identifiers already seen in the second file, as the first one wins
+        Map<String, Boolean> seen = new HashMap<String, Boolean>();
+
+        try(DataInputStream in = partitions2.openInput(partition)) {
+            Record record2;
+            while((record2 = Record.read(in)) != null) {
+                if(seen.put(record2.fIdentifier, Boolean.TRUE) != null) {
+                    continue;
+                }
+
+                record2.resolvePropertyNames(partitions2.fPropertyNames, digest);
+
+                Record record1 = records1.remove(record2.fIdentifier);
+
+                if(record1 == null) {
+                    listener.change(new Change(ChangeType.ADDED, record2.fName, record2.fIdentifier, Collections.<Difference>emptyList()));
+                }
+                else if(!Arrays.equals(record1.fHash, record2.fHash) || !record1.fName.equals(record2.fName)) {
+                    listener.change(new Change(ChangeType.CHANGED, record2.fName, record2.fIdentifier, compareFields(record1, record2)));
+                }
+            }
+        }
+
+        for(Record record1 : records1.values()) {
+            listener.change(new Change(ChangeType.REMOVED, record1.fName, record1.fIdentifier, Collections.<Difference>emptyList()));
+        }
+    }
+
+    private List<Difference> compareFields(Record record1, Record record2) {
+        List<Difference> differences = new ArrayList<Difference>();
+
+        Map<String, String> fields2 = new LinkedHashMap<String, String>(record2.fFields);
+
+        for(Map.Entry<String, String> entry : record1.fFields.entrySet()) {
+            String value2 = fields2.remove(entry.getKey());
+            if(!entry.getValue().equals(value2)) {
+                differences.add(new Difference(entry.getKey(), entry.getValue(), value2));
+            }
+        }
+
+        for(Map.Entry<String, String> entry : fields2.entrySet()) {
+            differences.add(new Difference(entry.getKey(), null, entry.getValue()));
+        }
+
+        return differences;
+    }
+
+    private static MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    // ========================================= Records ======================================
+
+    /**
+     * The flattened content of one object
+     */
+    static class Record {
+        final String fName;
+        String fIdentifier;
+        Map<String, String> fFields;
+        byte[] fHash;
+
+        Record(String name, String identifier) {
+            fName = name;
+            fIdentifier = identifier;
+            fFields = new LinkedHashMap<String, String>();
+        }
+
+        void addField(String path, String value) {
+            // Keep the first of duplicate paths
+            if(!fFields.containsKey(path)) {
+                fFields.put(path, value);
+            }
+        }
+
+        void computeHash(MessageDigest digest) {
+            for(Map.Entry<String, String> entry : fFields.entrySet()) {
+                digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte)0);
+                digest.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte)0);
+            }
+            fHash = digest.digest();
+        }
+
+        /**
+         * Replace property definition references in the paths with the definitions' names and hash again if any changed
+         * @param names Property definition names by identifier
+         */
+        void resolvePropertyNames(Map<String, String> names, MessageDigest digest) {
+            Map<String, String> fields = null;
+
+            for(Map.Entry<String, String> entry : fFields.entrySet()) {
+                if(entry.getKey().contains(PROPERTY_REF_QUALIFIER)) {
+                    fields = new LinkedHashMap<String, String>();
+                    break;
+                }
+            }
+
+            if(fields == null) {
+                return;
+            }
+
+            for(Map.Entry<String, String> entry : fFields.entrySet()) {
+                String path = resolvePropertyNames(entry.getKey(), names);
+                if(!fields.containsKey(path)) {
+                    fields.put(path, entry.getValue());
+                }
+            }
+
+            fFields = fields;
+            computeHash(digest);
+        }
+
+        private static String resolvePropertyNames(String path, Map<String, String> names) {
+            StringBuilder sb = new StringBuilder();
+            int last = 0;
+            int start;
+
+            while((start = path.indexOf(PROPERTY_REF_QUALIFIER, last)) != -1) {
+                int end = path.indexOf(']', start);
+                String ref = path.substring(start + PROPERTY_REF_QUALIFIER.length(), end);
+                String name = names.get(ref);
+
+                // A reference to a missing definition keeps the reference
+                sb.append(path, last, start).append('[').append(name != null ? name : ref).append(']');
+                last = end + 1;
+            }
+
+            return sb.append(path, last, path.length()).toString();
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeString(out, fName);
+            writeString(out, fIdentifier);
+            out.writeByte(fHash.length);
+            out.write(fHash);
+            out.writeInt(fFields.size());
+            for(Map.Entry<String, String> entry : fFields.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+
+        /**
+         * @return The next record, or null at the end
+         */
+        static Record read(DataInputStream in) throws IOException {
+            String name;
+            try {
+                name = readString(in);
+            }
+            catch(EOFException ex) {
+                return null;
+            }
+
+            Record record = new Record(name, readString(in));
+            record.fHash = new byte[in.readUnsignedByte()];
+            in.readFully(record.fHash);
+
+            int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                record.fFields.put(readString(in), readString(in));
+            }
+
+            return record;
+        }
+
+        // writeUTF() is limited to 64K and documentation can be longer
+        private static void writeString(DataOutputStream out, String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Records split by the hash of their identifier, in memory or in spill files
+     */
+    private static class Partitions {
+        private final DataOutputStream[] fOutputs;
+        private final ByteArrayOutputStream[] fBuffers;
+        private final File[] fFiles;
+
+        // Property definition names by identifier, filled in as the file is read
+        final Map<String, String> fPropertyNames = new HashMap<String, String>();
+
+        Partitions(int count, File spillFolder, String prefix) throws IOException {
+            fOutputs = new DataOutputStream[count];
+            fBuffers = new ByteArrayOutputStream[count];
+            fFiles = new File[count];
+
+            for(int i = 0; i < count; i++) {
+                OutputStream out;
+                if(spillFolder != null) {
+                    fFiles[i] = new File(spillFolder, prefix + "-" + i + ".spill");
+                    out = new FileOutputStream(fFiles[i]);
+                }
+                else {
+                    fBuffers[i] = new ByteArrayOutputStream();
+                    out = fBuffers[i];
+                }
+                fOutputs[i] = new DataOutputStream(new BufferedOutputStream(out));
+            }
+        }
+
+        void add(Record record) throws IOException {
+            int partition = (record.fIdentifier.hashCode() & 0x7FFFFFFF) % fOutputs.length;
+            record.write(fOutputs[partition]);
+        }
+
+        void close() throws IOException {
+            for(DataOutputStream out : fOutputs) {
+                out.close();
+            }
+        }
+
+        DataInputStream openInput(int partition) throws IOException {
+            InputStream in = fFiles[partition] != null ? new FileInputStream(fFiles[partition]) : new ByteArrayInputStream(fBuffers[partition].toByteArray());
+            fBuffers[partition] = null;
+            return new DataInputStream(new BufferedInputStream(in));
+        }
+    }
+
+    // ========================================= Reading ======================================
+
+    /**
+     * Streams a file into records
+     */
+    private static class RecordReader {
+        /**
+         * An open XML element
+         */
+        private static class Frame {
+            final Record fRecord;
+            final String fPath;
+            final StringBuilder fText = new StringBuilder();
+            final Map<String, Integer> fChildCounts = new HashMap<String, Integer>();
+
+            Frame(Record record, String path) {
+                fRecord = record;
+                fPath = path;
+            }
+        }
+
+        private final Partitions fPartitions;
+        private final MessageDigest fDigest;
+        private final Deque<Frame> fFrames = new ArrayDeque<Frame>();
+
+        RecordReader(Partitions partitions) throws IOException {
+            fPartitions = partitions;
+            fDigest = createDigest();
+        }
+
+        void read(InputStream in) throws IOException {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+            XMLStreamReader reader = null;
+
+            try {
+                reader = factory.createXMLStreamReader(in);
+
+                while(reader.hasNext()) {
+                    switch(reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            startElement(reader);
+                            break;
+
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                            if(!fFrames.isEmpty()) {
+                                fFrames.peek().fText.append(reader.getText());
+                            }
+                            break;
+
+                        case XMLStreamConstants.END_ELEMENT:
+                            endElement();
+                            break;
+
+                        default:
+                            break;
+                    }
+                }
+            }
+            catch(XMLStreamException ex) {
+                throw new IOException(ex.getMessage(), ex);
+            }
+            finally {
+                if(reader != null) {
+                    try {
+                        reader.close();
+                    }
+                    catch(XMLStreamException ex) {
+                        // ignore
+                    }
+                }
+            }
+        }
+
+        private void startElement(XMLStreamReader reader) throws IOException {
+            String name = reader.getLocalName();
+            String identifier = reader.getAttributeValue(null, ATTRIBUTE_IDENTIFIER);
+            Frame parent = fFrames.peek();
+
+            Frame frame;
+
+            if(identifier != null && OBJECT_NAMES.contains(name)) {
+                Record record = new Record(name, identifier);
+                frame = new Frame(record, "");
+
+                // Nodes and connections belong to a view or node
+                Record parentRecord = getEnclosingRecord();
+                if(parentRecord != null && (ELEMENT_NODE.equals(name) || ELEMENT_CONNECTION.equals(name))) {
+                    record.addField(PARENT_FIELD, parentRecord.fIdentifier);
+                }
+            }
+            else if(parent != null && parent.fRecord != null) {
+                frame = new Frame(parent.fRecord, getChildPath(parent, name, reader));
+            }
+            else {
+                // Outside any object
+                frame = new Frame(null, null);
+            }
+
+            if(frame.fRecord != null) {
+                addAttributes(frame, reader);
+            }
+
+            fFrames.push(frame);
+        }
+
+        private void endElement() throws IOException {
+            Frame frame = fFrames.pop();
+
+            if(frame.fRecord == null) {
+                return;
+            }
+
+            String text = frame.fText.toString().trim();
+            if(text.length() > 0) {
+                frame.fRecord.addField(frame.fPath.isEmpty() ? "text()" : frame.fPath, text);
+            }
+
+            // End of an object
+            if(frame.fPath.isEmpty()) {
+                Record record = frame.fRecord;
+
+                // Property definitions are matched by name
+                if(ELEMENT_PROPERTYDEFINITION.equals(record.fName)) {
+                    String name = getName(record);
+                    if(name != null) {
+                        if(!fPartitions.fPropertyNames.containsKey(record.fIdentifier)) {
+                            fPartitions.fPropertyNames.put(record.fIdentifier, name);
+                        }
+                        record.fIdentifier = name;
+                    }
+                }
+
+                record.computeHash(fDigest);
+                fPartitions.add(record);
+            }
+        }
+
+        /**
+         * @return The first name of any language of an object, or null
+         */
+        private String getName(Record record) {
+            for(Map.Entry<String, String> entry : record.fFields.entrySet()) {
+                if(entry.getKey().equals(ELEMENT_NAME) || entry.getKey().startsWith(ELEMENT_NAME + "[")) {
+                    return entry.getValue();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return The record of the innermost open object, or null
+         */
+        private Record getEnclosingRecord() {
+            Frame frame = fFrames.peek();
+            return frame == null ? null : frame.fRecord;
+        }
+
+        /**
+         * The path of a child element is qualified by its language, its property definition, or else its position
+         * among children of the same name, so that reordered properties and translations match up.
+         * Property definitions come after the elements and relationships in the file, so a property is qualified by
+         * its definition's identifier here and by the definition's name when the records are compared.
+         */
+        private String getChildPath(Frame parent, String name, XMLStreamReader reader) {
+            String qualifier = reader.getAttributeValue(XMLConstants.XML_NS_URI, ATTRIBUTE_LANG);
+
+            if(qualifier == null) {
+                String ref = reader.getAttributeValue(null, ATTRIBUTE_PROPERTY_IDENTIFIERREF);
+                if(ref != null) {
+                    qualifier = "#" + ref;
+                }
+            }
+
+            if(qualifier == null) {
+                Integer count = parent.fChildCounts.get(name);
+                count = count == null ? 1 : count + 1;
+                parent.fChildCounts.put(name, count);
+                qualifier = count == 1 ? null : String.valueOf(count);
+            }
+
+            String path = qualifier == null ? name : name + "[" + qualifier + "]";
+            return parent.fPath.isEmpty() ? path : parent.fPath + "/" + path;
+        }
+
+        private void addAttributes(Frame frame, XMLStreamReader reader) {
+            // Sorted, as attribute order doesn't matter
+            List<String> names = new ArrayList<String>();
+            Map<String, String> values = new HashMap<String, String>();
+
+            for(int i = 0; i < reader.getAttributeCount(); i++) {
+                String prefix = reader.getAttributePrefix(i);
+                String name = reader.getAttributeLocalName(i);
+
+                // Already in the path
+                if(ATTRIBUTE_IDENTIFIER.equals(name) && frame.fPath.isEmpty()) {
+                    continue;
+                }
+                if(XMLConstants.XML_NS_URI.equals(reader.getAttributeNamespace(i)) || ATTRIBUTE_PROPERTY_IDENTIFIERREF.equals(name)) {
+                    continue;
+                }
+
+                String qName = prefix == null || prefix.isEmpty() ? name : prefix + ":" + name;
+                names.add(qName);
+                values.put(qName, reader.getAttributeValue(i));
+            }
+
+            Collections.sort(names);
+
+            for(String name : names) {
+                frame.fRecord.addField(frame.fPath.isEmpty() ? "@" + name : frame.fPath + "/@" + name, values.get(name));
+            }
+        }
+    }
+}
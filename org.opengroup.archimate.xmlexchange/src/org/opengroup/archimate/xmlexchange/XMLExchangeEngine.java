@@ -0,0 +1,376 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.eclipse.emf.ecore.EObject;
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.xml.sax.SAXException;
+
+import com.archimatetool.model.IArchimateModel;
+
+
+/**
+ * Reusable and thread-safe Open Exchange conversion engine
+ *
+ * The engine holds only the options it was built with, and these can't be changed afterwards.
+ * The shared caches (the type mappings in {@link XMLTypeMapper} and the compiled Schema in {@link XMLValidator})
+ * are read-only once created. Each conversion runs in its own context, a new {@link XMLModelImporter} or
+ * {@link XMLModelExporter}, so one engine can be called from many threads at once.
+ *
+ * Models are not copied, so a model must not be changed by another thread while it is being exported.
+ */
+public final class XMLExchangeEngine {
+
+    /**
+     * Builder for an XMLExchangeEngine
+     */
+    public static final class Builder {
+        private Map<String, String> fMetadata;
+        private boolean fSaveOrganisation;
+        private boolean fIncludeXSD;
+        private String fLanguageCode;
+        private boolean fBulkConstruction = true;
+        private boolean fCanonical;
+        private boolean fIncludeViews = true;
+        private boolean fIncludeStyles = true;
+        private boolean fLazyViews;
+
+        private Builder() {
+        }
+
+        /**
+         * Set DC Metadata
+         * @param metadata A map of DC metadata element tags mapped to values. This is copied.
+         */
+        public Builder setMetadata(Map<String, String> metadata) {
+            fMetadata = metadata;
+            return this;
+        }
+
+        /**
+         * Set whether to save organisation of folders
+         */
+        public Builder setSaveOrganisation(boolean set) {
+            fSaveOrganisation = set;
+            return this;
+        }
+
+        /**
+         * Set whether to copy XSD files to target
+         */
+        public Builder setIncludeXSD(boolean set) {
+            fIncludeXSD = set;
+            return this;
+        }
+
+        /**
+         * Set the language code to use
+         */
+        public Builder setLanguageCode(String languageCode) {
+            fLanguageCode = languageCode;
+            return this;
+        }
+
+        /**
+         * Set whether to build imported models in bulk
+         * @see XMLModelImporter#setBulkConstruction(boolean)
+         */
+        public Builder setBulkConstruction(boolean set) {
+            fBulkConstruction = set;
+            return this;
+        }
+
+        /**
+         * Set whether to write canonical output and skip writing files that haven't changed
+         * @see XMLModelExporter#setCanonical(boolean)
+         */
+        public Builder setCanonical(boolean set) {
+            fCanonical = set;
+            return this;
+        }
+
+        /**
+         * Set whether to import views
+         * @see XMLModelImporter#setIncludeViews(boolean)
+         */
+        public Builder setIncludeViews(boolean set) {
+            fIncludeViews = set;
+            return this;
+        }
+
+        /**
+         * Set whether to import styles and the documentation of views and nodes
+         * @see XMLModelImporter#setIncludeStyles(boolean)
+         */
+        public Builder setIncludeStyles(boolean set) {
+            fIncludeStyles = set;
+            return this;
+        }
+
+        /**
+         * Set whether to load the content of imported views when they are first needed
+         * @see XMLModelImporter#setLazyViews(boolean)
+         */
+        public Builder setLazyViews(boolean set) {
+            fLazyViews = set;
+            return this;
+        }
+
+        public XMLExchangeEngine build() {
+            return new XMLExchangeEngine(this);
+        }
+    }
+
+    /**
+     * @return A new Builder with default options
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final Map<String, String> fMetadata;
+    private final boolean fSaveOrganisation;
+    private final boolean fIncludeXSD;
+    private final String fLanguageCode;
+    private final boolean fBulkConstruction;
+    private final boolean fCanonical;
+    private final boolean fIncludeViews;
+    private final boolean fIncludeStyles;
+    private final boolean fLazyViews;
+
+    private XMLExchangeEngine(Builder builder) {
+        fMetadata = builder.fMetadata == null ? null : Collections.unmodifiableMap(new LinkedHashMap<String, String>(builder.fMetadata));
+        fSaveOrganisation = builder.fSaveOrganisation;
+        fIncludeXSD = builder.fIncludeXSD;
+        fLanguageCode = builder.fLanguageCode;
+        fBulkConstruction = builder.fBulkConstruction;
+        fCanonical = builder.fCanonical;
+        fIncludeViews = builder.fIncludeViews;
+        fIncludeStyles = builder.fIncludeStyles;
+        fLazyViews = builder.fLazyViews;
+    }
+
+    /**
+     * Import a model from an XML, binary or JSON exchange file
+     */
+    public IArchimateModel importModel(File instanceFile) throws IOException, JDOMException, XMLModelParserException {
+        return createImporter().createArchiMateModel(instanceFile);
+    }
+
+    /**
+     * Import a model from an XML, binary or JSON exchange stream. The stream is not closed.
+     */
+    public IArchimateModel importModel(InputStream in) throws IOException, JDOMException, XMLModelParserException {
+        return createImporter().createArchiMateModel(in);
+    }
+
+    /**
+     * Export a model to an XML exchange file
+     * @return false if the engine is canonical and the file already had the same content so wasn't written
+     */
+    public boolean exportModel(IArchimateModel model, File outputFile) throws IOException {
+        XMLModelExporter exporter = createExporter();
+        exporter.exportModel(model, outputFile);
+        return !fCanonical || exporter.isFileWritten();
+    }
+
+    /**
+     * Export only some views or folders of a model, with everything they reference, to an XML exchange file
+     * @return false if the engine is canonical and the file already had the same content so wasn't written
+     * @see XMLModelExporter#setSubset(Collection)
+     */
+    public boolean exportSubset(IArchimateModel model, Collection<? extends EObject> viewsOrFolders, File outputFile) throws IOException {
+        XMLModelExporter exporter = createExporter();
+        exporter.setSubset(viewsOrFolders);
+        exporter.exportModel(model, outputFile);
+        return !fCanonical || exporter.isFileWritten();
+    }
+
+    /**
+     * Export a model as exchange XML to a stream. The stream is not closed.
+     */
+    public void exportModel(IArchimateModel model, OutputStream out) throws IOException {
+        createExporter().exportModel(model, out);
+    }
+
+    /**
+     * Export a model to a binary exchange file
+     */
+    public void exportModelBinary(IArchimateModel model, File outputFile) throws IOException {
+        createExporter().exportModelBinary(model, outputFile);
+    }
+
+    /**
+     * Export a model to a JSON exchange file
+     */
+    public void exportModelJSON(IArchimateModel model, File outputFile) throws IOException {
+        createExporter().exportModelJSON(model, outputFile);
+    }
+
+    /**
+     * Validate an XML, binary or JSON exchange file against the shared Schema
+     */
+    public void validate(File instanceFile) throws SAXException, IOException {
+        new XMLValidator().validateXML(instanceFile);
+    }
+
+    /**
+     * Validate an XML, binary or JSON exchange stream against the shared Schema. The stream is not closed.
+     */
+    public void validate(InputStream in) throws SAXException, IOException {
+        new XMLValidator().validateXML(in);
+    }
+
+    /**
+     * Check the identifiers and references of an XML, binary or JSON exchange file. This is much quicker than validation.
+     * @return The problems found, empty if none
+     * @see XMLIntegrityChecker
+     */
+    public List<XMLIntegrityChecker.Problem> checkIntegrity(File instanceFile) throws IOException {
+        return new XMLIntegrityChecker().check(instanceFile);
+    }
+
+    /**
+     * Check the identifiers and references of an XML, binary or JSON exchange stream. The stream is not closed.
+     * @return The problems found, empty if none
+     * @see XMLIntegrityChecker
+     */
+    public List<XMLIntegrityChecker.Problem> checkIntegrity(InputStream in) throws IOException {
+        return new XMLIntegrityChecker().check(in);
+    }
+
+    // ========================================= Asynchronous ======================================
+
+    /**
+     * Import a model from an XML, binary or JSON exchange file on the default Executor
+     * @see XMLExchangeAsync#getDefaultExecutor()
+     */
+    public CompletableFuture<IArchimateModel> importModelAsync(File instanceFile) {
+        return importModelAsync(instanceFile, XMLExchangeAsync.getDefaultExecutor());
+    }
+
+    /**
+     * Import a model from an XML, binary or JSON exchange file on the given Executor.
+     * Cancelling the future with cancel(true) interrupts the import.
+     */
+    public CompletableFuture<IArchimateModel> importModelAsync(final File instanceFile, Executor executor) {
+        return XMLExchangeAsync.supplyAsync(new Callable<IArchimateModel>() {
+            @Override
+            public IArchimateModel call() throws Exception {
+                return importModel(instanceFile);
+            }
+        }, executor);
+    }
+
+    /**
+     * Export a model to an XML exchange file on the default Executor
+     * @see XMLExchangeAsync#getDefaultExecutor()
+     */
+    public CompletableFuture<Void> exportModelAsync(IArchimateModel model, File outputFile) {
+        return exportModelAsync(model, outputFile, XMLExchangeAsync.getDefaultExecutor());
+    }
+
+    /**
+     * Export a model to an XML exchange file on the given Executor.
+     * The file is written to a temporary file first and moved into place when complete,
+     * so a failed or cancelled export leaves any existing file as it was.
+     * Views of a model imported with lazy views are loaded on the Executor's thread, see {@link XMLModelExporter}.
+     */
+    public CompletableFuture<Void> exportModelAsync(final IArchimateModel model, final File outputFile, Executor executor) {
+        return XMLExchangeAsync.supplyAsync(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                // Canonical export compares with the existing file and replaces it atomically itself
+                if(fCanonical) {
+                    XMLExchangeAsync.checkInterrupted();
+                    exportModel(model, outputFile);
+                    return null;
+                }
+
+                XMLExchangeAsync.writeFileAtomically(outputFile, new XMLExchangeAsync.FileContentWriter() {
+                    @Override
+                    public void write(File file) throws IOException {
+                        XMLExchangeAsync.checkInterrupted();
+                        exportModel(model, file);
+                    }
+                });
+                return null;
+            }
+        }, executor);
+    }
+
+    /**
+     * Validate an XML, binary or JSON exchange file on the default Executor
+     * @see XMLExchangeAsync#getDefaultExecutor()
+     */
+    public CompletableFuture<Void> validateAsync(File instanceFile) {
+        return validateAsync(instanceFile, XMLExchangeAsync.getDefaultExecutor());
+    }
+
+    /**
+     * Validate an XML, binary or JSON exchange file on the given Executor.
+     * The future completes exceptionally with a SAXException if the file is not valid.
+     */
+    public CompletableFuture<Void> validateAsync(final File instanceFile, Executor executor) {
+        return XMLExchangeAsync.supplyAsync(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                validate(instanceFile);
+                return null;
+            }
+        }, executor);
+    }
+
+    // ========================================= Support ======================================
+
+    /**
+     * Create the exchange format JDOM Document for a model
+     */
+    Document createExchangeDocument(IArchimateModel model) {
+        return createExporter().createExchangeDocument(model);
+    }
+
+    // ========================================= Conversion Contexts ======================================
+
+    /**
+     * @return A new single-use importer configured with this engine's options
+     */
+    XMLModelImporter createImporter() {
+        XMLModelImporter importer = new XMLModelImporter();
+        importer.setBulkConstruction(fBulkConstruction);
+        importer.setIncludeViews(fIncludeViews);
+        importer.setIncludeStyles(fIncludeStyles);
+        importer.setLazyViews(fLazyViews);
+        return importer;
+    }
+
+    /**
+     * @return A new single-use exporter configured with this engine's options
+     */
+    XMLModelExporter createExporter() {
+        XMLModelExporter exporter = new XMLModelExporter();
+        exporter.setMetadata(fMetadata);
+        exporter.setSaveOrganisation(fSaveOrganisation);
+        exporter.setIncludeXSD(fIncludeXSD);
+        exporter.setLanguageCode(fLanguageCode);
+        exporter.setCanonical(fCanonical);
+        return exporter;
+    }
+}
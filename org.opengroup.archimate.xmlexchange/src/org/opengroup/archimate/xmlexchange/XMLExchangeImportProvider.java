@@ -7,7 +7,16 @@ package org.opengroup.archimate.xmlexchange;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.gef.commands.Command;
+import org.eclipse.gef.commands.CommandStack;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.dialogs.ProgressMonitorDialog;
+import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.FileDialog;
@@ -28,42 +37,100 @@ public class XMLExchangeImportProvider implements IModelImporter, IXMLExchangeGl
     
     @Override
     public void doImport() throws IOException {
-        File file = askOpenFile();
+        final File file = askOpenFile();
         if(file == null) {
             return;
         }
         
-        // Validate file
+        // Validate file. Check references first as it's quick and finds the problems that break the import.
         try {
+            new XMLIntegrityChecker().validate(file);
+            
             XMLValidator validator = new XMLValidator();
             validator.validateXML(file);
         }
-        catch(SAXException ex) {
+        catch(SAXException | XMLModelParserException ex) {
             ex.printStackTrace();
             throw new IOException(ex);
         }
         
-        // Create a model
-        IArchimateModel model = null;
+        // Create a model, showing progress
+        final IArchimateModel[] result = new IArchimateModel[1];
         
         try {
-            XMLModelImporter xmlModelImporter = new XMLModelImporter();
-            model = xmlModelImporter.createArchiMateModel(file);
+            new ProgressMonitorDialog(Display.getCurrent().getActiveShell()).run(true, true, new IRunnableWithProgress() {
+                @Override
+                public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+                    XMLModelImporter xmlModelImporter = new XMLModelImporter();
+                    xmlModelImporter.setProgressMonitor(monitor);
+                    
+                    try {
+                        result[0] = xmlModelImporter.createArchiMateModel(file);
+                    }
+                    catch(InterruptedIOException ex) {
+                        throw new InterruptedException();
+                    }
+                    catch(Exception ex) {
+                        throw new InvocationTargetException(ex);
+                    }
+                }
+            });
         }
-        catch(Exception ex) {
-            ex.printStackTrace();
-            throw new IOException(ex);
+        catch(InterruptedException ex) {
+            // Cancelled
+            return;
+        }
+        catch(InvocationTargetException ex) {
+            ex.getCause().printStackTrace();
+            throw new IOException(ex.getCause());
+        }
+        
+        IArchimateModel model = result[0];
+        
+        if(model == null) {
+            return;
+        }
+        
+        // If the same model is already open offer to merge the changes into it
+        IArchimateModel openModel = findOpenModel(model.getId());
+        if(openModel != null && MessageDialog.openQuestion(Display.getCurrent().getActiveShell(),
+                Messages.XMLExchangeImportProvider_0,
+                NLS.bind(Messages.XMLExchangeImportProvider_1, openModel.getName()))) {
+            
+            Command command = new XMLModelMerger(openModel).createMergeCommand(model);
+            if(command.canExecute()) {
+                CommandStack stack = (CommandStack)openModel.getAdapter(CommandStack.class);
+                stack.execute(command);
+            }
+            
+            return;
         }
 
-        // And open the Model in the Editor
-        if(model != null) {
-            IEditorModelManager.INSTANCE.openModel(model);
+        // Open the Model in the Editor
+        IEditorModelManager.INSTANCE.openModel(model);
+    }
+    
+    /**
+     * @return An open model with the given identifier, or with the identifier that the exporter would have written for it
+     */
+    static IArchimateModel findOpenModel(String id) {
+        if(id == null) {
+            return null;
+        }
+        
+        for(IArchimateModel model : IEditorModelManager.INSTANCE.getModels()) {
+            String openID = model.getId();
+            if(id.equals(openID) || id.equals("id-" + openID)) { //$NON-NLS-1$
+                return model;
+            }
         }
+        
+        return null;
     }
     
     private File askOpenFile() {
         FileDialog dialog = new FileDialog(Display.getCurrent().getActiveShell(), SWT.OPEN);
-        dialog.setFilterExtensions(new String[] { FILE_EXTENSION_WILDCARD, "*.*" } ); //$NON-NLS-1$
+        dialog.setFilterExtensions(new String[] { FILE_EXTENSION_WILDCARD, BINARY_FILE_EXTENSION_WILDCARD, JSON_FILE_EXTENSION_WILDCARD, "*.*" } ); //$NON-NLS-1$
         String path = dialog.open();
         return path != null ? new File(path) : null;
     }
@@ -0,0 +1,702 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+
+
+/**
+ * A sidecar index of the byte position of every element, relationship, view and property definition in an exchange file
+ *
+ * The index is built by scanning the bytes of the file once, without parsing it, and is saved next to it
+ * with the extension ".idx". It is stamped with the size and modification time of the file and rebuilt by
+ * {@link #open(File)} if either has changed.
+ *
+ * A fragment is read by memory-mapping only its bytes and parsing them inside a wrapper element that has the
+ * namespace declarations of the root element, so pulling one view out of a large file costs the size of the view.
+ *
+ * Only UTF-8 files are indexed, which is what {@link XMLModelExporter} writes. Namespaces declared on elements
+ * between the root and an indexed element are not carried over to the fragment.
+ */
+@SuppressWarnings("nls")
+public final class XMLExchangeIndex {
+
+    public static final String INDEX_EXTENSION = ".idx";
+
+    private static final int MAGIC = 0x41584958; // "AXIX"
+    private static final int VERSION = 1;
+
+    private static final String WRAPPER = "index-fragment";
+
+    private static final Pattern ENCODING_PATTERN = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']+)[\"']");
+    private static final Pattern ATTRIBUTE_PATTERN = Pattern.compile("([^\\s=]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+
+    /**
+     * The position of one indexed fragment
+     */
+    public static final class Entry {
+        private final String fName;
+        private final long fOffset;
+        private final int fLength;
+
+        Entry(String name, long offset, int length) {
+            fName = name;
+            fOffset = offset;
+            fLength = length;
+        }
+
+        /**
+         * @return The local name of the XML element, one of element, relationship, view or propertyDefinition
+         */
+        public String getName() {
+            return fName;
+        }
+
+        /**
+         * @return The byte offset of the start tag in the file
+         */
+        public long getOffset() {
+            return fOffset;
+        }
+
+        /**
+         * @return The length in bytes up to the end of the end tag
+         */
+        public int getLength() {
+            return fLength;
+        }
+    }
+
+    private final File fFile;
+    private final long fFileLength;
+    private final long fFileLastModified;
+
+    // Namespace declarations of the root element, as written in the file
+    private final String fNamespaceDeclarations;
+
+    private final Map<String, Entry> fEntries;
+
+    private XMLExchangeIndex(File file, long fileLength, long fileLastModified, String namespaceDeclarations, Map<String, Entry> entries) {
+        fFile = file;
+        fFileLength = fileLength;
+        fFileLastModified = fileLastModified;
+        fNamespaceDeclarations = namespaceDeclarations;
+        fEntries = entries;
+    }
+
+    /**
+     * @return The sidecar index file for an exchange file
+     */
+    public static File getIndexFile(File file) {
+        return new File(file.getPath() + INDEX_EXTENSION);
+    }
+
+    /**
+     * Read the sidecar index of a file, building and saving it if there is none or it is out of date
+     * @param file The exchange file
+     * @return The index
+     * @throws IOException if the file can't be read or is not UTF-8
+     */
+    public static XMLExchangeIndex open(File file) throws IOException {
+        XMLExchangeIndex index = openIfCurrent(file);
+        return index != null ? index : build(file);
+    }
+
+    /**
+     * Read the sidecar index of a file without building it
+     * @param file The exchange file
+     * @return The index, or null if there is no index or it is out of date
+     */
+    static XMLExchangeIndex openIfCurrent(File file) {
+        File indexFile = getIndexFile(file);
+
+        if(indexFile.exists()) {
+            try {
+                XMLExchangeIndex index = read(file, indexFile);
+                if(index != null && index.isCurrent()) {
+                    return index;
+                }
+            }
+            catch(IOException ex) {
+                // Not readable
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Scan a file and save its sidecar index
+     * @param file The exchange file
+     * @return The index
+     * @throws IOException if the file can't be read or is not UTF-8
+     */
+    public static XMLExchangeIndex build(File file) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+
+        Scanner scanner = new Scanner();
+
+        try(InputStream in = new FileInputStream(file)) {
+            scanner.scan(in);
+        }
+
+        XMLExchangeIndex index = new XMLExchangeIndex(file, length, lastModified, scanner.fNamespaceDeclarations, scanner.fEntries);
+        index.write(getIndexFile(file));
+        return index;
+    }
+
+    /**
+     * @return true if the exchange file has the same size and modification time as when it was indexed
+     */
+    public boolean isCurrent() {
+        return fFile.length() == fFileLength && fFile.lastModified() == fFileLastModified;
+    }
+
+    /**
+     * @return The identifiers in the index, in file order
+     */
+    public Set<String> getIdentifiers() {
+        return Collections.unmodifiableSet(fEntries.keySet());
+    }
+
+    /**
+     * @return The entry for an identifier, or null if it is not in the index
+     */
+    public Entry getEntry(String identifier) {
+        return fEntries.get(identifier);
+    }
+
+    /**
+     * Read one indexed fragment
+     * @param identifier The identifier of an element, relationship, view or property definition
+     * @return The JDOM Element, or null if the identifier is not in the index
+     * @throws IOException if the file has changed since it was indexed or the fragment can't be parsed
+     */
+    public Element readFragment(String identifier) throws IOException {
+        List<Element> elements = readFragments(Collections.singletonList(identifier));
+        return elements.isEmpty() ? null : elements.get(0);
+    }
+
+    /**
+     * Read indexed fragments, opening the file once
+     * @param identifiers Identifiers of elements, relationships, views or property definitions
+     * @return The JDOM Elements in the order given. Identifiers not in the index are left out.
+     * @throws IOException if the file has changed since it was indexed or a fragment can't be parsed
+     */
+    public List<Element> readFragments(Collection<String> identifiers) throws IOException {
+        if(!isCurrent()) {
+            throw new IOException(Messages.XMLExchangeIndex_0 + " " + fFile);
+        }
+
+        List<Element> elements = new ArrayList<Element>(identifiers.size());
+
+        byte[] start = getWrapperStart();
+        byte[] end = getWrapperEnd();
+
+        SAXBuilder builder = new SAXBuilder();
+
+        try(FileChannel channel = FileChannel.open(fFile.toPath(), StandardOpenOption.READ)) {
+            for(String identifier : identifiers) {
+                Entry entry = fEntries.get(identifier);
+                if(entry == null) {
+                    continue;
+                }
+
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, entry.getOffset(), entry.getLength());
+
+                InputStream in = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                        new ByteArrayInputStream(start), new ByteBufferInputStream(buffer), new ByteArrayInputStream(end))));
+
+                try {
+                    Document doc = builder.build(in);
+                    elements.add(doc.getRootElement().getChildren().get(0).detach());
+                }
+                catch(JDOMException | IndexOutOfBoundsException ex) {
+                    throw new IOException(Messages.XMLExchangeIndex_1 + " " + identifier, ex);
+                }
+            }
+        }
+
+        return elements;
+    }
+
+    /**
+     * Open a stream of all fragments with the given local name in file order, inside one wrapper element
+     * that has the namespace declarations of the root element. Only the regions of the file holding
+     * the fragments are mapped, and the other bytes are not read.
+     * @param name One of element, relationship, view or propertyDefinition
+     * @throws IOException if the file has changed since it was indexed
+     */
+    InputStream openFragments(String name) throws IOException {
+        if(!isCurrent()) {
+            throw new IOException(Messages.XMLExchangeIndex_0 + " " + fFile);
+        }
+
+        List<InputStream> streams = new ArrayList<InputStream>();
+        streams.add(new ByteArrayInputStream(getWrapperStart()));
+
+        // Mapped buffers stay valid after the channel is closed
+        try(FileChannel channel = FileChannel.open(fFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer region = null;
+            long regionStart = 0;
+            long regionEnd = 0;
+
+            for(Entry entry : fEntries.values()) {
+                if(!name.equals(entry.getName())) {
+                    continue;
+                }
+
+                // Map from this fragment to as far as one buffer can reach
+                if(region == null || entry.getOffset() + entry.getLength() > regionEnd) {
+                    regionStart = entry.getOffset();
+                    long size = Math.min(Integer.MAX_VALUE, fFileLength - regionStart);
+                    region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, size);
+                    regionEnd = regionStart + size;
+                }
+
+                ByteBuffer fragment = region.duplicate();
+                fragment.position((int)(entry.getOffset() - regionStart));
+                fragment.limit(fragment.position() + entry.getLength());
+                streams.add(new ByteBufferInputStream(fragment.slice()));
+            }
+        }
+
+        streams.add(new ByteArrayInputStream(getWrapperEnd()));
+
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    private byte[] getWrapperStart() {
+        return ("<" + WRAPPER + fNamespaceDeclarations + ">").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] getWrapperEnd() {
+        return ("</" + WRAPPER + ">").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // ========================================= Sidecar file ======================================
+
+    private void write(File indexFile) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fFileLength);
+            out.writeLong(fFileLastModified);
+            out.writeUTF(fNamespaceDeclarations);
+            out.writeInt(fEntries.size());
+
+            for(Map.Entry<String, Entry> mapEntry : fEntries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                out.writeUTF(mapEntry.getKey());
+                out.writeUTF(entry.getName());
+                out.writeLong(entry.getOffset());
+                out.writeInt(entry.getLength());
+            }
+        }
+    }
+
+    private static XMLExchangeIndex read(File file, File indexFile) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            String namespaceDeclarations = in.readUTF();
+
+            int count = in.readInt();
+            Map<String, Entry> entries = new LinkedHashMap<String, Entry>(Math.max(16, (int)(count / 0.75f) + 1));
+
+            for(int i = 0; i < count; i++) {
+                String identifier = in.readUTF();
+                String name = in.readUTF().intern();
+                entries.put(identifier, new Entry(name, in.readLong(), in.readInt()));
+            }
+
+            return new XMLExchangeIndex(file, length, lastModified, namespaceDeclarations, entries);
+        }
+    }
+
+    // ========================================= Scanner ======================================
+
+    /**
+     * Finds the start and end of tags in the bytes of a file, skipping comments, CDATA, processing instructions and DOCTYPE.
+     * Markup characters are ASCII so they can't be part of a multi-byte UTF-8 character.
+     */
+    private static class Scanner {
+        private final byte[] fBuffer = new byte[64 * 1024];
+        private int fBufferLength;
+        private int fBufferPos;
+
+        private InputStream fIn;
+
+        // Absolute position of the next byte
+        private long fPos;
+
+        // Bytes of the current tag between '<' and '>'
+        private byte[] fTag = new byte[256];
+        private int fTagLength;
+
+        private int fDepth;
+
+        // The entry being read and its depth, or -1 if not in one
+        private int fEntryDepth = -1;
+        private String fEntryIdentifier;
+        private String fEntryName;
+        private long fEntryOffset;
+
+        String fNamespaceDeclarations = "";
+        final Map<String, Entry> fEntries = new LinkedHashMap<String, Entry>();
+
+        void scan(InputStream in) throws IOException {
+            fIn = in;
+
+            int b;
+            while((b = next()) != -1) {
+                if(b != '<') {
+                    continue;
+                }
+
+                long tagOffset = fPos - 1;
+
+                b = next();
+
+                if(b == '?') {
+                    skipProcessingInstruction();
+                }
+                else if(b == '!') {
+                    skipDeclaration();
+                }
+                else if(b == '/') {
+                    fTagLength = 0;
+                    readTag();
+                    endElement();
+                }
+                else if(b != -1) {
+                    fTagLength = 0;
+                    appendTag(b);
+                    boolean empty = readTag();
+                    startElement(tagOffset, empty);
+                }
+            }
+
+            if(fDepth != 0 || fEntryDepth != -1) {
+                throw new IOException(Messages.XMLExchangeIndex_1);
+            }
+        }
+
+        private void startElement(long tagOffset, boolean empty) throws IOException {
+            if(fDepth == 0) {
+                fNamespaceDeclarations = getNamespaceDeclarations();
+            }
+            else if(fEntryDepth == -1) {
+                String name = getLocalName();
+                if(name != null) {
+                    String identifier = getAttribute(IXMLExchangeGlobals.ATTRIBUTE_IDENTIFIER);
+                    if(identifier != null) {
+                        fEntryIdentifier = identifier;
+                        fEntryName = name;
+                        fEntryOffset = tagOffset;
+                        fEntryDepth = fDepth;
+                    }
+                }
+            }
+
+            if(empty) {
+                endEntry(fDepth);
+            }
+            else {
+                fDepth++;
+            }
+        }
+
+        private void endElement() throws IOException {
+            if(--fDepth < 0) {
+                throw new IOException(Messages.XMLExchangeIndex_1);
+            }
+            endEntry(fDepth);
+        }
+
+        private void endEntry(int depth) throws IOException {
+            if(depth == fEntryDepth) {
+                long length = fPos - fEntryOffset;
+                if(length > Integer.MAX_VALUE) {
+                    throw new IOException(Messages.XMLExchangeIndex_1 + " " + fEntryIdentifier);
+                }
+                fEntries.put(fEntryIdentifier, new Entry(fEntryName, fEntryOffset, (int)length));
+                fEntryDepth = -1;
+            }
+        }
+
+        /**
+         * @return The indexed local name of the tag, or null if it is not indexed
+         */
+        private String getLocalName() {
+            int end = 0;
+            while(end < fTagLength && !isWhitespace(fTag[end]) && fTag[end] != '/') {
+                end++;
+            }
+
+            int start = 0;
+            for(int i = 0; i < end; i++) {
+                if(fTag[i] == ':') {
+                    start = i + 1;
+                }
+            }
+
+            for(String name : new String[] { IXMLExchangeGlobals.ELEMENT_ELEMENT, IXMLExchangeGlobals.ELEMENT_RELATIONSHIP,
+                    IXMLExchangeGlobals.ELEMENT_VIEW, IXMLExchangeGlobals.ELEMENT_PROPERTYDEFINITION }) {
+                if(matches(name, start, end)) {
+                    return name;
+                }
+            }
+
+            return null;
+        }
+
+        private boolean matches(String name, int start, int end) {
+            if(end - start != name.length()) {
+                return false;
+            }
+            for(int i = 0; i < name.length(); i++) {
+                if(fTag[start + i] != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String getAttribute(String name) {
+            Matcher matcher = ATTRIBUTE_PATTERN.matcher(new String(fTag, 0, fTagLength, StandardCharsets.UTF_8));
+            while(matcher.find()) {
+                if(name.equals(matcher.group(1))) {
+                    return decodeEntities(matcher.group(2) != null ? matcher.group(2) : matcher.group(3));
+                }
+            }
+            return null;
+        }
+
+        private String getNamespaceDeclarations() {
+            StringBuilder sb = new StringBuilder();
+            Matcher matcher = ATTRIBUTE_PATTERN.matcher(new String(fTag, 0, fTagLength, StandardCharsets.UTF_8));
+            while(matcher.find()) {
+                if(matcher.group(1).equals("xmlns") || matcher.group(1).startsWith("xmlns:")) {
+                    sb.append(' ').append(matcher.group());
+                }
+            }
+            return sb.toString();
+        }
+
+        private String decodeEntities(String s) {
+            if(s.indexOf('&') == -1) {
+                return s;
+            }
+            return s.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'").replace("&amp;", "&");
+        }
+
+        /**
+         * Read the rest of a tag up to '>' into fTag, skipping over quoted attribute values
+         * @return true if the tag is an empty element tag
+         */
+        private boolean readTag() throws IOException {
+            int quote = 0;
+            int last = 0;
+            int b;
+
+            while((b = next()) != -1) {
+                if(quote != 0) {
+                    if(b == quote) {
+                        quote = 0;
+                    }
+                }
+                else if(b == '"' || b == '\'') {
+                    quote = b;
+                }
+                else if(b == '>') {
+                    return last == '/';
+                }
+
+                appendTag(b);
+                last = b;
+            }
+
+            throw new IOException(Messages.XMLExchangeIndex_1);
+        }
+
+        private void appendTag(int b) {
+            if(fTagLength == fTag.length) {
+                byte[] tag = new byte[fTag.length * 2];
+                System.arraycopy(fTag, 0, tag, 0, fTagLength);
+                fTag = tag;
+            }
+            fTag[fTagLength++] = (byte)b;
+        }
+
+        private void skipProcessingInstruction() throws IOException {
+            fTagLength = 0;
+            int last = 0;
+            int b;
+
+            while((b = next()) != -1) {
+                if(b == '>' && last == '?') {
+                    checkEncoding();
+                    return;
+                }
+                appendTag(b);
+                last = b;
+            }
+
+            throw new IOException(Messages.XMLExchangeIndex_1);
+        }
+
+        private void checkEncoding() throws IOException {
+            String pi = new String(fTag, 0, fTagLength, StandardCharsets.US_ASCII);
+            if(pi.startsWith("xml")) {
+                Matcher matcher = ENCODING_PATTERN.matcher(pi);
+                if(matcher.find() && !matcher.group(1).equalsIgnoreCase("UTF-8") && !matcher.group(1).equalsIgnoreCase("US-ASCII")) {
+                    throw new IOException(Messages.XMLExchangeIndex_2 + " " + matcher.group(1));
+                }
+            }
+        }
+
+        private void skipDeclaration() throws IOException {
+            int b = next();
+
+            // Comment
+            if(b == '-') {
+                next();
+                skipTo("-->");
+            }
+            // CDATA
+            else if(b == '[') {
+                skipTo("]]>");
+            }
+            // DOCTYPE, which may have an internal subset in brackets
+            else {
+                int brackets = 0;
+                while(b != -1) {
+                    if(b == '[') {
+                        brackets++;
+                    }
+                    else if(b == ']') {
+                        brackets--;
+                    }
+                    else if(b == '>' && brackets == 0) {
+                        return;
+                    }
+                    b = next();
+                }
+                throw new IOException(Messages.XMLExchangeIndex_1);
+            }
+        }
+
+        /**
+         * Skip to the end of the terminator. The last bytes read are compared with it, so that a terminator
+         * that overlaps a partial match, such as "]]>" at the end of "]]]>", is found.
+         */
+        private void skipTo(String terminator) throws IOException {
+            int length = terminator.length();
+            int[] last = new int[length];
+            int count = 0;
+            int b;
+
+            while((b = next()) != -1) {
+                System.arraycopy(last, 1, last, 0, length - 1);
+                last[length - 1] = b;
+
+                if(++count >= length && matches(last, terminator)) {
+                    return;
+                }
+            }
+
+            throw new IOException(Messages.XMLExchangeIndex_1);
+        }
+
+        private static boolean matches(int[] last, String terminator) {
+            for(int i = 0; i < last.length; i++) {
+                if(last[i] != terminator.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+        }
+
+        private int next() throws IOException {
+            if(fBufferPos == fBufferLength) {
+                fBufferLength = fIn.read(fBuffer);
+                fBufferPos = 0;
+                if(fBufferLength <= 0) {
+                    fBufferLength = 0;
+                    return -1;
+                }
+            }
+
+            fPos++;
+            return fBuffer[fBufferPos++] & 0xFF;
+        }
+    }
+
+    /**
+     * Reads a ByteBuffer
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer fBuffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            fBuffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return fBuffer.hasRemaining() ? fBuffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if(!fBuffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, fBuffer.remaining());
+            fBuffer.get(b, off, len);
+            return len;
+        }
+    }
+}
@@ -0,0 +1,907 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jdom2.Attribute;
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+
+
+/**
+ * JSON encoding of an Open Exchange document.
+ *
+ * The encoding carries the same information as the XML that {@link XMLModelExporter} writes and
+ * {@link XMLModelImporter} reads, in the same structure, so it can be used in place of XML.
+ * Each XML element is a JSON object:
+ * <pre>
+ * { "model": {
+ *     "@xmlns": "http://www.opengroup.org/xsd/archimate/3.0/",
+ *     "@identifier": "id-1",
+ *     "name": [ { "@xml:lang": "en", "#text": "Archisurance" } ],
+ *     "elements": [ { "element": [ { "@identifier": "id-2", "@xsi:type": "BusinessActor", ... } ] } ],
+ *     ...
+ *     "views": [ { "diagrams": [ { "view": [ { "node": [ { "@x": 20, "@y": 40, ... } ] } ] } ] } ]
+ * } }
+ * </pre>
+ * Attributes are members starting with "@", with the namespace prefix if they have one, and text is the "#text" member.
+ * Child elements are arrays, one for each element name. Attribute values that are plain integers, such as the
+ * absolute coordinates of nodes, are JSON numbers.
+ *
+ * A complete JDOM Document can be written and read, as for the binary encoding. {@link XMLModelExporter} and
+ * {@link XMLModelImporter} instead go a piece at a time. {@link StreamWriter} writes each element, relationship,
+ * folder and view as soon as the exporter has built it. {@link #readRoot(File, ImportContentFilter)} reads everything
+ * but the elements, relationships and views, and {@link #readItems(File, ImportContentFilter, ItemHandler)} reads these
+ * one at a time, so only one of them is held in memory at a time. The JSON is parsed without an intermediate JSON tree.
+ */
+@SuppressWarnings("nls")
+public final class XMLExchangeJSONCodec implements IXMLExchangeGlobals {
+
+    static final String ATTRIBUTE_PREFIX = "@";
+    static final String TEXT_KEY = "#text";
+    static final String XMLNS = "xmlns";
+
+    // How far to look for the opening brace
+    private static final int DETECT_LIMIT = 4096;
+
+    /**
+     * @param file The file to test
+     * @return true if the file is a JSON exchange file. Only the first character is tested.
+     */
+    public static boolean isJSONFile(File file) throws IOException {
+        if(file == null || !file.isFile()) {
+            return false;
+        }
+
+        try(InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return isJSONStream(in);
+        }
+    }
+
+    /**
+     * Test whether a stream is a JSON exchange document without consuming it
+     * @param in The stream, which must support mark and reset
+     * @return true if the first character other than white space (and a byte order mark) is an opening brace
+     */
+    public static boolean isJSONStream(InputStream in) throws IOException {
+        if(!in.markSupported()) {
+            throw new IllegalArgumentException("Stream does not support mark");
+        }
+
+        in.mark(DETECT_LIMIT);
+
+        try {
+            for(int i = 0; i < DETECT_LIMIT; i++) {
+                int b = in.read();
+                switch(b) {
+                    case ' ':
+                    case '\t':
+                    case '\r':
+                    case '\n':
+                    case 0xEF: // UTF-8 byte order mark
+                    case 0xBB:
+                    case 0xBF:
+                        continue;
+
+                    default:
+                        return b == '{';
+                }
+            }
+            return false;
+        }
+        finally {
+            in.reset();
+        }
+    }
+
+    // ========================================= Write ======================================
+
+    /**
+     * Write an exchange document to file as JSON
+     */
+    public void write(Document doc, File file) throws IOException {
+        try(OutputStream out = new FileOutputStream(file)) {
+            write(doc, out);
+        }
+    }
+
+    /**
+     * Write an exchange document to a stream as JSON. The stream is not closed.
+     */
+    public void write(Document doc, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+
+        Element rootElement = doc.getRootElement();
+        writer.write('{');
+        writeString(writer, getKey(rootElement));
+        writer.write(':');
+        writeElement(rootElement, writer, true);
+        writer.write("}\n");
+
+        writer.flush();
+    }
+
+    private static void writeElement(Element element, Writer writer, boolean isRoot) throws IOException {
+        writer.write('{');
+        boolean first = writeHeader(element, writer, isRoot);
+
+        // Children grouped by name, in the order the names first appear
+        Map<String, List<Element>> groups = new LinkedHashMap<String, List<Element>>();
+        for(Element child : element.getChildren()) {
+            String key = getKey(child);
+            List<Element> group = groups.get(key);
+            if(group == null) {
+                group = new ArrayList<Element>();
+                groups.put(key, group);
+            }
+            group.add(child);
+        }
+
+        for(Map.Entry<String, List<Element>> entry : groups.entrySet()) {
+            if(!first) {
+                writer.write(',');
+            }
+            first = false;
+
+            writeString(writer, entry.getKey());
+            writer.write(":[");
+            for(int i = 0; i < entry.getValue().size(); i++) {
+                if(i > 0) {
+                    writer.write(',');
+                }
+                writeElement(entry.getValue().get(i), writer, false);
+            }
+            writer.write(']');
+        }
+
+        writer.write('}');
+    }
+
+    /**
+     * Write the namespace declarations of the root, and the attributes and text of an element
+     * @return true if nothing was written
+     */
+    private static boolean writeHeader(Element element, Writer writer, boolean isRoot) throws IOException {
+        boolean first = true;
+
+        // Namespaces are declared on the root element
+        if(isRoot) {
+            first = writeMember(writer, first, ATTRIBUTE_PREFIX + XMLNS, element.getNamespaceURI());
+            for(Namespace namespace : element.getAdditionalNamespaces()) {
+                first = writeMember(writer, first, ATTRIBUTE_PREFIX + XMLNS + ":" + namespace.getPrefix(), namespace.getURI());
+            }
+        }
+
+        for(Attribute attribute : element.getAttributes()) {
+            String prefix = attribute.getNamespacePrefix();
+            String key = ATTRIBUTE_PREFIX + (prefix.isEmpty() ? attribute.getName() : prefix + ":" + attribute.getName());
+
+            if(!first) {
+                writer.write(',');
+            }
+            first = false;
+
+            writeString(writer, key);
+            writer.write(':');
+
+            Integer value = XMLExchangeBinaryCodec.asInteger(attribute.getValue());
+            if(value != null) {
+                writer.write(value.toString());
+            }
+            else {
+                writeString(writer, attribute.getValue());
+            }
+        }
+
+        String text = element.getTextTrim();
+        if(!text.isEmpty()) {
+            first = writeMember(writer, first, TEXT_KEY, element.getText());
+        }
+
+        return first;
+    }
+
+    private static boolean writeMember(Writer writer, boolean first, String key, String value) throws IOException {
+        if(!first) {
+            writer.write(',');
+        }
+        writeString(writer, key);
+        writer.write(':');
+        writeString(writer, value);
+        return false;
+    }
+
+    /**
+     * The name of an element with its prefix if it is not in the ArchiMate namespace
+     */
+    private static String getKey(Element element) {
+        String prefix = element.getNamespacePrefix();
+        return prefix.isEmpty() ? element.getName() : prefix + ":" + element.getName();
+    }
+
+    private static void writeString(Writer writer, String s) throws IOException {
+        writer.write('"');
+
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch(c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if(c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int)c));
+                    }
+                    else {
+                        writer.write(c);
+                    }
+                    break;
+            }
+        }
+
+        writer.write('"');
+    }
+
+    /**
+     * Writes an exchange document a piece at a time, so that {@link XMLModelExporter} can write each element,
+     * relationship, folder and view as soon as it has built it and then drop it.
+     * An element is opened with its attributes and text the first time something is written into it, and closed
+     * when something is written outside it. Children with the same name go in one JSON array, so they must be
+     * written one after another.
+     */
+    static class StreamWriter {
+        private final Writer writer;
+
+        // The open elements from the root down
+        private final List<OpenElement> openElements = new ArrayList<OpenElement>();
+
+        private static class OpenElement {
+            final Element element;
+            boolean first = true;
+
+            // The name of the children being written, and the names already written
+            String key;
+            final Set<String> keys = new HashSet<String>();
+
+            OpenElement(Element element) {
+                this.element = element;
+            }
+        }
+
+        /**
+         * @param out The stream, which is not closed
+         */
+        StreamWriter(OutputStream out) {
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Open an element, and any of its ancestors that are not open, closing any open elements that are not its
+         * ancestors. The element's children are not written. The root element must be opened first.
+         */
+        void startElement(Element element) throws IOException {
+            for(int i = 0; i < openElements.size(); i++) {
+                if(openElements.get(i).element == element) {
+                    closeElements(i + 1);
+                    return;
+                }
+            }
+
+            Element parent = element.getParentElement();
+            if(parent == null) {
+                if(!openElements.isEmpty()) {
+                    throw new IllegalStateException("Root element already written");
+                }
+                writer.write('{');
+                writeString(writer, getKey(element));
+                writer.write(':');
+            }
+            else {
+                startElement(parent);
+                startChild(getKey(element));
+            }
+
+            writer.write('{');
+            OpenElement openElement = new OpenElement(element);
+            openElement.first = writeHeader(element, writer, parent == null);
+            openElements.add(openElement);
+        }
+
+        /**
+         * Write an element with all its children into its parent, opening the parent if it is not open
+         */
+        void addElement(Element element) throws IOException {
+            startElement(element.getParentElement());
+            startChild(getKey(element));
+            writeElement(element, writer, false);
+        }
+
+        /**
+         * Close the open elements and end the document
+         */
+        void close() throws IOException {
+            closeElements(0);
+            writer.write("}\n");
+            writer.flush();
+        }
+
+        /**
+         * Start a child of the innermost open element in the array for its name
+         */
+        private void startChild(String key) throws IOException {
+            OpenElement parent = openElements.get(openElements.size() - 1);
+
+            if(key.equals(parent.key)) {
+                writer.write(',');
+                return;
+            }
+
+            if(!parent.keys.add(key)) {
+                throw new IllegalStateException("Children named " + key + " are not together");
+            }
+
+            if(parent.key != null) {
+                writer.write(']');
+            }
+            if(!parent.first) {
+                writer.write(',');
+            }
+            parent.first = false;
+            parent.key = key;
+
+            writeString(writer, key);
+            writer.write(":[");
+        }
+
+        private void closeElements(int size) throws IOException {
+            while(openElements.size() > size) {
+                OpenElement openElement = openElements.remove(openElements.size() - 1);
+                if(openElement.key != null) {
+                    writer.write(']');
+                }
+                writer.write('}');
+            }
+        }
+    }
+
+    // ========================================= Read ======================================
+
+    /**
+     * Read a JSON exchange file into an exchange document
+     */
+    public Document read(File file) throws IOException {
+        return read(file, null);
+    }
+
+    /**
+     * Read a JSON exchange document from a stream. The stream is not closed.
+     */
+    public Document read(InputStream in) throws IOException {
+        return read(in, null);
+    }
+
+    /**
+     * Read a JSON exchange file leaving out the elements dropped by the filter. Dropped elements are stepped over
+     * without creating them.
+     * @param filter The filter, or null to read everything
+     */
+    Document read(File file, ImportContentFilter filter) throws IOException {
+        try(InputStream in = new FileInputStream(file)) {
+            return read(in, filter);
+        }
+    }
+
+    /**
+     * Read a JSON exchange document from a stream leaving out the elements dropped by the filter
+     */
+    Document read(InputStream in, ImportContentFilter filter) throws IOException {
+        JSONReader reader = new JSONReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        reader.filter = filter;
+
+        reader.skipByteOrderMark();
+        reader.expect('{');
+        String rootKey = reader.readString();
+        reader.expect(':');
+        Element rootElement = reader.readElement(rootKey, true);
+        reader.expect('}');
+
+        return new Document(rootElement);
+    }
+
+    // ========================================= Read Items ======================================
+
+    // The sections holding the elements, relationships and views
+    private static final Set<String> ITEM_SECTIONS = new HashSet<String>(Arrays.asList(ELEMENT_ELEMENTS, ELEMENT_RELATIONSHIPS, ELEMENT_VIEWS));
+
+    /**
+     * Receives the elements, relationships and views of a JSON exchange file one at a time
+     */
+    interface ItemHandler {
+        /**
+         * @param section The name of the section holding the item. This is elements, relationships or diagrams.
+         * @param item The item, without a parent
+         */
+        void item(String section, Element item) throws IOException, XMLModelParserException;
+    }
+
+    /**
+     * Read the root element of a JSON exchange file with everything but the elements, relationships and views,
+     * which are stepped over. With {@link #readItems(File, ImportContentFilter, ItemHandler)} this reads the whole
+     * file without holding all of it in memory at once.
+     * @param filter The filter, or null to read everything
+     */
+    Element readRoot(File file, ImportContentFilter filter) throws IOException {
+        try(InputStream in = new FileInputStream(file)) {
+            JSONReader reader = new JSONReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+            reader.filter = filter;
+            reader.skipItemSections = true;
+
+            reader.skipByteOrderMark();
+            reader.expect('{');
+            String rootKey = reader.readString();
+            reader.expect(':');
+            Element rootElement = reader.readElement(rootKey, true);
+            reader.expect('}');
+
+            return rootElement;
+        }
+    }
+
+    /**
+     * Read the elements, relationships and views of a JSON exchange file and pass them to the handler one at a time,
+     * in the order they are in the file. Everything else is stepped over.
+     * @param filter The filter, or null to read everything
+     */
+    void readItems(File file, ImportContentFilter filter, ItemHandler handler) throws IOException, XMLModelParserException {
+        try(InputStream in = new FileInputStream(file)) {
+            JSONReader reader = new JSONReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+            reader.filter = filter;
+
+            reader.skipByteOrderMark();
+            reader.expect('{');
+            String rootKey = reader.readString();
+            reader.expect(':');
+            reader.readItems(rootKey, handler);
+            reader.expect('}');
+        }
+    }
+
+    /**
+     * A pull reader for the JSON written here
+     */
+    private static class JSONReader {
+        final Reader in;
+        ImportContentFilter filter;
+
+        // Whether to step over the elements, relationships and views of the root
+        boolean skipItemSections;
+
+        // Namespaces by prefix. The empty prefix is the default namespace.
+        final Map<String, Namespace> namespaces = new HashMap<String, Namespace>();
+
+        int peeked = -2;
+
+        JSONReader(Reader in) {
+            this.in = in;
+            namespaces.put("", ARCHIMATE3_NAMESPACE);
+            namespaces.put(Namespace.XML_NAMESPACE.getPrefix(), Namespace.XML_NAMESPACE);
+        }
+
+        /**
+         * Read an element object
+         * @param key The element's name with any prefix
+         * @param isRoot Whether this is the root element, which declares the namespaces
+         */
+        Element readElement(String key, boolean isRoot) throws IOException {
+            expect('{');
+
+            // The element is created when its namespace declarations, which come first, have been read
+            Element element = null;
+            List<String[]> attributes = new ArrayList<String[]>();
+
+            if(peek() != '}') {
+                do {
+                    String name = readString();
+                    expect(':');
+
+                    if(name.startsWith(ATTRIBUTE_PREFIX)) {
+                        String attributeName = name.substring(ATTRIBUTE_PREFIX.length());
+                        String value = readScalar();
+
+                        // Namespace declarations are used when the element is created
+                        if(declareNamespace(attributeName, value)) {
+                            continue;
+                        }
+
+                        if(element == null) {
+                            attributes.add(new String[] { attributeName, value });
+                        }
+                        else {
+                            setAttribute(element, attributeName, value);
+                        }
+                    }
+                    else {
+                        if(element == null) {
+                            element = createElement(key, attributes, isRoot);
+                        }
+
+                        if(TEXT_KEY.equals(name)) {
+                            element.setText(readString());
+                        }
+                        else if(isRoot && skipItemSections && ITEM_SECTIONS.contains(name)) {
+                            skipValue();
+                        }
+                        else {
+                            readChildren(element, name);
+                        }
+                    }
+                }
+                while(next(','));
+            }
+
+            expect('}');
+
+            if(element == null) {
+                element = createElement(key, attributes, isRoot);
+            }
+
+            return element;
+        }
+
+        private void readChildren(Element element, String key) throws IOException {
+            // Dropped by the filter
+            if(skips(element.getName(), key)) {
+                skipValue();
+                return;
+            }
+
+            expect('[');
+            if(peek() != ']') {
+                do {
+                    element.addContent(readElement(key, false));
+                }
+                while(next(','));
+            }
+            expect(']');
+        }
+
+        /**
+         * Read the root object passing the elements, relationships and views to the handler.
+         * Only the namespace declarations of the root are kept, and everything else is stepped over.
+         */
+        void readItems(String key, ItemHandler handler) throws IOException, XMLModelParserException {
+            String rootName = key.substring(key.indexOf(':') + 1);
+
+            expect('{');
+            if(peek() != '}') {
+                do {
+                    String name = readString();
+                    expect(':');
+
+                    if(name.startsWith(ATTRIBUTE_PREFIX)) {
+                        declareNamespace(name.substring(ATTRIBUTE_PREFIX.length()), readScalar());
+                    }
+                    else if(ITEM_SECTIONS.contains(name) && !skips(rootName, name)) {
+                        readSections(name, handler);
+                    }
+                    else {
+                        skipValue();
+                    }
+                }
+                while(next(','));
+            }
+            expect('}');
+        }
+
+        /**
+         * Read an array of sections and pass the items in them to the handler. Views are in the diagrams in views.
+         */
+        private void readSections(String key, ItemHandler handler) throws IOException, XMLModelParserException {
+            expect('[');
+            if(peek() != ']') {
+                do {
+                    expect('{');
+                    if(peek() != '}') {
+                        do {
+                            String name = readString();
+                            expect(':');
+
+                            if(name.startsWith(ATTRIBUTE_PREFIX) || TEXT_KEY.equals(name) || skips(key, name)) {
+                                skipValue();
+                            }
+                            else if(ELEMENT_VIEWS.equals(key) && ELEMENT_DIAGRAMS.equals(name)) {
+                                readSections(name, handler);
+                            }
+                            else {
+                                expect('[');
+                                if(peek() != ']') {
+                                    do {
+                                        handler.item(key, readElement(name, false));
+                                    }
+                                    while(next(','));
+                                }
+                                expect(']');
+                            }
+                        }
+                        while(next(','));
+                    }
+                    expect('}');
+                }
+                while(next(','));
+            }
+            expect(']');
+        }
+
+        /**
+         * @return true if the children with this key are dropped by the filter
+         */
+        private boolean skips(String parentName, String key) {
+            return filter != null && key.indexOf(':') == -1 && filter.skips(parentName, key);
+        }
+
+        /**
+         * Declare a namespace if the attribute is a namespace declaration
+         * @return true if it was a namespace declaration
+         */
+        private boolean declareNamespace(String attributeName, String value) {
+            if(attributeName.equals(XMLNS)) {
+                namespaces.put("", Namespace.getNamespace(value));
+                return true;
+            }
+
+            if(attributeName.startsWith(XMLNS + ":")) {
+                String prefix = attributeName.substring(XMLNS.length() + 1);
+                namespaces.put(prefix, Namespace.getNamespace(prefix, value));
+                return true;
+            }
+
+            return false;
+        }
+
+        private Element createElement(String key, List<String[]> attributes, boolean isRoot) throws IOException {
+            int colon = key.indexOf(':');
+            Element element = new Element(colon == -1 ? key : key.substring(colon + 1), getNamespace(colon == -1 ? "" : key.substring(0, colon)));
+
+            if(isRoot) {
+                for(Namespace namespace : namespaces.values()) {
+                    if(!namespace.getPrefix().isEmpty() && namespace != Namespace.XML_NAMESPACE) {
+                        element.addNamespaceDeclaration(namespace);
+                    }
+                }
+            }
+
+            for(String[] attribute : attributes) {
+                setAttribute(element, attribute[0], attribute[1]);
+            }
+
+            return element;
+        }
+
+        private void setAttribute(Element element, String name, String value) throws IOException {
+            int colon = name.indexOf(':');
+            if(colon == -1) {
+                element.setAttribute(name, value);
+            }
+            else {
+                element.setAttribute(name.substring(colon + 1), value, getNamespace(name.substring(0, colon)));
+            }
+        }
+
+        private Namespace getNamespace(String prefix) throws IOException {
+            Namespace namespace = namespaces.get(prefix);
+            if(namespace == null) {
+                throw error();
+            }
+            return namespace;
+        }
+
+        // ===== Tokens =====
+
+        void skipByteOrderMark() throws IOException {
+            if(peekChar() == '\uFEFF') {
+                peeked = -2;
+            }
+        }
+
+        /**
+         * @return The next character that isn't white space, without consuming it
+         */
+        int peek() throws IOException {
+            int c = peekChar();
+            while(c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                peeked = -2;
+                c = peekChar();
+            }
+            return c;
+        }
+
+        private int peekChar() throws IOException {
+            if(peeked == -2) {
+                peeked = in.read();
+            }
+            return peeked;
+        }
+
+        private int read() throws IOException {
+            int c = peekChar();
+            peeked = -2;
+            return c;
+        }
+
+        void expect(char c) throws IOException {
+            if(peek() != c) {
+                throw error();
+            }
+            read();
+        }
+
+        /**
+         * Consume the character if it's next
+         */
+        boolean next(char c) throws IOException {
+            if(peek() == c) {
+                read();
+                return true;
+            }
+            return false;
+        }
+
+        String readString() throws IOException {
+            expect('"');
+
+            StringBuilder sb = new StringBuilder();
+
+            for(;;) {
+                int c = read();
+                switch(c) {
+                    case -1:
+                        throw error();
+
+                    case '"':
+                        return sb.toString();
+
+                    case '\\':
+                        c = read();
+                        switch(c) {
+                            case 'n':
+                                sb.append('\n');
+                                break;
+                            case 'r':
+                                sb.append('\r');
+                                break;
+                            case 't':
+                                sb.append('\t');
+                                break;
+                            case 'b':
+                                sb.append('\b');
+                                break;
+                            case 'f':
+                                sb.append('\f');
+                                break;
+                            case 'u':
+                                char[] hex = new char[4];
+                                for(int i = 0; i < 4; i++) {
+                                    hex[i] = (char)read();
+                                }
+                                try {
+                                    sb.append((char)Integer.parseInt(new String(hex), 16));
+                                }
+                                catch(NumberFormatException ex) {
+                                    throw error();
+                                }
+                                break;
+                            case '"':
+                            case '\\':
+                            case '/':
+                                sb.append((char)c);
+                                break;
+                            default:
+                                throw error();
+                        }
+                        break;
+
+                    default:
+                        sb.append((char)c);
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Read a string, number or literal as a string
+         */
+        String readScalar() throws IOException {
+            if(peek() == '"') {
+                return readString();
+            }
+
+            StringBuilder sb = new StringBuilder();
+            for(int c = peekChar(); c != -1 && c != ',' && c != '}' && c != ']' && c > ' '; c = peekChar()) {
+                sb.append((char)read());
+            }
+
+            if(sb.length() == 0) {
+                throw error();
+            }
+
+            return sb.toString();
+        }
+
+        /**
+         * Step over a value of any kind
+         */
+        void skipValue() throws IOException {
+            switch(peek()) {
+                case '{':
+                    read();
+                    if(peek() != '}') {
+                        do {
+                            readString();
+                            expect(':');
+                            skipValue();
+                        }
+                        while(next(','));
+                    }
+                    expect('}');
+                    break;
+
+                case '[':
+                    read();
+                    if(peek() != ']') {
+                        do {
+                            skipValue();
+                        }
+                        while(next(','));
+                    }
+                    expect(']');
+                    break;
+
+                default:
+                    readScalar();
+                    break;
+            }
+        }
+
+        IOException error() {
+            return new IOException(Messages.XMLExchangeJSONCodec_0);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jdom2.Text;
+
+
+/**
+ * Quick look at an XML exchange file before it is imported
+ *
+ * {@link #count(File)} streams the whole file reading only the tags, and counts the objects that an import creates.
+ * The counts are used to presize the importer's maps and lists and as the total of a progress bar.
+ *
+ * {@link #peekHeader(File)} stops after the model's name, documentation and metadata at the top of the file,
+ * so it takes the same short time however big the file is.
+ *
+ * Only XML exchange files can be scanned. Binary and JSON files have to be decoded in full.
+ */
+public final class XMLExchangePreScan implements IXMLExchangeGlobals {
+
+    /**
+     * The number of each kind of object in an exchange file
+     */
+    public static final class Counts {
+        private int fElements;
+        private int fRelationships;
+        private int fPropertyDefinitions;
+        private int fViews;
+        private int fNodes;
+        private int fConnections;
+
+        public int getElements() {
+            return fElements;
+        }
+
+        public int getRelationships() {
+            return fRelationships;
+        }
+
+        public int getPropertyDefinitions() {
+            return fPropertyDefinitions;
+        }
+
+        public int getViews() {
+            return fViews;
+        }
+
+        public int getNodes() {
+            return fNodes;
+        }
+
+        public int getConnections() {
+            return fConnections;
+        }
+
+        /**
+         * @return The number of elements, relationships, views, nodes and connections, which are the objects with identifiers
+         */
+        public int getTotal() {
+            return fElements + fRelationships + fViews + fNodes + fConnections;
+        }
+    }
+
+    /**
+     * The model's name, documentation and Dublin Core metadata
+     */
+    public static final class Header {
+        private String fIdentifier;
+        private String fName;
+        private String fDocumentation;
+        private Map<String, String> fMetadata = new LinkedHashMap<String, String>();
+
+        public String getIdentifier() {
+            return fIdentifier;
+        }
+
+        /**
+         * @return The name in the best language, or the first name, or null
+         */
+        public String getName() {
+            return fName;
+        }
+
+        /**
+         * @return The documentation in the best language, or the first documentation, or null
+         */
+        public String getDocumentation() {
+            return fDocumentation;
+        }
+
+        /**
+         * @return Dublin Core metadata values by element name, for example "creator", in file order
+         */
+        public Map<String, String> getMetadata() {
+            return Collections.unmodifiableMap(fMetadata);
+        }
+    }
+
+    private XMLExchangePreScan() {
+    }
+
+    /**
+     * Count the objects in an XML exchange file
+     * @param file The XML exchange file
+     * @return The counts
+     * @throws IOException If the file can't be read or is not well formed
+     */
+    public static Counts count(File file) throws IOException {
+        Counts counts = new Counts();
+        XMLStreamReader reader = null;
+
+        try(InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            reader = createReader(in);
+
+            while(reader.hasNext()) {
+                if(reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+
+                switch(reader.getLocalName()) {
+                    case ELEMENT_ELEMENT:
+                        counts.fElements++;
+                        break;
+
+                    case ELEMENT_RELATIONSHIP:
+                        counts.fRelationships++;
+                        break;
+
+                    case ELEMENT_PROPERTYDEFINITION:
+                        counts.fPropertyDefinitions++;
+                        break;
+
+                    case ELEMENT_VIEW:
+                        counts.fViews++;
+                        break;
+
+                    case ELEMENT_NODE:
+                        counts.fNodes++;
+                        break;
+
+                    case ELEMENT_CONNECTION:
+                        counts.fConnections++;
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+        }
+        catch(XMLStreamException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+        finally {
+            close(reader);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Read the model's identifier, name, documentation and metadata, stopping at the first other section of the file.
+     * The name and documentation are chosen by {@link LanguageSelector#getDefault()}.
+     * @param file The XML exchange file
+     * @return The header
+     * @throws IOException If the file can't be read or the header is not well formed
+     */
+    public static Header peekHeader(File file) throws IOException {
+        return peekHeader(file, LanguageSelector.getDefault());
+    }
+
+    /**
+     * Read the model's identifier, name, documentation and metadata, stopping at the first other section of the file
+     * @param file The XML exchange file
+     * @param selector Chooses the name and documentation if there are translations
+     * @return The header
+     * @throws IOException If the file can't be read or the header is not well formed
+     */
+    public static Header peekHeader(File file, LanguageSelector selector) throws IOException {
+        Header header = new Header();
+
+        // Rank of the name and documentation found so far
+        int nameRank = Integer.MAX_VALUE;
+        int documentationRank = Integer.MAX_VALUE;
+
+        XMLStreamReader reader = null;
+
+        try(InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            reader = createReader(in);
+
+            reader.nextTag();
+            header.fIdentifier = reader.getAttributeValue(null, ATTRIBUTE_IDENTIFIER);
+
+            // Children of the model element
+            while(reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+
+                if(ELEMENT_NAME.equals(name) || ELEMENT_DOCUMENTATION.equals(name)) {
+                    int rank = selector.rank(reader.getAttributeValue(XMLConstants.XML_NS_URI, ATTRIBUTE_LANG));
+                    String text = reader.getElementText();
+
+                    if(ELEMENT_NAME.equals(name)) {
+                        if(rank < nameRank) {
+                            header.fName = Text.normalizeString(text);
+                            nameRank = rank;
+                        }
+                    }
+                    else if(rank < documentationRank) {
+                        header.fDocumentation = text;
+                        documentationRank = rank;
+                    }
+                }
+                else if(ELEMENT_PROPERTIES.equals(name)) {
+                    skipElement(reader);
+                }
+                else if(ELEMENT_METADATA.equals(name)) {
+                    readMetadata(reader, header);
+                }
+                else {
+                    // Elements, relationships or anything else that follows the header
+                    break;
+                }
+            }
+        }
+        catch(XMLStreamException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+        finally {
+            close(reader);
+        }
+
+        return header;
+    }
+
+    /**
+     * Read the Dublin Core elements of the metadata element, leaving the reader on its end tag
+     */
+    private static void readMetadata(XMLStreamReader reader, Header header) throws XMLStreamException {
+        while(reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if(DC_NAMESPACE.getURI().equals(reader.getNamespaceURI())) {
+                String name = reader.getLocalName();
+                String text = reader.getElementText();
+                if(!header.fMetadata.containsKey(name)) {
+                    header.fMetadata.put(name, Text.normalizeString(text));
+                }
+            }
+            else {
+                skipElement(reader);
+            }
+        }
+    }
+
+    /**
+     * Skip the element that the reader is on, leaving the reader on its end tag
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while(depth > 0) {
+            int event = reader.next();
+            if(event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            }
+            else if(event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static XMLStreamReader createReader(InputStream in) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory.createXMLStreamReader(in);
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if(reader != null) {
+            try {
+                reader.close();
+            }
+            catch(XMLStreamException ex) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+
+/**
+ * Answers simple questions about an exchange file by streaming it, without creating a model
+ *
+ * If the file has a current sidecar index (see {@link XMLExchangeIndex}) only the fragments that can hold the
+ * answer are read, for example only the views when looking for the views that show a concept.
+ * Otherwise the whole file is streamed once. Only the results are kept in memory.
+ *
+ * The results are identifiers in file order.
+ */
+@SuppressWarnings("nls")
+public class XMLExchangeQuery implements IXMLExchangeGlobals {
+
+    // Queries by name, for the command line
+    public static final String QUERY_RELATIONSHIPS = "relationships";
+    public static final String QUERY_VIEWS = "views";
+    public static final String QUERY_PROPERTY = "property";
+
+    /**
+     * Called for each start and end tag of the file or fragments being streamed
+     */
+    private interface Visitor {
+        void startElement(String name, XMLStreamReader reader) throws XMLStreamException;
+        void endElement(String name);
+    }
+
+    private final File fFile;
+
+    /**
+     * @param file The exchange file to query
+     */
+    public XMLExchangeQuery(File file) {
+        fFile = file;
+    }
+
+    /**
+     * @param conceptID The identifier of an element or relationship
+     * @return The identifiers of the relationships that have the concept as source or target
+     */
+    public Set<String> findRelationships(final String conceptID) throws IOException {
+        final Set<String> results = new LinkedHashSet<String>();
+
+        scan(ELEMENT_RELATIONSHIP, new Visitor() {
+            @Override
+            public void startElement(String name, XMLStreamReader reader) {
+                if(ELEMENT_RELATIONSHIP.equals(name)) {
+                    if(conceptID.equals(reader.getAttributeValue(null, ATTRIBUTE_SOURCE))
+                            || conceptID.equals(reader.getAttributeValue(null, ATTRIBUTE_TARGET))) {
+                        addResult(results, reader.getAttributeValue(null, ATTRIBUTE_IDENTIFIER));
+                    }
+                }
+            }
+
+            @Override
+            public void endElement(String name) {
+            }
+        });
+
+        return results;
+    }
+
+    /**
+     * @param conceptID The identifier of an element or relationship
+     * @return The identifiers of the views that have a node showing the element or a connection showing the relationship
+     */
+    public Set<String> findViews(final String conceptID) throws IOException {
+        final Set<String> results = new LinkedHashSet<String>();
+
+        scan(ELEMENT_VIEW, new Visitor() {
+            String view;
+
+            @Override
+            public void startElement(String name, XMLStreamReader reader) {
+                switch(name) {
+                    case ELEMENT_VIEW:
+                        view = reader.getAttributeValue(null, ATTRIBUTE_IDENTIFIER);
+                        break;
+
+                    case ELEMENT_NODE:
+                        if(view != null && conceptID.equals(reader.getAttributeValue(null, ATTRIBUTE_ELEMENTREF))) {
+                            addResult(results, view);
+                        }
+                        break;
+
+                    case ELEMENT_CONNECTION:
+                        if(view != null && conceptID.equals(reader.getAttributeValue(null, ATTRIBUTE_RELATIONSHIPREF))) {
+                            addResult(results, view);
+                        }
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+
+            @Override
+            public void endElement(String name) {
+                if(ELEMENT_VIEW.equals(name)) {
+                    view = null;
+                }
+            }
+        });
+
+        return results;
+    }
+
+    /**
+     * Property definitions come after the concepts in an exchange file, so without an index this streams the file twice:
+     * once to find the definitions with the key, and once to find the concepts that use them.
+     * @param propertyKey The name of a property definition
+     * @return The identifiers of the elements and relationships that have a property with the key
+     */
+    public Set<String> findConceptsWithProperty(String propertyKey) throws IOException {
+        final Set<String> definitions = findPropertyDefinitions(propertyKey);
+        final Set<String> results = new LinkedHashSet<String>();
+
+        if(definitions.isEmpty()) {
+            return results;
+        }
+
+        Visitor visitor = new Visitor() {
+            String concept;
+
+            @Override
+            public void startElement(String name, XMLStreamReader reader) {
+                switch(name) {
+                    case ELEMENT_ELEMENT:
+                    case ELEMENT_RELATIONSHIP:
+                        concept = reader.getAttributeValue(null, ATTRIBUTE_IDENTIFIER);
+                        break;
+
+                    case ELEMENT_PROPERTY:
+                        if(concept != null && definitions.contains(reader.getAttributeValue(null, ATTRIBUTE_PROPERTY_IDENTIFIERREF))) {
+                            addResult(results, concept);
+                        }
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+
+            @Override
+            public void endElement(String name) {
+                if(ELEMENT_ELEMENT.equals(name) || ELEMENT_RELATIONSHIP.equals(name)) {
+                    concept = null;
+                }
+            }
+        };
+
+        XMLExchangeIndex index = XMLExchangeIndex.openIfCurrent(fFile);
+        if(index != null) {
+            scan(index.openFragments(ELEMENT_ELEMENT), visitor);
+            scan(index.openFragments(ELEMENT_RELATIONSHIP), visitor);
+        }
+        else {
+            scan(new FileInputStream(fFile), visitor);
+        }
+
+        return results;
+    }
+
+    /**
+     * @return The identifiers of the property definitions with the key as a name
+     */
+    private Set<String> findPropertyDefinitions(final String propertyKey) throws IOException {
+        final Set<String> definitions = new HashSet<String>();
+
+        scan(ELEMENT_PROPERTYDEFINITION, new Visitor() {
+            String definition;
+
+            @Override
+            public void startElement(String name, XMLStreamReader reader) throws XMLStreamException {
+                if(ELEMENT_PROPERTYDEFINITION.equals(name)) {
+                    definition = reader.getAttributeValue(null, ATTRIBUTE_IDENTIFIER);
+                }
+                else if(ELEMENT_NAME.equals(name) && definition != null && propertyKey.equals(reader.getElementText())) {
+                    addResult(definitions, definition);
+                }
+            }
+
+            @Override
+            public void endElement(String name) {
+                if(ELEMENT_PROPERTYDEFINITION.equals(name)) {
+                    definition = null;
+                }
+            }
+        });
+
+        return definitions;
+    }
+
+    private static void addResult(Set<String> results, String identifier) {
+        if(identifier != null) {
+            results.add(identifier);
+        }
+    }
+
+    // ========================================= Streaming ======================================
+
+    /**
+     * Stream the fragments with the given name if there is an index, otherwise the whole file
+     */
+    private void scan(String fragmentName, Visitor visitor) throws IOException {
+        XMLExchangeIndex index = XMLExchangeIndex.openIfCurrent(fFile);
+        scan(index != null ? index.openFragments(fragmentName) : new FileInputStream(fFile), visitor);
+    }
+
+    /**
+     * Stream XML to a visitor. The stream is closed.
+     */
+    private void scan(InputStream in, Visitor visitor) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        XMLStreamReader reader = null;
+
+        try(InputStream is = new BufferedInputStream(in)) {
+            reader = factory.createXMLStreamReader(is);
+
+            while(reader.hasNext()) {
+                int event = reader.next();
+
+                if(event == XMLStreamConstants.START_ELEMENT) {
+                    visitor.startElement(reader.getLocalName(), reader);
+
+                    // getElementText() leaves the reader on the end tag
+                    if(reader.getEventType() == XMLStreamConstants.END_ELEMENT) {
+                        visitor.endElement(reader.getLocalName());
+                    }
+                }
+                else if(event == XMLStreamConstants.END_ELEMENT) {
+                    visitor.endElement(reader.getLocalName());
+                }
+            }
+        }
+        catch(XMLStreamException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+        finally {
+            if(reader != null) {
+                try {
+                    reader.close();
+                }
+                catch(XMLStreamException ex) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    // ========================================= Command line ======================================
+
+    /**
+     * Run a query from the command line and print the identifiers found, one per line
+     * <pre>
+     * XMLExchangeQuery file relationships conceptID
+     * XMLExchangeQuery file views conceptID
+     * XMLExchangeQuery file property propertyKey
+     * </pre>
+     */
+    public static void main(String[] args) {
+        if(args.length != 3) {
+            System.err.println(Messages.XMLExchangeQuery_0);
+            System.exit(2);
+        }
+
+        XMLExchangeQuery query = new XMLExchangeQuery(new File(args[0]));
+        Set<String> results;
+
+        try {
+            switch(args[1]) {
+                case QUERY_RELATIONSHIPS:
+                    results = query.findRelationships(args[2]);
+                    break;
+
+                case QUERY_VIEWS:
+                    results = query.findViews(args[2]);
+                    break;
+
+                case QUERY_PROPERTY:
+                    results = query.findConceptsWithProperty(args[2]);
+                    break;
+
+                default:
+                    System.err.println(Messages.XMLExchangeQuery_0);
+                    System.exit(2);
+                    return;
+            }
+        }
+        catch(IOException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        for(String identifier : results) {
+            System.out.println(identifier);
+        }
+    }
+}
@@ -0,0 +1,661 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.xmi.XMLResource;
+import org.jdom2.JDOMException;
+import org.xml.sax.SAXException;
+
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.util.ArchimateResourceFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Lightweight local HTTP service for Open Exchange conversion and validation
+ *
+ * Endpoints (all but metrics take a POST body):
+ * <ul>
+ * <li>/import - exchange XML, binary or JSON in, .archimate model out</li>
+ * <li>/export - .archimate model in, exchange XML out</li>
+ * <li>/validate - exchange XML, binary or JSON in, 200 if valid or 422 with the validation message</li>
+ * <li>/metrics - GET per-endpoint request counts and latencies as plain text</li>
+ * </ul>
+ *
+ * At most maxConcurrentRequests conversions run at once and at most maxQueuedRequests wait for a conversion slot.
+ * Requests beyond that, and queued requests that waited longer than the queue timeout, are rejected with 503
+ * and a Retry-After header rather than piling up. Request bodies larger than the maximum request size
+ * are rejected with 413.
+ *
+ * This uses the JDK's com.sun.net.httpserver which is an optional dependency of this plug-in.
+ */
+@SuppressWarnings("nls")
+public class XMLExchangeServer {
+
+    public static final String IMPORT_PATH = "/import";
+    public static final String EXPORT_PATH = "/export";
+    public static final String VALIDATE_PATH = "/validate";
+    public static final String METRICS_PATH = "/metrics";
+
+    private static final String CONTENT_TYPE_XML = "application/xml; charset=UTF-8";
+    private static final String CONTENT_TYPE_TEXT = "text/plain; charset=UTF-8";
+
+    private static final int SC_OK = 200;
+    private static final int SC_BAD_REQUEST = 400;
+    private static final int SC_METHOD_NOT_ALLOWED = 405;
+    private static final int SC_REQUEST_TOO_LARGE = 413;
+    private static final int SC_UNPROCESSABLE = 422;
+    private static final int SC_SERVER_ERROR = 500;
+    private static final int SC_UNAVAILABLE = 503;
+
+    private final XMLExchangeEngine fEngine;
+
+    private int fMaxConcurrentRequests = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private int fMaxQueuedRequests = 32;
+    private long fQueueTimeout = 2000;
+    private long fMaxRequestSize = 64 * 1024 * 1024;
+
+    private HttpServer fServer;
+    private ExecutorService fExecutor;
+
+    private final Map<String, EndpointMetrics> fMetrics;
+
+    public XMLExchangeServer(XMLExchangeEngine engine) {
+        fEngine = engine;
+
+        Map<String, EndpointMetrics> metrics = new LinkedHashMap<String, EndpointMetrics>();
+        metrics.put(IMPORT_PATH, new EndpointMetrics());
+        metrics.put(EXPORT_PATH, new EndpointMetrics());
+        metrics.put(VALIDATE_PATH, new EndpointMetrics());
+        fMetrics = Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * Set the number of conversions that can run at the same time
+     */
+    public void setMaxConcurrentRequests(int max) {
+        checkNotStarted();
+        fMaxConcurrentRequests = Math.max(1, max);
+    }
+
+    /**
+     * Set the number of requests that can wait for a conversion slot
+     */
+    public void setMaxQueuedRequests(int max) {
+        checkNotStarted();
+        fMaxQueuedRequests = Math.max(0, max);
+    }
+
+    /**
+     * Set how long in milliseconds a request can wait for a conversion slot. A queued request that waited longer
+     * is rejected with 503 when its turn comes.
+     */
+    public void setQueueTimeout(long millis) {
+        fQueueTimeout = Math.max(0, millis);
+    }
+
+    /**
+     * Set the maximum size in bytes of a request body
+     */
+    public void setMaxRequestSize(long size) {
+        fMaxRequestSize = size;
+    }
+
+    /**
+     * Start the server
+     * @param address The address to bind to. Use port 0 for any free port.
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        checkNotStarted();
+
+        // One thread per conversion slot and a queue of the configured size.
+        // When both are full the executor throws RejectedExecutionException and the handler replies 503.
+        BlockingQueue<Runnable> queue = fMaxQueuedRequests == 0 ? new SynchronousQueue<Runnable>()
+                                                                : new ArrayBlockingQueue<Runnable>(fMaxQueuedRequests);
+
+        fExecutor = new ThreadPoolExecutor(fMaxConcurrentRequests, fMaxConcurrentRequests, 30, TimeUnit.SECONDS, queue, new ThreadFactory() {
+            AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "XMLExchangeServer-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        ((ThreadPoolExecutor)fExecutor).allowCoreThreadTimeOut(true);
+
+        // No executor so handlers are called on the server's dispatcher thread.
+        // The conversion handlers only check the request there and then hand it to the conversion executor.
+        fServer = HttpServer.create(address, fMaxConcurrentRequests + fMaxQueuedRequests);
+
+        fServer.createContext(IMPORT_PATH, new ConversionHandler(IMPORT_PATH) {
+            @Override
+            int convert(InputStream in, HttpExchange exchange) throws Exception {
+                IArchimateModel model = fEngine.importModel(in);
+                sendStreamHeaders(exchange, CONTENT_TYPE_XML);
+                saveModel(model, exchange.getResponseBody());
+                return SC_OK;
+            }
+        });
+
+        fServer.createContext(EXPORT_PATH, new ConversionHandler(EXPORT_PATH) {
+            @Override
+            int convert(InputStream in, HttpExchange exchange) throws Exception {
+                IArchimateModel model = loadModel(in);
+                sendStreamHeaders(exchange, CONTENT_TYPE_XML);
+                fEngine.exportModel(model, exchange.getResponseBody());
+                return SC_OK;
+            }
+        });
+
+        fServer.createContext(VALIDATE_PATH, new ConversionHandler(VALIDATE_PATH) {
+            @Override
+            int convert(InputStream in, HttpExchange exchange) throws Exception {
+                try {
+                    fEngine.validate(in);
+                }
+                catch(SAXException ex) {
+                    if(isRequestTooLarge(ex)) {
+                        throw ex;
+                    }
+                    sendText(exchange, SC_UNPROCESSABLE, ex.getMessage());
+                    return SC_UNPROCESSABLE;
+                }
+                sendText(exchange, SC_OK, "valid");
+                return SC_OK;
+            }
+        });
+
+        fServer.createContext(METRICS_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    drain(exchange.getRequestBody());
+                    sendText(exchange, SC_OK, getMetricsReport());
+                }
+                finally {
+                    exchange.close();
+                }
+            }
+        });
+
+        fServer.start();
+    }
+
+    /**
+     * Stop the server
+     * @param delaySeconds The time to wait for running requests to finish
+     */
+    public synchronized void stop(int delaySeconds) {
+        if(fServer != null) {
+            fServer.stop(delaySeconds);
+            fServer = null;
+        }
+
+        if(fExecutor != null) {
+            fExecutor.shutdown();
+            fExecutor = null;
+        }
+    }
+
+    /**
+     * @return The address the server is bound to, or null if it is not running
+     */
+    public synchronized InetSocketAddress getAddress() {
+        return fServer == null ? null : fServer.getAddress();
+    }
+
+    /**
+     * @param path One of the endpoint paths
+     * @return The metrics for the endpoint or null
+     */
+    public EndpointMetrics getMetrics(String path) {
+        return fMetrics.get(path);
+    }
+
+    /**
+     * @return The metrics of all endpoints as plain text, one line per endpoint
+     */
+    public String getMetricsReport() {
+        StringBuilder sb = new StringBuilder();
+
+        for(Entry<String, EndpointMetrics> entry : fMetrics.entrySet()) {
+            EndpointMetrics m = entry.getValue();
+            sb.append(entry.getKey());
+            sb.append(" requests=").append(m.getRequests());
+            sb.append(" errors=").append(m.getErrors());
+            sb.append(" rejected=").append(m.getRejected());
+            sb.append(" mean_ms=").append(m.getMeanLatency());
+            sb.append(" p50_ms<=").append(m.getLatencyPercentile(0.5));
+            sb.append(" p99_ms<=").append(m.getLatencyPercentile(0.99));
+            sb.append(" max_ms=").append(m.getMaxLatency());
+            sb.append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    private void checkNotStarted() {
+        if(fServer != null) {
+            throw new IllegalStateException("Server is already started");
+        }
+    }
+
+    // ========================================= Handlers ======================================
+
+    /**
+     * Base handler for the conversion endpoints.
+     * Checks the method and size on the dispatcher thread, queues the conversion or rejects it if the queue is full,
+     * and records latency.
+     */
+    private abstract class ConversionHandler implements HttpHandler {
+        private final EndpointMetrics fEndpointMetrics;
+
+        ConversionHandler(String path) {
+            fEndpointMetrics = fMetrics.get(path);
+        }
+
+        /**
+         * Convert the request body and send the response
+         * @return The response status
+         */
+        abstract int convert(InputStream in, HttpExchange exchange) throws Exception;
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            final long start = System.nanoTime();
+            int status = SC_SERVER_ERROR;
+            boolean queued = false;
+
+            try {
+                status = checkRequest(exchange);
+
+                if(status == SC_OK) {
+                    try {
+                        fExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                runConversion(exchange, start);
+                            }
+                        });
+                        queued = true;
+                    }
+                    catch(RejectedExecutionException ex) {
+                        status = sendBusy(exchange);
+                    }
+                }
+            }
+            finally {
+                // Otherwise the conversion thread closes the exchange and records the latency
+                if(!queued) {
+                    exchange.close();
+                    fEndpointMetrics.record(status, System.nanoTime() - start);
+                }
+            }
+        }
+
+        /**
+         * Check the method and declared size
+         * @return SC_OK if the request can be queued, otherwise the status of the response that was sent
+         */
+        private int checkRequest(HttpExchange exchange) throws IOException {
+            if(!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendText(exchange, SC_METHOD_NOT_ALLOWED, "Use POST");
+                return SC_METHOD_NOT_ALLOWED;
+            }
+
+            // Reject early on the declared size
+            String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+            if(contentLength != null) {
+                try {
+                    if(Long.parseLong(contentLength.trim()) > fMaxRequestSize) {
+                        sendText(exchange, SC_REQUEST_TOO_LARGE, "Request body is larger than " + fMaxRequestSize + " bytes");
+                        return SC_REQUEST_TOO_LARGE;
+                    }
+                }
+                catch(NumberFormatException ex) {
+                    sendText(exchange, SC_BAD_REQUEST, "Bad Content-Length");
+                    return SC_BAD_REQUEST;
+                }
+            }
+
+            return SC_OK;
+        }
+
+        /**
+         * Called on a conversion thread
+         */
+        private void runConversion(HttpExchange exchange, long start) {
+            int status = SC_SERVER_ERROR;
+
+            try {
+                // Waited too long in the queue
+                if(System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(fQueueTimeout)) {
+                    status = sendBusy(exchange);
+                }
+                else {
+                    status = process(exchange);
+                }
+            }
+            catch(IOException ex) {
+                // The client went away
+            }
+            finally {
+                exchange.close();
+                fEndpointMetrics.record(status, System.nanoTime() - start);
+            }
+        }
+
+        private int process(HttpExchange exchange) throws IOException {
+            try {
+                return convert(new LimitedInputStream(exchange.getRequestBody(), fMaxRequestSize), exchange);
+            }
+            catch(Exception ex) {
+                if(isRequestTooLarge(ex)) {
+                    sendText(exchange, SC_REQUEST_TOO_LARGE, "Request body is larger than " + fMaxRequestSize + " bytes");
+                    return SC_REQUEST_TOO_LARGE;
+                }
+
+                if(ex instanceof XMLModelParserException || ex instanceof JDOMException || ex instanceof RequestFormatException) {
+                    sendText(exchange, SC_BAD_REQUEST, ex.getMessage());
+                    return SC_BAD_REQUEST;
+                }
+
+                // Log the details here and only tell the client what went wrong
+                ex.printStackTrace();
+                sendText(exchange, SC_SERVER_ERROR, ex.getMessage() != null ? ex.getMessage() : "Internal server error");
+                return SC_SERVER_ERROR;
+            }
+        }
+    }
+
+    /**
+     * Reject a request because the server is busy
+     */
+    private static int sendBusy(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        sendText(exchange, SC_UNAVAILABLE, "Server is busy");
+        return SC_UNAVAILABLE;
+    }
+
+    /**
+     * Send the headers for a streamed (chunked) response
+     */
+    private static void sendStreamHeaders(HttpExchange exchange, String contentType) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(SC_OK, 0);
+    }
+
+    /**
+     * Send a short text response. If the response has already been started this does nothing more.
+     */
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        if(exchange.getResponseCode() != -1) {
+            return;
+        }
+
+        byte[] bytes = (text == null ? "" : text).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE_TEXT);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if(bytes.length > 0) {
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.flush();
+        }
+    }
+
+    /**
+     * Parsers may wrap the stream's exception so look at the causes as well
+     */
+    private static boolean isRequestTooLarge(Throwable ex) {
+        for(Throwable t = ex; t != null; t = t.getCause()) {
+            if(t instanceof RequestTooLargeException) {
+                return true;
+            }
+            if(t instanceof SAXException && ((SAXException)t).getException() instanceof RequestTooLargeException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buf = new byte[8192];
+        while(in.read(buf) != -1) {
+        }
+    }
+
+    // ========================================= .archimate Streams ======================================
+
+    private static final URI STREAM_URI = URI.createURI("stream.archimate");
+
+    static IArchimateModel loadModel(InputStream in) throws IOException {
+        Resource resource = ArchimateResourceFactory.createNewResource(STREAM_URI);
+
+        // The body may come from anywhere so DOCTYPE declarations, and with them external entities, are refused
+        Map<String, Boolean> parserFeatures = new HashMap<String, Boolean>();
+        parserFeatures.put("http://apache.org/xml/features/disallow-doctype-decl", true);
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put(XMLResource.OPTION_PARSER_FEATURES, parserFeatures);
+
+        try {
+            resource.load(in, options);
+        }
+        catch(IOException ex) {
+            throw new RequestFormatException(ex.getMessage(), ex);
+        }
+
+        if(resource.getContents().isEmpty() || !(resource.getContents().get(0) instanceof IArchimateModel)) {
+            throw new RequestFormatException("Not an Archi model");
+        }
+
+        return (IArchimateModel)resource.getContents().get(0);
+    }
+
+    static void saveModel(IArchimateModel model, OutputStream out) throws IOException {
+        // The engine may import views lazily
+        LazyViews.loadAll(model);
+
+        Resource resource = ArchimateResourceFactory.createNewResource(STREAM_URI);
+        resource.getContents().add(model);
+        resource.save(out, null);
+        out.flush();
+    }
+
+    // ========================================= Support Classes ======================================
+
+    /**
+     * Per-endpoint latency metrics. Latencies are recorded in a fixed histogram of millisecond buckets.
+     */
+    public static final class EndpointMetrics {
+        static final long[] BUCKETS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, Long.MAX_VALUE };
+
+        private final AtomicLong fRequests = new AtomicLong();
+        private final AtomicLong fErrors = new AtomicLong();
+        private final AtomicLong fRejected = new AtomicLong();
+        private final AtomicLong fTotalNanos = new AtomicLong();
+        private final AtomicLong fMaxNanos = new AtomicLong();
+        private final AtomicLongArray fHistogram = new AtomicLongArray(BUCKETS.length);
+
+        void record(int status, long nanos) {
+            fRequests.incrementAndGet();
+
+            if(status == SC_UNAVAILABLE) {
+                fRejected.incrementAndGet();
+            }
+            else if(status != SC_OK) {
+                fErrors.incrementAndGet();
+            }
+
+            fTotalNanos.addAndGet(nanos);
+
+            long max;
+            while(nanos > (max = fMaxNanos.get()) && !fMaxNanos.compareAndSet(max, nanos)) {
+            }
+
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            for(int i = 0; i < BUCKETS.length; i++) {
+                if(millis <= BUCKETS[i]) {
+                    fHistogram.incrementAndGet(i);
+                    break;
+                }
+            }
+        }
+
+        public long getRequests() {
+            return fRequests.get();
+        }
+
+        /**
+         * @return The number of requests that failed, not counting rejected requests
+         */
+        public long getErrors() {
+            return fErrors.get();
+        }
+
+        /**
+         * @return The number of requests rejected with 503 because the server was busy
+         */
+        public long getRejected() {
+            return fRejected.get();
+        }
+
+        public long getMeanLatency() {
+            long requests = fRequests.get();
+            return requests == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(fTotalNanos.get() / requests);
+        }
+
+        public long getMaxLatency() {
+            return TimeUnit.NANOSECONDS.toMillis(fMaxNanos.get());
+        }
+
+        /**
+         * @param fraction The percentile as a fraction, for example 0.99
+         * @return The upper bound in ms of the histogram bucket holding the percentile, or -1 for the last open bucket
+         */
+        public long getLatencyPercentile(double fraction) {
+            long total = 0;
+            for(int i = 0; i < BUCKETS.length; i++) {
+                total += fHistogram.get(i);
+            }
+
+            if(total == 0) {
+                return 0;
+            }
+
+            long target = (long)Math.ceil(total * fraction);
+            long count = 0;
+            for(int i = 0; i < BUCKETS.length; i++) {
+                count += fHistogram.get(i);
+                if(count >= target) {
+                    return BUCKETS[i] == Long.MAX_VALUE ? -1 : BUCKETS[i];
+                }
+            }
+
+            return -1;
+        }
+    }
+
+    /**
+     * Thrown when the request body is not the expected format
+     */
+    private static class RequestFormatException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RequestFormatException(String message) {
+            super(message);
+        }
+
+        RequestFormatException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Thrown when the request body is larger than allowed
+     */
+    private static class RequestTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Stream that fails once more than a given number of bytes has been read
+     */
+    static class LimitedInputStream extends FilterInputStream {
+        private long fRemaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            fRemaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if(n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long n) throws RequestTooLargeException {
+            fRemaining -= n;
+            if(fRemaining < 0) {
+                throw new RequestTooLargeException();
+            }
+        }
+    }
+}
@@ -0,0 +1,549 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+
+/**
+ * Rewrites an exchange file by streaming its XML events through a pipeline of stages, without creating a model
+ *
+ * Each stage is given the events passed on by the stage before it and passes on any number of events to the next.
+ * The stages here keep the file consistent: identifiers are remapped everywhere they are referred to, and references
+ * to dropped views are dropped with them. Stages that need to know something about the whole file first, such as
+ * which views to drop, are given the events of the input file in a scan before the file is transformed.
+ */
+@SuppressWarnings("nls")
+public class XMLExchangeTransformer implements IXMLExchangeGlobals {
+
+    /**
+     * Receives the events passed on by a stage
+     */
+    public interface Output {
+        void add(XMLEvent event) throws XMLStreamException;
+    }
+
+    /**
+     * A stage of the pipeline
+     */
+    public static abstract class Stage {
+        protected final XMLEventFactory fEventFactory = XMLEventFactory.newInstance();
+
+        /**
+         * @return true if this stage has to scan the input file before it is transformed
+         */
+        protected boolean needsScan() {
+            return false;
+        }
+
+        /**
+         * Called at the start of each transform, before any scan, to clear what was kept from the last one.
+         * Stages that keep state override this and call it.
+         */
+        protected void reset() {
+        }
+
+        /**
+         * Called for each event of the input file before it is transformed, if {@link #needsScan()} is true
+         */
+        protected void scan(XMLEvent event) {
+        }
+
+        /**
+         * Handle an event, passing on any events to the next stage
+         */
+        protected abstract void handle(XMLEvent event, Output out) throws XMLStreamException;
+    }
+
+    /**
+     * Passes on the events that are accepted
+     */
+    public static abstract class FilterStage extends Stage {
+        protected abstract boolean accept(XMLEvent event);
+
+        @Override
+        protected void handle(XMLEvent event, Output out) throws XMLStreamException {
+            if(accept(event)) {
+                out.add(event);
+            }
+        }
+    }
+
+    /**
+     * Passes on each event replaced by another, or nothing if it is replaced by null
+     */
+    public static abstract class MapStage extends Stage {
+        protected abstract XMLEvent map(XMLEvent event);
+
+        @Override
+        protected void handle(XMLEvent event, Output out) throws XMLStreamException {
+            XMLEvent mapped = map(event);
+            if(mapped != null) {
+                out.add(mapped);
+            }
+        }
+    }
+
+    /**
+     * Drops elements, and everything in them, that match
+     */
+    public static abstract class DropStage extends Stage {
+        private int fDropDepth;
+
+        /**
+         * @return true if this element and everything in it is to be dropped
+         */
+        protected abstract boolean drop(StartElement startElement);
+
+        @Override
+        protected void reset() {
+            fDropDepth = 0;
+        }
+
+        @Override
+        protected void handle(XMLEvent event, Output out) throws XMLStreamException {
+            if(fDropDepth > 0) {
+                if(event.isStartElement()) {
+                    fDropDepth++;
+                }
+                else if(event.isEndElement()) {
+                    fDropDepth--;
+                }
+                return;
+            }
+
+            if(event.isStartElement() && drop(event.asStartElement())) {
+                fDropDepth = 1;
+                return;
+            }
+
+            out.add(event);
+        }
+    }
+
+    /**
+     * Drops all elements with the given names and everything in them, such as documentation or properties.
+     * Elements with identifiers that may be referred to, and property definitions, can't be dropped with this.
+     * A properties or organizations element must hold at least one property or item, so if they are all dropped
+     * it is dropped with them.
+     */
+    public static class DropSubtree extends DropStage {
+        private static final List<String> REFERENCED = Arrays.asList(ELEMENT_MODEL, ELEMENT_ELEMENTS, ELEMENT_ELEMENT,
+                ELEMENT_RELATIONSHIPS, ELEMENT_RELATIONSHIP, ELEMENT_PROPERTYDEFINITIONS, ELEMENT_PROPERTYDEFINITION,
+                ELEMENT_VIEWS, ELEMENT_DIAGRAMS, ELEMENT_VIEW, ELEMENT_NODE, ELEMENT_CONNECTION);
+
+        // Containers by the name of the children they must have at least one of
+        private static final Map<String, String> CONTAINERS = new HashMap<String, String>();
+
+        static {
+            CONTAINERS.put(ELEMENT_PROPERTY, ELEMENT_PROPERTIES);
+            CONTAINERS.put(ELEMENT_ITEM, ELEMENT_ORGANIZATIONS);
+        }
+
+        private final Set<String> fNames;
+
+        // The containers whose children are dropped, so that they may be left empty
+        private final Set<String> fContainers = new HashSet<String>();
+
+        // The start of a container and the events after it, held until a child is kept
+        private List<XMLEvent> fPending;
+
+        public DropSubtree(String... names) {
+            for(String name : names) {
+                if(REFERENCED.contains(name)) {
+                    throw new IllegalArgumentException("Can't drop " + name);
+                }
+                if(CONTAINERS.containsKey(name)) {
+                    fContainers.add(CONTAINERS.get(name));
+                }
+            }
+            fNames = new HashSet<String>(Arrays.asList(names));
+        }
+
+        @Override
+        protected boolean drop(StartElement startElement) {
+            return fNames.contains(startElement.getName().getLocalPart());
+        }
+
+        @Override
+        protected void reset() {
+            super.reset();
+            fPending = null;
+        }
+
+        @Override
+        protected void handle(XMLEvent event, final Output out) throws XMLStreamException {
+            super.handle(event, new Output() {
+                @Override
+                public void add(XMLEvent passed) throws XMLStreamException {
+                    holdContainer(passed, out);
+                }
+            });
+        }
+
+        /**
+         * Hold back a container until a child is kept, and drop it if it ends first
+         */
+        private void holdContainer(XMLEvent event, Output out) throws XMLStreamException {
+            if(fPending != null) {
+                // Only white space and comments come before a child that is kept, or the end of the container
+                if(event.isEndElement()) {
+                    fPending = null;
+                    return;
+                }
+
+                if(!event.isStartElement()) {
+                    fPending.add(event);
+                    return;
+                }
+
+                for(XMLEvent pendingEvent : fPending) {
+                    out.add(pendingEvent);
+                }
+                fPending = null;
+            }
+
+            if(event.isStartElement() && fContainers.contains(event.asStartElement().getName().getLocalPart())) {
+                fPending = new ArrayList<XMLEvent>();
+                fPending.add(event);
+                return;
+            }
+
+            out.add(event);
+        }
+    }
+
+    /**
+     * Drops the views whose names match a pattern, with the view references and organization items that refer to them
+     */
+    public static class DropViews extends DropStage {
+        private final Pattern fPattern;
+        private final Set<String> fDroppedViews = new HashSet<String>();
+
+        // Scan state
+        private String fView;
+        private int fDepth, fViewDepth;
+        private StringBuilder fName;
+
+        public DropViews(Pattern pattern) {
+            fPattern = pattern;
+        }
+
+        @Override
+        protected boolean needsScan() {
+            return true;
+        }
+
+        @Override
+        protected void reset() {
+            super.reset();
+            fDroppedViews.clear();
+            fView = null;
+            fDepth = 0;
+            fViewDepth = 0;
+            fName = null;
+        }
+
+        @Override
+        protected void scan(XMLEvent event) {
+            if(event.isStartElement()) {
+                fDepth++;
+                String name = event.asStartElement().getName().getLocalPart();
+
+                if(ELEMENT_VIEW.equals(name)) {
+                    fView = getAttributeValue(event.asStartElement(), ATTRIBUTE_IDENTIFIER);
+                    fViewDepth = fDepth;
+                }
+                // The view's own name, the first one if it has one for each language
+                else if(fView != null && fDepth == fViewDepth + 1 && ELEMENT_NAME.equals(name)) {
+                    fName = new StringBuilder();
+                }
+            }
+            else if(event.isCharacters() && fName != null) {
+                fName.append(event.asCharacters().getData());
+            }
+            else if(event.isEndElement()) {
+                if(fName != null) {
+                    if(fPattern.matcher(fName.toString()).matches()) {
+                        fDroppedViews.add(fView);
+                    }
+                    fName = null;
+                    fView = null;
+                }
+                else if(fDepth == fViewDepth) {
+                    fView = null;
+                }
+                fDepth--;
+            }
+        }
+
+        @Override
+        protected boolean drop(StartElement startElement) {
+            switch(startElement.getName().getLocalPart()) {
+                case ELEMENT_VIEW:
+                    return fDroppedViews.contains(getAttributeValue(startElement, ATTRIBUTE_IDENTIFIER));
+
+                case ELEMENT_VIEWREF:
+                    return fDroppedViews.contains(getAttributeValue(startElement, ATTRIBUTE_REF));
+
+                case ELEMENT_ITEM:
+                    return fDroppedViews.contains(getAttributeValue(startElement, ATTRIBUTE_IDENTIFIERREF));
+
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * Renames a property key by renaming its property definition
+     */
+    public static class RenamePropertyKey extends Stage {
+        private final String fOldKey;
+        private final String fNewKey;
+
+        private boolean fInDefinition;
+        private StringBuilder fName;
+
+        public RenamePropertyKey(String oldKey, String newKey) {
+            fOldKey = oldKey;
+            fNewKey = newKey;
+        }
+
+        @Override
+        protected void reset() {
+            fInDefinition = false;
+            fName = null;
+        }
+
+        @Override
+        protected void handle(XMLEvent event, Output out) throws XMLStreamException {
+            if(event.isStartElement()) {
+                String name = event.asStartElement().getName().getLocalPart();
+                if(ELEMENT_PROPERTYDEFINITION.equals(name)) {
+                    fInDefinition = true;
+                }
+                else if(fInDefinition && ELEMENT_NAME.equals(name)) {
+                    fName = new StringBuilder();
+                }
+            }
+            // Collect the name, as it may come in more than one event
+            else if(event.isCharacters() && fName != null) {
+                fName.append(event.asCharacters().getData());
+                return;
+            }
+            else if(event.isEndElement()) {
+                String name = event.asEndElement().getName().getLocalPart();
+                if(fName != null) {
+                    String key = fName.toString();
+                    out.add(fEventFactory.createCharacters(fOldKey.equals(key) ? fNewKey : key));
+                    fName = null;
+                }
+                else if(ELEMENT_PROPERTYDEFINITION.equals(name)) {
+                    fInDefinition = false;
+                }
+            }
+
+            out.add(event);
+        }
+    }
+
+    /**
+     * Changes identifiers, and every reference to them
+     */
+    public static class RemapIdentifiers extends Stage {
+        /**
+         * Gives the new identifier for an identifier
+         */
+        public interface IdentifierMap {
+            /**
+             * @return The new identifier, or the same one to leave it
+             */
+            String map(String identifier);
+        }
+
+        private static final Set<String> ID_ATTRIBUTES = new HashSet<String>(Arrays.asList(ATTRIBUTE_IDENTIFIER, ATTRIBUTE_IDENTIFIERREF,
+                ATTRIBUTE_PROPERTY_IDENTIFIERREF, ATTRIBUTE_ELEMENTREF, ATTRIBUTE_RELATIONSHIPREF, ATTRIBUTE_SOURCE, ATTRIBUTE_TARGET, ATTRIBUTE_REF));
+
+        private final IdentifierMap fMap;
+
+        public RemapIdentifiers(IdentifierMap map) {
+            fMap = map;
+        }
+
+        /**
+         * @param map New identifiers by old identifier. Identifiers not in the map are left.
+         */
+        public RemapIdentifiers(final Map<String, String> map) {
+            this(new IdentifierMap() {
+                @Override
+                public String map(String identifier) {
+                    String newID = map.get(identifier);
+                    return newID != null ? newID : identifier;
+                }
+            });
+        }
+
+        @Override
+        protected void handle(XMLEvent event, Output out) throws XMLStreamException {
+            if(event.isStartElement()) {
+                event = remap(event.asStartElement());
+            }
+            out.add(event);
+        }
+
+        private StartElement remap(StartElement startElement) {
+            List<Attribute> attributes = new ArrayList<Attribute>();
+            boolean changed = false;
+
+            for(Iterator<?> iter = startElement.getAttributes(); iter.hasNext();) {
+                Attribute attribute = (Attribute)iter.next();
+                QName name = attribute.getName();
+
+                if(name.getNamespaceURI().isEmpty() && ID_ATTRIBUTES.contains(name.getLocalPart())) {
+                    String newID = fMap.map(attribute.getValue());
+                    if(newID != null && !newID.equals(attribute.getValue())) {
+                        attribute = fEventFactory.createAttribute(name, newID);
+                        changed = true;
+                    }
+                }
+
+                attributes.add(attribute);
+            }
+
+            if(!changed) {
+                return startElement;
+            }
+
+            return fEventFactory.createStartElement(startElement.getName(), attributes.iterator(), startElement.getNamespaces());
+        }
+    }
+
+    private final List<Stage> fStages = new ArrayList<Stage>();
+
+    /**
+     * Add a stage to the end of the pipeline
+     * @param stage
+     */
+    public void addStage(Stage stage) {
+        fStages.add(stage);
+    }
+
+    /**
+     * Transform an exchange file into another. The output file is only replaced if the whole file is transformed.
+     */
+    public void transform(final File inputFile, File outputFile) throws IOException {
+        XMLExchangeAsync.writeFileAtomically(outputFile, new XMLExchangeAsync.FileContentWriter() {
+            @Override
+            public void write(File file) throws IOException {
+                try(OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                    transform(inputFile, out);
+                }
+            }
+        });
+    }
+
+    /**
+     * Transform an exchange file, writing the result to a stream. The stream is not closed.
+     */
+    public void transform(File inputFile, OutputStream out) throws IOException {
+        List<Stage> scanningStages = new ArrayList<Stage>();
+        for(Stage stage : fStages) {
+            stage.reset();
+            if(stage.needsScan()) {
+                scanningStages.add(stage);
+            }
+        }
+
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        try {
+            if(!scanningStages.isEmpty()) {
+                try(InputStream in = new BufferedInputStream(new FileInputStream(inputFile))) {
+                    XMLEventReader reader = inputFactory.createXMLEventReader(in);
+                    while(reader.hasNext()) {
+                        XMLEvent event = reader.nextEvent();
+                        for(Stage stage : scanningStages) {
+                            stage.scan(event);
+                        }
+                    }
+                    reader.close();
+                }
+            }
+
+            XMLExchangeAsync.checkInterrupted();
+
+            try(InputStream in = new BufferedInputStream(new FileInputStream(inputFile))) {
+                XMLEventReader reader = inputFactory.createXMLEventReader(in);
+                final XMLEventWriter writer = XMLOutputFactory.newInstance().createXMLEventWriter(out, "UTF-8");
+
+                // Chain the stages, from the last to the first
+                Output output = new Output() {
+                    @Override
+                    public void add(XMLEvent event) throws XMLStreamException {
+                        writer.add(event);
+                    }
+                };
+
+                for(int i = fStages.size() - 1; i >= 0; i--) {
+                    final Stage stage = fStages.get(i);
+                    final Output next = output;
+                    output = new Output() {
+                        @Override
+                        public void add(XMLEvent event) throws XMLStreamException {
+                            stage.handle(event, next);
+                        }
+                    };
+                }
+
+                while(reader.hasNext()) {
+                    output.add(reader.nextEvent());
+                }
+
+                reader.close();
+                writer.flush();
+                writer.close();
+            }
+        }
+        catch(XMLStreamException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    private static String getAttributeValue(StartElement startElement, String name) {
+        Attribute attribute = startElement.getAttributeByName(new QName(name));
+        return attribute != null ? attribute.getValue() : null;
+    }
+}
@@ -6,7 +6,6 @@
 package org.opengroup.archimate.xmlexchange;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import org.eclipse.draw2d.geometry.Point;
@@ -14,7 +13,6 @@ import org.eclipse.emf.ecore.EObject;
 
 import com.archimatetool.model.IBounds;
 import com.archimatetool.model.IDiagramModel;
-import com.archimatetool.model.IDiagramModelBendpoint;
 import com.archimatetool.model.IDiagramModelComponent;
 import com.archimatetool.model.IDiagramModelConnection;
 import com.archimatetool.model.IDiagramModelObject;
@@ -97,41 +95,12 @@ public final class XMLExchangeUtils {
      * @return
      */
     public static List<Point> getActualBendpointPositions(IDiagramModelConnection connection) {
-        List<Point> points = new ArrayList<Point>();
+        BendpointTransform transform = new BendpointTransform();
+        int count = transform.computeAbsolute(connection);
         
-        // TODO: Doesn't work for connection->connection
-        if(connection.getSource() instanceof IDiagramModelConnection || connection.getTarget() instanceof IDiagramModelConnection) {
-            return points;
-        }
-        
-        double bpindex = 1; // index count + 1
-        double bpcount = connection.getBendpoints().size() + 1; // number of bendpoints + 1
-        
-        for(IDiagramModelBendpoint bendpoint : connection.getBendpoints()) {
-            // The weight of this Bendpoint should use to calculate its location.
-            // The weight should be between 0.0 and 1.0. A weight of 0.0 will
-            // cause the Bendpoint to follow the start point, while a weight
-            // of 1.0 will cause the Bendpoint to follow the end point
-            double bpweight = bpindex / bpcount;
-            
-            IBounds srcBounds = XMLExchangeUtils.getAbsoluteBounds(connection.getSource()); // get bounds of source node
-            double startX = (srcBounds.getX() + (srcBounds.getWidth() / 2)) + bendpoint.getStartX();
-            startX *= (1.0 - bpweight);
-            double startY = (srcBounds.getY() + (srcBounds.getHeight() / 2)) + bendpoint.getStartY();
-            startY *= (1.0 - bpweight);
-            
-            IBounds tgtBounds = XMLExchangeUtils.getAbsoluteBounds(connection.getTarget()); // get bounds of target node
-            double endX = (tgtBounds.getX() + (tgtBounds.getWidth() / 2)) + bendpoint.getEndX();
-            endX *= bpweight;
-            double endY = (tgtBounds.getY() + (tgtBounds.getHeight() / 2)) + bendpoint.getEndY();
-            endY *= bpweight;
-            
-            int x = (int)(startX + endX);
-            int y = (int)(startY + endY);
-            
-            points.add(new Point(x, y));
-            
-            bpindex++;
+        List<Point> points = new ArrayList<Point>(count);
+        for(int i = 0; i < count; i++) {
+            points.add(new Point(transform.getX(i), transform.getY(i)));
         }
         
         return points;
@@ -145,31 +114,6 @@ public final class XMLExchangeUtils {
      * @return The Point offset
      */
     public static final Point getNegativeOffsetForDiagram(IDiagramModel dm) {
-        Point extremePoint = new Point();
-        
-        for(IDiagramModelObject dmo : dm.getChildren()) {
-            // Node bounds
-            IBounds bounds = dmo.getBounds().getCopy();
-            
-            extremePoint.x = Math.min(bounds.getX(), extremePoint.x);
-            extremePoint.y = Math.min(bounds.getY(), extremePoint.y);
-            
-            // Bendpoint bounds
-            for(Iterator<EObject> iter = dmo.eAllContents(); iter.hasNext();) {
-                EObject eObject = iter.next();
-                // Connection
-                if(eObject instanceof IDiagramModelConnection) {
-                    IDiagramModelConnection connection = (IDiagramModelConnection)eObject;
-                    
-                    List<Point> points = getActualBendpointPositions(connection);
-                    for(Point pt : points) {
-                        extremePoint.x = Math.min(extremePoint.x, pt.x);
-                        extremePoint.y = Math.min(extremePoint.y, pt.y);
-                    }
-                }
-            }
-        }
-        
-        return extremePoint;
+        return new DiagramTopologyIndex(dm).getNegativeOffset();
     }
 }
@@ -0,0 +1,513 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.gef.commands.Command;
+import org.eclipse.gef.commands.CommandStack;
+import org.eclipse.swt.widgets.Display;
+
+import com.archimatetool.model.IArchimateModel;
+
+
+/**
+ * Watches a folder for new or changed exchange files and imports them in the background
+ *
+ * A watcher thread collects file events from a WatchService. Repeated events for the same file are coalesced
+ * and a file is only queued once it has been quiet for the debounce time, so a burst of writes results in one import.
+ * Queued files are validated and imported one at a time on a worker thread and handed to a {@link Handler}.
+ *
+ * The queue is bounded. If it's full, files wait in the debounce list and are queued when there is room,
+ * and a file that's already queued isn't queued again.
+ */
+public class XMLExchangeWatchFolder implements IXMLExchangeGlobals {
+
+    /**
+     * Receives the results of background imports. Called on the worker thread.
+     */
+    public interface Handler {
+        /**
+         * A file was validated and imported
+         */
+        void fileImported(File file, IArchimateModel model);
+
+        /**
+         * A file couldn't be validated or imported
+         */
+        void fileFailed(File file, Exception ex);
+    }
+
+    /**
+     * @return A Handler that merges an imported model into the open model with the same identifier.
+     *         Files that don't match an open model are ignored.
+     *         The merge Command is created on the worker thread and only executed on the UI thread.
+     *         If the open model was changed in the meantime the Command is created again on the UI thread.
+     */
+    public static Handler createMergeHandler() {
+        return new Handler() {
+            @Override
+            public void fileImported(File file, final IArchimateModel model) {
+                final IArchimateModel openModel = XMLExchangeImportProvider.findOpenModel(model.getId());
+                if(openModel == null) {
+                    return;
+                }
+
+                final CommandStack stack = (CommandStack)openModel.getAdapter(CommandStack.class);
+
+                // Any change to the open model from here on changes the stack's undo or redo Command
+                final Command undoCommand = stack.getUndoCommand();
+                final Command redoCommand = stack.getRedoCommand();
+
+                Command command = null;
+                try {
+                    command = new XMLModelMerger(openModel).createMergeCommand(model);
+                }
+                catch(RuntimeException ex) {
+                    // The open model was being edited while it was read, so create it again on the UI thread
+                }
+
+                final Command mergeCommand = command;
+
+                Display.getDefault().asyncExec(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Closed in the meantime
+                        if(XMLExchangeImportProvider.findOpenModel(model.getId()) != openModel) {
+                            return;
+                        }
+
+                        // The incoming model is only used when the Command is executed, so the Command can be created again
+                        Command command = mergeCommand;
+                        if(command == null || stack.getUndoCommand() != undoCommand || stack.getRedoCommand() != redoCommand) {
+                            command = new XMLModelMerger(openModel).createMergeCommand(model);
+                        }
+
+                        if(command.canExecute()) {
+                            stack.execute(command);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void fileFailed(File file, Exception ex) {
+                ex.printStackTrace();
+            }
+        };
+    }
+
+    /**
+     * A file waiting for its events to settle
+     */
+    private static class PendingFile {
+        long firstEventTime;
+        long lastEventTime;
+    }
+
+    private final Path fFolder;
+    private final Handler fHandler;
+
+    private long fDebounceTime = 500;
+    private int fQueueCapacity = 16;
+
+    // The current session, or null if not started
+    private volatile Session fSession;
+
+    // Files waiting to be imported in the current session, and the time of their first event
+    private volatile Map<Path, Long> fQueued = new ConcurrentHashMap<Path, Long>();
+
+    // Time of the first event of the oldest file not yet queued, or 0
+    private volatile long fOldestPendingTime;
+
+    // Metrics
+    private final AtomicLong fEventCount = new AtomicLong();
+    private final AtomicLong fCoalescedCount = new AtomicLong();
+    private final AtomicLong fProcessedCount = new AtomicLong();
+    private final AtomicLong fFailedCount = new AtomicLong();
+    private final AtomicLong fLastLag = new AtomicLong();
+    private final AtomicLong fMaxLag = new AtomicLong();
+
+    /**
+     * @param folder The folder to watch
+     * @param handler Receives the imported models
+     */
+    public XMLExchangeWatchFolder(File folder, Handler handler) {
+        fFolder = folder.toPath();
+        fHandler = handler;
+    }
+
+    /**
+     * Set how long in milliseconds a file must be quiet before it is imported
+     */
+    public void setDebounceTime(long millis) {
+        fDebounceTime = Math.max(0, millis);
+    }
+
+    /**
+     * Set the number of files that can wait to be imported
+     */
+    public void setQueueCapacity(int capacity) {
+        checkNotStarted();
+        fQueueCapacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Start watching. Files already in the folder are not imported.
+     */
+    public synchronized void start() throws IOException {
+        checkNotStarted();
+
+        WatchService watchService = fFolder.getFileSystem().newWatchService();
+        fFolder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        fSession = new Session(watchService, fQueueCapacity);
+        fQueued = fSession.fQueued;
+        fOldestPendingTime = 0;
+
+        fSession.start();
+    }
+
+    /**
+     * Stop watching. Files waiting to be imported are dropped.
+     * This waits a short time for the threads to stop. An import that is running may take longer to notice,
+     * but its thread only uses the state of its own session so watching can be started again straight away.
+     */
+    public synchronized void stop() {
+        if(fSession == null) {
+            return;
+        }
+
+        fSession.stop();
+        fSession = null;
+
+        fQueued = new ConcurrentHashMap<Path, Long>();
+        fOldestPendingTime = 0;
+    }
+
+    public synchronized boolean isRunning() {
+        return fSession != null;
+    }
+
+    private void checkNotStarted() {
+        if(fSession != null) {
+            throw new IllegalStateException("Already started"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * The WatchService, threads, queue and pending files of one start() to stop().
+     * The threads only use their own session, so a thread that is slow to stop can't see or change a later session.
+     */
+    private class Session {
+        private final WatchService fWatchService;
+        private final Thread fWatcherThread;
+        private final Thread fWorkerThread;
+
+        // Files waiting for events to settle, owned by the watcher thread
+        private final Map<Path, PendingFile> fPending = new LinkedHashMap<Path, PendingFile>();
+
+        // Files waiting to be imported, and the time of their first event
+        private final BlockingQueue<Path> fQueue;
+        private final Map<Path, Long> fQueued = new ConcurrentHashMap<Path, Long>();
+
+        Session(WatchService watchService, int queueCapacity) {
+            fWatchService = watchService;
+            fQueue = new ArrayBlockingQueue<Path>(queueCapacity);
+
+            fWatcherThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    watch();
+                }
+            }, "XMLExchangeWatchFolder-watcher"); //$NON-NLS-1$
+            fWatcherThread.setDaemon(true);
+
+            fWorkerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            }, "XMLExchangeWatchFolder-worker"); //$NON-NLS-1$
+            fWorkerThread.setDaemon(true);
+        }
+
+        void start() {
+            fWatcherThread.start();
+            fWorkerThread.start();
+        }
+
+        void stop() {
+            try {
+                fWatchService.close();
+            }
+            catch(IOException ex) {
+                ex.printStackTrace();
+            }
+
+            fWatcherThread.interrupt();
+            fWorkerThread.interrupt();
+
+            try {
+                fWatcherThread.join(5000);
+                fWorkerThread.join(5000);
+            }
+            catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // ========================================= Watcher ======================================
+
+        private void watch() {
+            try {
+                while(!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = fPending.isEmpty() ? fWatchService.take() : fWatchService.poll(fDebounceTime, TimeUnit.MILLISECONDS);
+
+                    if(key != null) {
+                        long now = System.nanoTime();
+
+                        for(WatchEvent<?> event : key.pollEvents()) {
+                            if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                                // Events were lost so look at everything
+                                addAllFiles(now);
+                            }
+                            else {
+                                addFile(fFolder.resolve((Path)event.context()), now);
+                            }
+                        }
+
+                        key.reset();
+                    }
+
+                    queueSettledFiles();
+                }
+            }
+            catch(InterruptedException | ClosedWatchServiceException ex) {
+                // Stopped
+            }
+        }
+
+        private void addAllFiles(long now) {
+            try(DirectoryStream<Path> stream = Files.newDirectoryStream(fFolder)) {
+                for(Path path : stream) {
+                    addFile(path, now);
+                }
+            }
+            catch(IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        private void addFile(Path path, long now) {
+            if(!isExchangeFile(path)) {
+                return;
+            }
+
+            fEventCount.incrementAndGet();
+
+            PendingFile pending = fPending.get(path);
+            if(pending == null) {
+                pending = new PendingFile();
+                pending.firstEventTime = now;
+                fPending.put(path, pending);
+            }
+            else {
+                fCoalescedCount.incrementAndGet();
+            }
+
+            pending.lastEventTime = now;
+        }
+
+        /**
+         * Move files that have been quiet for the debounce time to the queue while there is room
+         */
+        private void queueSettledFiles() {
+            long now = System.nanoTime();
+            long debounce = TimeUnit.MILLISECONDS.toNanos(fDebounceTime);
+            long oldest = 0;
+
+            for(Iterator<Map.Entry<Path, PendingFile>> iter = fPending.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry<Path, PendingFile> entry = iter.next();
+                Path path = entry.getKey();
+                PendingFile pending = entry.getValue();
+
+                if(now - pending.lastEventTime >= debounce) {
+                    // Already waiting to be imported so this import will see the latest content
+                    if(fQueued.containsKey(path)) {
+                        fCoalescedCount.incrementAndGet();
+                        iter.remove();
+                        continue;
+                    }
+
+                    fQueued.put(path, pending.firstEventTime);
+                    if(fQueue.offer(path)) {
+                        iter.remove();
+                        continue;
+                    }
+
+                    // Queue is full so keep it pending
+                    fQueued.remove(path);
+                }
+
+                if(oldest == 0 || pending.firstEventTime < oldest) {
+                    oldest = pending.firstEventTime;
+                }
+            }
+
+            // A session that is still stopping doesn't report
+            if(fSession == this) {
+                fOldestPendingTime = oldest;
+            }
+        }
+
+        // ========================================= Worker ======================================
+
+        private void work() {
+            try {
+                while(!Thread.currentThread().isInterrupted()) {
+                    Path path = fQueue.take();
+                    Long firstEventTime = fQueued.get(path);
+
+                    // Remove before importing so that a change made during the import queues it again
+                    fQueued.remove(path);
+
+                    process(path.toFile());
+
+                    if(firstEventTime != null) {
+                        long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - firstEventTime);
+                        fLastLag.set(lag);
+
+                        long max;
+                        while(lag > (max = fMaxLag.get()) && !fMaxLag.compareAndSet(max, lag)) {
+                        }
+                    }
+                }
+            }
+            catch(InterruptedException ex) {
+                // Stopped
+            }
+        }
+    }
+
+    private static boolean isExchangeFile(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(FILE_EXTENSION) || name.endsWith(BINARY_FILE_EXTENSION);
+    }
+
+    private void process(File file) {
+        // Deleted or renamed since the event
+        if(!file.isFile()) {
+            return;
+        }
+
+        try {
+            new XMLIntegrityChecker().validate(file);
+            new XMLValidator().validateXML(file);
+            IArchimateModel model = new XMLModelImporter().createArchiMateModel(file);
+
+            // Stopped while importing
+            if(Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            fProcessedCount.incrementAndGet();
+            fHandler.fileImported(file, model);
+        }
+        catch(Exception ex) {
+            // Stopped while importing, which may be the cause
+            if(Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            fFailedCount.incrementAndGet();
+            fHandler.fileFailed(file, ex);
+        }
+    }
+
+    // ========================================= Metrics ======================================
+
+    /**
+     * @return The number of file events received
+     */
+    public long getEventCount() {
+        return fEventCount.get();
+    }
+
+    /**
+     * @return The number of events that didn't cause a separate import because the file was already pending or queued
+     */
+    public long getCoalescedCount() {
+        return fCoalescedCount.get();
+    }
+
+    /**
+     * @return The number of files imported
+     */
+    public long getProcessedCount() {
+        return fProcessedCount.get();
+    }
+
+    /**
+     * @return The number of files that failed validation or import
+     */
+    public long getFailedCount() {
+        return fFailedCount.get();
+    }
+
+    /**
+     * @return The number of files waiting to be imported
+     */
+    public int getQueueSize() {
+        return fQueued.size();
+    }
+
+    /**
+     * @return The time in ms from the first event of the last imported file to the end of its import
+     */
+    public long getLastLag() {
+        return fLastLag.get();
+    }
+
+    /**
+     * @return The longest time in ms from the first event of a file to the end of its import
+     */
+    public long getMaxLag() {
+        return fMaxLag.get();
+    }
+
+    /**
+     * @return How far behind in ms the watcher is, which is the age of the oldest file event not yet imported, or 0
+     */
+    public long getCurrentLag() {
+        long oldest = fOldestPendingTime;
+
+        for(Long time : fQueued.values()) {
+            if(oldest == 0 || time < oldest) {
+                oldest = time;
+            }
+        }
+
+        return oldest == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest);
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.osgi.util.NLS;
+import org.jdom2.JDOMException;
+
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+
+
+/**
+ * Imports several exchange files that refer to each other's identifiers into one model
+ *
+ * Each file is read by its own {@link XMLModelImporter}. The files are parsed and their elements and relationships
+ * are created in parallel, which is most of the time taken. The identifiers of all files then go into one index,
+ * and relationships and views are connected to concepts in any file, one file at a time as this sets references
+ * between objects from different files. A reference is looked up in its own file first.
+ * View references only refer to views in the same file.
+ *
+ * Properties are stored by name, so property definitions with the same name in different files become the same property.
+ *
+ * The model takes its identifier, name, documentation and properties from the first file.
+ */
+public class XMLFederatedImporter {
+
+    /**
+     * What to do when an element, relationship or view in one file has the identifier of one in an earlier file
+     */
+    public enum CollisionPolicy {
+        /**
+         * Fail the import
+         */
+        FAIL,
+
+        /**
+         * Keep the object from the earlier file. References in the later file go to that object.
+         */
+        FIRST_WINS,
+
+        /**
+         * Keep both, giving the later object a new identifier. References in its own file go to the later object,
+         * references in other files to the earlier one.
+         */
+        RENAME
+    }
+
+    private CollisionPolicy fCollisionPolicy = CollisionPolicy.FAIL;
+
+    private Executor fExecutor = XMLExchangeAsync.getDefaultExecutor();
+
+    private boolean fIncludeViews = true;
+    private boolean fIncludeStyles = true;
+
+    /**
+     * Set what to do about identifiers used in more than one file. The default is {@link CollisionPolicy#FAIL}.
+     * @param policy
+     */
+    public void setCollisionPolicy(CollisionPolicy policy) {
+        fCollisionPolicy = policy;
+    }
+
+    /**
+     * Set the Executor that parses the files. The default is {@link XMLExchangeAsync#getDefaultExecutor()}.
+     * @param executor
+     */
+    public void setExecutor(Executor executor) {
+        fExecutor = executor;
+    }
+
+    /**
+     * @see XMLModelImporter#setIncludeViews(boolean)
+     */
+    public void setIncludeViews(boolean set) {
+        fIncludeViews = set;
+    }
+
+    /**
+     * @see XMLModelImporter#setIncludeStyles(boolean)
+     */
+    public void setIncludeStyles(boolean set) {
+        fIncludeStyles = set;
+    }
+
+    /**
+     * Import the files into one model
+     * @param files The XML, binary or JSON exchange files, earlier files first
+     * @return The model
+     */
+    public IArchimateModel createArchiMateModel(List<File> files) throws IOException, JDOMException, XMLModelParserException {
+        if(files.isEmpty()) {
+            throw new IllegalArgumentException("No files to import"); //$NON-NLS-1$
+        }
+
+        List<XMLModelImporter> importers = new ArrayList<XMLModelImporter>();
+        List<CompletableFuture<IArchimateModel>> futures = new ArrayList<CompletableFuture<IArchimateModel>>();
+
+        for(File file : files) {
+            XMLModelImporter importer = new XMLModelImporter();
+            importer.setIncludeViews(fIncludeViews);
+            importer.setIncludeStyles(fIncludeStyles);
+            importers.add(importer);
+            futures.add(XMLExchangeAsync.supplyAsync(createConceptsTask(importer, file), fExecutor));
+        }
+
+        List<IArchimateModel> models = getResults(futures);
+
+        // One index of the concepts of all files
+        Map<String, EObject> index = new HashMap<String, EObject>();
+        Map<String, File> owners = new HashMap<String, File>();
+
+        for(int i = 0; i < importers.size(); i++) {
+            XMLModelImporter importer = importers.get(i);
+
+            // Copied as discarding changes the importer's index
+            for(Map.Entry<String, EObject> entry : new ArrayList<Map.Entry<String, EObject>>(importer.getIdentifierIndex().entrySet())) {
+                addToIndex(index, owners, files.get(i), importer, entry.getKey(), entry.getValue());
+            }
+        }
+
+        // Views are created when all concepts can be found, and then added to the index
+        for(int i = 0; i < importers.size(); i++) {
+            XMLExchangeAsync.checkInterrupted();
+
+            XMLModelImporter importer = importers.get(i);
+            importer.setExternalIndex(index);
+            importer.resolveRelationships();
+            importer.createViews();
+
+            for(IDiagramModel dm : new ArrayList<IDiagramModel>(models.get(i).getDiagramModels())) {
+                addToIndex(index, owners, files.get(i), importer, dm.getId(), dm);
+            }
+        }
+
+        return merge(models);
+    }
+
+    private Callable<IArchimateModel> createConceptsTask(final XMLModelImporter importer, final File file) {
+        return new Callable<IArchimateModel>() {
+            @Override
+            public IArchimateModel call() throws Exception {
+                return importer.createConcepts(importer.readDocument(file));
+            }
+        };
+    }
+
+    /**
+     * Wait for all the files to be parsed. If one fails the others are cancelled.
+     */
+    private List<IArchimateModel> getResults(List<CompletableFuture<IArchimateModel>> futures) throws IOException, JDOMException, XMLModelParserException {
+        List<IArchimateModel> models = new ArrayList<IArchimateModel>();
+
+        try {
+            for(CompletableFuture<IArchimateModel> future : futures) {
+                models.add(future.get());
+            }
+        }
+        catch(InterruptedException ex) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException | CompletionException ex) {
+            cancel(futures);
+
+            Throwable cause = ex.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            if(cause instanceof JDOMException) {
+                throw (JDOMException)cause;
+            }
+            if(cause instanceof XMLModelParserException) {
+                throw (XMLModelParserException)cause;
+            }
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            throw new IOException(cause);
+        }
+
+        return models;
+    }
+
+    private void cancel(List<CompletableFuture<IArchimateModel>> futures) {
+        for(CompletableFuture<IArchimateModel> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Add an object to the index of all files, applying the collision policy if an earlier file has the identifier
+     */
+    private void addToIndex(Map<String, EObject> index, Map<String, File> owners, File file, XMLModelImporter importer,
+            String id, EObject eObject) throws XMLModelParserException {
+
+        if(id == null) {
+            return;
+        }
+
+        if(!index.containsKey(id)) {
+            index.put(id, eObject);
+            owners.put(id, file);
+            return;
+        }
+
+        switch(fCollisionPolicy) {
+            case FIRST_WINS:
+                importer.discard(id);
+                break;
+
+            case RENAME:
+                // Still found under the old identifier in its own file
+                ((IIdentifier)eObject).setId("id-" + UUID.randomUUID().toString()); //$NON-NLS-1$
+                break;
+
+            default:
+                throw new XMLModelParserException(NLS.bind(Messages.XMLFederatedImporter_0,
+                        new Object[] { id, file.getName(), owners.get(id).getName() }));
+        }
+    }
+
+    /**
+     * Move the contents of the other models' folders into the first model's folders
+     */
+    private IArchimateModel merge(List<IArchimateModel> models) {
+        IArchimateModel model = models.get(0);
+        BulkModelBuilder builder = new BulkModelBuilder(true);
+
+        for(IArchimateModel other : models.subList(1, models.size())) {
+            for(IFolder folder : other.getFolders()) {
+                IFolder targetFolder = model.getFolder(folder.getType());
+
+                for(EObject eObject : new ArrayList<EObject>(folder.getElements())) {
+                    builder.add(targetFolder, targetFolder.getElements(), eObject);
+                }
+
+                for(IFolder subFolder : new ArrayList<IFolder>(folder.getFolders())) {
+                    builder.add(targetFolder, targetFolder.getFolders(), subFolder);
+                }
+            }
+        }
+
+        builder.flush();
+
+        return model;
+    }
+}
@@ -0,0 +1,561 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.eclipse.osgi.util.NLS;
+import org.jdom2.Attribute;
+import org.jdom2.Document;
+import org.jdom2.Element;
+
+
+/**
+ * Checks the identifiers and references of an exchange file in one streaming pass
+ *
+ * This finds the problems that break the import and that XSD validation doesn't catch, such as a relationship
+ * source that doesn't exist, a node elementRef that refers to a relationship, or a duplicate identifier.
+ * It is much quicker than XSD validation so can be used on its own or before it.
+ *
+ * Only identifiers and references are kept, in primitive arrays, so memory use is small even for large files.
+ */
+@SuppressWarnings("nls")
+public class XMLIntegrityChecker implements IXMLExchangeGlobals {
+
+    /**
+     * A dangling or mistyped reference, or a duplicate identifier
+     */
+    public static class Problem {
+        private final int fLine;
+        private final String fMessage;
+
+        Problem(int line, String message) {
+            fLine = line;
+            fMessage = message;
+        }
+
+        /**
+         * @return The line number in the file, or 0 if not known
+         */
+        public int getLine() {
+            return fLine;
+        }
+
+        public String getMessage() {
+            return fMessage;
+        }
+
+        @Override
+        public String toString() {
+            return fLine > 0 ? NLS.bind(Messages.XMLIntegrityChecker_3, fLine, fMessage) : fMessage;
+        }
+    }
+
+    // Kinds of identified object, as bits so that a reference can accept more than one
+    static final int ELEMENT = 1;
+    static final int RELATIONSHIP = 2;
+    static final int VIEW = 4;
+    static final int NODE = 8;
+    static final int CONNECTION = 16;
+    static final int PROPERTY_DEFINITION = 32;
+    static final int OTHER = 64;
+
+    // Kinds of reference. The description is XML names so it is not translated.
+    private static final String[] REFERENCE_NAMES = {
+            ELEMENT_RELATIONSHIP + " " + ATTRIBUTE_SOURCE,
+            ELEMENT_RELATIONSHIP + " " + ATTRIBUTE_TARGET,
+            ELEMENT_NODE + " " + ATTRIBUTE_ELEMENTREF,
+            ELEMENT_CONNECTION + " " + ATTRIBUTE_RELATIONSHIPREF,
+            ELEMENT_CONNECTION + " " + ATTRIBUTE_SOURCE,
+            ELEMENT_CONNECTION + " " + ATTRIBUTE_TARGET,
+            ELEMENT_ITEM + " " + ATTRIBUTE_IDENTIFIERREF,
+            ELEMENT_PROPERTY + " " + ATTRIBUTE_PROPERTY_IDENTIFIERREF,
+            ELEMENT_VIEWREF + " " + ATTRIBUTE_REF
+    };
+
+    private static final int[] REFERENCE_KINDS = {
+            ELEMENT | RELATIONSHIP,
+            ELEMENT | RELATIONSHIP,
+            ELEMENT,
+            RELATIONSHIP,
+            NODE | CONNECTION,
+            NODE | CONNECTION,
+            ELEMENT | RELATIONSHIP | VIEW,
+            PROPERTY_DEFINITION,
+            VIEW
+    };
+
+    private static final int REF_RELATIONSHIP_SOURCE = 0;
+    private static final int REF_RELATIONSHIP_TARGET = 1;
+    private static final int REF_NODE_ELEMENT = 2;
+    private static final int REF_CONNECTION_RELATIONSHIP = 3;
+    private static final int REF_CONNECTION_SOURCE = 4;
+    private static final int REF_CONNECTION_TARGET = 5;
+    private static final int REF_ITEM = 6;
+    private static final int REF_PROPERTY = 7;
+    private static final int REF_VIEW = 8;
+
+    /**
+     * Source of attribute values for the element being visited
+     */
+    private interface Attributes {
+        String get(String name);
+    }
+
+    private int fMaxProblems = 1000;
+
+    private IdentifierTable fIdentifiers;
+
+    // References, resolved at the end as they can refer forward
+    private int[] fRefIdentifiers;
+    private byte[] fRefTypes;
+    private int[] fRefLines;
+    private int fRefCount;
+
+    private List<Problem> fProblems;
+    private int fProblemCount;
+
+    /**
+     * Set the most problems to report. Problems after that are counted but not kept.
+     */
+    public void setMaxProblems(int max) {
+        fMaxProblems = Math.max(1, max);
+    }
+
+    /**
+     * Check an XML, binary or JSON exchange file
+     * @return The problems found, empty if none
+     * @throws IOException if the file can't be read or is not well-formed
+     */
+    public List<Problem> check(File file) throws IOException {
+        try(InputStream in = new FileInputStream(file)) {
+            return check(in);
+        }
+    }
+
+    /**
+     * Check an XML, binary or JSON exchange stream. The stream is not closed.
+     * @return The problems found, empty if none
+     * @throws IOException if the stream can't be read or is not well-formed
+     */
+    public List<Problem> check(InputStream in) throws IOException {
+        reset();
+
+        try {
+            BufferedInputStream bis = new BufferedInputStream(in);
+
+            if(XMLExchangeBinaryCodec.isBinaryStream(bis)) {
+                readBinary(bis);
+            }
+            else if(XMLExchangeJSONCodec.isJSONStream(bis)) {
+                Document doc = new XMLExchangeJSONCodec().read(bis);
+                visit(doc.getRootElement());
+            }
+            else {
+                read(bis);
+            }
+
+            resolve();
+
+            return fProblems;
+        }
+        finally {
+            // Release the tables
+            fIdentifiers = null;
+            fRefIdentifiers = null;
+            fRefTypes = null;
+            fRefLines = null;
+            fProblems = null;
+        }
+    }
+
+    /**
+     * Check an XML, binary or JSON exchange file
+     * @throws XMLModelParserException listing the problems if any are found
+     */
+    public void validate(File file) throws IOException, XMLModelParserException {
+        List<Problem> problems = check(file);
+        if(!problems.isEmpty()) {
+            throw new XMLModelParserException(createMessage(problems, 20));
+        }
+    }
+
+    /**
+     * @return The total number of problems found by the last check, including any that weren't kept
+     */
+    public int getProblemCount() {
+        return fProblemCount;
+    }
+
+    private String createMessage(List<Problem> problems, int max) {
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < Math.min(max, problems.size()); i++) {
+            if(i > 0) {
+                sb.append('\n');
+            }
+            sb.append(problems.get(i));
+        }
+
+        if(fProblemCount > max) {
+            sb.append('\n');
+            sb.append(NLS.bind(Messages.XMLIntegrityChecker_4, fProblemCount - max));
+        }
+
+        return sb.toString();
+    }
+
+    private void reset() {
+        fIdentifiers = new IdentifierTable();
+        fRefIdentifiers = new int[1024];
+        fRefTypes = new byte[1024];
+        fRefLines = new int[1024];
+        fRefCount = 0;
+        fProblems = new ArrayList<Problem>();
+        fProblemCount = 0;
+    }
+
+    // ========================================= Reading ======================================
+
+    private void read(InputStream in) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        XMLStreamReader reader = null;
+
+        try {
+            reader = factory.createXMLStreamReader(in);
+            final XMLStreamReader r = reader;
+
+            Attributes attributes = new Attributes() {
+                @Override
+                public String get(String name) {
+                    return r.getAttributeValue(null, name);
+                }
+            };
+
+            while(reader.hasNext()) {
+                if(reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    startElement(reader.getLocalName(), attributes, reader.getLocation().getLineNumber());
+                }
+            }
+        }
+        catch(XMLStreamException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+        finally {
+            if(reader != null) {
+                try {
+                    reader.close();
+                }
+                catch(XMLStreamException ex) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Step through the binary records without creating elements
+     */
+    private void readBinary(InputStream in) throws IOException {
+        new XMLExchangeBinaryCodec().walk(in, new XMLExchangeBinaryCodec.RecordVisitor() {
+            String[] names;
+            String[] values;
+            int count;
+
+            Attributes attributes = new Attributes() {
+                @Override
+                public String get(String name) {
+                    for(int i = 0; i < count; i++) {
+                        if(name.equals(names[i])) {
+                            return values[i];
+                        }
+                    }
+                    return null;
+                }
+            };
+
+            @Override
+            public void startRecord(String name, String[] attributeNames, String[] attributeValues, int attributeCount) {
+                names = attributeNames;
+                values = attributeValues;
+                count = attributeCount;
+                startElement(name, attributes, 0);
+            }
+        });
+    }
+
+    private void visit(final Element element) {
+        startElement(element.getName(), new Attributes() {
+            @Override
+            public String get(String name) {
+                Attribute attribute = element.getAttribute(name);
+                return attribute == null ? null : attribute.getValue();
+            }
+        }, 0);
+
+        for(Element child : element.getChildren()) {
+            visit(child);
+        }
+    }
+
+    private void startElement(String name, Attributes attributes, int line) {
+        switch(name) {
+            case ELEMENT_ELEMENT:
+                declare(attributes, ELEMENT, line);
+                break;
+
+            case ELEMENT_RELATIONSHIP:
+                declare(attributes, RELATIONSHIP, line);
+                reference(attributes.get(ATTRIBUTE_SOURCE), REF_RELATIONSHIP_SOURCE, line);
+                reference(attributes.get(ATTRIBUTE_TARGET), REF_RELATIONSHIP_TARGET, line);
+                break;
+
+            case ELEMENT_VIEW:
+                declare(attributes, VIEW, line);
+                break;
+
+            case ELEMENT_NODE:
+                declare(attributes, NODE, line);
+                reference(attributes.get(ATTRIBUTE_ELEMENTREF), REF_NODE_ELEMENT, line);
+                break;
+
+            case ELEMENT_CONNECTION:
+                declare(attributes, CONNECTION, line);
+                reference(attributes.get(ATTRIBUTE_RELATIONSHIPREF), REF_CONNECTION_RELATIONSHIP, line);
+                reference(attributes.get(ATTRIBUTE_SOURCE), REF_CONNECTION_SOURCE, line);
+                reference(attributes.get(ATTRIBUTE_TARGET), REF_CONNECTION_TARGET, line);
+                break;
+
+            case ELEMENT_PROPERTYDEFINITION:
+                declare(attributes, PROPERTY_DEFINITION, line);
+                break;
+
+            case ELEMENT_ITEM:
+                declare(attributes, OTHER, line);
+                reference(attributes.get(ATTRIBUTE_IDENTIFIERREF), REF_ITEM, line);
+                break;
+
+            case ELEMENT_PROPERTY:
+                reference(attributes.get(ATTRIBUTE_PROPERTY_IDENTIFIERREF), REF_PROPERTY, line);
+                break;
+
+            case ELEMENT_VIEWREF:
+                reference(attributes.get(ATTRIBUTE_REF), REF_VIEW, line);
+                break;
+
+            default:
+                declare(attributes, OTHER, line);
+                break;
+        }
+    }
+
+    private void declare(Attributes attributes, int kind, int line) {
+        String identifier = attributes.get(ATTRIBUTE_IDENTIFIER);
+        if(identifier == null) {
+            return;
+        }
+
+        int index = fIdentifiers.add(identifier);
+
+        if(fIdentifiers.getKind(index) != 0) {
+            addProblem(line, NLS.bind(Messages.XMLIntegrityChecker_0, identifier, fIdentifiers.getLine(index)));
+        }
+        else {
+            fIdentifiers.setKind(index, kind, line);
+        }
+    }
+
+    private void reference(String identifier, int type, int line) {
+        if(identifier == null) {
+            return;
+        }
+
+        if(fRefCount == fRefIdentifiers.length) {
+            int size = fRefCount * 2;
+            fRefIdentifiers = Arrays.copyOf(fRefIdentifiers, size);
+            fRefTypes = Arrays.copyOf(fRefTypes, size);
+            fRefLines = Arrays.copyOf(fRefLines, size);
+        }
+
+        fRefIdentifiers[fRefCount] = fIdentifiers.add(identifier);
+        fRefTypes[fRefCount] = (byte)type;
+        fRefLines[fRefCount] = line;
+        fRefCount++;
+    }
+
+    /**
+     * Check each reference against what it refers to
+     */
+    private void resolve() {
+        for(int i = 0; i < fRefCount; i++) {
+            int index = fRefIdentifiers[i];
+            int type = fRefTypes[i];
+            int kind = fIdentifiers.getKind(index);
+
+            if(kind == 0) {
+                addProblem(fRefLines[i], NLS.bind(Messages.XMLIntegrityChecker_1, REFERENCE_NAMES[type], fIdentifiers.get(index)));
+            }
+            else if((kind & REFERENCE_KINDS[type]) == 0) {
+                addProblem(fRefLines[i], NLS.bind(Messages.XMLIntegrityChecker_2, REFERENCE_NAMES[type], fIdentifiers.get(index)));
+            }
+        }
+    }
+
+    private void addProblem(int line, String message) {
+        fProblemCount++;
+        if(fProblems.size() < fMaxProblems) {
+            fProblems.add(new Problem(line, message));
+        }
+    }
+
+    // ========================================= Identifier Table ======================================
+
+    /**
+     * Open addressing hash table of identifiers.
+     * Characters are kept in one shared array and everything else in int and byte arrays.
+     */
+    static final class IdentifierTable {
+        private char[] fChars = new char[16 * 1024];
+        private int fCharCount;
+
+        private int[] fOffsets = new int[1024];
+        private int[] fHashes = new int[1024];
+        private byte[] fKinds = new byte[1024];
+        private int[] fLines = new int[1024];
+        private int fCount;
+
+        // Index + 1 of the identifier in each slot, 0 if empty
+        private int[] fSlots = new int[2048];
+
+        /**
+         * Add an identifier if it isn't already in the table
+         * @return The index of the identifier
+         */
+        int add(String identifier) {
+            int hash = identifier.hashCode();
+            int mask = fSlots.length - 1;
+
+            for(int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+                int entry = fSlots[slot];
+
+                if(entry == 0) {
+                    int index = append(identifier, hash);
+                    fSlots[slot] = index + 1;
+
+                    if(fCount * 2 > fSlots.length) {
+                        rehash();
+                    }
+
+                    return index;
+                }
+
+                if(fHashes[entry - 1] == hash && matches(entry - 1, identifier)) {
+                    return entry - 1;
+                }
+            }
+        }
+
+        int size() {
+            return fCount;
+        }
+
+        String get(int index) {
+            return new String(fChars, fOffsets[index], getLength(index));
+        }
+
+        int getKind(int index) {
+            return fKinds[index];
+        }
+
+        int getLine(int index) {
+            return fLines[index];
+        }
+
+        void setKind(int index, int kind, int line) {
+            fKinds[index] = (byte)kind;
+            fLines[index] = line;
+        }
+
+        private int append(String identifier, int hash) {
+            int length = identifier.length();
+
+            if(fCharCount + length > fChars.length) {
+                fChars = Arrays.copyOf(fChars, Math.max(fChars.length * 2, fCharCount + length));
+            }
+
+            if(fCount == fOffsets.length) {
+                int size = fCount * 2;
+                fOffsets = Arrays.copyOf(fOffsets, size);
+                fHashes = Arrays.copyOf(fHashes, size);
+                fKinds = Arrays.copyOf(fKinds, size);
+                fLines = Arrays.copyOf(fLines, size);
+            }
+
+            identifier.getChars(0, length, fChars, fCharCount);
+            fOffsets[fCount] = fCharCount;
+            fHashes[fCount] = hash;
+            fCharCount += length;
+
+            return fCount++;
+        }
+
+        private int getLength(int index) {
+            return (index + 1 < fCount ? fOffsets[index + 1] : fCharCount) - fOffsets[index];
+        }
+
+        private boolean matches(int index, String identifier) {
+            int length = getLength(index);
+            if(length != identifier.length()) {
+                return false;
+            }
+
+            int offset = fOffsets[index];
+            for(int i = 0; i < length; i++) {
+                if(fChars[offset + i] != identifier.charAt(i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private void rehash() {
+            fSlots = new int[fSlots.length * 2];
+            int mask = fSlots.length - 1;
+
+            for(int index = 0; index < fCount; index++) {
+                int slot = mix(fHashes[index]) & mask;
+                while(fSlots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                fSlots[slot] = index + 1;
+            }
+        }
+
+        /**
+         * Spread the bits of String.hashCode(), which are poor in the low bits for identifiers that differ only at the end
+         */
+        private static int mix(int hash) {
+            hash *= 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
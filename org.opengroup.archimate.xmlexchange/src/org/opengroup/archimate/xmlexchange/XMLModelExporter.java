@@ -6,8 +6,15 @@
 package org.opengroup.archimate.xmlexchange;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -15,7 +22,6 @@ import java.util.Map.Entry;
 import java.util.TreeMap;
 
 import org.eclipse.draw2d.geometry.Point;
-import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Color;
@@ -24,6 +30,8 @@ import org.eclipse.swt.graphics.RGB;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.Namespace;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
 
 import com.archimatetool.editor.model.DiagramModelUtils;
 import com.archimatetool.editor.ui.ColorFactory;
@@ -58,6 +66,12 @@ import com.archimatetool.model.IProperty;
 /**
  * Export Archi Model to Open Exchange XML Format using JDOM
  * 
+ * If the model was imported with lazy views the export methods first load the views that are exported,
+ * which is all of them unless a subset is set with {@link #setSubset(Collection)}.
+ * This adds their nodes and connections to the model, so when exporting on a background thread, for example with
+ * {@link XMLExchangeEngine#exportModelAsync(IArchimateModel, File)}, load the views with
+ * {@link LazyViews#loadAll(IArchimateModel)} on the thread that owns the model first, or export a {@link ModelSnapshot}.
+ * 
  * @author Phillip Beauvoir
  */
 public class XMLModelExporter implements IXMLExchangeGlobals {
@@ -88,20 +102,41 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
      */
     private String fLanguageCode;
 
+    /**
+     * Whether to write canonical output
+     */
+    private boolean fCanonical;
+    
+    /**
+     * Digest of the last canonical export and whether the file was written
+     */
+    private String fDigest;
+    private boolean fFileWritten;
+    
+    /**
+     * Views and folders to export, or null to export the whole model
+     */
+    private Collection<? extends EObject> fSubsetSelection;
+    
+    /**
+     * The closure of the subset selection for the model being exported
+     */
+    private ExportSubset fSubset;
+
     public void exportModel(IArchimateModel model, File outputFile) throws IOException {
-        fModel = model;
+        // Views imported lazily
+        loadViews(model);
         
         // JDOM Document
-        Document doc = createDocument();
-        
-        // Root Element
-        Element rootElement = createRootElement(doc);
+        Document doc = createExchangeDocument(model);
 
-        // Persist model
-        writeModel(rootElement);
-        
         // Save
-        JDOMUtils.write2XMLFile(doc, outputFile);
+        if(fCanonical) {
+            writeCanonicalFile(doc, outputFile);
+        }
+        else {
+            JDOMUtils.write2XMLFile(doc, outputFile);
+        }
         
         // XSD
         if(fIncludeXSD) {
@@ -115,7 +150,172 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
             XMLExchangePlugin.INSTANCE.copyXSDFile(XMLExchangePlugin.ARCHIMATE3_DIAGRAM_XSD, file3);
         }
     }
+
+    /**
+     * Export a snapshot of a model. This can run on any thread while the model itself is being edited.
+     * A subset set with {@link #setSubset(Collection)} is given as objects in the original model.
+     */
+    public void exportModel(ModelSnapshot snapshot, File outputFile) throws IOException {
+        Collection<? extends EObject> selection = fSubsetSelection;
+
+        if(selection != null) {
+            fSubsetSelection = snapshot.getCopies(selection);
+        }
+
+        try {
+            exportModel(snapshot.getModel(), outputFile);
+        }
+        finally {
+            fSubsetSelection = selection;
+        }
+    }
+
+    /**
+     * Export the model as exchange XML to a stream. XSD files are not copied. The stream is not closed.
+     */
+    public void exportModel(IArchimateModel model, OutputStream out) throws IOException {
+        loadViews(model);
+        Document doc = createExchangeDocument(model);
+        
+        if(fCanonical) {
+            DigestOutputStream digestOut = new DigestOutputStream(out, createMessageDigest());
+            createCanonicalOutputter().output(doc, digestOut);
+            fDigest = toHex(digestOut.getMessageDigest().digest());
+        }
+        else {
+            XMLOutputter outputter = new XMLOutputter(Format.getPrettyFormat());
+            outputter.output(doc, out);
+        }
+        
+        out.flush();
+    }
+    
+    /**
+     * Write a canonical document, leaving the file untouched if it already has the same content
+     */
+    private void writeCanonicalFile(Document doc, File outputFile) throws IOException {
+        ComparingFileOutputStream out = new ComparingFileOutputStream(outputFile);
+        
+        try {
+            createCanonicalOutputter().output(doc, out);
+        }
+        catch(IOException | RuntimeException ex) {
+            out.abort();
+            throw ex;
+        }
+        
+        out.close();
+        
+        fDigest = toHex(out.getDigest());
+        fFileWritten = out.isChanged();
+    }
     
+    /**
+     * Canonical output always has the same encoding, indent and line separator
+     */
+    private XMLOutputter createCanonicalOutputter() {
+        Format format = Format.getPrettyFormat();
+        format.setEncoding("UTF-8"); //$NON-NLS-1$
+        format.setIndent("    "); //$NON-NLS-1$
+        format.setLineSeparator("\n"); //$NON-NLS-1$
+        return new XMLOutputter(format);
+    }
+    
+    private static MessageDigest createMessageDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+        }
+        catch(NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+    }
+    
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Export the model in the compact binary encoding of the exchange format
+     * @see XMLExchangeBinaryCodec
+     */
+    public void exportModelBinary(IArchimateModel model, File outputFile) throws IOException {
+        loadViews(model);
+        Document doc = createExchangeDocument(model);
+        new XMLExchangeBinaryCodec().write(doc, outputFile);
+    }
+
+    /**
+     * Export the model in the JSON encoding of the exchange format.
+     * The model is written in one walk without building the whole exchange document. Each element, relationship,
+     * top level folder and view is built on its own, written, and dropped, so only one of them is held in memory at a time.
+     * @see XMLExchangeJSONCodec
+     */
+    public void exportModelJSON(IArchimateModel model, File outputFile) throws IOException {
+        loadViews(model);
+        
+        try(OutputStream out = new FileOutputStream(outputFile)) {
+            exportModelJSON(model, out);
+        }
+    }
+    
+    /**
+     * Export the model in the JSON encoding of the exchange format to a stream. The stream is not closed.
+     * Views imported lazily that are exported must have been loaded.
+     * @throws IllegalStateException if a view imported lazily that is exported has not been loaded
+     */
+    void exportModelJSON(IArchimateModel model, OutputStream out) throws IOException {
+        fModel = model;
+        fSubset = fSubsetSelection == null ? null : new ExportSubset(model, fSubsetSelection);
+        
+        LazyViews.checkLoaded(fSubset == null ? model.getDiagramModels() : fSubset.getViews());
+        
+        writeModel(new XMLExchangeJSONCodec.StreamWriter(out));
+    }
+
+    /**
+     * Load the views imported lazily that are exported. With a subset only the views in the subset are loaded.
+     */
+    private void loadViews(IArchimateModel model) throws IOException {
+        if(fSubsetSelection == null) {
+            LazyViews.loadAll(model);
+            return;
+        }
+        
+        // A loaded view can reference more views, so work out the subset again until they are all loaded
+        Collection<? extends IDiagramModel> views = new ExportSubset(model, fSubsetSelection).getViews();
+        while(LazyViews.hasUnloadedViews(views)) {
+            LazyViews.loadAll(views);
+            views = new ExportSubset(model, fSubsetSelection).getViews();
+        }
+    }
+
+    /**
+     * Create the exchange format JDOM Document for a model. Views imported lazily that are exported must have been loaded.
+     * @throws IllegalStateException if a view imported lazily that is exported has not been loaded
+     */
+    Document createExchangeDocument(IArchimateModel model) {
+        fModel = model;
+        fSubset = fSubsetSelection == null ? null : new ExportSubset(model, fSubsetSelection);
+        
+        LazyViews.checkLoaded(fSubset == null ? model.getDiagramModels() : fSubset.getViews());
+
+        // JDOM Document
+        Document doc = createDocument();
+
+        // Root Element
+        Element rootElement = createRootElement(doc);
+
+        // Persist model
+        writeModel(rootElement);
+
+        return doc;
+    }
+
     /**
      * Set DC Metadata
      * @param metadata A map of DC metadata element tags mapped to values
@@ -159,6 +359,43 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
     public void setLanguageCode(String languageCode) {
         fLanguageCode = languageCode;
     }
+    
+    /**
+     * Set whether to write canonical output, so that an unchanged model is always written as the same bytes.
+     * Concepts, views and connections are sorted by identifier, property definition identifiers are numbered
+     * in order of property key, and line endings and formatting are fixed.
+     * A file that already has the same content is not written.
+     * @param set
+     */
+    public void setCanonical(boolean set) {
+        fCanonical = set;
+    }
+    
+    /**
+     * Export only some of the model. The views and folders given, and everything they need to be complete, are exported.
+     * That is the views, elements and relationships in the folders, the elements and relationships in the views, any views
+     * referenced in the views, the source and target of each relationship, and the property definitions used by all of these.
+     * Organizations include the folders given and their sub-folders, even when nothing in them is exported,
+     * and the folders that hold something exported.
+     * @param viewsOrFolders Views, folders, elements or relationships in the model to export, or null to export the whole model
+     */
+    public void setSubset(Collection<? extends EObject> viewsOrFolders) {
+        fSubsetSelection = viewsOrFolders;
+    }
+    
+    /**
+     * @return The SHA-256 digest in hex of the last canonical export, or null
+     */
+    public String getDigest() {
+        return fDigest;
+    }
+    
+    /**
+     * @return false if the last canonical export to a file found the same content already there and didn't write it
+     */
+    public boolean isFileWritten() {
+        return fFileWritten;
+    }
 
     /**
      * @return A JDOM Document
@@ -210,6 +447,34 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
      * Write the model
      */
     private void writeModel(Element rootElement) {
+        writeModelHeader(rootElement);
+        
+        // Model Elements
+        writeModelElements(rootElement);
+        
+        // Relationships
+        writeModelRelationships(rootElement);
+        
+        // Organizations
+        if(fDoSaveOrganisation) {
+            writeOrganizations(rootElement);
+        }
+        
+        // Properties Definitions
+        writeModelPropertiesDefinitions(rootElement);
+        
+        // Views
+        writeViews(rootElement);
+        
+        if(fCanonical) {
+            sortCanonical(rootElement);
+        }
+    }
+    
+    /**
+     * Write the model's identifier, name, documentation, properties and metadata
+     */
+    private void writeModelHeader(Element rootElement) {
         rootElement.setAttribute(ATTRIBUTE_IDENTIFIER, createID(fModel));
         
         // Gather all properties now
@@ -226,23 +491,139 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
         
         // Metadata
         writeMetadata(rootElement);
+    }
+    
+    /**
+     * Write the model a piece at a time. The sections are the same, and in the same order, as {@link #writeModel(Element)}.
+     * Each element, relationship, top level folder and view is written and dropped as soon as it is built.
+     * For canonical output the concepts and views are sorted before they are built, and the content of each view after.
+     */
+    private void writeModel(XMLExchangeJSONCodec.StreamWriter writer) throws IOException {
+        Element rootElement = createRootElement(createDocument());
+        writeModelHeader(rootElement);
+        
+        writer.startElement(rootElement);
+        for(Element childElement : new ArrayList<Element>(rootElement.getChildren())) {
+            writeAndDrop(writer, childElement);
+        }
         
         // Model Elements
-        writeModelElements(rootElement);
+        Element elementsElement = new Element(ELEMENT_ELEMENTS, ARCHIMATE3_NAMESPACE);
+        rootElement.addContent(elementsElement);
+        for(IArchimateElement element : sortCanonical(getModelElements())) {
+            writeAndDrop(writer, writeModelElement(element, elementsElement));
+        }
         
         // Relationships
-        writeModelRelationships(rootElement);
+        Element relationshipsElement = new Element(ELEMENT_RELATIONSHIPS, ARCHIMATE3_NAMESPACE);
+        rootElement.addContent(relationshipsElement);
+        for(IArchimateRelationship relationship : sortCanonical(getModelRelationships())) {
+            writeAndDrop(writer, writeModelRelationship(relationship, relationshipsElement));
+        }
         
         // Organizations
         if(fDoSaveOrganisation) {
-            writeOrganizations(rootElement);
+            Element organizationsElement = new Element(ELEMENT_ORGANIZATIONS, ARCHIMATE3_NAMESPACE);
+            rootElement.addContent(organizationsElement);
+            for(IFolder folder : fModel.getFolders()) {
+                Element itemElement = writeFolder(folder, organizationsElement);
+                if(itemElement != null) {
+                    writeAndDrop(writer, itemElement);
+                }
+            }
         }
         
         // Properties Definitions
-        writeModelPropertiesDefinitions(rootElement);
+        Element propertiesDefinitionsElement = writeModelPropertiesDefinitions(rootElement);
+        if(propertiesDefinitionsElement != null) {
+            writeAndDrop(writer, propertiesDefinitionsElement);
+        }
         
         // Views
-        writeViews(rootElement);
+        Collection<? extends IDiagramModel> views = getModelViews();
+        if(!views.isEmpty()) {
+            Element viewsElement = new Element(ELEMENT_VIEWS, ARCHIMATE3_NAMESPACE);
+            rootElement.addContent(viewsElement);
+            
+            Element diagramsElement = new Element(ELEMENT_DIAGRAMS, ARCHIMATE3_NAMESPACE);
+            viewsElement.addContent(diagramsElement);
+            writer.startElement(diagramsElement);
+            
+            for(IDiagramModel dm : sortCanonical(views)) {
+                if(dm instanceof IArchimateDiagramModel) {
+                    // Index the diagram once and calculate its negative offset
+                    fCurrentTopology = new DiagramTopologyIndex(dm, fBendpointTransform);
+                    fCurrentDiagramNegativeOffset = fCurrentTopology.getNegativeOffset();
+                    
+                    Element viewElement = writeView((IArchimateDiagramModel)dm, diagramsElement);
+                    if(fCanonical) {
+                        viewElement.sortChildren(CANONICAL_ORDER);
+                    }
+                    writeAndDrop(writer, viewElement);
+                }
+            }
+        }
+        
+        writer.close();
+    }
+    
+    /**
+     * Write an element that has been built and remove it from its parent
+     */
+    private void writeAndDrop(XMLExchangeJSONCodec.StreamWriter writer, Element element) throws IOException {
+        writer.addElement(element);
+        element.detach();
+    }
+    
+    /**
+     * Orders concepts, views and connections by identifier.
+     * Nodes keep their order as it is the z-order.
+     */
+    private static final Comparator<Element> CANONICAL_ORDER = new Comparator<Element>() {
+        @Override
+        public int compare(Element e1, Element e2) {
+            // Connections go after everything else
+            boolean connection1 = ELEMENT_CONNECTION.equals(e1.getName());
+            boolean connection2 = ELEMENT_CONNECTION.equals(e2.getName());
+            if(connection1 != connection2) {
+                return connection1 ? 1 : -1;
+            }
+            
+            String id1 = e1.getAttributeValue(ATTRIBUTE_IDENTIFIER);
+            String id2 = e2.getAttributeValue(ATTRIBUTE_IDENTIFIER);
+            
+            // Only sort identified siblings apart from nodes, so elements, relationships, views and connections
+            if(id1 == null || id2 == null || ELEMENT_NODE.equals(e1.getName()) || ELEMENT_NODE.equals(e2.getName())) {
+                return 0;
+            }
+            
+            return id1.compareTo(id2);
+        }
+    };
+    
+    /**
+     * Sort the concepts, views and connections by identifier in the exchange document
+     */
+    private void sortCanonical(Element rootElement) {
+        Element elementsElement = rootElement.getChild(ELEMENT_ELEMENTS, ARCHIMATE3_NAMESPACE);
+        if(elementsElement != null) {
+            elementsElement.sortChildren(CANONICAL_ORDER);
+        }
+        
+        Element relationshipsElement = rootElement.getChild(ELEMENT_RELATIONSHIPS, ARCHIMATE3_NAMESPACE);
+        if(relationshipsElement != null) {
+            relationshipsElement.sortChildren(CANONICAL_ORDER);
+        }
+        
+        Element viewsElement = rootElement.getChild(ELEMENT_VIEWS, ARCHIMATE3_NAMESPACE);
+        if(viewsElement != null) {
+            Element diagramsElement = viewsElement.getChild(ELEMENT_DIAGRAMS, ARCHIMATE3_NAMESPACE);
+            diagramsElement.sortChildren(CANONICAL_ORDER);
+            
+            for(Element viewElement : diagramsElement.getChildren(ELEMENT_VIEW, ARCHIMATE3_NAMESPACE)) {
+                viewElement.sortChildren(CANONICAL_ORDER);
+            }
+        }
     }
     
     // ========================================= Metadata ======================================
@@ -285,13 +666,9 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
     Element writeModelElements(Element rootElement) {
         Element elementsElement = new Element(ELEMENT_ELEMENTS, ARCHIMATE3_NAMESPACE);
         
-        writeModelElementsFolder(fModel.getFolder(FolderType.STRATEGY), elementsElement);
-        writeModelElementsFolder(fModel.getFolder(FolderType.BUSINESS), elementsElement);
-        writeModelElementsFolder(fModel.getFolder(FolderType.APPLICATION), elementsElement);
-        writeModelElementsFolder(fModel.getFolder(FolderType.TECHNOLOGY), elementsElement);
-        writeModelElementsFolder(fModel.getFolder(FolderType.MOTIVATION), elementsElement);
-        writeModelElementsFolder(fModel.getFolder(FolderType.IMPLEMENTATION_MIGRATION), elementsElement);
-        writeModelElementsFolder(fModel.getFolder(FolderType.OTHER), elementsElement);
+        for(IArchimateElement element : getModelElements()) {
+            writeModelElement(element, elementsElement);
+        }
         
         // If there are elements
         if(!elementsElement.getChildren().isEmpty()) {
@@ -304,9 +681,31 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
     }
     
     /**
-     * Write the elements from an Archi folder
+     * @return The elements to write, from all the folders in order or from the subset
+     */
+    private List<IArchimateElement> getModelElements() {
+        List<IArchimateElement> elements = new ArrayList<IArchimateElement>();
+        
+        if(fSubset != null) {
+            elements.addAll(fSubset.getElements());
+        }
+        else {
+            getModelElements(fModel.getFolder(FolderType.STRATEGY), elements);
+            getModelElements(fModel.getFolder(FolderType.BUSINESS), elements);
+            getModelElements(fModel.getFolder(FolderType.APPLICATION), elements);
+            getModelElements(fModel.getFolder(FolderType.TECHNOLOGY), elements);
+            getModelElements(fModel.getFolder(FolderType.MOTIVATION), elements);
+            getModelElements(fModel.getFolder(FolderType.IMPLEMENTATION_MIGRATION), elements);
+            getModelElements(fModel.getFolder(FolderType.OTHER), elements);
+        }
+        
+        return elements;
+    }
+    
+    /**
+     * Add the elements from an Archi folder
      */
-    private void writeModelElementsFolder(IFolder folder, Element elementsElement) {
+    private void getModelElements(IFolder folder, List<IArchimateElement> elements) {
         if(folder == null) {
             return;
         }
@@ -315,7 +714,7 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
         getElements(folder, list);
         for(EObject eObject : list) {
             if(eObject instanceof IArchimateElement) {
-                writeModelElement((IArchimateElement)eObject, elementsElement);
+                elements.add((IArchimateElement)eObject);
              }
         }
     }
@@ -370,7 +769,9 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
     Element writeModelRelationships(Element rootElement) {
         Element relationshipsElement = new Element(ELEMENT_RELATIONSHIPS, ARCHIMATE3_NAMESPACE);
         
-        writeModelRelationshipsFolder(fModel.getFolder(FolderType.RELATIONS), relationshipsElement);
+        for(IArchimateRelationship relationship : getModelRelationships()) {
+            writeModelRelationship(relationship, relationshipsElement);
+        }
         
         // If there are relationships
         if(!relationshipsElement.getChildren().isEmpty()) {
@@ -383,20 +784,30 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
     }
     
     /**
-     * Write the relationships from an Archi folder
+     * @return The relationships to write, from the relations folder or from the subset
      */
-    private void writeModelRelationshipsFolder(IFolder folder, Element relationshipsElement) {
+    private List<IArchimateRelationship> getModelRelationships() {
+        List<IArchimateRelationship> relationships = new ArrayList<IArchimateRelationship>();
+        
+        if(fSubset != null) {
+            relationships.addAll(fSubset.getRelationships());
+            return relationships;
+        }
+        
+        IFolder folder = fModel.getFolder(FolderType.RELATIONS);
         if(folder == null) {
-            return;
+            return relationships;
         }
 
         List<EObject> list = new ArrayList<EObject>();
         getElements(folder, list);
         for(EObject eObject : list) {
             if(eObject instanceof IArchimateRelationship) {
-                writeModelRelationship((IArchimateRelationship)eObject, relationshipsElement);
+                relationships.add((IArchimateRelationship)eObject);
              }
         }
+        
+        return relationships;
     }
 
     /**
@@ -481,7 +892,13 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
     }
     
     Element writeFolder(IFolder folder, Element parentElement) {
-        if(folder.getFolders().isEmpty() && folder.getElements().isEmpty()) {
+        // Only folders selected or holding something in the subset
+        if(fSubset != null) {
+            if(!fSubset.containsFolder(folder)) {
+                return null;
+            }
+        }
+        else if(folder.getFolders().isEmpty() && folder.getElements().isEmpty()) {
             return null;
         }
         
@@ -498,7 +915,7 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
             writeFolder(subFolder, itemElement);
         }
         
-        for(EObject eObject : folder.getElements()) {
+        for(EObject eObject : fSubset != null ? fSubset.getFolderContents(folder) : folder.getElements()) {
             if(eObject instanceof IIdentifier) {
                 // Don't write Sketch or Canvas Views
                 if(eObject instanceof IDiagramModel && !(eObject instanceof IArchimateDiagramModel)) {
@@ -549,16 +966,32 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
         String id = "propid-"; //$NON-NLS-1$
         int idCount = 1;
         
-        for(Iterator<EObject> iter = fModel.eAllContents(); iter.hasNext();) {
-            EObject element = iter.next();
-            if(element instanceof IProperty) {
-                String name = ((IProperty)element).getKey();
-                if(name != null && !list.containsKey(name)) {
-                    list.put(name, id + (idCount++));
+        // Only the keys used in the subset
+        if(fSubset != null) {
+            for(String name : fSubset.getPropertyKeys()) {
+                list.put(name, id + (idCount++));
+            }
+        }
+        else {
+            for(Iterator<EObject> iter = fModel.eAllContents(); iter.hasNext();) {
+                EObject element = iter.next();
+                if(element instanceof IProperty) {
+                    String name = ((IProperty)element).getKey();
+                    if(name != null && !list.containsKey(name)) {
+                        list.put(name, id + (idCount++));
+                    }
                 }
             }
         }
         
+        // Number in key order so that the identifiers don't depend on the order the keys are found
+        if(fCanonical) {
+            idCount = 1;
+            for(Entry<String, String> entry : list.entrySet()) {
+                entry.setValue(id + (idCount++));
+            }
+        }
+        
         return list;
     }
     
@@ -614,9 +1047,15 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
      */
     private Point fCurrentDiagramNegativeOffset;
     
+    // Reused for the bendpoints of every connection
+    private BendpointTransform fBendpointTransform = new BendpointTransform();
+    
+    // Parents, absolute positions and connections of the current diagram
+    private DiagramTopologyIndex fCurrentTopology;
+    
     Element writeViews(Element rootElement) {
         // Do we have any views?
-        EList<IDiagramModel> views = fModel.getDiagramModels();
+        Collection<? extends IDiagramModel> views = getModelViews();
         if(views.isEmpty()) {
             return null;
         }
@@ -629,8 +1068,9 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
         
         for(IDiagramModel dm : views) {
             if(dm instanceof IArchimateDiagramModel) {
-                // Calculate negative offset for this diagram
-                fCurrentDiagramNegativeOffset = XMLExchangeUtils.getNegativeOffsetForDiagram(dm);
+                // Index the diagram once and calculate its negative offset
+                fCurrentTopology = new DiagramTopologyIndex(dm, fBendpointTransform);
+                fCurrentDiagramNegativeOffset = fCurrentTopology.getNegativeOffset();
                 
                 writeView((IArchimateDiagramModel)dm, diagramsElement);
             }
@@ -639,6 +1079,13 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
         return viewsElement;
     }
     
+    /**
+     * @return The views to write, all of them or those in the subset
+     */
+    private Collection<? extends IDiagramModel> getModelViews() {
+        return fSubset != null ? fSubset.getViews() : fModel.getDiagramModels();
+    }
+    
     Element writeView(IArchimateDiagramModel dm, Element viewsElement) {
         Element viewElement = new Element(ELEMENT_VIEW, ARCHIMATE3_NAMESPACE);
         viewsElement.addContent(viewElement);
@@ -875,18 +1322,17 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
      * Write all connections
      */
     void writeConnections(IDiagramModel dm, Element parentElement) {
-        for(Iterator<EObject> iter = dm.eAllContents(); iter.hasNext();) {
-            EObject eObject = iter.next();
+        for(IDiagramModelConnection connection : getTopology(dm).getConnections()) {
             // ArchiMate connection
-            if(eObject instanceof IDiagramModelArchimateConnection) {
+            if(connection instanceof IDiagramModelArchimateConnection) {
                 // If it's nested don't write a connection
-                if(!isNestedConnection((IDiagramModelArchimateConnection)eObject)) {
-                    writeConnection((IDiagramModelConnection)eObject, parentElement);
+                if(!isNestedConnection((IDiagramModelArchimateConnection)connection)) {
+                    writeConnection(connection, parentElement);
                 }
             }
             // Other connection
-            else if(eObject instanceof IDiagramModelConnection) {
-                writeConnection((IDiagramModelConnection)eObject, parentElement);
+            else {
+                writeConnection(connection, parentElement);
             }
         }
     }
@@ -898,11 +1344,22 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
         if(connection.getSource() instanceof IDiagramModelArchimateObject && connection.getTarget() instanceof IDiagramModelArchimateObject) {
             IDiagramModelArchimateObject src = (IDiagramModelArchimateObject)connection.getSource();
             IDiagramModelArchimateObject tgt = (IDiagramModelArchimateObject)connection.getTarget();
-            return src.getChildren().contains(tgt) && DiagramModelUtils.isNestedConnectionTypeRelationship(connection.getArchimateRelationship());
+            return getTopology(connection.getDiagramModel()).isNested(src, tgt) && DiagramModelUtils.isNestedConnectionTypeRelationship(connection.getArchimateRelationship());
         }
         return false;
     }
     
+    /**
+     * @return The topology index of a diagram, the current one if it is the diagram being written
+     */
+    DiagramTopologyIndex getTopology(IDiagramModel dm) {
+        if(fCurrentTopology == null || fCurrentTopology.getDiagramModel() != dm) {
+            fCurrentTopology = new DiagramTopologyIndex(dm, fBendpointTransform);
+            fCurrentDiagramNegativeOffset = fCurrentTopology.getNegativeOffset();
+        }
+        return fCurrentTopology;
+    }
+    
     /**
      * Write a connection
      */
@@ -948,17 +1405,17 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
             return;
         }
         
-        List<Point> points = XMLExchangeUtils.getActualBendpointPositions(connection);
+        int count = fBendpointTransform.computeAbsolute(connection);
         
-        for(Point pt : points) {
+        for(int i = 0; i < count; i++) {
             Element bendpointElement = new Element(ELEMENT_BENDPOINT, ARCHIMATE3_NAMESPACE);
             connectionElement.addContent(bendpointElement);
         
-            pt.x -= fCurrentDiagramNegativeOffset.x; // compensate for negative space
-            pt.y -= fCurrentDiagramNegativeOffset.y; // compensate for negative space
+            int x = fBendpointTransform.getX(i) - fCurrentDiagramNegativeOffset.x; // compensate for negative space
+            int y = fBendpointTransform.getY(i) - fCurrentDiagramNegativeOffset.y; // compensate for negative space
             
-            bendpointElement.setAttribute(ATTRIBUTE_X, Integer.toString(pt.x));
-            bendpointElement.setAttribute(ATTRIBUTE_Y, Integer.toString(pt.y));
+            bendpointElement.setAttribute(ATTRIBUTE_X, Integer.toString(x));
+            bendpointElement.setAttribute(ATTRIBUTE_Y, Integer.toString(y));
         }
     }
     
@@ -1075,10 +1532,11 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
      * Write absolute bounds of a diagram object
      */
     void writeAbsoluteBounds(IDiagramModelObject dmo, Element element) {
-        IBounds bounds = XMLExchangeUtils.getAbsoluteBounds(dmo);
+        IBounds bounds = dmo.getBounds();
+        DiagramTopologyIndex topology = getTopology(dmo.getDiagramModel());
         
-        int x = bounds.getX() - fCurrentDiagramNegativeOffset.x; // compensate for negative space
-        int y = bounds.getY() - fCurrentDiagramNegativeOffset.y; // compensate for negative space
+        int x = topology.getAbsoluteX(dmo) - fCurrentDiagramNegativeOffset.x; // compensate for negative space
+        int y = topology.getAbsoluteY(dmo) - fCurrentDiagramNegativeOffset.y; // compensate for negative space
         
         element.setAttribute(ATTRIBUTE_X, Integer.toString(x));
         element.setAttribute(ATTRIBUTE_Y, Integer.toString(y));
@@ -1099,6 +1557,11 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
     }
 
     private void writeElementTextWithLanguageCode(Element element, String text) {
+        // Use one line ending
+        if(fCanonical) {
+            text = text.replace("\r\n", "\n").replace('\r', '\n'); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        
         element.setText(text);
         
         if(fLanguageCode != null) {
@@ -1120,6 +1583,24 @@ public class XMLModelExporter implements IXMLExchangeGlobals {
         return element != null && (element.hasAttributes() || !element.getChildren().isEmpty());
     }
 
+    /**
+     * @return The concepts or views sorted by identifier if writing canonical output, as the exchange document sorts them
+     */
+    private <T extends IIdentifier> List<T> sortCanonical(Collection<? extends T> objects) {
+        List<T> list = new ArrayList<T>(objects);
+        
+        if(fCanonical) {
+            list.sort(new Comparator<T>() {
+                @Override
+                public int compare(T o1, T o2) {
+                    return createID(o1).compareTo(createID(o2));
+                }
+            });
+        }
+        
+        return list;
+    }
+
     /**
      * Create a uniform id
      */
@@ -5,17 +5,24 @@
  */
 package org.opengroup.archimate.xmlexchange;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.FontData;
@@ -23,7 +30,7 @@ import org.eclipse.swt.graphics.RGB;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
-import org.jdom2.Namespace;
+import org.jdom2.input.SAXBuilder;
 
 import com.archimatetool.editor.diagram.ArchimateDiagramModelFactory;
 import com.archimatetool.editor.ui.ColorFactory;
@@ -48,13 +55,13 @@ import com.archimatetool.model.IDiagramModelGroup;
 import com.archimatetool.model.IDiagramModelNote;
 import com.archimatetool.model.IDiagramModelObject;
 import com.archimatetool.model.IDiagramModelReference;
+import com.archimatetool.model.IFolder;
 import com.archimatetool.model.IFontAttribute;
 import com.archimatetool.model.IIdentifier;
 import com.archimatetool.model.IInfluenceRelationship;
 import com.archimatetool.model.IProperties;
 import com.archimatetool.model.IProperty;
 import com.archimatetool.model.ITextAlignment;
-import com.archimatetool.model.util.ArchimateModelUtils;
 
 
 
@@ -71,38 +78,479 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
     // Properties
     private Map<String, String> fPropertyDefinitionsList;
     
+    // Identifiers of concepts, views, nodes and connections created so far
+    private Map<String, EObject> fIdentifierIndex;
+    
+    // Absolute bounds of nodes as declared in the XML file
+    private Map<IConnectable, IBounds> fAbsoluteBounds;
+    
+    // Reused for the bendpoints of every connection
+    private BendpointTransform fBendpointTransform = new BendpointTransform();
+    
+    // Diagram model references waiting for their referenced view
+    private List<IDiagramModelReference> fDiagramModelReferences;
+    
+    // Views by identifier
+    private Map<String, IArchimateDiagramModel> fDiagramModels;
+    
+    // The content of the views imported lazily, to detach from the document once the views are created
+    private List<Element> fLazyViewElements;
+    
+    // Relationships waiting for their source and target
+    private static class RelationInfo {
+        IArchimateRelationship relation;
+        String sourceID;
+        String targetID;
+    }
+    
+    private List<RelationInfo> fRelationInfos;
+    
+    // The root element of the document being imported, until the views are created
+    private Element fRootElement;
+    
+    // Objects from the other files of a federated import
+    private Map<String, EObject> fExternalIndex;
+    
+    // A folder item of the organizations section
+    private static class OrganizationItem {
+        OrganizationItem parent;
+        String label;
+        String documentation;
+        
+        // The item's folder under each top level folder that it has content for
+        Map<IFolder, IFolder> folders = new HashMap<IFolder, IFolder>();
+    }
+    
+    // Folder items by the identifiers of the concepts and views in them
+    private Map<String, OrganizationItem> fOrganizationPlacements;
+    
+    /**
+     * Whether to queue new objects and attach them to their folders and containers in bulk
+     */
+    private boolean fBulkConstruction = true;
+    
+    private BulkModelBuilder fBuilder;
+    
+    /**
+     * Whether to import views, and their styles and documentation
+     */
+    private boolean fIncludeViews = true;
+    private boolean fIncludeStyles = true;
+    
+    /**
+     * Whether to leave the nodes and connections of views to be loaded when they are first needed
+     */
+    private boolean fLazyViews;
+    
+    /**
+     * Whether to count the objects in an XML file before reading it
+     */
+    private boolean fPreScan;
+    
+    // Counts from the pre-scan of the file being imported, or null
+    private XMLExchangePreScan.Counts fCounts;
+    
+    private IProgressMonitor fProgressMonitor = new NullProgressMonitor();
+    private boolean fReportProgress;
+    
+    // Chooses between translations of names, documentation and property values, the one set and the one in use
+    private LanguageSelector fLanguageSelector;
+    private LanguageSelector fCurrentLanguageSelector;
+    
+    /**
+     * Set whether to build the model in bulk.
+     * If set, new objects are collected for each folder and container and attached in one batch
+     * with notifications suspended, rather than one at a time.
+     * @param set
+     */
+    public void setBulkConstruction(boolean set) {
+        fBulkConstruction = set;
+    }
+    
+    /**
+     * Set whether to import views. If not set only the concepts are imported, and the views are dropped while
+     * the file is read so none of their content is created.
+     * @param set
+     */
+    public void setIncludeViews(boolean set) {
+        fIncludeViews = set;
+    }
+    
+    /**
+     * Set whether to import the styles of nodes and connections (fill and line colours, fonts and line widths)
+     * and the documentation of views and nodes. If not set these are dropped while the file is read.
+     * @param set
+     */
+    public void setIncludeStyles(boolean set) {
+        fIncludeStyles = set;
+    }
+    
+    /**
+     * Set whether to load the content of views lazily. If set each view is created with its name, viewpoint,
+     * documentation and properties, and its nodes and connections are created by {@link LazyViews#load(IDiagramModel)}.
+     * Until then the view's XML is kept in memory, and this importer must not be used for another import.
+     * Until then the view also looks empty to Archi, so call {@link LazyViews#loadAll(IArchimateModel)} before
+     * the model is opened or saved in Archi.
+     * @param set
+     */
+    public void setLazyViews(boolean set) {
+        fLazyViews = set;
+    }
+    
+    /**
+     * Set whether to count the objects in an XML exchange file with {@link XMLExchangePreScan} before reading it.
+     * The counts are used to size the importer's maps and lists so they are not grown as the file is read,
+     * which is worth the extra streaming pass for large files.
+     * @param set
+     */
+    public void setPreScan(boolean set) {
+        fPreScan = set;
+    }
+    
+    /**
+     * Set a progress monitor for imports from a file. One unit of work is reported for each element, relationship,
+     * view, node and connection created. The total is known if the file is XML, as it is then pre-scanned.
+     * @param monitor
+     */
+    public void setProgressMonitor(IProgressMonitor monitor) {
+        fProgressMonitor = monitor != null ? monitor : new NullProgressMonitor();
+        fReportProgress = monitor != null;
+    }
+    
+    /**
+     * Set the languages to choose names, documentation and property values in when a file has translations.
+     * The default is {@link LanguageSelector#getDefault()}, worked out when the import starts.
+     * @param selector
+     */
+    public void setLanguageSelector(LanguageSelector selector) {
+        fLanguageSelector = selector;
+    }
+    
     public IArchimateModel createArchiMateModel(File instanceFile) throws IOException, JDOMException, XMLModelParserException {
+        // Only XML can be scanned without decoding it
+        if((fPreScan || fReportProgress) && !XMLExchangeBinaryCodec.isBinaryFile(instanceFile) && !XMLExchangeJSONCodec.isJSONFile(instanceFile)) {
+            fCounts = XMLExchangePreScan.count(instanceFile);
+        }
+        
+        try {
+            fProgressMonitor.beginTask(NLS.bind(Messages.XMLModelImporter_15, instanceFile.getName()), getProgressTotal());
+            
+            // JSON is read a piece at a time rather than as one document
+            if(XMLExchangeJSONCodec.isJSONFile(instanceFile)) {
+                return createArchiMateModelFromJSON(instanceFile);
+            }
+            
+            // Read file without Schema validation
+            Document doc = readDocument(instanceFile);
+            return createArchiMateModel(doc);
+        }
+        finally {
+            fProgressMonitor.done();
+            fCounts = null;
+        }
+    }
+    
+    /**
+     * Create a model from an XML, binary or JSON exchange stream. The stream is not closed.
+     * JSON is copied to a temporary file first, as it is read from the file in two passes.
+     */
+    public IArchimateModel createArchiMateModel(InputStream in) throws IOException, JDOMException, XMLModelParserException {
+        BufferedInputStream bis = new BufferedInputStream(in);
+        
+        if(XMLExchangeJSONCodec.isJSONStream(bis)) {
+            File tmpFile = File.createTempFile("archimate", JSON_FILE_EXTENSION); //$NON-NLS-1$
+            try {
+                Files.copy(bis, tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                return createArchiMateModelFromJSON(tmpFile);
+            }
+            finally {
+                tmpFile.delete();
+            }
+        }
+        
+        // Read stream without Schema validation
+        Document doc = readDocument(bis);
+        return createArchiMateModel(doc);
+    }
+    
+    IArchimateModel createArchiMateModel(Document doc) throws IOException, XMLModelParserException {
+        createConcepts(doc);
+        resolveRelationships();
+        createViews();
+        return fModel;
+    }
+    
+    /**
+     * Create a model from a JSON exchange file without building the whole document. The file is read twice.
+     * The first pass reads the root with its properties, organizations and property definitions, stepping over the
+     * elements, relationships and views. The second pass reads each element, relationship and view on its own, creates
+     * it, and drops it, so only one of them is held in memory at a time. The sections must be in the order of the schema.
+     */
+    IArchimateModel createArchiMateModelFromJSON(File file) throws IOException, XMLModelParserException {
+        XMLExchangeJSONCodec codec = new XMLExchangeJSONCodec();
+        ImportContentFilter filter = createContentFilter();
+        
+        startModel(codec.readRoot(file, filter));
+        
+        final int[] elementCount = new int[1];
+        final boolean[] inViews = new boolean[1];
+        
+        codec.readItems(file, filter, new XMLExchangeJSONCodec.ItemHandler() {
+            @Override
+            public void item(String section, Element item) throws IOException, XMLModelParserException {
+                switch(section) {
+                    case ELEMENT_ELEMENTS:
+                        if(item.getName().equals(ELEMENT_ELEMENT)) {
+                            parseArchiMateElement(item);
+                            elementCount[0]++;
+                        }
+                        break;
+                        
+                    case ELEMENT_RELATIONSHIPS:
+                        if(item.getName().equals(ELEMENT_RELATIONSHIP)) {
+                            parseArchiMateRelation(item);
+                        }
+                        break;
+                        
+                    case ELEMENT_DIAGRAMS:
+                        if(item.getName().equals(ELEMENT_VIEW)) {
+                            // The concepts are all read before the first view
+                            if(!inViews[0]) {
+                                fBuilder.flush();
+                                resolveRelationships();
+                                startViews();
+                                inViews[0] = true;
+                            }
+                            parseView(item);
+                        }
+                        break;
+                        
+                    default:
+                        break;
+                }
+            }
+        });
+        
+        if(elementCount[0] == 0) {
+            throw new XMLModelParserException(Messages.XMLModelImporter_0);
+        }
+        
+        if(inViews[0]) {
+            endViews();
+        }
+        else {
+            fBuilder.flush();
+            resolveRelationships();
+        }
+        
+        // Attach everything that was queued
+        fBuilder.flush();
+        
+        fRootElement = null;
+        fOrganizationPlacements = null;
+        
+        return fModel;
+    }
+    
+    /**
+     * First stage of an import. Create the model with its elements and relationships, but don't set the
+     * sources and targets of the relationships yet.
+     * @see XMLFederatedImporter
+     */
+    IArchimateModel createConcepts(Document doc) throws IOException, XMLModelParserException {
+        startModel(doc.getRootElement());
+        
+        // Parse ArchiMate Elements
+        parseArchiMateElements(fRootElement.getChild(ELEMENT_ELEMENTS, ARCHIMATE3_NAMESPACE));
+        
+        // Stop here if cancelled
+        checkCanceled();
+        
+        // Parse ArchiMate Relations
+        parseArchiMateRelations(fRootElement.getChild(ELEMENT_RELATIONSHIPS, ARCHIMATE3_NAMESPACE));
+        
+        // Attach the concepts so they can be found in their folders
+        fBuilder.flush();
+        
+        return fModel;
+    }
+    
+    /**
+     * Create the model from the root element with its property definitions, properties and organizations,
+     * ready for the elements, relationships and views
+     */
+    private void startModel(Element rootElement) {
         // Create a new Archimate Model and set its defaults
         fModel = IArchimateFactory.eINSTANCE.createArchimateModel();
         fModel.setDefaults();
         
-        // Read file without Schema validation
-        Document doc = JDOMUtils.readXMLFile(instanceFile);
+        // Sized from the pre-scan if there was one
+        fIdentifierIndex = new HashMap<String, EObject>(getMapCapacity(fCounts != null ? fCounts.getTotal() : 0));
+        fAbsoluteBounds = new HashMap<IConnectable, IBounds>(getMapCapacity(fCounts != null ? fCounts.getNodes() : 0));
+        fDiagramModelReferences = new ArrayList<IDiagramModelReference>();
+        fRelationInfos = new ArrayList<RelationInfo>(fCounts != null ? fCounts.getRelationships() : 10);
+        fBuilder = new BulkModelBuilder(fBulkConstruction);
+        
+        // Work out the languages once
+        fCurrentLanguageSelector = fLanguageSelector != null ? fLanguageSelector : LanguageSelector.getDefault();
         
-        Element rootElement = doc.getRootElement();
+        fRootElement = rootElement;
         
         // Parse Property Definitions first
-        parsePropertyDefinitions(rootElement.getChild(ELEMENT_PROPERTYDEFINITIONS, ARCHIMATE3_NAMESPACE));
+        parsePropertyDefinitions(fRootElement.getChild(ELEMENT_PROPERTYDEFINITIONS, ARCHIMATE3_NAMESPACE));
         
         // Parse Root Element
-        parseRootElement(rootElement);
-        
-        // Parse ArchiMate Elements
-        parseArchiMateElements(rootElement.getChild(ELEMENT_ELEMENTS, ARCHIMATE3_NAMESPACE));
-        
-        // Parse ArchiMate Relations
-        parseArchiMateRelations(rootElement.getChild(ELEMENT_RELATIONSHIPS, ARCHIMATE3_NAMESPACE));
+        parseRootElement(fRootElement);
         
+        // Parse Organizations before the concepts and views so they can be put straight into their folders
+        parseOrganizations(fRootElement.getChild(ELEMENT_ORGANIZATIONS, ARCHIMATE3_NAMESPACE));
+    }
+    
+    /**
+     * Last stage of an import. Create the views and release the document.
+     */
+    void createViews() throws IOException, XMLModelParserException {
         // Parse Views
-        Element viewsElement = rootElement.getChild(ELEMENT_VIEWS, ARCHIMATE3_NAMESPACE);
+        Element viewsElement = fIncludeViews ? fRootElement.getChild(ELEMENT_VIEWS, ARCHIMATE3_NAMESPACE) : null;
         if(viewsElement != null) {
             parseViews(viewsElement.getChild(ELEMENT_DIAGRAMS, ARCHIMATE3_NAMESPACE));
         }
         
-        // TODO Parse Organization - not implemented as yet.
-        // parseOrganization(rootElement.getChild(ELEMENT_ORGANIZATION, OPEN_GROUP_NAMESPACE));
+        // Attach everything that was queued
+        fBuilder.flush();
         
-        return fModel;
+        fRootElement = null;
+        fOrganizationPlacements = null;
+    }
+    
+    /**
+     * Set the objects of other files in a federated import. These are used for identifiers not in this file.
+     */
+    void setExternalIndex(Map<String, EObject> index) {
+        fExternalIndex = index;
+    }
+    
+    /**
+     * @return The concepts and views created in this import by identifier, after {@link #createConcepts(Document)}
+     */
+    Map<String, EObject> getIdentifierIndex() {
+        return fIdentifierIndex;
+    }
+    
+    /**
+     * Remove an object created in this import so the identifier is looked up in the external index instead
+     */
+    void discard(String id) {
+        EObject eObject = fIdentifierIndex.remove(id);
+        if(eObject == null) {
+            return;
+        }
+        
+        EcoreUtil.remove(eObject);
+        
+        for(Iterator<RelationInfo> iter = fRelationInfos.iterator(); iter.hasNext();) {
+            if(iter.next().relation == eObject) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Read the exchange document from an XML, binary or JSON exchange file
+     */
+    Document readDocument(File instanceFile) throws IOException, JDOMException {
+        ImportContentFilter filter = createContentFilter();
+        
+        if(XMLExchangeBinaryCodec.isBinaryFile(instanceFile)) {
+            return new XMLExchangeBinaryCodec().read(instanceFile, filter);
+        }
+        
+        if(XMLExchangeJSONCodec.isJSONFile(instanceFile)) {
+            return new XMLExchangeJSONCodec().read(instanceFile, filter);
+        }
+        
+        if(filter != null) {
+            SAXBuilder builder = new SAXBuilder();
+            builder.setXMLFilter(filter);
+            return builder.build(instanceFile);
+        }
+
+        return JDOMUtils.readXMLFile(instanceFile);
+    }
+
+    /**
+     * Read the exchange document from an XML, binary or JSON exchange stream.
+     * The stream may come from anywhere so DOCTYPE declarations and external entities are refused.
+     */
+    Document readDocument(InputStream in) throws IOException, JDOMException {
+        BufferedInputStream bis = new BufferedInputStream(in);
+        ImportContentFilter filter = createContentFilter();
+        
+        if(XMLExchangeBinaryCodec.isBinaryStream(bis)) {
+            return new XMLExchangeBinaryCodec().read(bis, filter);
+        }
+        
+        if(XMLExchangeJSONCodec.isJSONStream(bis)) {
+            return new XMLExchangeJSONCodec().read(bis, filter);
+        }
+        
+        SAXBuilder builder = new SAXBuilder();
+        builder.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true); //$NON-NLS-1$
+        builder.setExpandEntities(false);
+        if(filter != null) {
+            builder.setXMLFilter(filter);
+        }
+        return builder.build(bis);
+    }
+    
+    /**
+     * @return A filter dropping the views or styles that are not wanted, or null to read everything
+     */
+    private ImportContentFilter createContentFilter() {
+        ImportContentFilter filter = new ImportContentFilter(fIncludeViews, fIncludeStyles);
+        return filter.isFiltering() ? filter : null;
+    }
+
+    // ========================================= Sizing and Progress ======================================
+    
+    /**
+     * @return The capacity of a hash map that holds the given number of entries without being resized
+     */
+    private static int getMapCapacity(int size) {
+        return Math.max(16, (int)(size / 0.75f) + 1);
+    }
+    
+    /**
+     * @return The units of work that will be reported, or IProgressMonitor.UNKNOWN if the file was not pre-scanned
+     */
+    private int getProgressTotal() {
+        if(fCounts == null) {
+            return IProgressMonitor.UNKNOWN;
+        }
+        
+        int total = fCounts.getElements() + fCounts.getRelationships();
+        
+        if(fIncludeViews) {
+            total += fCounts.getViews();
+            
+            // The content of lazy views is created later
+            if(!fLazyViews) {
+                total += fCounts.getNodes() + fCounts.getConnections();
+            }
+        }
+        
+        return total;
+    }
+    
+    /**
+     * Stop if the import was cancelled from the progress monitor or by interrupting the thread
+     */
+    private void checkCanceled() throws IOException {
+        if(fProgressMonitor.isCanceled()) {
+            throw new InterruptedIOException();
+        }
+        
+        XMLExchangeAsync.checkInterrupted();
     }
     
     // ========================================= Property Definitions ======================================
@@ -113,7 +561,7 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
         }
 
         fPropertyDefinitionsList = null;
-        fPropertyDefinitionsList = new HashMap<String, String>();
+        fPropertyDefinitionsList = new HashMap<String, String>(getMapCapacity(fCounts != null ? fCounts.getPropertyDefinitions() : 0));
         
         // Archi only supports String types so we can ignore the data type
         for(Element propertyDefElement : propertydefsElement.getChildren(ELEMENT_PROPERTYDEFINITION, ARCHIMATE3_NAMESPACE)) {
@@ -180,40 +628,46 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
         }
         
         for(Element childElement : elementsElement.getChildren(ELEMENT_ELEMENT, ARCHIMATE3_NAMESPACE)) {
-            String type = childElement.getAttributeValue(ATTRIBUTE_TYPE, XSI_NAMESPACE);
-            // If type is bogus ignore
-            if(type == null) {
-                continue;
-            }
-            
-            IArchimateElement element = (IArchimateElement)XMLTypeMapper.createArchimateConcept(type);
-            // If element is null throw exception
-            if(element == null) {
-                throw new XMLModelParserException(NLS.bind(Messages.XMLModelImporter_1, type));
-            }
-                    
-            // Identifier first
-            String id = childElement.getAttributeValue(ATTRIBUTE_IDENTIFIER);
-            if(id != null) {
-                element.setId(id);
-            }
+            parseArchiMateElement(childElement);
+        }
+    }
+    
+    private void parseArchiMateElement(Element childElement) throws XMLModelParserException {
+        fProgressMonitor.worked(1);
+        
+        String type = childElement.getAttributeValue(ATTRIBUTE_TYPE, XSI_NAMESPACE);
+        // If type is bogus ignore
+        if(type == null) {
+            return;
+        }
+        
+        IArchimateElement element = (IArchimateElement)XMLTypeMapper.createArchimateConcept(type);
+        // If element is null throw exception
+        if(element == null) {
+            throw new XMLModelParserException(NLS.bind(Messages.XMLModelImporter_1, type));
+        }
+                
+        // Identifier first
+        String id = childElement.getAttributeValue(ATTRIBUTE_IDENTIFIER);
+        if(id != null) {
+            element.setId(id);
+        }
 
-            // Add to model
-            fModel.getDefaultFolderForObject(element).getElements().add(element);
-            
-            String name = getChildElementText(childElement, ELEMENT_NAME, true);
-            if(name != null) {
-                element.setName(name);
-            }
-            
-            String documentation = getChildElementText(childElement, ELEMENT_DOCUMENTATION, false);
-            if(documentation != null) {
-                element.setDocumentation(documentation);
-            }
-            
-            // Properties
-            addProperties(element, childElement);
+        // Add to model
+        addToDefaultFolder(element);
+        
+        String name = getChildElementText(childElement, ELEMENT_NAME, true);
+        if(name != null) {
+            element.setName(name);
         }
+        
+        String documentation = getChildElementText(childElement, ELEMENT_DOCUMENTATION, false);
+        if(documentation != null) {
+            element.setDocumentation(documentation);
+        }
+        
+        // Properties
+        addProperties(element, childElement);
     }
     
     // ========================================= Relations ======================================
@@ -223,105 +677,107 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
             return;
         }
         
-        class RelationInfo {
-            IArchimateRelationship relation;
-            String sourceID;
-            String targetID;
+        for(Element childElement : relationsElement.getChildren(ELEMENT_RELATIONSHIP, ARCHIMATE3_NAMESPACE)) {
+            parseArchiMateRelation(childElement);
         }
+    }
+    
+    private void parseArchiMateRelation(Element childElement) throws IOException {
+        fProgressMonitor.worked(1);
         
-        List<RelationInfo> lookupTable = new ArrayList<RelationInfo>();
+        String type = childElement.getAttributeValue(ATTRIBUTE_TYPE, XSI_NAMESPACE);
+        // If type is bogus ignore
+        if(type == null) {
+            return;
+        }
         
-        for(Element childElement : relationsElement.getChildren(ELEMENT_RELATIONSHIP, ARCHIMATE3_NAMESPACE)) {
-            String type = childElement.getAttributeValue(ATTRIBUTE_TYPE, XSI_NAMESPACE);
-            // If type is bogus ignore
-            if(type == null) {
-                continue;
-            }
-            
-            IArchimateRelationship relation = (IArchimateRelationship)XMLTypeMapper.createArchimateConcept(type);
-            // If relation is null throw exception
-            if(relation == null) {
-                throw new IOException(NLS.bind(Messages.XMLModelImporter_2, type));
-            }
-            
-            // Identifier first
-            String id = childElement.getAttributeValue(ATTRIBUTE_IDENTIFIER);
-            if(id != null) {
-                relation.setId(id);
-            }
+        IArchimateRelationship relation = (IArchimateRelationship)XMLTypeMapper.createArchimateConcept(type);
+        // If relation is null throw exception
+        if(relation == null) {
+            throw new IOException(NLS.bind(Messages.XMLModelImporter_2, type));
+        }
+        
+        // Identifier first
+        String id = childElement.getAttributeValue(ATTRIBUTE_IDENTIFIER);
+        if(id != null) {
+            relation.setId(id);
+        }
 
-            // Add to model
-            fModel.getDefaultFolderForObject(relation).getElements().add(relation);
-            
-            // Name
-            String name = getChildElementText(childElement, ELEMENT_NAME, true);
-            if(name != null) {
-                relation.setName(name);
-            }
-            
-            // Documentation
-            String documentation = getChildElementText(childElement, ELEMENT_DOCUMENTATION, false);
-            if(documentation != null) {
-                relation.setDocumentation(documentation);
-            }
-            
-            // Properties
-            addProperties(relation, childElement);
-            
-            // Source and target
-            String sourceID = childElement.getAttributeValue(ATTRIBUTE_SOURCE);
-            String targetID = childElement.getAttributeValue(ATTRIBUTE_TARGET);
-            
-            // Access type
-            if(relation instanceof IAccessRelationship) {
-                String accessType = childElement.getAttributeValue(ATTRIBUTE_ACCESS_TYPE);
-                if(accessType != null) {
-                    IAccessRelationship accessRelationship = (IAccessRelationship)relation;
-                    
-                    switch(accessType) {
-                        case ACCESS_TYPE_ACCESS:
-                            accessRelationship.setAccessType(IAccessRelationship.UNSPECIFIED_ACCESS);
-                            break;
-
-                        case ACCESS_TYPE_READ:
-                            accessRelationship.setAccessType(IAccessRelationship.READ_ACCESS);
-                            break;
-
-                        case ACCESS_TYPE_READ_WRITE:
-                            accessRelationship.setAccessType(IAccessRelationship.READ_WRITE_ACCESS);
-                            break;
-
-                        default:
-                            accessRelationship.setAccessType(IAccessRelationship.WRITE_ACCESS);
-                            break;
-                    }
+        // Add to model
+        addToDefaultFolder(relation);
+        
+        // Name
+        String name = getChildElementText(childElement, ELEMENT_NAME, true);
+        if(name != null) {
+            relation.setName(name);
+        }
+        
+        // Documentation
+        String documentation = getChildElementText(childElement, ELEMENT_DOCUMENTATION, false);
+        if(documentation != null) {
+            relation.setDocumentation(documentation);
+        }
+        
+        // Properties
+        addProperties(relation, childElement);
+        
+        // Source and target
+        String sourceID = childElement.getAttributeValue(ATTRIBUTE_SOURCE);
+        String targetID = childElement.getAttributeValue(ATTRIBUTE_TARGET);
+        
+        // Access type
+        if(relation instanceof IAccessRelationship) {
+            String accessType = childElement.getAttributeValue(ATTRIBUTE_ACCESS_TYPE);
+            if(accessType != null) {
+                IAccessRelationship accessRelationship = (IAccessRelationship)relation;
+                
+                switch(accessType) {
+                    case ACCESS_TYPE_ACCESS:
+                        accessRelationship.setAccessType(IAccessRelationship.UNSPECIFIED_ACCESS);
+                        break;
+
+                    case ACCESS_TYPE_READ:
+                        accessRelationship.setAccessType(IAccessRelationship.READ_ACCESS);
+                        break;
+
+                    case ACCESS_TYPE_READ_WRITE:
+                        accessRelationship.setAccessType(IAccessRelationship.READ_WRITE_ACCESS);
+                        break;
+
+                    default:
+                        accessRelationship.setAccessType(IAccessRelationship.WRITE_ACCESS);
+                        break;
                 }
             }
-            
-            // Influence type
-            if(relation instanceof IInfluenceRelationship) {
-                String influenceStrength = childElement.getAttributeValue(ATTRIBUTE_INFLUENCE_MODIFIER);
-                if(influenceStrength != null) {
-                    ((IInfluenceRelationship)relation).setStrength(influenceStrength);
-                }
+        }
+        
+        // Influence type
+        if(relation instanceof IInfluenceRelationship) {
+            String influenceStrength = childElement.getAttributeValue(ATTRIBUTE_INFLUENCE_MODIFIER);
+            if(influenceStrength != null) {
+                ((IInfluenceRelationship)relation).setStrength(influenceStrength);
             }
-            
-            // Add to lookup table for 2nd pass
-            RelationInfo r = new RelationInfo();
-            r.relation = relation;
-            r.sourceID = sourceID;
-            r.targetID = targetID;
-            lookupTable.add(r);
         }
         
-        // 2nd pass, add source and targets
-        for(RelationInfo r : lookupTable) {
-            EObject eObjectSrc = ArchimateModelUtils.getObjectByID(fModel, r.sourceID);
+        // Add to lookup table for 2nd pass
+        RelationInfo r = new RelationInfo();
+        r.relation = relation;
+        r.sourceID = sourceID;
+        r.targetID = targetID;
+        fRelationInfos.add(r);
+    }
+    
+    /**
+     * 2nd pass, add source and targets
+     */
+    void resolveRelationships() throws IOException {
+        for(RelationInfo r : fRelationInfos) {
+            EObject eObjectSrc = getObjectByID(r.sourceID);
             if(!(eObjectSrc instanceof IArchimateConcept)) {
                 throw new IOException(Messages.XMLModelImporter_3 + r.sourceID);
             }
 
-            EObject eObjectTgt = ArchimateModelUtils.getObjectByID(fModel, r.targetID);
+            EObject eObjectTgt = getObjectByID(r.targetID);
             if(!(eObjectTgt instanceof IArchimateConcept)) {
                 throw new IOException(Messages.XMLModelImporter_4 + r.targetID);
             }
@@ -329,119 +785,230 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
             r.relation.setSource((IArchimateConcept)eObjectSrc);
             r.relation.setTarget((IArchimateConcept)eObjectTgt);
         }
+        
+        fRelationInfos.clear();
     }
     
-    // ========================================= Organization ======================================
+    // ========================================= Organizations ======================================
 
-    @SuppressWarnings("unused")
-    private void parseOrganization(Element organizationElement) {
-        if(organizationElement == null) { // Optional
+    /**
+     * Index the folder items of the organizations section by the identifiers they refer to.
+     * Nothing is created here. Folders are created as concepts and views are placed in them,
+     * so the concepts and views are attached to their folders in bulk with everything else.
+     */
+    private void parseOrganizations(Element organizationsElement) {
+        fOrganizationPlacements = new HashMap<String, OrganizationItem>();
+        
+        if(organizationsElement == null) { // Optional
             return;
         }
 
-        for(Element childElement : organizationElement.getChildren(ELEMENT_ITEM, ARCHIMATE3_NAMESPACE)) {
-            parseItem(childElement);
+        for(Element childElement : organizationsElement.getChildren(ELEMENT_ITEM, ARCHIMATE3_NAMESPACE)) {
+            parseItem(childElement, null);
         }
     }
     
-    private void parseItem(Element itemElement) {
-        // The idea is to see if we can match any referenced elements/relations into a suitable folder
-        // and then move them to that folder. At this stage, it's not worth it.
-        
+    private void parseItem(Element itemElement, OrganizationItem parentItem) {
         String idref = itemElement.getAttributeValue(ATTRIBUTE_IDENTIFIERREF);
         
+        // A concept or view in its parent's folder. If it is in more than one folder the first wins.
         if(idref != null) {
-            EObject eObject = ArchimateModelUtils.getObjectByID(fModel, idref);
-            if(eObject instanceof IArchimateConcept) {
-                
+            if(parentItem != null && !fOrganizationPlacements.containsKey(idref)) {
+                fOrganizationPlacements.put(idref, parentItem);
             }
+            return;
+        }
+        
+        // A folder
+        OrganizationItem item = new OrganizationItem();
+        item.parent = parentItem;
+        item.label = getChildElementText(itemElement, ELEMENT_LABEL, true);
+        item.documentation = getChildElementText(itemElement, ELEMENT_DOCUMENTATION, false);
+
+        for(Element childElement : itemElement.getChildren(ELEMENT_ITEM, ARCHIMATE3_NAMESPACE)) {
+            parseItem(childElement, item);
+        }
+    }
+    
+    /**
+     * @return The folder of an organization item under a top level folder, creating it and its parents if needed.
+     * A top level item with the name of the top level folder, or no name, is the top level folder itself.
+     */
+    private IFolder getFolder(OrganizationItem item, IFolder topFolder) {
+        IFolder folder = item.folders.get(topFolder);
+        if(folder != null) {
+            return folder;
+        }
+        
+        if(item.parent == null && (item.label == null || item.label.equals(topFolder.getName()))) {
+            folder = topFolder;
         }
-        // Folder?
         else {
+            IFolder parentFolder = item.parent != null ? getFolder(item.parent, topFolder) : topFolder;
             
+            folder = IArchimateFactory.eINSTANCE.createFolder();
+            if(item.label != null) {
+                folder.setName(item.label);
+            }
+            fBuilder.add(parentFolder, parentFolder.getFolders(), folder);
         }
-
-        for(Element childElement : itemElement.getChildren(ELEMENT_ITEM, ARCHIMATE3_NAMESPACE)) {
-            parseItem(childElement);
+        
+        if(item.documentation != null) {
+            folder.setDocumentation(item.documentation);
         }
+        
+        item.folders.put(topFolder, folder);
+        
+        return folder;
     }
     
     // ========================================= Views ======================================
 
-    private void parseViews(Element viewsElement) throws XMLModelParserException {
+    private void parseViews(Element viewsElement) throws IOException, XMLModelParserException {
         if(viewsElement == null) { // Optional
             return;
         }
         
-        Map<String, IArchimateDiagramModel> diagramModels = new Hashtable<String, IArchimateDiagramModel>();
+        startViews();
         
         // Add the views first because there may be child node view references
         for(Element viewElement : viewsElement.getChildren(ELEMENT_VIEW, ARCHIMATE3_NAMESPACE)) {
-            IArchimateDiagramModel dm = IArchimateFactory.eINSTANCE.createArchimateDiagramModel();
-            fModel.getDefaultFolderForObject(dm).getElements().add(dm);
-            
-            // Identifier first
-            String id = viewElement.getAttributeValue(ATTRIBUTE_IDENTIFIER);
-            if(id != null) {
-                dm.setId(id);
+            parseView(viewElement);
+        }
+        
+        endViews();
+    }
+    
+    /**
+     * Start creating views, one at a time with {@link #parseView(Element)}
+     */
+    private void startViews() {
+        fDiagramModels = new Hashtable<String, IArchimateDiagramModel>(getMapCapacity(fCounts != null ? fCounts.getViews() : 0));
+        fLazyViewElements = new ArrayList<Element>();
+    }
+    
+    private void parseView(Element viewElement) throws IOException, XMLModelParserException {
+        // Stop here if cancelled
+        checkCanceled();
+        
+        fProgressMonitor.worked(1);
+        
+        IArchimateDiagramModel dm = IArchimateFactory.eINSTANCE.createArchimateDiagramModel();
+        
+        // Identifier first
+        String id = viewElement.getAttributeValue(ATTRIBUTE_IDENTIFIER);
+        if(id != null) {
+            dm.setId(id);
 
-                // Store it
-                diagramModels.put(id, dm);
-            }
-            
-            // Viewpoint
-            String viewPointName = viewElement.getAttributeValue(ATTRIBUTE_VIEWPOINT);
-            if(viewPointName != null) {
-                String viewPointID = XMLTypeMapper.getViewpointID(viewPointName);
-                dm.setViewpoint(viewPointID);
-            }
+            // Store it
+            fDiagramModels.put(id, dm);
+        }
+        
+        // Viewpoint
+        String viewPointName = viewElement.getAttributeValue(ATTRIBUTE_VIEWPOINT);
+        if(viewPointName != null) {
+            String viewPointID = XMLTypeMapper.getViewpointID(viewPointName);
+            dm.setViewpoint(viewPointID);
+        }
 
-            // Name
-            String name = getChildElementText(viewElement, ELEMENT_NAME, true);
-            if(name != null) {
-                dm.setName(name);
-            }
-            
-            // Documentation
-            String documentation = getChildElementText(viewElement, ELEMENT_DOCUMENTATION, false);
-            if(documentation != null) {
-                dm.setDocumentation(documentation);
-            }
-            
-            // Properties
-            addProperties(dm, viewElement);
-            
-            // Nodes
-            addNodes(dm, viewElement);
-            
-            // Connections
-            addConnections(viewElement);
+        // Name
+        String name = getChildElementText(viewElement, ELEMENT_NAME, true);
+        if(name != null) {
+            dm.setName(name);
+        }
+        
+        // Documentation
+        String documentation = fIncludeStyles ? getChildElementText(viewElement, ELEMENT_DOCUMENTATION, false) : null;
+        if(documentation != null) {
+            dm.setDocumentation(documentation);
+        }
+        
+        // Properties
+        addProperties(dm, viewElement);
+        
+        // Add to model
+        addToDefaultFolder(dm);
+        
+        // Keep the content to load later
+        if(fLazyViews) {
+            LazyViews.setContent(dm, this, viewElement);
+            fLazyViewElements.add(viewElement);
+            return;
         }
         
+        // Nodes
+        addNodes(dm, viewElement, 0, 0);
+        
+        // Connections
+        addConnections(viewElement);
+    }
+    
+    /**
+     * Finish creating views, once they have all been created
+     */
+    private void endViews() {
         // Now add any pending view diagram references
-        for(Iterator<EObject> iter = fModel.eAllContents(); iter.hasNext();) {
-            EObject eObject = iter.next();
-            if(eObject instanceof IDiagramModelReference) {
-                IDiagramModelReference dmRef = (IDiagramModelReference)eObject;
-                String refID = (String)dmRef.getAdapter(ATTRIBUTE_REF);
-                if(refID != null) {
-                    IArchimateDiagramModel dm = diagramModels.get(refID);
-                    dmRef.setReferencedModel(dm);
-                }
+        setReferencedDiagramModels();
+        
+        // Detach the lazy views so the rest of the document can be released
+        for(Element viewElement : fLazyViewElements) {
+            viewElement.detach();
+        }
+        
+        fLazyViewElements = null;
+    }
+    
+    /**
+     * Set the referenced views of the diagram model references created since this was last called
+     */
+    private void setReferencedDiagramModels() {
+        for(IDiagramModelReference dmRef : fDiagramModelReferences) {
+            String refID = (String)dmRef.getAdapter(ATTRIBUTE_REF);
+            if(refID != null) {
+                IArchimateDiagramModel dm = fDiagramModels.get(refID);
+                dmRef.setReferencedModel(dm);
             }
         }
+        
+        fDiagramModelReferences.clear();
+    }
+    
+    /**
+     * Create the nodes and connections of a lazily imported view
+     * @see LazyViews#load(IDiagramModel)
+     */
+    void loadView(IArchimateDiagramModel dm, Element viewElement) throws XMLModelParserException {
+        fBuilder = new BulkModelBuilder(fBulkConstruction);
+        
+        addNodes(dm, viewElement, 0, 0);
+        addConnections(viewElement);
+        setReferencedDiagramModels();
+        
+        fBuilder.flush();
+        
+        // Only needed for the bendpoints of this view
+        fAbsoluteBounds.clear();
     }
     
     // ========================================= Nodes ======================================
 
-    private void addNodes(IDiagramModelContainer parentContainer, Element parentElement) throws XMLModelParserException {
+    /**
+     * Add child nodes to a container
+     * @param parentContainer The container
+     * @param parentElement The container's XML element
+     * @param parentX The absolute x position of the container, or 0 for a view
+     * @param parentY The absolute y position of the container, or 0 for a view
+     */
+    private void addNodes(IDiagramModelContainer parentContainer, Element parentElement, int parentX, int parentY) throws XMLModelParserException {
         for(Element nodeElement : parentElement.getChildren(ELEMENT_NODE, ARCHIMATE3_NAMESPACE)) {
+            fProgressMonitor.worked(1);
+            
             IDiagramModelObject dmo = null;
             
             // This has an element ref so it's an ArchiMate element node
             String elementRef = nodeElement.getAttributeValue(ATTRIBUTE_ELEMENTREF);
             if(hasValue(elementRef) ) {
-                EObject eObject = ArchimateModelUtils.getObjectByID(fModel, elementRef);
+                EObject eObject = getObjectByID(elementRef);
                 
                 if(!(eObject instanceof IArchimateElement)) {
                     throw new XMLModelParserException(Messages.XMLModelImporter_5 + elementRef);
@@ -474,7 +1041,7 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
                     }
 
                     // Documentation
-                    String documentation = getChildElementText(nodeElement, ELEMENT_DOCUMENTATION, false);
+                    String documentation = fIncludeStyles ? getChildElementText(nodeElement, ELEMENT_DOCUMENTATION, false) : null;
                     if(documentation != null) {
                         group.setDocumentation(documentation);
                     }
@@ -493,6 +1060,7 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
                     // Note - the referenced diagram model will have to be set afterwards since we may not have created it yet
                     // so we use this a temp store
                     ref.setAdapter(ATTRIBUTE_REF, viewRefID);
+                    fDiagramModelReferences.add(ref);
                 }
                 // A Note is our only other option
                 else {
@@ -513,15 +1081,19 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
                 // Add Identifier before adding to model
                 String identifier = nodeElement.getAttributeValue(ATTRIBUTE_IDENTIFIER);
                 dmo.setId(identifier);
+                addToIndex(dmo);
                 
                 // Add the child first
-                parentContainer.getChildren().add(dmo);
+                fBuilder.add(parentContainer, parentContainer.getChildren(), dmo);
                 
                 // Get the absolute bounds as declared in the XML file
                 IBounds absoluteBounds = getNodeBounds(nodeElement);
+                fAbsoluteBounds.put(dmo, absoluteBounds);
                 
-                // Now convert the given absolute bounds into relative bounds
-                IBounds relativeBounds = XMLExchangeUtils.convertAbsoluteToRelativeBounds(absoluteBounds, dmo);
+                // Now convert the given absolute bounds into bounds relative to the parent
+                IBounds relativeBounds = absoluteBounds.getCopy();
+                relativeBounds.setX(absoluteBounds.getX() - parentX);
+                relativeBounds.setY(absoluteBounds.getY() - parentY);
                 dmo.setBounds(relativeBounds);
                 
                 // Style
@@ -529,7 +1101,7 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
 
                 // Child nodes
                 if(dmo instanceof IDiagramModelContainer) {
-                    addNodes((IDiagramModelContainer)dmo, nodeElement);
+                    addNodes((IDiagramModelContainer)dmo, nodeElement, absoluteBounds.getX(), absoluteBounds.getY());
                 }
             }
         }
@@ -561,7 +1133,7 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
      * Node Style
      */
     private void addNodeStyle(IDiagramModelObject dmo, Element styleElement) throws XMLModelParserException {
-        if(styleElement == null) {
+        if(styleElement == null || !fIncludeStyles) {
             return;
         }
 
@@ -578,17 +1150,17 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
     // ======================================= Connections ====================================
     
     private void addConnections(Element viewElement) throws XMLModelParserException {
-        List<IDiagramModelConnection> connections = new ArrayList<IDiagramModelConnection>();
-
         // 1st pass - Create connections
         for(Element connectionElement : viewElement.getChildren(ELEMENT_CONNECTION, ARCHIMATE3_NAMESPACE)) {
+            fProgressMonitor.worked(1);
+            
             IDiagramModelConnection connection = null;
         
             // An ArchiMate relationship connection
             String relationshipRef = connectionElement.getAttributeValue(ATTRIBUTE_RELATIONSHIPREF);
             if(hasValue(relationshipRef)) {
                 // Get relationship
-                EObject eObjectRelationship = ArchimateModelUtils.getObjectByID(fModel, relationshipRef);
+                EObject eObjectRelationship = getObjectByID(relationshipRef);
                 if(!(eObjectRelationship instanceof IArchimateRelationship)) {
                     throw new XMLModelParserException(Messages.XMLModelImporter_7 + relationshipRef);
                 }
@@ -606,7 +1178,7 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
                 // Add Identifier before adding to model
                 String identifier = connectionElement.getAttributeValue(ATTRIBUTE_IDENTIFIER);
                 connection.setId(identifier);
-                connections.add(connection);
+                addToIndex(connection);
             }
         }
         
@@ -615,7 +1187,7 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
             // Get Connection
             String identifier = connectionElement.getAttributeValue(ATTRIBUTE_IDENTIFIER);
             
-            EObject eObject = findObject(identifier, connections);
+            EObject eObject = getObjectByID(identifier);
             if(!(eObject instanceof IDiagramModelConnection)) {
                 throw new XMLModelParserException(Messages.XMLModelImporter_8 + identifier);
             }
@@ -624,14 +1196,14 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
             
             // Get source
             String sourceRef = connectionElement.getAttributeValue(ATTRIBUTE_SOURCE);
-            EObject eObjectSource = findObject(sourceRef, connections);
+            EObject eObjectSource = getObjectByID(sourceRef);
             if(eObjectSource == null) {
                 throw new XMLModelParserException(Messages.XMLModelImporter_9 + sourceRef);
             }
             
             // Get target
             String targetRef = connectionElement.getAttributeValue(ATTRIBUTE_TARGET);
-            EObject eObjectTarget = findObject(targetRef, connections);
+            EObject eObjectTarget = getObjectByID(targetRef);
             if(eObjectTarget == null) {
                 throw new XMLModelParserException(Messages.XMLModelImporter_10 + targetRef);
             }
@@ -672,28 +1244,47 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
     }
         
     /*
-     * Find an object either in the model or in the lookup list
+     * Find an object that has been created in this import, or else in another file of a federated import
      */
-    private EObject findObject(String id, List<? extends IIdentifier> list) {
+    private EObject getObjectByID(String id) {
         if(id == null) {
             return null;
         }
         
-        // Look in model
-        EObject eObject = ArchimateModelUtils.getObjectByID(fModel, id);
-        
-        // Look in list
-        if(eObject == null) {
-            for(IIdentifier i : list) {
-                if(id.equals(i.getId())) {
-                    return i;
-                }
-            }
+        EObject eObject = fIdentifierIndex.get(id);
+        if(eObject == null && fExternalIndex != null) {
+            eObject = fExternalIndex.get(id);
         }
         
         return eObject;
     }
     
+    /*
+     * Add an object to the identifier index. If the identifier is duplicated the first object wins.
+     */
+    private void addToIndex(IIdentifier object) {
+        String id = object.getId();
+        if(id != null && !fIdentifierIndex.containsKey(id)) {
+            fIdentifierIndex.put(id, object);
+        }
+    }
+    
+    /*
+     * Add a concept or view to its folder from the organizations section or else its default folder, and to the identifier index
+     */
+    private void addToDefaultFolder(IIdentifier object) {
+        IFolder folder = fModel.getDefaultFolderForObject(object);
+        
+        // Its folder from the organizations section
+        OrganizationItem item = object.getId() != null ? fOrganizationPlacements.get(object.getId()) : null;
+        if(item != null) {
+            folder = getFolder(item, folder);
+        }
+        
+        fBuilder.add(folder, folder.getElements(), object);
+        addToIndex(object);
+    }
+    
     /**
      * Add bendpoints
      */
@@ -703,31 +1294,30 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
             return;
         }
 
-        for(Element bendpointElement : connectionElement.getChildren(ELEMENT_BENDPOINT, ARCHIMATE3_NAMESPACE)) {
+        List<Element> bendpointElements = connectionElement.getChildren(ELEMENT_BENDPOINT, ARCHIMATE3_NAMESPACE);
+        if(bendpointElements.isEmpty()) {
+            return;
+        }
+        
+        // Source and target centres are calculated once for the connection
+        fBendpointTransform.beginAbsolute(fAbsoluteBounds.get(connection.getSource()), fAbsoluteBounds.get(connection.getTarget()));
+
+        for(Element bendpointElement : bendpointElements) {
             String xString = bendpointElement.getAttributeValue(ATTRIBUTE_X);
             String yString = bendpointElement.getAttributeValue(ATTRIBUTE_Y);
             if(!hasValue(xString) || !hasValue(yString)) {
                 throw new XMLModelParserException(Messages.XMLModelImporter_13);
             }
             
-            int x = Integer.valueOf(xString);
-            int y = Integer.valueOf(yString);
-            
+            fBendpointTransform.addAbsolute(Integer.parseInt(xString), Integer.parseInt(yString));
+        }
+        
+        fBendpointTransform.computeRelative();
+        
+        for(int i = 0; i < fBendpointTransform.getCount(); i++) {
             IDiagramModelBendpoint bendpoint = IArchimateFactory.eINSTANCE.createDiagramModelBendpoint();
+            fBendpointTransform.setBendpoint(i, bendpoint);
             connection.getBendpoints().add(bendpoint);
-
-            IBounds srcBounds = XMLExchangeUtils.getAbsoluteBounds(connection.getSource());
-            IBounds tgtBounds = XMLExchangeUtils.getAbsoluteBounds(connection.getTarget());
-            
-            int startX = x - (srcBounds.getX() + (srcBounds.getWidth() / 2));
-            int startY = y - (srcBounds.getY() + (srcBounds.getHeight() / 2));
-            bendpoint.setStartX(startX);
-            bendpoint.setStartY(startY);
-
-            int endX = x - (tgtBounds.getX() + (tgtBounds.getWidth() / 2));
-            int endY = y - (tgtBounds.getY() + (tgtBounds.getHeight() / 2));
-            bendpoint.setEndX(endX);
-            bendpoint.setEndY(endY);
         }
     }
     
@@ -735,7 +1325,7 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
      * Connection Style
      */
     private void addConnectionStyle(IDiagramModelConnection connection, Element styleElement) throws XMLModelParserException {
-        if(styleElement == null) {
+        if(styleElement == null || !fIncludeStyles) {
             return;
         }
         
@@ -822,22 +1412,11 @@ public class XMLModelImporter implements IXMLExchangeGlobals {
         return colorStr;
     }
     
+    /**
+     * @return The text of the child element in the best language, or null if there is no such child
+     */
     String getChildElementText(Element parentElement, String childElementName, boolean normalise) {
-        //Check for localised element according to the system's locale
-        String code = Locale.getDefault().getLanguage();
-        if(code == null) {
-            code = "en"; //$NON-NLS-1$
-        }
-        
-        for(Element childElement : parentElement.getChildren(childElementName, ARCHIMATE3_NAMESPACE)) {
-            String lang = childElement.getAttributeValue(ATTRIBUTE_LANG, Namespace.XML_NAMESPACE);
-            if(code.equals(lang)) {
-                return normalise ? childElement.getTextNormalize() : childElement.getText();
-            }
-        }
-        
-        // Default to first element found
-        Element element = parentElement.getChild(childElementName, ARCHIMATE3_NAMESPACE);
+        Element element = fCurrentLanguageSelector.select(parentElement.getChildren(childElementName, ARCHIMATE3_NAMESPACE));
         return element == null ? null : normalise ? element.getTextNormalize() : element.getText();
     }
     
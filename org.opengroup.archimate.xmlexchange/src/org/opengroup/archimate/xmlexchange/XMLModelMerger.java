@@ -0,0 +1,677 @@
+/**
+ * This program and the accompanying materials
+ * are made available under the terms of the License
+ * which accompanies this distribution in the file LICENSE.txt
+ */
+package org.opengroup.archimate.xmlexchange;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.eclipse.emf.common.util.ECollections;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.gef.commands.Command;
+import org.eclipse.gef.commands.CompoundCommand;
+import org.jdom2.JDOMException;
+
+import com.archimatetool.model.IArchimateConcept;
+import com.archimatetool.model.IArchimateModel;
+import com.archimatetool.model.IArchimateRelationship;
+import com.archimatetool.model.IConnectable;
+import com.archimatetool.model.IDiagramModel;
+import com.archimatetool.model.IDiagramModelArchimateComponent;
+import com.archimatetool.model.IDiagramModelConnection;
+import com.archimatetool.model.IFolder;
+import com.archimatetool.model.IIdentifier;
+
+
+/**
+ * Merges an incoming exchange model into an existing model
+ *
+ * Concepts, relationships and views are matched by identifier. Objects only in the incoming model are added,
+ * objects that differ are updated in place and objects only in the existing model are removed.
+ * Unchanged objects are left alone. Existing objects keep their folder, new objects go into the default folder.
+ * Diagram components that would reference a concept that is not in the model after the merge are removed
+ * together with their child objects and connections.
+ *
+ * All changes are made by a single undoable Command that is executed on the existing model's CommandStack.
+ * Nothing in the existing model is changed until the Command is executed.
+ *
+ * Identifiers are also matched if the incoming identifier is an existing identifier with the "id-" prefix
+ * that the exporter adds, so a model that was exported and edited elsewhere can be merged back.
+ */
+public class XMLModelMerger {
+
+    private static final String ID_PREFIX = "id-"; //$NON-NLS-1$
+
+    private final IArchimateModel fTargetModel;
+
+    // Existing concepts and views by identifier
+    private Map<String, EObject> fTargetIndex;
+
+    // Existing concepts and views matched to incoming ones
+    private Map<EObject, EObject> fMatches;
+
+    // Identifiers of existing objects that are replaced because their type changed
+    private Set<String> fReplacedIDs;
+
+    private int fAdded, fUpdated, fRemoved;
+
+    public XMLModelMerger(IArchimateModel targetModel) {
+        fTargetModel = targetModel;
+    }
+
+    /**
+     * Import an XML, binary or JSON exchange file and create the Command that merges it into the target model
+     */
+    public Command createMergeCommand(File instanceFile) throws IOException, JDOMException, XMLModelParserException {
+        IArchimateModel incomingModel = new XMLModelImporter().createArchiMateModel(instanceFile);
+        return createMergeCommand(incomingModel);
+    }
+
+    /**
+     * Create the Command that merges a model into the target model.
+     * Objects are taken from the incoming model when the Command is executed so it should not be used afterwards.
+     * @return The Command. This can't be executed if there are no differences.
+     * @throws IllegalStateException if either model has lazily imported views that have not been loaded
+     */
+    public Command createMergeCommand(IArchimateModel incomingModel) {
+        // Unloaded views look empty and would be merged as if their content had been deleted
+        LazyViews.checkLoaded(fTargetModel);
+        LazyViews.checkLoaded(incomingModel);
+
+        fAdded = fUpdated = fRemoved = 0;
+
+        fTargetIndex = new HashMap<String, EObject>();
+        fMatches = new IdentityHashMap<EObject, EObject>();
+        fReplacedIDs = new HashSet<String>();
+
+        List<EObject> targetObjects = new ArrayList<EObject>();
+        collectObjects(fTargetModel.getFolders(), targetObjects);
+        for(EObject eObject : targetObjects) {
+            String id = ((IIdentifier)eObject).getId();
+            if(id != null && !fTargetIndex.containsKey(id)) {
+                fTargetIndex.put(id, eObject);
+            }
+        }
+
+        List<EObject> incomingObjects = new ArrayList<EObject>();
+        collectObjects(incomingModel.getFolders(), incomingObjects);
+
+        // Match incoming objects to existing ones
+        List<EObject> added = new ArrayList<EObject>();
+        Set<EObject> matched = Collections.newSetFromMap(new IdentityHashMap<EObject, Boolean>());
+
+        for(EObject incoming : incomingObjects) {
+            EObject existing = findExisting(((IIdentifier)incoming).getId());
+
+            if(existing == null || matched.contains(existing)) {
+                added.add(incoming);
+            }
+            else if(existing.eClass() != incoming.eClass()) {
+                fReplacedIDs.add(((IIdentifier)existing).getId());
+                added.add(incoming);
+            }
+            else {
+                fMatches.put(incoming, existing);
+                matched.add(existing);
+            }
+        }
+
+        CompoundCommand compoundCommand = new CompoundCommand(Messages.XMLModelMerger_0);
+
+        // Add new objects to their default folders. Lists are keyed by identity as EList.equals() compares the contents.
+        Map<EList<EObject>, List<EObject>> additions = new IdentityHashMap<EList<EObject>, List<EObject>>();
+        for(EObject incoming : added) {
+            EList<EObject> list = fTargetModel.getDefaultFolderForObject(incoming).getElements();
+            List<EObject> objects = additions.get(list);
+            if(objects == null) {
+                objects = new ArrayList<EObject>();
+                additions.put(list, objects);
+            }
+            objects.add(incoming);
+            fAdded++;
+        }
+        for(Entry<EList<EObject>, List<EObject>> entry : additions.entrySet()) {
+            compoundCommand.add(new AddObjectsCommand(entry.getKey(), entry.getValue()));
+        }
+
+        // References from new objects to existing ones
+        for(EObject incoming : added) {
+            addResolveReferencesCommands(incoming, compoundCommand);
+        }
+
+        // Update changed objects
+        for(Entry<EObject, EObject> entry : fMatches.entrySet()) {
+            if(!new IdentifierEqualityHelper().equals(entry.getValue(), entry.getKey())) {
+                addUpdateCommands(entry.getValue(), entry.getKey(), compoundCommand);
+                fUpdated++;
+            }
+        }
+
+        // Remove objects that have gone or been replaced
+        Map<EList<EObject>, Set<EObject>> removals = new IdentityHashMap<EList<EObject>, Set<EObject>>();
+        for(EObject existing : targetObjects) {
+            if(!matched.contains(existing)) {
+                @SuppressWarnings("unchecked")
+                EList<EObject> list = (EList<EObject>)existing.eContainer().eGet(existing.eContainmentFeature());
+                Set<EObject> objects = removals.get(list);
+                if(objects == null) {
+                    objects = Collections.newSetFromMap(new IdentityHashMap<EObject, Boolean>());
+                    removals.put(list, objects);
+                }
+                objects.add(existing);
+
+                // Disconnect removed relationships from their source and target
+                if(existing instanceof IArchimateRelationship) {
+                    compoundCommand.add(new SetFeatureCommand(existing, existing.eClass().getEStructuralFeature("source"), null)); //$NON-NLS-1$
+                    compoundCommand.add(new SetFeatureCommand(existing, existing.eClass().getEStructuralFeature("target"), null)); //$NON-NLS-1$
+                }
+
+                fRemoved++;
+            }
+        }
+        for(Entry<EList<EObject>, Set<EObject>> entry : removals.entrySet()) {
+            compoundCommand.add(new RemoveObjectsCommand(entry.getKey(), entry.getValue()));
+        }
+
+        // Model name, purpose and properties
+        for(String featureName : new String[] { "name", "purpose", "properties" }) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            EStructuralFeature feature = fTargetModel.eClass().getEStructuralFeature(featureName);
+            if(feature != null && !new IdentifierEqualityHelper().haveEqualFeature(fTargetModel, incomingModel, feature)) {
+                addSetFeatureCommand(fTargetModel, incomingModel, feature, compoundCommand);
+            }
+        }
+
+        // Last, remove what is left in the views of removed concepts
+        if(!compoundCommand.isEmpty()) {
+            compoundCommand.add(new RemoveDanglingDiagramComponentsCommand(fTargetModel));
+        }
+
+        return compoundCommand;
+    }
+
+    /**
+     * @return The number of objects added by the last merge Command created
+     */
+    public int getAddedCount() {
+        return fAdded;
+    }
+
+    /**
+     * @return The number of objects updated by the last merge Command created
+     */
+    public int getUpdatedCount() {
+        return fUpdated;
+    }
+
+    /**
+     * @return The number of objects removed by the last merge Command created. Replaced objects are counted as removed and added.
+     */
+    public int getRemovedCount() {
+        return fRemoved;
+    }
+
+    // ========================================= Matching ======================================
+
+    /**
+     * Collect all concepts and views in folders
+     */
+    private void collectObjects(List<IFolder> folders, List<EObject> objects) {
+        for(IFolder folder : folders) {
+            for(EObject eObject : folder.getElements()) {
+                if(eObject instanceof IArchimateConcept || eObject instanceof IDiagramModel) {
+                    objects.add(eObject);
+                }
+            }
+            collectObjects(folder.getFolders(), objects);
+        }
+    }
+
+    private EObject findExisting(String id) {
+        if(id == null) {
+            return null;
+        }
+
+        EObject existing = fTargetIndex.get(id);
+
+        if(existing == null && id.startsWith(ID_PREFIX)) {
+            existing = fTargetIndex.get(id.substring(ID_PREFIX.length()));
+        }
+
+        return existing;
+    }
+
+    /**
+     * @return The object that a reference to an incoming object should point to after the merge
+     */
+    private EObject resolve(EObject incoming) {
+        EObject existing = fMatches.get(incoming);
+        return existing != null ? existing : incoming;
+    }
+
+    private static String getID(Object object) {
+        return object instanceof IIdentifier ? ((IIdentifier)object).getId() : null;
+    }
+
+    // ========================================= Commands ======================================
+
+    /**
+     * Add Commands to update an existing object's features from the matching incoming object
+     */
+    private void addUpdateCommands(EObject existing, EObject incoming, CompoundCommand compoundCommand) {
+        IdentifierEqualityHelper helper = new IdentifierEqualityHelper();
+
+        for(EStructuralFeature feature : existing.eClass().getEAllStructuralFeatures()) {
+            if(isMergeable(feature) && !helper.haveEqualFeature(existing, incoming, feature)) {
+                addSetFeatureCommand(existing, incoming, feature, compoundCommand);
+            }
+        }
+    }
+
+    /**
+     * Add a Command to set an existing object's feature to the incoming value.
+     * Contained objects are moved from the incoming object and references are resolved to existing objects.
+     */
+    private void addSetFeatureCommand(EObject existing, EObject incoming, EStructuralFeature feature, CompoundCommand compoundCommand) {
+        Object value = incoming.eGet(feature);
+
+        if(feature instanceof EReference && !((EReference)feature).isContainment()) {
+            value = resolveValue(value);
+        }
+        else if(feature.isMany()) {
+            value = new ArrayList<Object>((List<?>)value);
+        }
+
+        compoundCommand.add(new SetFeatureCommand(existing, feature, value));
+
+        // References inside moved contained objects
+        if(feature instanceof EReference && ((EReference)feature).isContainment()) {
+            for(Object child : feature.isMany() ? (List<?>)value : Collections.singletonList(value)) {
+                if(child instanceof EObject) {
+                    addResolveReferencesCommands((EObject)child, compoundCommand);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add Commands to point the references of an incoming object and its contents to existing objects where matched
+     */
+    private void addResolveReferencesCommands(EObject incoming, CompoundCommand compoundCommand) {
+        addResolveReferenceCommands(incoming, compoundCommand);
+
+        for(Iterator<EObject> iter = incoming.eAllContents(); iter.hasNext();) {
+            addResolveReferenceCommands(iter.next(), compoundCommand);
+        }
+    }
+
+    private void addResolveReferenceCommands(EObject eObject, CompoundCommand compoundCommand) {
+        for(EReference reference : eObject.eClass().getEAllReferences()) {
+            if(reference.isContainment() || !isMergeable(reference)) {
+                continue;
+            }
+
+            Object value = eObject.eGet(reference);
+            Object resolved = resolveValue(value);
+
+            if(resolved instanceof List ? !identical((List<?>)value, (List<?>)resolved) : resolved != value) {
+                compoundCommand.add(new SetFeatureCommand(eObject, reference, resolved));
+            }
+        }
+    }
+
+    private Object resolveValue(Object value) {
+        if(value instanceof List) {
+            List<Object> resolved = new ArrayList<Object>();
+            for(Object object : (List<?>)value) {
+                resolved.add(object instanceof EObject ? resolve((EObject)object) : object);
+            }
+            return resolved;
+        }
+
+        return value instanceof EObject ? resolve((EObject)value) : value;
+    }
+
+    private static boolean identical(List<?> list1, List<?> list2) {
+        if(list1.size() != list2.size()) {
+            return false;
+        }
+        for(int i = 0; i < list1.size(); i++) {
+            if(list1.get(i) != list2.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the feature is persisted model content that can be merged
+     */
+    private static boolean isMergeable(EStructuralFeature feature) {
+        if(feature.isDerived() || feature.isTransient() || !feature.isChangeable()) {
+            return false;
+        }
+
+        if(feature instanceof EReference && ((EReference)feature).isContainer()) {
+            return false;
+        }
+
+        // Keep the existing identifier
+        return !"id".equals(feature.getName()); //$NON-NLS-1$
+    }
+
+    /**
+     * Compares objects by value. Contained objects are compared deeply, referenced objects by identifier.
+     * References to replaced objects are never equal.
+     */
+    @SuppressWarnings("serial")
+    private class IdentifierEqualityHelper extends EcoreUtil.EqualityHelper {
+        @Override
+        protected boolean haveEqualFeature(EObject eObject1, EObject eObject2, EStructuralFeature feature) {
+            if(!isMergeable(feature)) {
+                return true;
+            }
+            return super.haveEqualFeature(eObject1, eObject2, feature);
+        }
+
+        @Override
+        protected boolean haveEqualReference(EObject eObject1, EObject eObject2, EReference reference) {
+            if(reference.isContainment()) {
+                return super.haveEqualReference(eObject1, eObject2, reference);
+            }
+
+            Object value1 = eObject1.eGet(reference);
+            Object value2 = eObject2.eGet(reference);
+
+            List<?> list1 = reference.isMany() ? (List<?>)value1 : Collections.singletonList(value1);
+            List<?> list2 = reference.isMany() ? (List<?>)value2 : Collections.singletonList(value2);
+
+            if(list1.size() != list2.size()) {
+                return false;
+            }
+
+            for(int i = 0; i < list1.size(); i++) {
+                Object existing = list1.get(i);
+                Object incoming = list2.get(i);
+
+                if(existing == null || incoming == null) {
+                    if(existing != incoming) {
+                        return false;
+                    }
+                    continue;
+                }
+
+                // Same object, or the incoming object matches the existing object
+                if(existing != incoming && resolve((EObject)incoming) != existing) {
+                    String id1 = getID(existing);
+                    String id2 = getID(incoming);
+                    if(id1 == null || !(id1.equals(id2) || (ID_PREFIX + id1).equals(id2)) || fReplacedIDs.contains(id1)) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Set a feature's value, or the contents of a many-valued feature
+     */
+    private static class SetFeatureCommand extends Command {
+        private final EObject fOwner;
+        private final EStructuralFeature fFeature;
+        private final Object fNewValue;
+        private Object fOldValue;
+
+        SetFeatureCommand(EObject owner, EStructuralFeature feature, Object newValue) {
+            fOwner = owner;
+            fFeature = feature;
+            fNewValue = newValue;
+        }
+
+        @Override
+        public boolean canExecute() {
+            return fFeature != null;
+        }
+
+        @Override
+        public void execute() {
+            if(fFeature.isMany()) {
+                fOldValue = new ArrayList<Object>((List<?>)fOwner.eGet(fFeature));
+            }
+            else {
+                fOldValue = fOwner.eGet(fFeature);
+            }
+            set(fNewValue);
+        }
+
+        @Override
+        public void undo() {
+            set(fOldValue);
+        }
+
+        @Override
+        public void redo() {
+            set(fNewValue);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void set(Object value) {
+            if(fFeature.isMany()) {
+                ECollections.setEList((EList<Object>)fOwner.eGet(fFeature), (List<Object>)value);
+            }
+            else {
+                fOwner.eSet(fFeature, value);
+            }
+        }
+    }
+
+    /**
+     * Append objects to a list
+     */
+    private static class AddObjectsCommand extends Command {
+        private final EList<EObject> fList;
+        private final List<EObject> fObjects;
+
+        AddObjectsCommand(EList<EObject> list, List<EObject> objects) {
+            fList = list;
+            fObjects = objects;
+        }
+
+        @Override
+        public void execute() {
+            fList.addAll(fObjects);
+        }
+
+        @Override
+        public void undo() {
+            // They were appended so remove from the end
+            for(int i = 0; i < fObjects.size(); i++) {
+                fList.remove(fList.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Remove diagram components whose concept is not in the model, with their child objects and their connections.
+     * What to remove is worked out when executed so that it sees the model after the other merge Commands.
+     */
+    private static class RemoveDanglingDiagramComponentsCommand extends Command {
+        private final IArchimateModel fModel;
+
+        // Removed connections with their positions in their source's and target's connection lists
+        private List<IDiagramModelConnection> fConnections;
+        private List<int[]> fConnectionIndexes;
+
+        // Removed objects with their containing lists and positions
+        private List<EObject> fObjects;
+        private List<EList<EObject>> fObjectLists;
+        private List<Integer> fObjectIndexes;
+
+        RemoveDanglingDiagramComponentsCommand(IArchimateModel model) {
+            fModel = model;
+        }
+
+        @Override
+        public void execute() {
+            fConnections = new ArrayList<IDiagramModelConnection>();
+            fConnectionIndexes = new ArrayList<int[]>();
+            fObjects = new ArrayList<EObject>();
+            fObjectLists = new ArrayList<EList<EObject>>();
+            fObjectIndexes = new ArrayList<Integer>();
+
+            Set<EObject> removed = Collections.newSetFromMap(new IdentityHashMap<EObject, Boolean>());
+            List<IDiagramModelConnection> connections = new ArrayList<IDiagramModelConnection>();
+
+            for(IDiagramModel dm : fModel.getDiagramModels()) {
+                for(Iterator<EObject> iter = dm.eAllContents(); iter.hasNext();) {
+                    EObject eObject = iter.next();
+
+                    if(eObject instanceof IDiagramModelConnection) {
+                        connections.add((IDiagramModelConnection)eObject);
+                    }
+
+                    if(eObject instanceof IDiagramModelArchimateComponent && isDangling((IDiagramModelArchimateComponent)eObject)) {
+                        removed.add(eObject);
+                        // Child objects and their connections go with it. The iterator still visits them for the list of connections.
+                        for(Iterator<EObject> children = eObject.eAllContents(); children.hasNext();) {
+                            removed.add(children.next());
+                        }
+                    }
+                }
+            }
+
+            // Connections to removed objects or to removed connections
+            boolean changed = true;
+            while(changed) {
+                changed = false;
+                for(IDiagramModelConnection connection : connections) {
+                    if(!removed.contains(connection) && (removed.contains(connection.getSource()) || removed.contains(connection.getTarget()))) {
+                        removed.add(connection);
+                        changed = true;
+                    }
+                }
+            }
+
+            // Disconnect every removed connection, also those inside removed objects as their other end may stay
+            for(IDiagramModelConnection connection : connections) {
+                if(removed.contains(connection)) {
+                    disconnect(connection);
+                }
+            }
+
+            // Remove the top-most removed objects from their containers
+            for(EObject eObject : removed) {
+                if(!(eObject instanceof IDiagramModelConnection) && !removed.contains(eObject.eContainer()) && eObject.eContainer() != null) {
+                    @SuppressWarnings("unchecked")
+                    EList<EObject> list = (EList<EObject>)eObject.eContainer().eGet(eObject.eContainmentFeature());
+                    fObjects.add(eObject);
+                    fObjectLists.add(list);
+                    fObjectIndexes.add(list.indexOf(eObject));
+                    list.remove(eObject);
+                }
+            }
+        }
+
+        @Override
+        public void undo() {
+            for(int i = fObjects.size() - 1; i >= 0; i--) {
+                fObjectLists.get(i).add(fObjectIndexes.get(i), fObjects.get(i));
+            }
+
+            for(int i = fConnections.size() - 1; i >= 0; i--) {
+                IDiagramModelConnection connection = fConnections.get(i);
+                int[] indexes = fConnectionIndexes.get(i);
+                if(indexes[0] != -1) {
+                    connection.getSource().getSourceConnections().add(indexes[0], connection);
+                }
+                if(indexes[1] != -1) {
+                    connection.getTarget().getTargetConnections().add(indexes[1], connection);
+                }
+            }
+        }
+
+        private boolean isDangling(IDiagramModelArchimateComponent component) {
+            IArchimateConcept concept = component.getArchimateConcept();
+            return concept == null || concept.getArchimateModel() != fModel;
+        }
+
+        private void disconnect(IDiagramModelConnection connection) {
+            IConnectable source = connection.getSource();
+            IConnectable target = connection.getTarget();
+
+            int sourceIndex = source == null ? -1 : source.getSourceConnections().indexOf(connection);
+            if(sourceIndex != -1) {
+                source.getSourceConnections().remove(sourceIndex);
+            }
+
+            int targetIndex = target == null ? -1 : target.getTargetConnections().indexOf(connection);
+            if(targetIndex != -1) {
+                target.getTargetConnections().remove(targetIndex);
+            }
+
+            fConnections.add(connection);
+            fConnectionIndexes.add(new int[] { sourceIndex, targetIndex });
+        }
+    }
+
+    /**
+     * Remove a set of objects from a list, recording their positions for undo
+     */
+    private static class RemoveObjectsCommand extends Command {
+        private final EList<EObject> fList;
+        private final Set<EObject> fObjects;
+        private int[] fIndexes;
+        private EObject[] fRemoved;
+
+        RemoveObjectsCommand(EList<EObject> list, Set<EObject> objects) {
+            fList = list;
+            fObjects = objects;
+        }
+
+        @Override
+        public void execute() {
+            fIndexes = new int[fObjects.size()];
+            fRemoved = new EObject[fObjects.size()];
+
+            int count = 0;
+            for(int i = 0; i < fList.size() && count < fIndexes.length; i++) {
+                if(fObjects.contains(fList.get(i))) {
+                    fIndexes[count] = i;
+                    fRemoved[count] = fList.get(i);
+                    count++;
+                }
+            }
+
+            // Remove from the end so the indexes stay valid
+            for(int i = count - 1; i >= 0; i--) {
+                fList.remove(fIndexes[i]);
+            }
+        }
+
+        @Override
+        public void undo() {
+            for(int i = 0; i < fIndexes.length; i++) {
+                if(fRemoved[i] != null) {
+                    fList.add(fIndexes[i], fRemoved[i]);
+                }
+            }
+        }
+    }
+}
@@ -5,7 +5,11 @@
  */
 package org.opengroup.archimate.xmlexchange;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -116,6 +120,42 @@ public class XMLTypeMapper implements IXMLExchangeGlobals {
         ElementsMapping.put("AndJunction", IArchimatePackage.eINSTANCE.getJunction());
         ElementsMapping.put("OrJunction", IArchimatePackage.eINSTANCE.getJunction());
     }
+    
+    // Reverse mapping of Element EClasses to Type strings. Built once and only read after that so it's safe to share between threads.
+    private static Map<EClass, String> ElementsNameMapping = new HashMap<EClass, String>();
+    
+    static {
+        for(Entry<String, EClass> entry : ElementsMapping.entrySet()) {
+            ElementsNameMapping.put(entry.getValue(), entry.getKey());
+        }
+    }
+
+    /**
+     * @return The exchange type names of all elements, including junctions, in alphabetical order
+     */
+    public static List<String> getElementTypeNames() {
+        return getConceptTypeNames(false);
+    }
+    
+    /**
+     * @return The exchange type names of all relationships in alphabetical order
+     */
+    public static List<String> getRelationshipTypeNames() {
+        return getConceptTypeNames(true);
+    }
+    
+    private static List<String> getConceptTypeNames(boolean relationships) {
+        List<String> names = new ArrayList<String>();
+        
+        for(Entry<String, EClass> entry : ElementsMapping.entrySet()) {
+            if(IArchimatePackage.eINSTANCE.getArchimateRelationship().isSuperTypeOf(entry.getValue()) == relationships) {
+                names.add(entry.getKey());
+            }
+        }
+        
+        Collections.sort(names);
+        return names;
+    }
 
     public static IArchimateConcept createArchimateConcept(String type) {
         EClass eClass = ElementsMapping.get(type);
@@ -147,13 +187,7 @@ public class XMLTypeMapper implements IXMLExchangeGlobals {
             return "AndJunction";
         }
         
-        for(Entry<String, EClass> entry : ElementsMapping.entrySet()) {
-            if(entry.getValue().equals(archimateConcept.eClass())) {
-                return entry.getKey();
-            }
-        }
-        
-        return null;
+        return ElementsNameMapping.get(archimateConcept.eClass());
     }
     
     // Mapping of Viewpoint Names
@@ -188,19 +222,39 @@ public class XMLTypeMapper implements IXMLExchangeGlobals {
         ViewPointsMapping.put("implementation_migration", "Implementation and Migration");
         ViewPointsMapping.put("stakeholder", "Stakeholder");
     }
+    
+    // Reverse mapping of Viewpoint Names to IDs
+    private static Map<String, String> ViewPointsIDMapping = new HashMap<String, String>();
+    
+    static {
+        for(Entry<String, String> entry : ViewPointsMapping.entrySet()) {
+            ViewPointsIDMapping.put(entry.getValue(), entry.getKey());
+        }
+    }
+
+    /**
+     * @return The exchange names of all viewpoints in alphabetical order
+     */
+    public static List<String> getViewpointNames() {
+        List<String> names = new ArrayList<String>();
+        
+        for(String name : ViewPointsMapping.values()) {
+            if(!name.isEmpty()) {
+                names.add(name);
+            }
+        }
+        
+        Collections.sort(names);
+        return names;
+    }
 
     public static String getViewpointName(String viewPointID) {
         return ViewPointsMapping.get(viewPointID);
     }
     
     public static String getViewpointID(String viewPointName) {
-        for(Entry<String, String> entry : ViewPointsMapping.entrySet()) {
-            if(entry.getValue().equals(viewPointName)) {
-                return entry.getKey();
-            }
-        }
-        
-        return "";
+        String id = viewPointName == null ? null : ViewPointsIDMapping.get(viewPointName);
+        return id == null ? "" : id;
     }
 
 }
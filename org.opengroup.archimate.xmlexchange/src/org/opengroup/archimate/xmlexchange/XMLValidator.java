@@ -19,6 +19,8 @@ import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 
+import org.jdom2.Document;
+import org.jdom2.transform.JDOMSource;
 import org.w3c.dom.ls.LSInput;
 import org.w3c.dom.ls.LSResourceResolver;
 import org.xml.sax.SAXException;
@@ -31,26 +33,88 @@ import org.xml.sax.SAXException;
  */
 public final class XMLValidator {
     
-    public void validateXML(File xmlInstance) throws SAXException, IOException {
-        SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+    /**
+     * The compiled Schema. This is immutable and thread-safe so it is compiled once and shared.
+     * Validators are not thread-safe so a new one is created for each validation.
+     */
+    private static Schema fSchema;
+    
+    static synchronized Schema getSchema() throws SAXException, IOException {
+        if(fSchema == null) {
+            SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            
+            // Resolver for xsd import
+            factory.setResourceResolver(new ResourceResolver());
+            
+            // Local XSDs
+            fSchema = factory.newSchema(new Source[]{
+                    new StreamSource(XMLExchangePlugin.INSTANCE.getBundleInputStream(XMLExchangePlugin.XSD_FOLDER + XMLExchangePlugin.ARCHIMATE3_DIAGRAM_XSD)),
+                    new StreamSource(XMLExchangePlugin.INSTANCE.getBundleInputStream(XMLExchangePlugin.XSD_FOLDER + XMLExchangePlugin.DUBLINCORE_XSD))
+            });
+        }
         
-        // Resolver for xsd import
-        factory.setResourceResolver(new ResourceResolver());
+        return fSchema;
+    }
+    
+    public void validateXML(File xmlInstance) throws SAXException, IOException {
+        Validator validator = getSchema().newValidator();
         
-        // Local XSDs
-        Schema schema = factory.newSchema(new Source[]{
-                new StreamSource(XMLExchangePlugin.INSTANCE.getBundleInputStream(XMLExchangePlugin.XSD_FOLDER + XMLExchangePlugin.ARCHIMATE3_DIAGRAM_XSD)),
-                new StreamSource(XMLExchangePlugin.INSTANCE.getBundleInputStream(XMLExchangePlugin.XSD_FOLDER + XMLExchangePlugin.DUBLINCORE_XSD))
-        });
-
-        Validator validator = schema.newValidator();
+        // Binary exchange file
+        if(XMLExchangeBinaryCodec.isBinaryFile(xmlInstance)) {
+            Document doc = new XMLExchangeBinaryCodec().read(xmlInstance);
+            validate(validator, new JDOMSource(doc));
+            return;
+        }
         
+        // JSON exchange file
+        if(XMLExchangeJSONCodec.isJSONFile(xmlInstance)) {
+            Document doc = new XMLExchangeJSONCodec().read(xmlInstance);
+            validate(validator, new JDOMSource(doc));
+            return;
+        }
         
         // Fixes #274 https://github.com/archimatetool/archi/issues/274
         FileInputStream in = new FileInputStream(xmlInstance);
         
         try {
-            validator.validate(new StreamSource(in));
+            validate(validator, new StreamSource(in));
+        }
+        finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * Validate an XML, binary or JSON exchange stream. The stream is not closed.
+     * External DTDs and schemas referenced by the instance are not fetched.
+     */
+    public void validateXML(InputStream in) throws SAXException, IOException {
+        Validator validator = getSchema().newValidator();
+        validator.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, ""); //$NON-NLS-1$
+        validator.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, ""); //$NON-NLS-1$
+        
+        BufferedInputStream bis = new BufferedInputStream(in);
+        
+        // Binary exchange stream
+        if(XMLExchangeBinaryCodec.isBinaryStream(bis)) {
+            Document doc = new XMLExchangeBinaryCodec().read(bis);
+            validate(validator, new JDOMSource(doc));
+            return;
+        }
+        
+        // JSON exchange stream
+        if(XMLExchangeJSONCodec.isJSONStream(bis)) {
+            Document doc = new XMLExchangeJSONCodec().read(bis);
+            validate(validator, new JDOMSource(doc));
+            return;
+        }
+        
+        validate(validator, new StreamSource(bis));
+    }
+    
+    private void validate(Validator validator, Source source) throws SAXException, IOException {
+        try {
+            validator.validate(source);
         }
         catch(SAXException ex) {
             // Ignore error where an XSD declaration is one that we do not have locally (for example for additional metadata)
@@ -58,9 +122,6 @@ public final class XMLValidator {
                 throw ex;
             }
         }
-        finally {
-            in.close();
-        }
     }
 
     static class ResourceResolver implements LSResourceResolver {
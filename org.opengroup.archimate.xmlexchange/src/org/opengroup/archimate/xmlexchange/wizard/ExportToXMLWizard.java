@@ -8,10 +8,14 @@ package org.opengroup.archimate.xmlexchange.wizard;
 import java.io.File;
 import java.io.IOException;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.wizard.Wizard;
-import org.eclipse.swt.custom.BusyIndicator;
 import org.eclipse.swt.widgets.Display;
+import org.opengroup.archimate.xmlexchange.ModelSnapshot;
 import org.opengroup.archimate.xmlexchange.XMLModelExporter;
 
 import com.archimatetool.model.IArchimateModel;
@@ -67,32 +71,59 @@ public class ExportToXMLWizard extends Wizard {
             }
         }
 
-        BusyIndicator.showWhile(Display.getCurrent(), new Runnable() {
+        final XMLModelExporter xmlModelExporter = new XMLModelExporter();
+        
+        xmlModelExporter.setMetadata(fPageMetadata.getMetadata());
+        xmlModelExporter.setSaveOrganisation(fPage.doSaveOrganisation());
+        xmlModelExporter.setIncludeXSD(fPage.doIncludeXSD());
+        xmlModelExporter.setLanguageCode(fPage.getLanguageCode());
+        
+        fPage.storePreferences();
+        fPageMetadata.storePreferences();
+        
+        // Take the snapshot here on the UI thread so the model can be edited while the export runs
+        final ModelSnapshot snapshot;
+        try {
+            snapshot = ModelSnapshot.capture(fModel);
+        }
+        catch(IOException ex) {
+            ex.printStackTrace();
+            MessageDialog.openError(getShell(),
+                    Messages.ExportToXMLWizard_3,
+                    Messages.ExportToXMLWizard_4
+                    + " " //$NON-NLS-1$
+                    + ex.getMessage());
+            return false;
+        }
+        
+        final Display display = Display.getCurrent();
+        
+        Job job = new Job(Messages.ExportToXMLWizard_5) {
             @Override
-            public void run() {
+            protected IStatus run(IProgressMonitor monitor) {
                 try {
-                    XMLModelExporter xmlModelExporter = new XMLModelExporter();
-                    
-                    xmlModelExporter.setMetadata(fPageMetadata.getMetadata());
-                    xmlModelExporter.setSaveOrganisation(fPage.doSaveOrganisation());
-                    xmlModelExporter.setIncludeXSD(fPage.doIncludeXSD());
-                    xmlModelExporter.setLanguageCode(fPage.getLanguageCode());
-                    
-                    xmlModelExporter.exportModel(fModel, file);
-
-                    fPage.storePreferences();
-                    fPageMetadata.storePreferences();
+                    xmlModelExporter.exportModel(snapshot, file);
                 }
-                catch(Throwable ex) {
+                catch(final Throwable ex) {
                     ex.printStackTrace();
-                    MessageDialog.openError(Display.getCurrent().getActiveShell(),
-                            Messages.ExportToXMLWizard_3,
-                            Messages.ExportToXMLWizard_4
-                            + " " //$NON-NLS-1$
-                            + ex.getMessage());
+                    display.asyncExec(new Runnable() {
+                        @Override
+                        public void run() {
+                            MessageDialog.openError(display.getActiveShell(),
+                                    Messages.ExportToXMLWizard_3,
+                                    Messages.ExportToXMLWizard_4
+                                    + " " //$NON-NLS-1$
+                                    + ex.getMessage());
+                        }
+                    });
                 }
+                
+                return Status.OK_STATUS;
             }
-        });
+        };
+        
+        job.setUser(true);
+        job.schedule();
         
         return true;
     }
@@ -77,6 +77,8 @@ public class Messages extends NLS {
     public static String ExportToXMLWizard_3;
 
     public static String ExportToXMLWizard_4;
+
+    public static String ExportToXMLWizard_5;
     static {
         // initialize resource bundle
         NLS.initializeMessages(BUNDLE_NAME, Messages.class);